@@ -0,0 +1,14 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+package com.microsoft.office365;
+
+public interface EntityCallback<E extends OfficeEntity> {
+	/**
+	 * Callback invoked for each entity, as soon as it has been read
+	 * @param entity The entity
+	 */
+	public void onEntity(E entity);
+}
@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+package com.microsoft.office365;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a JSON document token by token, so that large documents can be
+ * processed without holding their whole tree. Values can be skipped, or read
+ * as the same objects a JSONObject would hold.
+ */
+public class JsonStreamReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private Reader mReader;
+	private char[] mBuffer = new char[BUFFER_SIZE];
+	private int mPos = 0;
+	private int mLimit = 0;
+
+	/**
+	 * Initializes the reader
+	 * 
+	 * @param reader
+	 *            the reader to read the JSON document from
+	 */
+	public JsonStreamReader(Reader reader) {
+		mReader = reader;
+	}
+
+	/**
+	 * Returns the first character of the next token, without consuming it, or
+	 * -1 at the end of the document
+	 */
+	public int peek() throws IOException {
+		int c = peekChar();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			mPos++;
+			c = peekChar();
+		}
+		return c;
+	}
+
+	public void beginObject() throws IOException {
+		expect('{');
+	}
+
+	public void endObject() throws IOException {
+		skipComma();
+		expect('}');
+	}
+
+	public void beginArray() throws IOException {
+		expect('[');
+	}
+
+	public void endArray() throws IOException {
+		skipComma();
+		expect(']');
+	}
+
+	/**
+	 * Returns whether the current object or array has more elements
+	 */
+	public boolean hasNext() throws IOException {
+		int c = skipComma();
+		return c != '}' && c != ']' && c != -1;
+	}
+
+	/**
+	 * Reads the name of the next object member
+	 */
+	public String nextName() throws IOException {
+		skipComma();
+		String name = nextString();
+		expect(':');
+		return name;
+	}
+
+	/**
+	 * Reads a string value
+	 */
+	public String nextString() throws IOException {
+		expect('"');
+
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw syntaxError("Unterminated string");
+			} else if (c == '"') {
+				return sb.toString();
+			} else if (c == '\\') {
+				sb.append(readEscaped());
+			} else {
+				sb.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next value: objects and arrays are returned as JSONObject and
+	 * JSONArray instances, null as JSONObject.NULL
+	 */
+	public Object nextValue() throws IOException, JSONException {
+		skipComma();
+		int c = peek();
+		if (c == '{') {
+			JSONObject object = new JSONObject();
+			beginObject();
+			while (hasNext()) {
+				String name = nextName();
+				object.put(name, nextValue());
+			}
+			endObject();
+			return object;
+		} else if (c == '[') {
+			JSONArray array = new JSONArray();
+			beginArray();
+			while (hasNext()) {
+				array.put(nextValue());
+			}
+			endArray();
+			return array;
+		} else if (c == '"') {
+			return nextString();
+		} else {
+			return literalValue(nextLiteral());
+		}
+	}
+
+	/**
+	 * Skips the next value, without reading it
+	 */
+	public void skipValue() throws IOException {
+		skipComma();
+		int c = peek();
+		if (c == '"') {
+			mPos++;
+			skipString();
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				c = read();
+				if (c == -1) {
+					throw syntaxError("Unterminated " + (depth > 0 ? "value" : "document"));
+				} else if (c == '"') {
+					skipString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			} while (depth > 0);
+		} else {
+			nextLiteral();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		mReader.close();
+	}
+
+	private void skipString() throws IOException {
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw syntaxError("Unterminated string");
+			} else if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				read();
+			}
+		}
+	}
+
+	private char readEscaped() throws IOException {
+		int c = read();
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit == -1) {
+					throw syntaxError("Invalid unicode escape");
+				}
+				value = (value << 4) + digit;
+			}
+			return (char) value;
+		case -1:
+			throw syntaxError("Unterminated string");
+		default:
+			return (char) c;
+		}
+	}
+
+	private String nextLiteral() throws IOException {
+		peek();
+
+		StringBuilder sb = new StringBuilder();
+		int c = peekChar();
+		while (c != -1 && c != ',' && c != '}' && c != ']' && c != ':' && c != ' ' && c != '\t' && c != '\n'
+				&& c != '\r') {
+			sb.append((char) c);
+			mPos++;
+			c = peekChar();
+		}
+
+		if (sb.length() == 0) {
+			throw syntaxError("Expected a value");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Converts a literal the same way JSONObject does
+	 */
+	private Object literalValue(String literal) {
+		if (literal.equals("true")) {
+			return Boolean.TRUE;
+		} else if (literal.equals("false")) {
+			return Boolean.FALSE;
+		} else if (literal.equals("null")) {
+			return JSONObject.NULL;
+		}
+
+		try {
+			if (literal.indexOf('.') != -1 || literal.indexOf('e') != -1 || literal.indexOf('E') != -1) {
+				return Double.valueOf(literal);
+			}
+
+			long value = Long.parseLong(literal);
+			if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return Integer.valueOf((int) value);
+			}
+			return Long.valueOf(value);
+		} catch (NumberFormatException e) {
+			return literal;
+		}
+	}
+
+	private int skipComma() throws IOException {
+		int c = peek();
+		if (c == ',') {
+			mPos++;
+			c = peek();
+		}
+		return c;
+	}
+
+	private void expect(char expected) throws IOException {
+		int c = peek();
+		if (c != expected) {
+			throw syntaxError("Expected '" + expected + "'");
+		}
+		mPos++;
+	}
+
+	private int peekChar() throws IOException {
+		if (mPos == mLimit) {
+			mPos = 0;
+			mLimit = mReader.read(mBuffer, 0, mBuffer.length);
+			if (mLimit <= 0) {
+				mLimit = 0;
+				return -1;
+			}
+		}
+		return mBuffer[mPos];
+	}
+
+	private int read() throws IOException {
+		int c = peekChar();
+		if (c != -1) {
+			mPos++;
+		}
+		return c;
+	}
+
+	private IOException syntaxError(String message) {
+		return new IOException("Malformed JSON: " + message);
+	}
+}
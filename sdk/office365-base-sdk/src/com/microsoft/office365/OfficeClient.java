@@ -1,12 +1,16 @@
 package com.microsoft.office365;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.json.JSONException;
@@ -17,6 +21,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.office365.http.HttpConnection;
+import com.microsoft.office365.http.InvalidHttpStatusCodeException;
 import com.microsoft.office365.http.Request;
 import com.microsoft.office365.http.Response;
 
@@ -96,8 +101,50 @@ public class OfficeClient {
 
 	protected ListenableFuture<byte[]> executeRequest(String url, String method, Map<String, String> headers,
 			byte[] payload) {
-		HttpConnection connection = Platform.createHttpConnection();
 
+		final SettableFuture<byte[]> result = SettableFuture.create();
+		final ListenableFuture<Response> request = executeRequestStream(url, method, headers, payload);
+
+		Futures.addCallback(request, new FutureCallback<Response>() {
+			@Override
+			public void onFailure(Throwable t) {
+				result.setException(t);
+			}
+
+			@Override
+			public void onSuccess(Response response) {
+				try {
+					result.set(response.readAllBytes());
+				} catch (IOException e) {
+					log(e);
+					result.setException(e);
+				} finally {
+					closeQuietly(response);
+				}
+			}
+		});
+		return result;
+	}
+
+	protected ListenableFuture<Response> executeRequestStream(String url, String method) {
+		return executeRequestStream(url, method, null, null);
+	}
+
+	/**
+	 * Executes a request without reading the response content: the caller reads it via
+	 * Response.getStream() and must close the response once done
+	 * 
+	 * @return the response, once a valid status code has been received
+	 */
+	protected ListenableFuture<Response> executeRequestStream(String url, String method,
+			Map<String, String> headers, byte[] payload) {
+		return executeRequestStream(createRequest(url, method, headers, payload));
+	}
+
+	/**
+	 * Creates a request, to be executed via executeRequestStream() or executeRequestJson()
+	 */
+	protected Request createRequest(String url, String method, Map<String, String> headers, byte[] payload) {
 		Request request = new Request(method);
 
 		if (headers != null) {
@@ -108,12 +155,25 @@ public class OfficeClient {
 
 		request.setUrl(url);
 		request.setContent(payload);
+		return request;
+	}
+
+	/**
+	 * Executes the given request without reading the response content: the caller reads it via
+	 * Response.getStream() and must close the response once done
+	 * 
+	 * @return the response, once a valid status code has been received
+	 */
+	protected ListenableFuture<Response> executeRequestStream(Request request) {
+		HttpConnection connection = Platform.createHttpConnection();
+
+		request.setStreamingResponse(true);
 		prepareRequest(request);
 
-		log("Generate request for " + url, LogLevel.Verbose);
+		log("Generate request for " + request.getUrl(), LogLevel.Verbose);
 		request.log(getLogger());
 
-		final SettableFuture<byte[]> result = SettableFuture.create();
+		final SettableFuture<Response> result = SettableFuture.create();
 		final ListenableFuture<Response> future = connection.execute(request);
 
 		Futures.addCallback(future, new FutureCallback<Response>() {
@@ -124,97 +184,188 @@ public class OfficeClient {
 
 			@Override
 			public void onSuccess(Response response) {
-				try {
-					int statusCode = response.getStatus();
-					if (isValidStatus(statusCode)) {
-						byte[] responseContentBytes = response.readAllBytes();
-						result.set(responseContentBytes);
-					} else {
-						result.setException(new Exception("Invalid status code " + statusCode + ": "
-								+ response.readToEnd()));
+				int statusCode = response.getStatus();
+				if (isValidStatus(statusCode)) {
+					if (!result.set(response)) {
+						// cancelled meanwhile
+						closeQuietly(response);
 					}
+					return;
+				}
+
+				try {
+					result.setException(new InvalidHttpStatusCodeException(statusCode, response.readToEnd(),
+							String.valueOf(response.getHeaders())));
 				} catch (IOException e) {
 					log(e);
+					result.setException(e);
+				} finally {
+					closeQuietly(response);
 				}
 			}
 		});
 		return result;
 	}
 
+	protected void closeQuietly(Response response) {
+		try {
+			response.close();
+		} catch (IOException e) {
+			log(e.getMessage(), LogLevel.Information);
+		}
+	}
+
 	protected ListenableFuture<JSONObject> executeRequestJson(String url, String method) {
 		return executeRequestJson(url, method, null, null);
 	}
 
 	protected ListenableFuture<JSONObject> executeRequestJson(String url, String method, Map<String, String> headers,
 			byte[] payload) {
+		return executeRequestJson(createRequest(url, method, headers, payload));
+	}
+
+	protected ListenableFuture<JSONObject> executeRequestJson(Request req) {
 
 		final SettableFuture<JSONObject> result = SettableFuture.create();
-		final ListenableFuture<byte[]> request = executeRequest(url, method, headers, payload);
+		final ListenableFuture<Response> request = executeRequestStream(req);
 
-		Futures.addCallback(request, new FutureCallback<byte[]>() {
+		Futures.addCallback(request, new FutureCallback<Response>() {
 			@Override
 			public void onFailure(Throwable t) {
 				result.setException(t);
 			}
 
 			@Override
-			public void onSuccess(byte[] b) {
+			public void onSuccess(Response response) {
 				String string;
 				try {
-					string = new String(b, Constants.UTF8_NAME);
+					// decodes the content while reading it, without buffering its bytes first
+					string = readString(response);
 					if (string == null || string.length() == 0) {
 						result.set(null);
 					} else {
 						JSONObject json = new JSONObject(string);
 						result.set(json);
 					}
-				} catch (UnsupportedEncodingException e) {
-					e.printStackTrace();
+				} catch (IOException e) {
+					log(e);
+					result.setException(e);
 				} catch (JSONException e) {
 					e.printStackTrace();
+					result.setException(e);
+				} finally {
+					closeQuietly(response);
 				}
 			}
 		});
 		return result;
 	}
 
-	public ListenableFuture<List<DiscoveryInformation>> getDiscoveryInfo() {
-		return getDiscoveryInfo("https://api.office.com/discovery/me/services");
-	}
+	/**
+	 * Executes a GET request returning a list of entities, read while the
+	 * response content is being received
+	 */
+	protected <E extends OfficeEntity> ListenableFuture<List<E>> executeRequestEntityList(String url,
+			Class<E> clazz) {
 
-	public ListenableFuture<List<DiscoveryInformation>> getDiscoveryInfo(String discoveryEndpoint) {
-		final SettableFuture<List<DiscoveryInformation>> result = SettableFuture.create();
-		final ListenableFuture<JSONObject> request = executeRequestJson(discoveryEndpoint, "GET");
+		final SettableFuture<List<E>> result = SettableFuture.create();
+		final List<E> list = new ArrayList<E>();
+
+		ListenableFuture<Integer> request = executeRequestEntities(url, clazz, null, new EntityCallback<E>() {
+			@Override
+			public void onEntity(E entity) {
+				list.add(entity);
+			}
+		});
+
+		Futures.addCallback(request, new FutureCallback<Integer>() {
+			@Override
+			public void onFailure(Throwable t) {
+				result.setException(t);
+			}
+
+			@Override
+			public void onSuccess(Integer count) {
+				result.set(list);
+			}
+		});
+		return result;
+	}
 
-		Futures.addCallback(request, new FutureCallback<JSONObject>() {
+	/**
+	 * Executes a GET request returning a list of entities, passing each of them
+	 * to the callback as soon as it has been read, without holding the list
+	 * 
+	 * @param fields
+	 *            the fields kept for each entity, or null to keep them all
+	 * @return the number of entities read
+	 */
+	protected <E extends OfficeEntity> ListenableFuture<Integer> executeRequestEntities(String url,
+			final Class<E> clazz, final Set<String> fields, final EntityCallback<E> callback) {
+
+		final SettableFuture<Integer> result = SettableFuture.create();
+		final ListenableFuture<Response> request = executeRequestStream(url, "GET");
+
+		Futures.addCallback(request, new FutureCallback<Response>() {
 			@Override
 			public void onFailure(Throwable t) {
 				result.setException(t);
 			}
 
 			@Override
-			public void onSuccess(JSONObject json) {
-				List<DiscoveryInformation> discoveryInfo;
+			public void onSuccess(Response response) {
 				try {
-					discoveryInfo = DiscoveryInformation.listFromJson(json, DiscoveryInformation.class);
-					result.set(discoveryInfo);
-				} catch (JSONException e) {
-					log(e.getMessage(), LogLevel.Critical);
+					Reader reader = new InputStreamReader(response.getStream(), Constants.UTF8);
+					result.set(OfficeEntity.readListFromJson(reader, clazz, fields, callback));
+				} catch (Throwable t) {
+					log(t);
+					result.setException(t);
+				} finally {
+					closeQuietly(response);
 				}
 			}
 		});
 		return result;
 	}
 
+	/**
+	 * Reads the response content as a UTF-8 string
+	 */
+	protected static String readString(Response response) throws IOException {
+		long contentLength = response.getContentLength();
+		StringBuilder sb = new StringBuilder(contentLength > 0 && contentLength < Integer.MAX_VALUE
+				? (int) contentLength : 1024);
+
+		Reader reader = new InputStreamReader(response.getStream(), Constants.UTF8);
+		char[] buffer = new char[8192];
+		int nRead;
+		while ((nRead = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, nRead);
+		}
+		return sb.toString();
+	}
+
+	public ListenableFuture<List<DiscoveryInformation>> getDiscoveryInfo() {
+		return getDiscoveryInfo("https://api.office.com/discovery/me/services");
+	}
+
+	public ListenableFuture<List<DiscoveryInformation>> getDiscoveryInfo(String discoveryEndpoint) {
+		return executeRequestEntityList(discoveryEndpoint, DiscoveryInformation.class);
+	}
+
 	protected void prepareRequest(Request request) {
 		request.addHeader("Accept", "application/json;odata=verbose");
 		request.addHeader("X-ClientService-ClientTag", "SDK-JAVA");
 		
-		int contentLength = 0;
-		if (request.getContent() != null) {
-			contentLength = request.getContent().length;
+		long contentLength = 0;
+		if (request.hasContent()) {
+			contentLength = request.getContentLength();
+		}
+
+		// content of unknown length is sent chunked
+		if (contentLength >= 0) {
+			request.addHeader("Content-Length", String.valueOf(contentLength));
 		}
-		request.addHeader("Content-Length", String.valueOf(contentLength));
 		mCredentials.prepareRequest(request);
 	}
 
@@ -5,8 +5,11 @@
  ******************************************************************************/
 package com.microsoft.office365;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -56,19 +59,146 @@ public abstract class OfficeEntity {
 		for (int i = 0; i < results.length(); i++) {
 			JSONObject result = results.getJSONObject(i);
 
-			E item = null;
-			try {
-				item = (E) clazz.newInstance();
-			} catch (Throwable e) {
+			E item = newEntity(clazz);
+			item.loadFromJson(result);
+			list.add(item);
+		}
+
+		return list;
+	}
+
+	/**
+	 * List from a json stream, read incrementally.
+	 * 
+	 * @param <E>
+	 *            the element type
+	 * @param reader
+	 *            the json reader
+	 * @param clazz
+	 *            the clazz
+	 * @param fields
+	 *            the fields kept for each entity, or null to keep them all
+	 * @return the list
+	 * @throws IOException
+	 *             the IO exception
+	 * @throws JSONException
+	 *             the JSON exception
+	 */
+	public static <E extends OfficeEntity> List<E> listFromJson(Reader reader, Class<E> clazz, Set<String> fields)
+			throws IOException, JSONException {
+		final List<E> list = new ArrayList<E>();
+
+		readListFromJson(reader, clazz, fields, new EntityCallback<E>() {
+			@Override
+			public void onEntity(E entity) {
+				list.add(entity);
 			}
+		});
+		return list;
+	}
 
-			if (item != null) {
-				item.loadFromJson(result);
-				list.add(item);
+	/**
+	 * Reads the entities of a json stream one at a time, without holding the
+	 * whole document: the entities are found in "d.results", "results" or
+	 * "value", and passed to the callback as soon as they have been read.
+	 * 
+	 * @param <E>
+	 *            the element type
+	 * @param reader
+	 *            the json reader
+	 * @param clazz
+	 *            the clazz
+	 * @param fields
+	 *            the fields kept for each entity, or null to keep them all
+	 * @param callback
+	 *            the callback
+	 * @return the number of entities read
+	 * @throws IOException
+	 *             the IO exception
+	 * @throws JSONException
+	 *             the JSON exception
+	 */
+	public static <E extends OfficeEntity> int readListFromJson(Reader reader, Class<E> clazz, Set<String> fields,
+			EntityCallback<E> callback) throws IOException, JSONException {
+		JsonStreamReader json = new JsonStreamReader(reader);
+		int count = 0;
+
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if (name.equals("d")) {
+				if (json.peek() == '[') {
+					count += readResults(json, clazz, fields, callback);
+				} else {
+					json.beginObject();
+					while (json.hasNext()) {
+						if (json.nextName().equals("results")) {
+							count += readResults(json, clazz, fields, callback);
+						} else {
+							json.skipValue();
+						}
+					}
+					json.endObject();
+				}
+			} else if (name.equals("results") || name.equals("value")) {
+				count += readResults(json, clazz, fields, callback);
+			} else {
+				json.skipValue();
 			}
 		}
+		json.endObject();
 
-		return list;
+		return count;
+	}
+
+	private static <E extends OfficeEntity> int readResults(JsonStreamReader json, Class<E> clazz,
+			Set<String> fields, EntityCallback<E> callback) throws IOException, JSONException {
+		int count = 0;
+
+		json.beginArray();
+		while (json.hasNext()) {
+			if (json.peek() != '{') {
+				json.skipValue();
+				continue;
+			}
+
+			JSONObject result = new JSONObject();
+			json.beginObject();
+			while (json.hasNext()) {
+				String name = json.nextName();
+				if (fields == null || fields.contains(name)) {
+					result.put(name, json.nextValue());
+				} else {
+					json.skipValue();
+				}
+			}
+			json.endObject();
+
+			E item = newEntity(clazz);
+			item.loadFromJson(result);
+			callback.onEntity(item);
+			count++;
+		}
+		json.endArray();
+
+		return count;
+	}
+
+	/**
+	 * Creates an entity to be loaded from json
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the class cannot be instantiated, e.g. it has no public
+	 *             constructor without arguments
+	 */
+	private static <E extends OfficeEntity> E newEntity(Class<E> clazz) {
+		try {
+			return clazz.newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException("Cannot create an instance of " + clazz.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot create an instance of " + clazz.getName(), e);
+		}
 	}
 
 	/**
@@ -9,9 +9,9 @@ import java.util.Locale;
 
 import android.os.Build;
 
+import com.microsoft.office365.http.ExecutorHttpConnection;
 import com.microsoft.office365.http.FroyoHttpConnection;
 import com.microsoft.office365.http.HttpConnection;
-import com.microsoft.office365.http.JavaHttpConnection;
 
 /**
  * Platform specific classes and operations
@@ -19,9 +19,12 @@ import com.microsoft.office365.http.JavaHttpConnection;
 public class Platform {
 	static boolean mPlatformVerified = false;
 	static boolean mIsAndroid = false;
+	static HttpConnection mHttpConnection = null;
 
 	/**
-	 * Creates an adequate HttpConnection for the current platform
+	 * Creates an adequate HttpConnection for the current platform. Unless
+	 * running on Froyo, the same executor-backed connection is shared by all
+	 * the callers
 	 * 
 	 * @param logger
 	 *            Logger to use with the connection
@@ -31,10 +34,28 @@ public class Platform {
 		if (isAndroid() && Build.VERSION.SDK_INT <= Build.VERSION_CODES.FROYO) {
 			return new FroyoHttpConnection();
 		} else {
-			return new JavaHttpConnection();
+			synchronized (Platform.class) {
+				if (mHttpConnection == null) {
+					mHttpConnection = new ExecutorHttpConnection();
+				}
+
+				return mHttpConnection;
+			}
 		}
 	}
 
+	/**
+	 * Sets the HttpConnection returned by createHttpConnection, e.g. an
+	 * ExecutorHttpConnection with custom limits or a JavaHttpConnection to go
+	 * back to one thread per request. Ignored on Froyo.
+	 * 
+	 * @param connection
+	 *            The connection to use, or null to use the default one
+	 */
+	public static synchronized void setHttpConnection(HttpConnection connection) {
+		mHttpConnection = connection;
+	}
+
 	/**
 	 * Indicates if the current platform is Android
 	 */
@@ -5,7 +5,6 @@
  ******************************************************************************/
 package com.microsoft.office365;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.json.JSONException;
@@ -18,9 +17,20 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.office365.http.*;
 
 public class SharepointClient extends OfficeClient {
+
+	/** Seconds before its expiration a cached form digest is refreshed. */
+	private static final int FORM_DIGEST_MARGIN_SECONDS = 60;
+
+	/** Error code returned with a 403 status when the form digest is invalid or expired. */
+	private static final String FORM_DIGEST_ERROR_CODE = "-2130575251";
+
 	private String mServerUrl;
 	private String mSiteRelativeUrl;
 
+	private final Object mFormDigestLock = new Object();
+	private ListenableFuture<String> mFormDigest;
+	private long mFormDigestExpiration;
+
 	protected String getSiteUrl() {
 		return mServerUrl + mSiteRelativeUrl;
 	}
@@ -67,7 +77,49 @@ public class SharepointClient extends OfficeClient {
 		}
 	}
 
+	/**
+	 * Returns the form digest for the site, cached until it expires. Callers
+	 * asking for it while it is being refreshed share the same request.
+	 */
 	protected ListenableFuture<String> getFormDigest() {
+		synchronized (mFormDigestLock) {
+			if (mFormDigest == null
+					|| (mFormDigest.isDone() && System.currentTimeMillis() >= mFormDigestExpiration)) {
+				mFormDigestExpiration = 0;
+				mFormDigest = requestFormDigest();
+			}
+
+			return mFormDigest;
+		}
+	}
+
+	/**
+	 * Discards the given form digest, if still cached, so that the next
+	 * request gets a new one
+	 */
+	protected void invalidateFormDigest(ListenableFuture<String> digest) {
+		synchronized (mFormDigestLock) {
+			if (mFormDigest == digest) {
+				mFormDigest = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given error is the server rejecting the form digest
+	 * of a request, e.g. because it expired before its timeout
+	 */
+	protected static boolean isFormDigestError(Throwable error) {
+		if (!(error instanceof InvalidHttpStatusCodeException)) {
+			return false;
+		}
+
+		InvalidHttpStatusCodeException statusError = (InvalidHttpStatusCodeException) error;
+		return statusError.getStatusCode() == 403 && statusError.getResponseContent() != null
+				&& statusError.getResponseContent().contains(FORM_DIGEST_ERROR_CODE);
+	}
+
+	private ListenableFuture<String> requestFormDigest() {
 
 		HttpConnection connection = Platform.createHttpConnection();
 		Request request = new Request("POST");
@@ -94,17 +146,24 @@ public class SharepointClient extends OfficeClient {
 						String responseContent = response.readToEnd();
 
 						JSONObject json = new JSONObject(responseContent);
+						JSONObject info = json.getJSONObject("d")
+								.getJSONObject("GetContextWebInformation");
 
-						result.set(json.getJSONObject("d")
-								.getJSONObject("GetContextWebInformation")
-								.getString("FormDigestValue"));
+						int timeout = info.optInt("FormDigestTimeoutSeconds", 0);
+						synchronized (mFormDigestLock) {
+							mFormDigestExpiration = System.currentTimeMillis()
+									+ Math.max(0, timeout - FORM_DIGEST_MARGIN_SECONDS) * 1000L;
+						}
+
+						result.set(info.getString("FormDigestValue"));
 					} else {
-						result.setException(new Exception(
-								"Invalid status code " + statusCode + ": "
-										+ response.readToEnd()));
+						result.setException(new InvalidHttpStatusCodeException(
+								statusCode, response.readToEnd(), String
+										.valueOf(response.getHeaders())));
 					}
 				} catch (Exception e) {
 					log(e);
+					result.setException(e);
 				}
 			}
 		});
@@ -128,9 +187,28 @@ public class SharepointClient extends OfficeClient {
 	protected ListenableFuture<JSONObject> executeRequestJsonWithDigest(
 			final String url, final String method,
 			final Map<String, String> headers, final byte[] payload) {
+		return executeRequestJsonWithDigest(createRequest(url, method,
+				headers, payload));
+	}
 
+	/**
+	 * Execute request json with digest.
+	 * 
+	 * @param req
+	 *            the request, as returned by createRequest()
+	 * @return OfficeFuture<JSONObject>
+	 */
+	protected ListenableFuture<JSONObject> executeRequestJsonWithDigest(
+			final Request req) {
 		final SettableFuture<JSONObject> result = SettableFuture.create();
-		ListenableFuture<String> digestFuture = getFormDigest();
+		executeRequestJsonWithDigest(req, result, true);
+		return result;
+	}
+
+	private void executeRequestJsonWithDigest(final Request req,
+			final SettableFuture<JSONObject> result, final boolean retry) {
+
+		final ListenableFuture<String> digestFuture = getFormDigest();
 
 		Futures.addCallback(digestFuture, new FutureCallback<String>() {
 			@Override
@@ -140,25 +218,26 @@ public class SharepointClient extends OfficeClient {
 
 			@Override
 			public void onSuccess(String digest) {
-				Map<String, String> finalHeaders = new HashMap<String, String>();
-
-				if (headers != null) {
-					for (String key : headers.keySet()) {
-						finalHeaders.put(key, headers.get(key));
-					}
-				}
-
-				finalHeaders.put("Content-Type",
+				req.addHeader("Content-Type",
 						"application/json;odata=verbose");
-				finalHeaders.put("X-RequestDigest", digest);
+				req.addHeader("X-RequestDigest", digest);
 
-				ListenableFuture<JSONObject> request = executeRequestJson(url,
-						method, finalHeaders, payload);
+				ListenableFuture<JSONObject> request = executeRequestJson(req);
 
 				Futures.addCallback(request, new FutureCallback<JSONObject>() {
 					@Override
 					public void onFailure(Throwable t) {
-						result.setException(t);
+						// the digest may have expired before its timeout, e.g.
+						// on server side changes: retries once with a new one,
+						// unless the request content cannot be sent again
+						boolean repeatable = !req.hasContent()
+								|| req.isContentRepeatable();
+						if (retry && repeatable && isFormDigestError(t)) {
+							invalidateFormDigest(digestFuture);
+							executeRequestJsonWithDigest(req, result, false);
+						} else {
+							result.setException(t);
+						}
 					}
 
 					@Override
@@ -168,7 +247,6 @@ public class SharepointClient extends OfficeClient {
 				});
 			}
 		});
-		return result;
 	}
 
 	public ListenableFuture<String> getWebTitle() {
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+package com.microsoft.office365.http;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.office365.Platform;
+
+/**
+ * HttpConnection implementation running requests on a shared, bounded executor
+ * instead of a new thread per request. The number of requests running at the
+ * same time against a single host is capped; requests exceeding the cap wait
+ * in a per-host queue.
+ */
+public class ExecutorHttpConnection implements HttpConnection {
+
+	/**
+	 * Default number of worker threads
+	 */
+	public static final int DEFAULT_MAX_THREADS = 8;
+
+	/**
+	 * Default number of requests allowed to wait for a worker thread
+	 */
+	public static final int DEFAULT_MAX_QUEUED = 256;
+
+	/**
+	 * Default number of concurrent requests per host
+	 */
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+
+	/**
+	 * User agent header name
+	 */
+	private static final String USER_AGENT_HEADER = "User-Agent";
+
+	/**
+	 * Idle worker threads are released after this number of seconds
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final ExecutorService mExecutor;
+	private final int mMaxPerHost;
+	private final int mMaxQueued;
+	private final Map<String, HostQueue> mHosts = new HashMap<String, HostQueue>();
+
+	/**
+	 * Initializes the connection with the default limits
+	 */
+	public ExecutorHttpConnection() {
+		this(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED, DEFAULT_MAX_PER_HOST);
+	}
+
+	/**
+	 * Initializes the connection with a bounded thread pool
+	 *
+	 * @param maxThreads
+	 *            maximum number of worker threads
+	 * @param maxQueued
+	 *            maximum number of requests waiting for a worker thread (or
+	 *            for a free slot of their host)
+	 * @param maxPerHost
+	 *            maximum number of concurrent requests per host
+	 */
+	public ExecutorHttpConnection(int maxThreads, int maxQueued, int maxPerHost) {
+		this(createBoundedExecutor(maxThreads, maxQueued), maxQueued, maxPerHost);
+	}
+
+	/**
+	 * Initializes the connection with the given executor
+	 *
+	 * @param executor
+	 *            executor running the requests
+	 * @param maxQueued
+	 *            maximum number of requests waiting for a free slot of their
+	 *            host
+	 * @param maxPerHost
+	 *            maximum number of concurrent requests per host
+	 */
+	public ExecutorHttpConnection(ExecutorService executor, int maxQueued, int maxPerHost) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+
+		if (maxQueued < 0 || maxPerHost <= 0) {
+			throw new IllegalArgumentException("invalid queue or host limits");
+		}
+
+		mExecutor = executor;
+		mMaxQueued = maxQueued;
+		mMaxPerHost = maxPerHost;
+	}
+
+	/**
+	 * Creates a connection running each request on a virtual thread, if the
+	 * current runtime supports them; falls back to the default bounded thread
+	 * pool otherwise
+	 *
+	 * @param maxPerHost
+	 *            maximum number of concurrent requests per host
+	 * @return An ExecutorHttpConnection
+	 */
+	public static ExecutorHttpConnection withVirtualThreads(int maxPerHost) {
+		ExecutorService executor = null;
+		try {
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Throwable e) {
+			// virtual threads are not available
+		}
+
+		if (executor == null) {
+			return new ExecutorHttpConnection(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED, maxPerHost);
+		} else {
+			return new ExecutorHttpConnection(executor, DEFAULT_MAX_QUEUED, maxPerHost);
+		}
+	}
+
+	@Override
+	public ListenableFuture<Response> execute(final Request request) {
+
+		request.addHeader(USER_AGENT_HEADER, Platform.getUserAgent());
+
+		final SettableFuture<Response> future = SettableFuture.create();
+		final NetworkRunnable target = new NetworkRunnable(request, future);
+		final Task task = new Task(getHost(request), target, future);
+
+		Futures.addCallback(future, new FutureCallback<Response>() {
+			@Override
+			public void onFailure(Throwable arg0) {
+				if (future.isCancelled()) {
+					dequeue(task);
+				}
+
+				try {
+					target.closeStreamAndConnection();
+				} catch (Throwable error) {
+				}
+			}
+
+			@Override
+			public void onSuccess(Response response) {
+			}
+		});
+
+		schedule(task);
+		return future;
+	}
+
+	/**
+	 * Stops accepting new requests. Running requests are completed.
+	 */
+	public void shutdown() {
+		mExecutor.shutdown();
+	}
+
+	/**
+	 * Runs the task now, or queues it if its host is at capacity
+	 */
+	private void schedule(Task task) {
+		synchronized (mHosts) {
+			HostQueue queue = mHosts.get(task.mHost);
+			if (queue == null) {
+				queue = new HostQueue();
+				mHosts.put(task.mHost, queue);
+			}
+
+			if (queue.mActive >= mMaxPerHost) {
+				if (queue.mPending.size() >= mMaxQueued) {
+					task.mFuture.setException(new RejectedExecutionException("Too many pending requests for "
+							+ task.mHost));
+				} else {
+					queue.mPending.add(task);
+				}
+				return;
+			}
+
+			queue.mActive++;
+		}
+
+		submit(task);
+	}
+
+	/**
+	 * Hands the task over to the executor
+	 */
+	private void submit(Task task) {
+		try {
+			mExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			release(task.mHost);
+			task.mFuture.setException(e);
+		}
+	}
+
+	/**
+	 * Frees a slot of the given host, starting its next pending task if any
+	 */
+	private void release(String host) {
+		Task next = null;
+
+		synchronized (mHosts) {
+			HostQueue queue = mHosts.get(host);
+			if (queue == null) {
+				return;
+			}
+
+			next = queue.mPending.poll();
+			if (next == null) {
+				queue.mActive--;
+				if (queue.mActive == 0) {
+					mHosts.remove(host);
+				}
+			}
+		}
+
+		if (next != null) {
+			submit(next);
+		}
+	}
+
+	/**
+	 * Removes a cancelled task which has not started yet
+	 */
+	private void dequeue(Task task) {
+		boolean removed = false;
+		synchronized (mHosts) {
+			HostQueue queue = mHosts.get(task.mHost);
+			if (queue != null) {
+				removed = queue.mPending.remove(task);
+			}
+		}
+
+		if (!removed && mExecutor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) mExecutor).remove(task)) {
+			release(task.mHost);
+		}
+	}
+
+	private static String getHost(Request request) {
+		try {
+			URL url = new URL(request.getUrl());
+			return url.getHost().toLowerCase(Locale.US) + ":" + url.getPort();
+		} catch (Exception e) {
+			return "";
+		}
+	}
+
+	private static ExecutorService createBoundedExecutor(int maxThreads, int maxQueued) {
+		if (maxThreads <= 0 || maxQueued < 0) {
+			throw new IllegalArgumentException("invalid thread or queue limits");
+		}
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(Math.max(1, maxQueued)), new ThreadFactory() {
+					private final AtomicInteger mCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Office365-Http-" + mCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * Requests running or waiting for a single host
+	 */
+	private static class HostQueue {
+		int mActive = 0;
+		LinkedList<Task> mPending = new LinkedList<Task>();
+	}
+
+	/**
+	 * A request scheduled for execution. Its host slot is freed once the
+	 * request completes or, for streaming responses, once the caller closes
+	 * the response
+	 */
+	private class Task implements Runnable {
+		final String mHost;
+		final NetworkRunnable mTarget;
+		final SettableFuture<Response> mFuture;
+
+		Task(String host, NetworkRunnable target, SettableFuture<Response> future) {
+			mHost = host;
+			mTarget = target;
+			mFuture = future;
+
+			mTarget.setOnRelease(new Runnable() {
+				@Override
+				public void run() {
+					release(mHost);
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			mTarget.run();
+		}
+	}
+}
@@ -5,8 +5,10 @@
  ******************************************************************************/
 package com.microsoft.office365.http;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
@@ -19,7 +21,7 @@ import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 
 import com.google.common.util.concurrent.FutureCallback;
@@ -89,8 +91,20 @@ public class FroyoHttpConnection implements HttpConnection {
 						}
 					}
 
-					future.set(new StreamResponse(mResponseStream, response.getStatusLine().getStatusCode(), headersMap));
-					closeStreamAndClient();
+					if (request.isStreamingResponse()) {
+						// the caller closes the stream and client via the response
+						future.set(new StreamResponse(mResponseStream, response.getStatusLine().getStatusCode(),
+								headersMap, new Closeable() {
+									@Override
+									public void close() {
+										closeStreamAndClient();
+									}
+								}));
+					} else {
+						future.set(new StreamResponse(mResponseStream, response.getStatusLine().getStatusCode(),
+								headersMap));
+						closeStreamAndClient();
+					}
 				} catch (Exception e) {
 					closeStreamAndClient();
 
@@ -165,8 +179,8 @@ public class FroyoHttpConnection implements HttpConnection {
 		BasicHttpEntityEnclosingRequest realRequest = new BasicHttpEntityEnclosingRequest(request.getVerb(),
 				request.getUrl());
 
-		if (request.getContent() != null) {
-			realRequest.setEntity(new ByteArrayEntity(request.getContent()));
+		if (request.hasContent()) {
+			realRequest.setEntity(new RequestEntity(request));
 		}
 
 		Map<String, String> headers = request.getHeaders();
@@ -177,4 +191,46 @@ public class FroyoHttpConnection implements HttpConnection {
 
 		return realRequest;
 	}
+
+	/**
+	 * Entity writing the request content while it is being sent
+	 */
+	private static class RequestEntity extends AbstractHttpEntity {
+
+		private Request mRequest;
+
+		public RequestEntity(Request request) {
+			mRequest = request;
+			setChunked(request.getContentLength() < 0);
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return mRequest.isContentRepeatable();
+		}
+
+		@Override
+		public long getContentLength() {
+			return mRequest.getContentLength();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if (!isRepeatable()) {
+				throw new UnsupportedOperationException("Request content set as a stream can only be written");
+			}
+
+			return mRequest.openContent();
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			mRequest.writeContent(out);
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return !isRepeatable();
+		}
+	}
 }
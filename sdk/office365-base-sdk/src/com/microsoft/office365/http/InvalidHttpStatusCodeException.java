@@ -12,7 +12,27 @@ public class InvalidHttpStatusCodeException extends Exception {
 
 	private static final long serialVersionUID = 7073157073424850921L;
 
+	private int mStatusCode;
+
+	private String mResponseContent;
+
 	public InvalidHttpStatusCodeException(int statusCode, String responseContent, String responseHeaders) {
 		super("Invalid status code: " + statusCode + "\nResponse: " + responseContent + "\nHeaders: " + responseHeaders);
+		mStatusCode = statusCode;
+		mResponseContent = responseContent;
+	}
+
+	/**
+	 * Returns the received HTTP status code
+	 */
+	public int getStatusCode() {
+		return mStatusCode;
+	}
+
+	/**
+	 * Returns the received response content
+	 */
+	public String getResponseContent() {
+		return mResponseContent;
 	}
 }
@@ -5,12 +5,14 @@
  ******************************************************************************/
 package com.microsoft.office365.http;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.util.concurrent.SettableFuture;
 
@@ -26,6 +28,9 @@ class NetworkRunnable implements Runnable {
 
 	Object mCloseLock = new Object();
 
+	Runnable mOnRelease = null;
+	AtomicBoolean mReleased = new AtomicBoolean(false);
+
 	/**
 	 * Initializes the network runnable
 	 * 
@@ -43,8 +48,22 @@ class NetworkRunnable implements Runnable {
 		mFuture = future;
 	}
 
+	/**
+	 * Sets the callback invoked once the connection is no longer used: when
+	 * the request completes or, for streaming responses, when the caller
+	 * closes the response
+	 * 
+	 * @param onRelease
+	 *            callback to invoke
+	 */
+	void setOnRelease(Runnable onRelease) {
+		mOnRelease = onRelease;
+	}
+
 	@Override
 	public void run() {
+		// set once the stream is handed over to the caller, who closes it
+		boolean handedOver = false;
 		try {
 			int responseCode = -1;
 			synchronized (mCloseLock) {
@@ -68,10 +87,26 @@ class NetworkRunnable implements Runnable {
 			}
 
 			if (mResponseStream != null && !mFuture.isCancelled()) {
-				mFuture.set(new StreamResponse(mResponseStream, responseCode,
-						mConnection.getHeaderFields()));
+				Closeable resource = null;
+				if (mRequest.isStreamingResponse()) {
+					resource = new Closeable() {
+						@Override
+						public void close() {
+							try {
+								closeStreamAndConnection();
+							} finally {
+								release();
+							}
+						}
+					};
+				}
+
+				// not handed over if the caller cancelled in the meantime
+				handedOver = mFuture.set(new StreamResponse(mResponseStream, responseCode,
+						mConnection.getHeaderFields(), resource)) && resource != null;
 			}
 		} catch (Throwable e) {
+			handedOver = false;
 			if (!mFuture.isCancelled()) {
 				if (mConnection != null) {
 					mConnection.disconnect();
@@ -80,11 +115,26 @@ class NetworkRunnable implements Runnable {
 				mFuture.setException(e);
 			}
 		} finally {
-			closeStreamAndConnection();
+			if (!handedOver) {
+				try {
+					closeStreamAndConnection();
+				} finally {
+					release();
+				}
+			}
 		}
 
 	}
 
+	/**
+	 * Invokes the release callback, once
+	 */
+	private void release() {
+		if (mOnRelease != null && mReleased.compareAndSet(false, true)) {
+			mOnRelease.run();
+		}
+	}
+
 	/**
 	 * Closes the stream and connection, if possible
 	 */
@@ -125,17 +175,23 @@ class NetworkRunnable implements Runnable {
 			connection.setRequestProperty(key, headers.get(key));
 		}
 
-		if (request.getContent() != null) {
+		if (request.hasContent()) {
 			connection.setDoOutput(true);
-			// OutputStreamWriter out = new
-			// OutputStreamWriter(connection.getOutputStream());
-			byte[] requestContent = request.getContent();
-			OutputStream stream = connection.getOutputStream();
-			stream.write(requestContent, 0, requestContent.length);
-			stream.close();
-			// out.write(requestContent);
-			// out.close();
 
+			// streams the content instead of having the connection buffer it
+			long contentLength = request.getContentLength();
+			if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+				connection.setFixedLengthStreamingMode((int) contentLength);
+			} else {
+				connection.setChunkedStreamingMode(0);
+			}
+
+			OutputStream stream = connection.getOutputStream();
+			try {
+				request.writeContent(stream);
+			} finally {
+				stream.close();
+			}
 		}
 
 		return connection;
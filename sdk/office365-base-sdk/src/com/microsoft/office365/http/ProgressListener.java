@@ -0,0 +1,15 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+package com.microsoft.office365.http;
+
+public interface ProgressListener {
+	/**
+	 * Callback invoked as content is being uploaded or downloaded
+	 * @param transferred The number of bytes transferred so far
+	 * @param total The total number of bytes to transfer, or -1 if unknown
+	 */
+	public void onProgress(long transferred, long total);
+}
@@ -5,6 +5,12 @@
  ******************************************************************************/
 package com.microsoft.office365.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
@@ -24,14 +30,26 @@ import com.microsoft.office365.SimpleEntry;
  */
 public class Request {
 
+	private static final int BUFFER_SIZE = 8192;
+
 	private String mVerb;
 
 	private byte[] mContent;
 
+	private InputStream mContentStream;
+
+	private File mContentFile;
+
+	private long mContentLength = -1;
+
+	private ProgressListener mProgressListener;
+
 	private HashMap<String, String> mHeaders = new HashMap<String, String>();
 
 	private String mUrl;
 
+	private boolean mStreamingResponse = false;
+
 	/**
 	 * Initializes a request with an HTTP verb
 	 * @param httpVerb the HTTP verb
@@ -44,7 +62,7 @@ public class Request {
 	 * Sets the request content
 	 */
 	public void setContent(String content) {
-		mContent = content.getBytes();
+		setContent(content.getBytes());
 	}
 	
 	/**
@@ -52,6 +70,127 @@ public class Request {
 	 */
 	public void setContent(byte[] content) {
 		mContent = content;
+		mContentStream = null;
+		mContentFile = null;
+		mContentLength = content != null ? content.length : -1;
+	}
+
+	/**
+	 * Sets the request content as a file, read while sending the request
+	 * @param content The content file
+	 */
+	public void setContent(File content) {
+		mContent = null;
+		mContentStream = null;
+		mContentFile = content;
+		mContentLength = content != null ? content.length() : -1;
+	}
+
+	/**
+	 * Sets the request content as a stream, read while sending the request
+	 * @param content The content stream, closed once sent
+	 * @param length The content length, or -1 if unknown
+	 */
+	public void setContent(InputStream content, long length) {
+		mContent = null;
+		mContentStream = content;
+		mContentFile = null;
+		mContentLength = length;
+	}
+
+	/**
+	 * Returns whether the request has any content
+	 */
+	public boolean hasContent() {
+		return mContent != null || mContentStream != null || mContentFile != null;
+	}
+
+	/**
+	 * Returns whether the request content can be sent more than once, i.e.
+	 * it is not set as a stream
+	 */
+	public boolean isContentRepeatable() {
+		return mContentStream == null;
+	}
+
+	/**
+	 * Opens a new stream on the request content, if repeatable
+	 * @return A stream reading the content, or null if there is no content
+	 * @throws IOException
+	 */
+	public InputStream openContent() throws IOException {
+		if (mContent != null) {
+			return new ByteArrayInputStream(mContent);
+		} else if (mContentFile != null) {
+			return new FileInputStream(mContentFile);
+		} else if (mContentStream != null) {
+			throw new IllegalStateException("Request content set as a stream can only be written once");
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the request content length, or -1 if unknown
+	 */
+	public long getContentLength() {
+		return mContentLength;
+	}
+
+	/**
+	 * Sets the listener notified as the request content is being sent
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		mProgressListener = listener;
+	}
+
+	/**
+	 * Returns the listener notified as the request content is being sent
+	 */
+	public ProgressListener getProgressListener() {
+		return mProgressListener;
+	}
+
+	/**
+	 * Writes the request content, a buffer at a time
+	 * @param out The stream to write the content to
+	 * @throws IOException
+	 */
+	public void writeContent(OutputStream out) throws IOException {
+		if (mContent != null) {
+			int offset = 0;
+			do {
+				int count = Math.min(BUFFER_SIZE, mContent.length - offset);
+				out.write(mContent, offset, count);
+				offset += count;
+				notifyProgress(offset);
+			} while (offset < mContent.length);
+		} else if (mContentStream != null) {
+			writeStream(mContentStream, out);
+		} else if (mContentFile != null) {
+			writeStream(new FileInputStream(mContentFile), out);
+		}
+	}
+
+	private void writeStream(InputStream in, OutputStream out) throws IOException {
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long transferred = 0;
+			int nRead;
+			while ((nRead = in.read(buffer)) != -1) {
+				out.write(buffer, 0, nRead);
+				transferred += nRead;
+				notifyProgress(transferred);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void notifyProgress(long transferred) {
+		if (mProgressListener != null) {
+			mProgressListener.onProgress(transferred, mContentLength);
+		}
 	}
 
 	/**
@@ -99,7 +238,7 @@ public class Request {
 			}
 		}
 
-		mContent = sb.toString().getBytes();
+		setContent(sb.toString().getBytes());
 	}
 
 	/**
@@ -168,6 +307,21 @@ public class Request {
 		return mUrl;
 	}
 	
+	/**
+	 * Sets whether the response stream is handed over to the caller, who must close the response
+	 * once done, instead of being closed as soon as the response has been handled
+	 */
+	public void setStreamingResponse(boolean streamingResponse) {
+		mStreamingResponse = streamingResponse;
+	}
+
+	/**
+	 * Returns whether the response stream is handed over to the caller
+	 */
+	public boolean isStreamingResponse() {
+		return mStreamingResponse;
+	}
+
 	/**
 	 * Logs the request data
 	 * @param logger the provided logger
@@ -5,14 +5,16 @@
  ******************************************************************************/
 package com.microsoft.office365.http;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Represents an HTTP Response
  */
-public interface Response {
+public interface Response extends Closeable {
 
 	/**
 	 * Returns the response headers
@@ -47,6 +49,25 @@ public interface Response {
 	 */
 	public byte[] readAllBytes() throws IOException;
 
+	/**
+	 * Returns the response stream. Unless the request was executed with a streaming response,
+	 * the stream is closed as soon as the response has been handled
+	 * @return The response content as a stream
+	 */
+	public InputStream getStream();
+
+	/**
+	 * Returns the response content length
+	 * @return The Content-Length header value, or -1 if unknown
+	 */
+	public long getContentLength();
+
+	/**
+	 * Closes the response stream and releases the underlying connection
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+
 	/**
 	 * Returns the response HTTP Status code
 	 */
@@ -7,6 +7,7 @@ package com.microsoft.office365.http;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -21,9 +22,19 @@ import com.microsoft.office365.Constants;
  * Response implementation based on an InputStream
  */
 public class StreamResponse implements Response {
+	private static final String CONTENT_LENGTH = "Content-Length";
+
+	/**
+	 * Largest buffer allocated upfront from the Content-Length header; bigger
+	 * contents are read into a growing buffer, so that a wrong or hostile
+	 * header cannot trigger a huge allocation
+	 */
+	private static final int MAX_PREALLOCATED = 1024 * 1024;
+
 	private BufferedReader mReader;
 	private InputStream mStream;
 	private int mStatus;
+	private Closeable mResource;
 	Map<String, List<String>> mHeaders;
 
 	/**
@@ -32,10 +43,21 @@ public class StreamResponse implements Response {
 	 * @param status HTTP status code
 	 */
 	public StreamResponse(InputStream stream, int status, Map<String, List<String>> headers) {
+		this(stream, status, headers, null);
+	}
+
+	/**
+	 * Initializes the StreamResponse
+	 * @param stream stream to read
+	 * @param status HTTP status code
+	 * @param resource resource to be released when the response is closed, typically the connection
+	 */
+	public StreamResponse(InputStream stream, int status, Map<String, List<String>> headers, Closeable resource) {
 		mHeaders = new HashMap<String, List<String>>(headers);
 		mReader = new BufferedReader(new InputStreamReader(stream, Constants.UTF8));
 		mStream = stream;
 		mStatus = status;
+		mResource = resource;
 	}
 
 	@Override
@@ -72,13 +94,76 @@ public class StreamResponse implements Response {
 
 	@Override
 	public byte[] readAllBytes() throws IOException {
-		 ByteArrayOutputStream os = new ByteArrayOutputStream();
-		 int nRead;
-		 byte[] data = new byte[1024];
-
-		 while ((nRead = mStream.read(data, 0, data.length)) != -1) {
-		   os.write(data, 0, nRead);
-		 }
-		 return os.toByteArray();
+		ByteArrayOutputStream os = null;
+
+		long contentLength = getContentLength();
+		if (contentLength >= 0 && contentLength <= MAX_PREALLOCATED) {
+			// read straight into the final array
+			byte[] data = new byte[(int) contentLength];
+			int offset = 0;
+			int nRead;
+			while (offset < data.length && (nRead = mStream.read(data, offset, data.length - offset)) != -1) {
+				offset += nRead;
+			}
+
+			if (offset < data.length) {
+				byte[] truncated = new byte[offset];
+				System.arraycopy(data, 0, truncated, 0, offset);
+				return truncated;
+			}
+
+			int next = mStream.read();
+			if (next == -1) {
+				return data;
+			}
+
+			// content length does not match the decoded content, e.g. when compressed
+			os = new ByteArrayOutputStream();
+			os.write(data, 0, data.length);
+			os.write(next);
+		} else if (contentLength > MAX_PREALLOCATED) {
+			os = new ByteArrayOutputStream(MAX_PREALLOCATED);
+		} else {
+			os = new ByteArrayOutputStream();
+		}
+
+		int nRead;
+		byte[] data = new byte[8192];
+
+		while ((nRead = mStream.read(data, 0, data.length)) != -1) {
+			os.write(data, 0, nRead);
+		}
+		return os.toByteArray();
+	}
+
+	@Override
+	public InputStream getStream() {
+		return mStream;
+	}
+
+	@Override
+	public long getContentLength() {
+		for (Map.Entry<String, List<String>> header : mHeaders.entrySet()) {
+			if (CONTENT_LENGTH.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+					&& !header.getValue().isEmpty()) {
+				try {
+					return Long.parseLong(header.getValue().get(0).trim());
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			mStream.close();
+		} finally {
+			if (mResource != null) {
+				mResource.close();
+			}
+		}
 	}
 }
@@ -5,10 +5,19 @@
  ******************************************************************************/
 package com.microsoft.office365.files;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -21,12 +30,18 @@ import com.microsoft.office365.Constants;
 import com.microsoft.office365.Credentials;
 import com.microsoft.office365.Logger;
 import com.microsoft.office365.SharepointClient;
+import com.microsoft.office365.http.ProgressListener;
+import com.microsoft.office365.http.Request;
+import com.microsoft.office365.http.Response;
 
 /**
  * The Class FileClient.
  */
 public class FileClient extends SharepointClient {
 
+	/** Size of the chunks larger files are uploaded in. */
+	private static final int UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+
 	/**
 	 * Instantiates a new file API client.
 	 * 
@@ -68,8 +83,6 @@ public class FileClient extends SharepointClient {
 	 */
 	public ListenableFuture<List<FileSystemItem>> getFileSystemItems(String path, String library) {
 
-		final SettableFuture<List<FileSystemItem>> result = SettableFuture.create();
-
 		String getPath;
 
 		if (library == null) {
@@ -88,26 +101,7 @@ public class FileClient extends SharepointClient {
 			}
 		}
 
-		ListenableFuture<JSONObject> request = executeRequestJson(getPath, "GET");
-
-		Futures.addCallback(request, new FutureCallback<JSONObject>() {
-			@Override
-			public void onFailure(Throwable t) {
-				result.setException(t);
-			}
-
-			@Override
-			public void onSuccess(JSONObject json) {
-				List<FileSystemItem> item;
-				try {
-					item = FileSystemItem.listFrom(json);
-					result.set(item);
-				} catch (Throwable e) {
-					result.setException(e);
-				}
-			}
-		});
-		return result;
+		return executeRequestEntityList(getPath, FileSystemItem.class);
 	}
 
 	public ListenableFuture<FileSystemItem> getFileSystemItem(String path) {
@@ -238,19 +232,139 @@ public class FileClient extends SharepointClient {
 	 * @return OfficeFuture<byte[]>
 	 */
 	public ListenableFuture<byte[]> getFile(String path, String library) {
+		return executeRequest(getFileUrl(path, library), "GET");
+	}
+
+	/**
+	 * Gets the file content as a stream, without buffering it in memory. The
+	 * returned response must be closed once its stream has been read.
+	 * 
+	 * @param path
+	 * @return OfficeFuture<Response>
+	 */
+	public ListenableFuture<Response> getFileStream(String path) {
+		return getFileStream(path, null);
+	}
+
+	/**
+	 * Gets the file content as a stream, without buffering it in memory. The
+	 * returned response must be closed once its stream has been read.
+	 * 
+	 * @param path
+	 * @param library
+	 * @return OfficeFuture<Response>
+	 */
+	public ListenableFuture<Response> getFileStream(String path, String library) {
+		return executeRequestStream(getFileUrl(path, library), "GET");
+	}
+
+	/**
+	 * Downloads a file to disk, streaming its content. An interrupted download
+	 * is resumed when invoked again with the same target, as long as the file
+	 * has not changed in between.
+	 * 
+	 * @param path
+	 * @param target
+	 * @param listener
+	 *            the listener notified of the download progress, or null
+	 * @return OfficeFuture<File>
+	 */
+	public ListenableFuture<File> downloadFile(String path, File target, ProgressListener listener) {
+		return downloadFile(path, null, target, 1, listener);
+	}
+
+	/**
+	 * Downloads a file to disk, streaming its content via ranged requests. An
+	 * interrupted download is resumed when invoked again with the same target,
+	 * as long as the file has not changed in between.
+	 * 
+	 * @param path
+	 * @param library
+	 * @param target
+	 * @param segments
+	 *            the maximum number of segments of a large file downloaded in
+	 *            parallel
+	 * @param listener
+	 *            the listener notified of the download progress, or null
+	 * @return OfficeFuture<File>
+	 */
+	public ListenableFuture<File> downloadFile(String path, String library, final File target, final int segments,
+			final ProgressListener listener) {
+
+		if (target == null) {
+			throw new IllegalArgumentException("target cannot be null");
+		}
+
+		final String url = getFileUrl(path, library);
+		final SettableFuture<File> result = SettableFuture.create();
+
+		Futures.addCallback(getFileSystemItem(path, library), new FutureCallback<FileSystemItem>() {
+			@Override
+			public void onFailure(Throwable t) {
+				result.setException(t);
+			}
+
+			@Override
+			public void onSuccess(FileSystemItem item) {
+				try {
+					Object etag = item.getData("ETag");
+					long size = Long.parseLong(String.valueOf(item.getData("Size")));
+
+					FileDownload download = new FileDownload(FileClient.this, url, target, listener);
+					Futures.addCallback(download.start(etag != null ? etag.toString() : null, size, segments),
+							new FutureCallback<File>() {
+								@Override
+								public void onFailure(Throwable t) {
+									result.setException(t);
+								}
+
+								@Override
+								public void onSuccess(File file) {
+									result.set(file);
+								}
+							});
+				} catch (Throwable t) {
+					result.setException(t);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Requests a range of the file content at the given URL
+	 * 
+	 * @param url
+	 * @param start
+	 *            the first byte to return
+	 * @param end
+	 *            the last byte to return
+	 * @param etag
+	 *            the expected file ETag: the whole content is returned if
+	 *            the file does not match it
+	 * @return OfficeFuture<Response>
+	 */
+	ListenableFuture<Response> getFileRange(String url, long start, long end, String etag) {
+		Request request = createRequest(url, "GET", null, null);
+		request.addHeader("Range", "bytes=" + start + "-" + end);
+		if (etag != null) {
+			request.addHeader("If-Range", etag);
+		}
+		return executeRequestStream(request);
+	}
+
+	private String getFileUrl(String path, String library) {
 		if (path == null || path.length() == 0) {
 			throw new IllegalArgumentException("Path cannot be null or empty");
 		}
 
-		String getFileUrl;
 		if (library == null) {
-			getFileUrl = getSiteUrl() + String.format("_api/files('%s')/$value", urlEncode(path));
+			return getSiteUrl() + String.format("_api/files('%s')/$value", urlEncode(path));
 		} else {
-			getFileUrl = getSiteUrl()
+			return getSiteUrl()
 					+ String.format("_api/web/Lists/GetByTitle('%s')/files('%s')/$value", urlEncode(library),
 							urlEncode(path));
 		}
-		return executeRequest(getFileUrl, "GET");
 	}
 
 	/**
@@ -335,6 +449,109 @@ public class FileClient extends SharepointClient {
 	 */
 	public ListenableFuture<FileSystemItem> createFile(String fileName, String library, boolean overwrite,
 			byte[] content) {
+		return addFile(createAddFileRequest(fileName, library, overwrite, content));
+	}
+
+	/**
+	 * Creates a file with a given path inside a given library, reading its
+	 * content from a stream while uploading it. Files larger than the upload
+	 * chunk size are uploaded a chunk at a time.
+	 * 
+	 * @param fileName
+	 * @param library
+	 * @param overwrite
+	 * @param content
+	 *            the content stream, closed once uploaded
+	 * @param length
+	 *            the content length, or -1 if unknown: the content is then
+	 *            sent with a single chunked-encoded request
+	 * @param listener
+	 *            the listener notified of the upload progress, or null
+	 * @return OfficeFuture<FileSystemItem>
+	 */
+	public ListenableFuture<FileSystemItem> createFile(String fileName, String library, boolean overwrite,
+			InputStream content, long length, ProgressListener listener) {
+
+		if (content == null) {
+			throw new IllegalArgumentException("content cannot be null");
+		}
+
+		if (length > UPLOAD_CHUNK_SIZE) {
+			return uploadChunked(fileName, library, overwrite, content, length, listener);
+		}
+
+		Request request = createAddFileRequest(fileName, library, overwrite, null);
+		request.setContent(content, length);
+		request.setProgressListener(listener);
+		return addFile(request);
+	}
+
+	/**
+	 * Creates a file with a given path inside a given library, uploading the
+	 * content of a local file
+	 * 
+	 * @param fileName
+	 * @param library
+	 * @param overwrite
+	 * @param file
+	 * @param listener
+	 *            the listener notified of the upload progress, or null
+	 * @return OfficeFuture<FileSystemItem>
+	 */
+	public ListenableFuture<FileSystemItem> createFile(String fileName, String library, boolean overwrite, File file,
+			ProgressListener listener) {
+
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+
+		if (file.isFile() && file.length() <= UPLOAD_CHUNK_SIZE) {
+			// sent from the file itself, so that the request can be repeated
+			Request request = createAddFileRequest(fileName, library, overwrite, null);
+			request.setContent(file);
+			request.setProgressListener(listener);
+			return addFile(request);
+		}
+
+		InputStream content;
+		try {
+			content = new FileInputStream(file);
+		} catch (IOException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		return createFile(fileName, library, overwrite, content, file.length(), listener);
+	}
+
+	/**
+	 * Creates a file with a given path inside a given library, uploading the
+	 * content of a channel from its current position
+	 * 
+	 * @param fileName
+	 * @param library
+	 * @param overwrite
+	 * @param channel
+	 *            the channel, closed once uploaded
+	 * @param listener
+	 *            the listener notified of the upload progress, or null
+	 * @return OfficeFuture<FileSystemItem>
+	 */
+	public ListenableFuture<FileSystemItem> createFile(String fileName, String library, boolean overwrite,
+			FileChannel channel, ProgressListener listener) {
+
+		if (channel == null) {
+			throw new IllegalArgumentException("channel cannot be null");
+		}
+
+		long length;
+		try {
+			length = channel.size() - channel.position();
+		} catch (IOException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		return createFile(fileName, library, overwrite, Channels.newInputStream(channel), length, listener);
+	}
+
+	private Request createAddFileRequest(String fileName, String library, boolean overwrite, byte[] content) {
 
 		if (fileName == null || fileName.length() == 0) {
 			throw new IllegalArgumentException("fileName cannot be null or empty");
@@ -349,11 +566,16 @@ public class FileClient extends SharepointClient {
 		} else {
 			url = getSiteUrl() + String.format("_api/web/lists/getbytitle('%s')/files/", urlEncode(library)) + urlPart;
 		}
-		final SettableFuture<FileSystemItem> result = SettableFuture.create();
 		Map<String, String> headers = new HashMap<String, String>();
 		headers.put("Content-Type", "application/octet-stream");
 
-		ListenableFuture<JSONObject> request = executeRequestJsonWithDigest(url, "POST", headers, content);
+		return createRequest(url, "POST", headers, content);
+	}
+
+	private ListenableFuture<FileSystemItem> addFile(Request addFileRequest) {
+		final SettableFuture<FileSystemItem> result = SettableFuture.create();
+
+		ListenableFuture<JSONObject> request = executeRequestJsonWithDigest(addFileRequest);
 
 		Futures.addCallback(request, new FutureCallback<JSONObject>() {
 			@Override
@@ -388,6 +610,278 @@ public class FileClient extends SharepointClient {
 		return createFile(fileName, null, overwrite, content);
 	}
 
+	/**
+	 * Uploads a file a chunk at a time: an empty file is created, then its
+	 * content is sent via StartUpload, ContinueUpload and FinishUpload. When
+	 * overwriting, the content is uploaded under a temporary name and moved
+	 * over the target once complete, so that a failed upload leaves an
+	 * existing file untouched
+	 */
+	private ListenableFuture<FileSystemItem> uploadChunked(final String fileName, final String library,
+			boolean overwrite, final InputStream content, final long length, final ProgressListener listener) {
+
+		final SettableFuture<FileSystemItem> result = SettableFuture.create();
+		final String uploadId = UUID.randomUUID().toString();
+		final String uploadName = overwrite ? fileName + "." + uploadId + ".tmp" : fileName;
+
+		ListenableFuture<FileSystemItem> empty = createFile(uploadName, library, false, new byte[0]);
+
+		Futures.addCallback(empty, new FutureCallback<FileSystemItem>() {
+			@Override
+			public void onFailure(Throwable t) {
+				closeContent(content);
+				result.setException(t);
+			}
+
+			@Override
+			public void onSuccess(FileSystemItem item) {
+				ChunkedUpload upload = new ChunkedUpload(fileName, uploadName, library, uploadId, content, length,
+						listener, result);
+				try {
+					upload.mFileUrl = getSiteUrl()
+							+ String.format("_api/web/GetFileByServerRelativeUrl('%s')/",
+									urlEncode(getServerRelativePath((String) item.getData("Url"))));
+				} catch (Throwable t) {
+					upload.fail(t, false);
+					return;
+				}
+				upload.uploadChunk(0);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * State of an upload sent a chunk at a time
+	 */
+	private class ChunkedUpload {
+
+		private final String mFileName;
+		private final String mUploadName;
+		private final String mLibrary;
+		private final String mUploadId;
+		private final InputStream mContent;
+		private final long mLength;
+		private final ProgressListener mListener;
+		private final SettableFuture<FileSystemItem> mResult;
+		private String mFileUrl;
+
+		public ChunkedUpload(String fileName, String uploadName, String library, String uploadId,
+				InputStream content, long length, ProgressListener listener, SettableFuture<FileSystemItem> result) {
+			mFileName = fileName;
+			mUploadName = uploadName;
+			mLibrary = library;
+			mUploadId = uploadId;
+			mContent = content;
+			mLength = length;
+			mListener = listener;
+			mResult = result;
+		}
+
+		private void uploadChunk(final long offset) {
+			final long chunkLength = Math.min(UPLOAD_CHUNK_SIZE, mLength - offset);
+			final boolean last = offset + chunkLength == mLength;
+
+			String operation;
+			if (offset == 0) {
+				operation = String.format("StartUpload(uploadId=guid'%s')", mUploadId);
+			} else if (last) {
+				operation = String.format("FinishUpload(uploadId=guid'%s',fileOffset=%d)", mUploadId, offset);
+			} else {
+				operation = String.format("ContinueUpload(uploadId=guid'%s',fileOffset=%d)", mUploadId, offset);
+			}
+
+			Request request = createRequest(mFileUrl + operation, "POST", null, null);
+			request.setContent(new ChunkInputStream(mContent, chunkLength), chunkLength);
+			if (mListener != null) {
+				request.setProgressListener(new ProgressListener() {
+					@Override
+					public void onProgress(long transferred, long total) {
+						mListener.onProgress(offset + transferred, mLength);
+					}
+				});
+			}
+
+			Futures.addCallback(executeRequestJsonWithDigest(request), new FutureCallback<JSONObject>() {
+				@Override
+				public void onFailure(Throwable t) {
+					fail(t, true);
+				}
+
+				@Override
+				public void onSuccess(JSONObject json) {
+					if (last) {
+						closeContent(mContent);
+						finish();
+					} else {
+						uploadChunk(offset + chunkLength);
+					}
+				}
+			});
+		}
+
+		private void finish() {
+			if (mUploadName.equals(mFileName)) {
+				complete();
+				return;
+			}
+
+			Futures.addCallback(move(mUploadName, mFileName, true, mLibrary), new FutureCallback<Void>() {
+				@Override
+				public void onFailure(Throwable t) {
+					fail(t, false);
+				}
+
+				@Override
+				public void onSuccess(Void v) {
+					complete();
+				}
+			});
+		}
+
+		private void complete() {
+			Futures.addCallback(getFileSystemItem(mFileName, mLibrary), new FutureCallback<FileSystemItem>() {
+				@Override
+				public void onFailure(Throwable t) {
+					mResult.setException(t);
+				}
+
+				@Override
+				public void onSuccess(FileSystemItem item) {
+					mResult.set(item);
+				}
+			});
+		}
+
+		/**
+		 * Fails the upload once its session is cancelled, if any, and the file
+		 * it created is deleted
+		 */
+		private void fail(final Throwable error, boolean cancel) {
+			closeContent(mContent);
+
+			if (!cancel) {
+				deleteUpload(error);
+				return;
+			}
+
+			String url = mFileUrl + String.format("CancelUpload(uploadId=guid'%s')", mUploadId);
+			Futures.addCallback(executeRequestJsonWithDigest(url, "POST", null, null), new FutureCallback<JSONObject>() {
+				@Override
+				public void onFailure(Throwable t) {
+					// no session to cancel if StartUpload failed
+					log(t);
+					deleteUpload(error);
+				}
+
+				@Override
+				public void onSuccess(JSONObject json) {
+					deleteUpload(error);
+				}
+			});
+		}
+
+		private void deleteUpload(final Throwable error) {
+			Futures.addCallback(delete(mUploadName, mLibrary), new FutureCallback<Void>() {
+				@Override
+				public void onFailure(Throwable t) {
+					log(t);
+					mResult.setException(error);
+				}
+
+				@Override
+				public void onSuccess(Void v) {
+					mResult.setException(error);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the server relative path of an absolute file URL
+	 */
+	private static String getServerRelativePath(String url) throws UnsupportedEncodingException {
+		if (url == null) {
+			throw new IllegalArgumentException("Missing file URL");
+		}
+
+		int hostStart = url.indexOf("://");
+		int pathStart = url.indexOf('/', hostStart < 0 ? 0 : hostStart + 3);
+		String path = pathStart < 0 ? "/" : url.substring(pathStart);
+
+		// keeps plus signs, which are not escaped in paths
+		return URLDecoder.decode(path.replace("+", "%2B"), Constants.UTF8_NAME);
+	}
+
+	private void closeContent(InputStream content) {
+		try {
+			content.close();
+		} catch (IOException e) {
+			log(e);
+		}
+	}
+
+	/**
+	 * Stream reading up to a given number of bytes from the upload content,
+	 * which is left open when the stream is closed
+	 */
+	private static class ChunkInputStream extends FilterInputStream {
+
+		private long mRemaining;
+
+		public ChunkInputStream(InputStream content, long length) {
+			super(content);
+			mRemaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (mRemaining <= 0) {
+				return -1;
+			}
+
+			int b = super.read();
+			if (b != -1) {
+				mRemaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			if (mRemaining <= 0) {
+				return -1;
+			}
+
+			int nRead = super.read(buffer, offset, (int) Math.min(count, mRemaining));
+			if (nRead > 0) {
+				mRemaining -= nRead;
+			}
+			return nRead;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, mRemaining));
+			mRemaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), mRemaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
 	/**
 	 * Delete a file/folder with a given path
 	 * 
@@ -0,0 +1,478 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+package com.microsoft.office365.files;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.office365.http.ProgressListener;
+import com.microsoft.office365.http.Response;
+
+/**
+ * Downloads a file to disk via ranged requests. The content is written to a
+ * partial file, next to a state file holding the downloaded ranges, so that
+ * an interrupted download is resumed from where it stopped
+ */
+class FileDownload {
+
+	private static final String PART_SUFFIX = ".part";
+
+	private static final String STATE_SUFFIX = ".download";
+
+	/** Minimum size of the segments downloaded in parallel. */
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+	/** Number of bytes written between two saves of the download state. */
+	private static final long SAVE_INTERVAL = 1024 * 1024;
+
+	private static final int MAX_RETRIES = 3;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final String ETAG_HEADER = "ETag";
+
+	private FileClient mClient;
+	private String mUrl;
+	private File mTarget;
+	private File mPartFile;
+	private File mStateFile;
+	private ProgressListener mListener;
+
+	private SettableFuture<File> mResult = SettableFuture.create();
+
+	private String mETag;
+	private long mSize;
+	private long[] mStarts;
+	private long[] mEnds;
+	private long[] mOffsets;
+	private long mDownloaded;
+	private boolean mStale;
+	private boolean mRestarted;
+	private AtomicInteger mPending = new AtomicInteger();
+	private RandomAccessFile mFile;
+
+	/**
+	 * Initializes a download
+	 * 
+	 * @param client
+	 *            the client sending the requests
+	 * @param url
+	 *            the file content URL
+	 * @param target
+	 *            the file to download to
+	 * @param listener
+	 *            the listener notified of the download progress, or null
+	 */
+	public FileDownload(FileClient client, String url, File target, ProgressListener listener) {
+		mClient = client;
+		mUrl = url;
+		mTarget = target;
+		mPartFile = new File(target.getPath() + PART_SUFFIX);
+		mStateFile = new File(target.getPath() + STATE_SUFFIX);
+		mListener = listener;
+	}
+
+	/**
+	 * Starts or resumes the download
+	 * 
+	 * @param etag
+	 *            the file ETag, or null if unknown
+	 * @param size
+	 *            the file size
+	 * @param segments
+	 *            the maximum number of segments downloaded in parallel
+	 * @return the target file, once downloaded
+	 */
+	public ListenableFuture<File> start(String etag, long size, int segments) {
+		mETag = etag;
+		mSize = size;
+
+		try {
+			boolean resumed = loadState();
+			if (!resumed) {
+				split(segments);
+			}
+
+			mFile = new RandomAccessFile(mPartFile, "rw");
+			if (!resumed) {
+				mFile.setLength(size);
+				saveState();
+			}
+		} catch (IOException e) {
+			fail(e);
+			return mResult;
+		}
+
+		int pending = 0;
+		for (int i = 0; i < mOffsets.length; i++) {
+			mDownloaded += mOffsets[i] - mStarts[i];
+			if (mOffsets[i] < mEnds[i]) {
+				pending++;
+			}
+		}
+		mPending.set(pending);
+
+		if (pending == 0) {
+			finish();
+		} else {
+			for (int i = 0; i < mOffsets.length; i++) {
+				if (mOffsets[i] < mEnds[i]) {
+					downloadSegment(i, 0);
+				}
+			}
+		}
+		return mResult;
+	}
+
+	private void split(int segments) {
+		int count = (int) Math.max(1, Math.min(segments, mSize / MIN_SEGMENT_SIZE));
+		long segmentSize = mSize / count;
+
+		mStarts = new long[count];
+		mEnds = new long[count];
+		mOffsets = new long[count];
+		for (int i = 0; i < count; i++) {
+			mStarts[i] = i * segmentSize;
+			mEnds[i] = i == count - 1 ? mSize : (i + 1) * segmentSize;
+			mOffsets[i] = mStarts[i];
+		}
+	}
+
+	private void downloadSegment(final int segment, final int attempt) {
+		long offset;
+		synchronized (this) {
+			offset = mOffsets[segment];
+		}
+
+		ListenableFuture<Response> request = mClient.getFileRange(mUrl, offset, mEnds[segment] - 1, mETag);
+
+		Futures.addCallback(request, new FutureCallback<Response>() {
+			@Override
+			public void onFailure(Throwable t) {
+				retry(segment, attempt, t);
+			}
+
+			@Override
+			public void onSuccess(Response response) {
+				try {
+					readSegment(segment, response);
+				} catch (RangesNotSupportedException e) {
+					restart();
+					return;
+				} catch (RangeNotSatisfiedException e) {
+					fail(e);
+					return;
+				} catch (IOException e) {
+					retry(segment, attempt, e);
+					return;
+				} finally {
+					try {
+						response.close();
+					} catch (IOException e) {
+					}
+				}
+
+				if (mPending.decrementAndGet() == 0 && !isStopped()) {
+					finish();
+				}
+			}
+		});
+	}
+
+	private void readSegment(int segment, Response response) throws IOException {
+		if (response.getStatus() != 206) {
+			// the whole content was returned: either ranges are not supported,
+			// or the file changed since the download started. A single segment
+			// is downloaded again from the start, as long as the new content
+			// has the expected size
+			long contentLength = response.getContentLength();
+			String etag = getETag(response);
+			synchronized (this) {
+				boolean changed = mETag != null && etag != null && !mETag.equals(etag);
+				if (mOffsets.length > 1 && !changed) {
+					throw new RangesNotSupportedException("Ranged request not satisfied, status code "
+							+ response.getStatus());
+				}
+
+				if (mOffsets.length > 1 || (contentLength != -1 && contentLength != mSize)
+						|| (changed && contentLength == -1)) {
+					// the downloaded ranges no longer match the file content
+					mStale = changed;
+					throw new RangeNotSatisfiedException("Ranged request not satisfied, status code "
+							+ response.getStatus() + (changed ? ", file changed" : ""));
+				}
+
+				if (etag != null) {
+					mETag = etag;
+				}
+				mDownloaded -= mOffsets[segment];
+				mOffsets[segment] = 0;
+			}
+		}
+
+		InputStream stream = response.getStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long unsaved = 0;
+		while (!isStopped()) {
+			long remaining;
+			synchronized (this) {
+				remaining = mEnds[segment] - mOffsets[segment];
+			}
+
+			if (remaining <= 0) {
+				return;
+			}
+
+			int nRead = stream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (nRead == -1) {
+				throw new EOFException("Download interrupted");
+			}
+
+			long downloaded;
+			synchronized (this) {
+				mFile.seek(mOffsets[segment]);
+				mFile.write(buffer, 0, nRead);
+				mOffsets[segment] += nRead;
+				mDownloaded += nRead;
+				downloaded = mDownloaded;
+			}
+
+			unsaved += nRead;
+			if (unsaved >= SAVE_INTERVAL) {
+				saveState();
+				unsaved = 0;
+			}
+
+			if (mListener != null) {
+				mListener.onProgress(downloaded, mSize);
+			}
+		}
+	}
+
+	private void retry(int segment, int attempt, Throwable error) {
+		if (isStopped()) {
+			return;
+		}
+
+		if (attempt < MAX_RETRIES) {
+			downloadSegment(segment, attempt + 1);
+		} else {
+			fail(error);
+		}
+	}
+
+	private void finish() {
+		try {
+			close();
+
+			long downloaded;
+			synchronized (this) {
+				downloaded = mDownloaded;
+			}
+
+			if (downloaded != mSize || mPartFile.length() != mSize) {
+				throw new IOException("Downloaded " + downloaded + " bytes instead of " + mSize);
+			}
+
+			if (mTarget.exists() && !mTarget.delete()) {
+				throw new IOException("Cannot replace " + mTarget);
+			}
+
+			if (!mPartFile.renameTo(mTarget)) {
+				throw new IOException("Cannot rename " + mPartFile + " to " + mTarget);
+			}
+
+			mStateFile.delete();
+			mResult.set(mTarget);
+		} catch (IOException e) {
+			mResult.setException(e);
+		}
+	}
+
+	/**
+	 * Downloads the file again as a single segment, as the server does not
+	 * support ranges: the segments downloaded so far are discarded
+	 */
+	private void restart() {
+		synchronized (this) {
+			if (mRestarted || mResult.isDone()) {
+				return;
+			}
+			mRestarted = true;
+		}
+
+		try {
+			close();
+		} catch (IOException e) {
+		}
+		mStateFile.delete();
+
+		FileDownload download = new FileDownload(mClient, mUrl, mTarget, mListener);
+		Futures.addCallback(download.start(mETag, mSize, 1), new FutureCallback<File>() {
+			@Override
+			public void onFailure(Throwable t) {
+				mResult.setException(t);
+			}
+
+			@Override
+			public void onSuccess(File file) {
+				mResult.set(file);
+			}
+		});
+	}
+
+	/**
+	 * Returns whether the segments should stop downloading, the download
+	 * being over or restarted
+	 */
+	private synchronized boolean isStopped() {
+		return mRestarted || mResult.isDone();
+	}
+
+	private void fail(Throwable error) {
+		synchronized (this) {
+			if (mRestarted) {
+				return;
+			}
+		}
+
+		if (mResult.setException(error)) {
+			try {
+				boolean stale;
+				synchronized (this) {
+					stale = mStale;
+				}
+
+				if (stale) {
+					mStateFile.delete();
+				} else if (mFile != null) {
+					saveState();
+				}
+				close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private synchronized void close() throws IOException {
+		if (mFile != null) {
+			mFile.close();
+		}
+	}
+
+	private static String getETag(Response response) {
+		Map<String, List<String>> headers = response.getHeaders();
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (ETAG_HEADER.equalsIgnoreCase(header.getKey()) && header.getValue() != null
+					&& !header.getValue().isEmpty()) {
+				return header.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Loads the state of a previous download of the same file content, if any
+	 * 
+	 * @return whether a previous download is resumed
+	 */
+	private boolean loadState() throws IOException {
+		if (!mStateFile.exists() || !mPartFile.exists()) {
+			return false;
+		}
+
+		Properties state = new Properties();
+		InputStream in = new FileInputStream(mStateFile);
+		try {
+			state.load(in);
+		} finally {
+			in.close();
+		}
+
+		String etag = state.getProperty("etag");
+		boolean sameContent = etag == null ? mETag == null : etag.equals(mETag);
+		if (!sameContent || !String.valueOf(mSize).equals(state.getProperty("size"))
+				|| mPartFile.length() != mSize) {
+			return false;
+		}
+
+		try {
+			int count = Integer.parseInt(state.getProperty("segments"));
+			mStarts = new long[count];
+			mEnds = new long[count];
+			mOffsets = new long[count];
+			for (int i = 0; i < count; i++) {
+				mStarts[i] = Long.parseLong(state.getProperty("start." + i));
+				mEnds[i] = Long.parseLong(state.getProperty("end." + i));
+				mOffsets[i] = Long.parseLong(state.getProperty("offset." + i));
+			}
+		} catch (RuntimeException e) {
+			// unreadable state: restarts the download
+			return false;
+		}
+		return true;
+	}
+
+	private synchronized void saveState() throws IOException {
+		Properties state = new Properties();
+		if (mETag != null) {
+			state.setProperty("etag", mETag);
+		}
+		state.setProperty("size", String.valueOf(mSize));
+		state.setProperty("segments", String.valueOf(mOffsets.length));
+		for (int i = 0; i < mOffsets.length; i++) {
+			state.setProperty("start." + i, String.valueOf(mStarts[i]));
+			state.setProperty("end." + i, String.valueOf(mEnds[i]));
+			state.setProperty("offset." + i, String.valueOf(mOffsets[i]));
+		}
+
+		OutputStream out = new FileOutputStream(mStateFile);
+		try {
+			state.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Raised when the server returns the whole content of a file that did not
+	 * change instead of the requested range
+	 */
+	private static class RangesNotSupportedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public RangesNotSupportedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Raised when the server does not return the requested range
+	 */
+	private static class RangeNotSatisfiedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public RangeNotSatisfiedException(String message) {
+			super(message);
+		}
+	}
+}
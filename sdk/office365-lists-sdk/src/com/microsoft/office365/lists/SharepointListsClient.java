@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -60,31 +61,10 @@ public class SharepointListsClient extends SharepointClient {
 	 * @return the lists
 	 */
 	public ListenableFuture<List<SPList>> getLists(Query query) {
-		final SettableFuture<List<SPList>> result = SettableFuture.create();
-
 		String queryOData = generateODataQueryString(query);
 		String getListsUrl = getSiteUrl() + "_api/web/lists/?" + queryEncode(queryOData);
 
-		ListenableFuture<JSONObject> request = executeRequestJson(getListsUrl, "GET");
-
-		Futures.addCallback(request, new FutureCallback<JSONObject>() {
-			@Override
-			public void onFailure(Throwable t) {
-				result.setException(t);
-			}
-
-			@Override
-			public void onSuccess(JSONObject json) {
-				try {
-					List<SPList> list = SPList.listFromJson(json);
-					result.set(list);
-				} catch (JSONException e) {
-					log(e);
-				}
-			}
-		});
-
-		return result;
+		return executeRequestEntityList(getListsUrl, SPList.class);
 	}
 
 	/**
@@ -127,29 +107,31 @@ public class SharepointListsClient extends SharepointClient {
 	 * @return the list items
 	 */
 	public ListenableFuture<List<SPListItem>> getListItems(String listName, Query query) {
-		final SettableFuture<List<SPListItem>> result = SettableFuture.create();
-
-		String listNamePart = String.format("_api/web/lists/GetByTitle('%s')/Items?", urlEncode(listName));
-		String getListUrl = getSiteUrl() + listNamePart + generateODataQueryString(query);
-		ListenableFuture<JSONObject> request = executeRequestJson(getListUrl, "GET");
-
-		Futures.addCallback(request, new FutureCallback<JSONObject>() {
-			@Override
-			public void onFailure(Throwable t) {
-				result.setException(t);
-			}
+		return executeRequestEntityList(getListItemsUrl(listName, query), SPListItem.class);
+	}
 
-			@Override
-			public void onSuccess(JSONObject json) {
-				try {
-					result.set(SPListItem.listFromJson(json));
-				} catch (JSONException e) {
-					log(e);
-				}
-			}
-		});
+	/**
+	 * Gets the list items, passing each of them to the callback as soon as it
+	 * has been read, without holding the whole list.
+	 * 
+	 * @param listName
+	 *            the list name
+	 * @param query
+	 *            the query
+	 * @param fields
+	 *            the fields kept for each item, or null to keep them all
+	 * @param callback
+	 *            the callback
+	 * @return the number of items read
+	 */
+	public ListenableFuture<Integer> getListItems(String listName, Query query, Set<String> fields,
+			EntityCallback<SPListItem> callback) {
+		return executeRequestEntities(getListItemsUrl(listName, query), SPListItem.class, fields, callback);
+	}
 
-		return result;
+	private String getListItemsUrl(String listName, Query query) {
+		String listNamePart = String.format("_api/web/lists/GetByTitle('%s')/Items?", urlEncode(listName));
+		return getSiteUrl() + listNamePart + generateODataQueryString(query);
 	}
 
 	/**
@@ -162,29 +144,10 @@ public class SharepointListsClient extends SharepointClient {
 	 * @return the list fields
 	 */
 	public ListenableFuture<List<SPListField>> getListFields(String listName, Query query) {
-		final SettableFuture<List<SPListField>> result = SettableFuture.create();
-
 		String getListUrl = getSiteUrl() + "_api/web/lists/GetByTitle('%s')/Fields?" + generateODataQueryString(query);
 		getListUrl = String.format(getListUrl, urlEncode(listName));
-		ListenableFuture<JSONObject> request = executeRequestJson(getListUrl, "GET");
 
-		Futures.addCallback(request, new FutureCallback<JSONObject>() {
-			@Override
-			public void onFailure(Throwable t) {
-				result.setException(t);
-			}
-
-			@Override
-			public void onSuccess(JSONObject json) {
-				try {
-					result.set(SPListField.listFromJson(json));
-				} catch (JSONException e) {
-					log(e);
-				}
-			}
-		});
-
-		return result;
+		return executeRequestEntityList(getListUrl, SPListField.class);
 	}
 
 	/**
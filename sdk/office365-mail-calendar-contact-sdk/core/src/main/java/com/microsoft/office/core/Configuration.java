@@ -95,7 +95,10 @@ public final class Configuration {
      */
     public static void setAuthenticator(IAuthenticator auth) {
         if (sFactory != null) {
-            sFactory.getConfiguration().setHttpClientFactory(new DefaultAuthenticationFactory());
+            // keep the current factory (and its connection pool) if already set
+            if (!(sFactory.getConfiguration().getHttpClientFactory() instanceof DefaultAuthenticationFactory)) {
+                sFactory.getConfiguration().setHttpClientFactory(new DefaultAuthenticationFactory());
+            }
             sFactory.getConfiguration().setHttpUriRequestFactory(new DefaultRequestAuthenticationFactory());
         }
         sAuthenticator = auth;
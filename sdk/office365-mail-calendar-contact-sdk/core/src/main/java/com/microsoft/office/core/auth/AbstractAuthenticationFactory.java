@@ -23,28 +23,33 @@ import java.net.URI;
 import java.security.KeyStore;
 
 import com.msopentech.org.apache.http.client.HttpClient;
-import com.msopentech.org.apache.http.conn.ClientConnectionManager;
 import com.msopentech.org.apache.http.conn.scheme.PlainSocketFactory;
 import com.msopentech.org.apache.http.conn.scheme.Scheme;
 import com.msopentech.org.apache.http.conn.scheme.SchemeRegistry;
 import com.msopentech.org.apache.http.conn.ssl.SSLSocketFactory;
-import com.msopentech.org.apache.http.impl.client.DefaultHttpClient;
-import com.msopentech.org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import com.msopentech.org.apache.http.params.CoreConnectionPNames;
 
 import com.microsoft.office.core.Configuration;
 import com.microsoft.office.core.auth.method.IAuthenticator;
-import com.msopentech.odatajclient.engine.client.http.DefaultHttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.HttpMethod;
+import com.msopentech.odatajclient.engine.client.http.PoolingHttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.TrustAllSSLSocketFactory;
 
 /**
  * Abstract implementation of authentication factory.
+ * <p>
+ * All the created clients share the connection pool of this factory; the pool is re-created when the
+ * {@link Configuration#isTrustAll()} setting changes.
  */
-abstract class AbstractAuthenticationFactory extends DefaultHttpClientFactory {
+abstract class AbstractAuthenticationFactory extends PoolingHttpClientFactory {
 
     private static final long serialVersionUID = -5832892947506196894L;
 
+    /**
+     * Value of {@link Configuration#isTrustAll()} the current connection pool has been built for.
+     */
+    private transient boolean poolTrustAll;
+
     /**
      * Creates a new instance of {@link DefaultAuthenticationFactory} class.
      */
@@ -57,9 +62,16 @@ abstract class AbstractAuthenticationFactory extends DefaultHttpClientFactory {
      * @param uri Target URI.
      * @return HttpClient instance prepared to make request.
      */
-    @SuppressWarnings("deprecation")
+    @Override
     public HttpClient createHttpClient(HttpMethod method, URI uri) {
-        HttpClient httpclient = super.createHttpClient(method, uri);
+        synchronized (this) {
+            if (poolTrustAll != Configuration.isTrustAll()) {
+                shutdown();
+                poolTrustAll = Configuration.isTrustAll();
+            }
+        }
+
+        final HttpClient httpclient = super.createHttpClient(method, uri);
 
         final IAuthenticator creds = Configuration.getAuthenticator();
         if (creds != null) {
@@ -69,7 +81,20 @@ abstract class AbstractAuthenticationFactory extends DefaultHttpClientFactory {
         httpclient.getParams().setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, getConnectionTimeout());
         httpclient.getParams().setParameter(CoreConnectionPNames.SO_TIMEOUT, getSocketTimeout());
 
-        if (Configuration.isTrustAll()) {
+        return httpclient;
+    }
+
+    /**
+     * Creates scheme registry accepting untrusted certificates if {@link Configuration#isTrustAll()} is set.
+     *
+     * @return scheme registry.
+     * @throws IllegalStateException if untrusted certificates are to be accepted, but the socket factory accepting
+     * them could not be created.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    protected SchemeRegistry createSchemeRegistry() {
+        if (poolTrustAll) {
             try {
                 KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
                 trustStore.load(null, null);
@@ -77,14 +102,15 @@ abstract class AbstractAuthenticationFactory extends DefaultHttpClientFactory {
                 SSLSocketFactory sf = new TrustAllSSLSocketFactory(trustStore);
                 sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
                 SchemeRegistry registry = new SchemeRegistry();
-                registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-                registry.register(new Scheme("https", sf, 443));
-                ClientConnectionManager ccm = new ThreadSafeClientConnManager(registry);
-                httpclient = new DefaultHttpClient(ccm, httpclient.getParams());
-            } catch (Exception e) {}
+                registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+                registry.register(new Scheme("https", 443, sf));
+                return registry;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not create SSL socket factory accepting all certificates", e);
+            }
         }
 
-        return httpclient;
+        return super.createSchemeRegistry();
     }
 
     /**
@@ -19,10 +19,10 @@
  */
 package com.msopentech.odatajclient.engine.client;
 
-import com.msopentech.odatajclient.engine.client.http.DefaultHttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.DefaultHttpUriRequestFactory;
 import com.msopentech.odatajclient.engine.client.http.HttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.HttpUriRequestFactory;
+import com.msopentech.odatajclient.engine.client.http.PoolingHttpClientFactory;
 import com.msopentech.odatajclient.engine.format.ODataFormat;
 import com.msopentech.odatajclient.engine.format.ODataMediaFormat;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
@@ -52,6 +52,12 @@ public abstract class AbstractConfiguration implements Configuration {
 
     private static final String CHUNKING = "chunking";
 
+    private static final String JSON_STREAMING = "jsonStreaming";
+
+    private static final String ATOM_STREAMING = "atomStreaming";
+
+    private static final String BATCH_BUFFERING = "batchBuffering";
+
     private final Map<String, Object> CONF = new HashMap<String, Object>();
 
     private transient ExecutorService executor = Executors.newFixedThreadPool(10);
@@ -137,12 +143,18 @@ public abstract class AbstractConfiguration implements Configuration {
     }
 
     @Override
-    public HttpClientFactory getHttpClientFactory() {
-        return (HttpClientFactory) getProperty(HTTP_CLIENT_FACTORY, new DefaultHttpClientFactory());
+    public synchronized HttpClientFactory getHttpClientFactory() {
+        // the default factory is stored once in order to share its connection pool among all requests
+        HttpClientFactory factory = (HttpClientFactory) getProperty(HTTP_CLIENT_FACTORY, null);
+        if (factory == null) {
+            factory = new PoolingHttpClientFactory();
+            setProperty(HTTP_CLIENT_FACTORY, factory);
+        }
+        return factory;
     }
 
     @Override
-    public void setHttpClientFactory(final HttpClientFactory factory) {
+    public synchronized void setHttpClientFactory(final HttpClientFactory factory) {
         setProperty(HTTP_CLIENT_FACTORY, factory);
     }
 
@@ -196,6 +208,41 @@ public abstract class AbstractConfiguration implements Configuration {
         setProperty(CHUNKING, value);
     }
 
+    @Override
+    public boolean isJSONStreaming() {
+        return (Boolean) getProperty(JSON_STREAMING, true);
+    }
+
+    @Override
+    public boolean isJSONStreaming(final ODataPubFormat format) {
+        return format != ODataPubFormat.ATOM && format != ODataPubFormat.JSON_VERBOSE_METADATA && isJSONStreaming();
+    }
+
+    @Override
+    public void setJSONStreaming(final boolean value) {
+        setProperty(JSON_STREAMING, value);
+    }
+
+    @Override
+    public boolean isAtomStreaming() {
+        return (Boolean) getProperty(ATOM_STREAMING, true);
+    }
+
+    @Override
+    public void setAtomStreaming(final boolean value) {
+        setProperty(ATOM_STREAMING, value);
+    }
+
+    @Override
+    public boolean isBatchBuffering() {
+        return (Boolean) getProperty(BATCH_BUFFERING, true);
+    }
+
+    @Override
+    public void setBatchBuffering(final boolean value) {
+        setProperty(BATCH_BUFFERING, value);
+    }
+
     @Override
     public ExecutorService getExecutor() {
         return executor;
@@ -19,10 +19,10 @@
  */
 package com.msopentech.odatajclient.engine.client;
 
-import com.msopentech.odatajclient.engine.client.http.DefaultHttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.DefaultHttpUriRequestFactory;
 import com.msopentech.odatajclient.engine.client.http.HttpClientFactory;
 import com.msopentech.odatajclient.engine.client.http.HttpUriRequestFactory;
+import com.msopentech.odatajclient.engine.client.http.PoolingHttpClientFactory;
 import com.msopentech.odatajclient.engine.format.ODataFormat;
 import com.msopentech.odatajclient.engine.format.ODataMediaFormat;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
@@ -96,7 +96,7 @@ public interface Configuration extends Serializable {
      * Gets the HttpClient factory to be used for executing requests.
      *
      * @return provided implementation (if configured via <tt>setHttpClientFactory</tt> or default.
-     * @see DefaultHttpClientFactory
+     * @see PoolingHttpClientFactory
      */
     HttpClientFactory getHttpClientFactory();
 
@@ -188,6 +188,63 @@ public interface Configuration extends Serializable {
      */
     void setUseChuncked(boolean value);
 
+    /**
+     * Checks whether JSON entities are bound via the Jackson streaming API rather than through their intermediate DOM
+     * representation.
+     *
+     * @return whether JSON streaming binding is enabled
+     */
+    boolean isJSONStreaming();
+
+    /**
+     * Checks whether payloads in the given format are read and written via the Jackson streaming API: this applies to
+     * JSON light formats only, if JSON streaming binding is enabled.
+     *
+     * @param format publication format.
+     * @return whether the given format is read and written via the Jackson streaming API.
+     */
+    boolean isJSONStreaming(ODataPubFormat format);
+
+    /**
+     * Sets JSON streaming binding enabled or disabled; when disabled, JSON entities are bound through their
+     * intermediate DOM representation.
+     *
+     * @param value whether to use JSON streaming binding.
+     */
+    void setJSONStreaming(boolean value);
+
+    /**
+     * Checks whether Atom feeds and entries are read via a StAX pull parser rather than by parsing the whole document
+     * into a DOM tree.
+     *
+     * @return whether Atom streaming is enabled
+     */
+    boolean isAtomStreaming();
+
+    /**
+     * Sets Atom streaming enabled or disabled; when disabled, Atom documents are parsed into a DOM tree via
+     * <tt>XMLUtils.PARSER</tt>.
+     *
+     * @param value whether to use Atom streaming.
+     */
+    void setAtomStreaming(boolean value);
+
+    /**
+     * Checks whether batch request payloads are buffered in memory, and sent with known <tt>Content-Length</tt> once
+     * complete, rather than piped to the sending thread while being written.
+     *
+     * @return whether batch buffering is enabled
+     */
+    boolean isBatchBuffering();
+
+    /**
+     * Sets batch buffering enabled or disabled; when disabled, batch request payloads are piped to the sending thread
+     * while being written.
+     *
+     * @param value whether to use batch buffering.
+     */
+    void setBatchBuffering(boolean value);
+
     /**
      * Retrieves request executor service.
      *
@@ -0,0 +1,242 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.client.http;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import com.msopentech.org.apache.http.HttpResponse;
+import com.msopentech.org.apache.http.client.HttpClient;
+import com.msopentech.org.apache.http.client.params.ClientPNames;
+import com.msopentech.org.apache.http.conn.ClientConnectionManager;
+import com.msopentech.org.apache.http.conn.scheme.SchemeRegistry;
+import com.msopentech.org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import com.msopentech.org.apache.http.impl.client.DefaultHttpClient;
+import com.msopentech.org.apache.http.impl.conn.PoolingClientConnectionManager;
+import com.msopentech.org.apache.http.impl.conn.SchemeRegistryFactory;
+import com.msopentech.org.apache.http.protocol.HttpContext;
+
+/**
+ * Implementation returning HttpClients sharing a single, thread-safe connection pool.
+ * <p>
+ * Every returned client is a lightweight wrapper around the same pool, so that per-client settings (credentials,
+ * cookies, timeouts) can still be applied by subclasses while TCP / TLS connections are kept alive and reused across
+ * requests. Expired and idle connections are evicted lazily while creating new clients.
+ */
+public class PoolingHttpClientFactory implements HttpClientFactory, Serializable {
+
+    private static final long serialVersionUID = 4735619473092380621L;
+
+    /**
+     * Default maximum number of pooled connections.
+     */
+    public static final int DEFAULT_MAX_TOTAL = 20;
+
+    /**
+     * Default maximum number of pooled connections per route.
+     */
+    public static final int DEFAULT_MAX_PER_ROUTE = 10;
+
+    /**
+     * Default idle time (in milliseconds) after which a pooled connection is evicted.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    /**
+     * Default keep-alive time (in milliseconds) used when the server does not send a <tt>Keep-Alive</tt> header.
+     */
+    public static final long DEFAULT_KEEP_ALIVE = 30000L;
+
+    /**
+     * Default time (in milliseconds) to wait for a pooled connection to be available.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT = 60000L;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private long keepAlive = DEFAULT_KEEP_ALIVE;
+
+    private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+
+    /**
+     * Shared connection pool: lazily (re-)created, not serialized.
+     */
+    private transient PoolingClientConnectionManager connManager;
+
+    /**
+     * Last time idle connections have been evicted.
+     */
+    private transient long lastEviction;
+
+    /**
+     * Constructor.
+     */
+    public PoolingHttpClientFactory() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxTotal maximum number of pooled connections.
+     * @param maxPerRoute maximum number of pooled connections per route.
+     */
+    public PoolingHttpClientFactory(final int maxTotal, final int maxPerRoute) {
+        if (maxTotal <= 0 || maxPerRoute <= 0) {
+            throw new IllegalArgumentException("Pool limits must be positive");
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections.
+     *
+     * @return maximum number of pooled connections.
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections per route.
+     *
+     * @return maximum number of pooled connections per route.
+     */
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * Gets the idle time after which pooled connections get evicted.
+     *
+     * @return idle timeout in milliseconds.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the idle time after which pooled connections get evicted.
+     *
+     * @param idleTimeout idle timeout in milliseconds.
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets keep-alive time applied when the server does not specify one.
+     *
+     * @return keep-alive time in milliseconds.
+     */
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Sets keep-alive time applied when the server does not specify one.
+     *
+     * @param keepAlive keep-alive time in milliseconds; a non-positive value means 'keep alive until idle eviction'.
+     */
+    public void setKeepAlive(final long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Gets the time to wait for a pooled connection to be available.
+     *
+     * @return lease timeout in milliseconds.
+     */
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /**
+     * Sets the time to wait for a pooled connection to be available: once elapsed, the request fails instead of
+     * waiting for connections that might never be released.
+     *
+     * @param leaseTimeout lease timeout in milliseconds; must be positive.
+     */
+    public void setLeaseTimeout(final long leaseTimeout) {
+        if (leaseTimeout <= 0) {
+            throw new IllegalArgumentException("Lease timeout must be positive");
+        }
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    @Override
+    public HttpClient createHttpClient(final HttpMethod method, final URI uri) {
+        final DefaultHttpClient httpclient = new DefaultHttpClient(getConnectionManager());
+        httpclient.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, leaseTimeout);
+        httpclient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+
+            @Override
+            public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                final long duration = super.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : keepAlive;
+            }
+        });
+        return httpclient;
+    }
+
+    /**
+     * Gets the shared connection pool, creating it if needed and evicting expired / idle connections.
+     *
+     * @return shared connection pool.
+     */
+    protected synchronized ClientConnectionManager getConnectionManager() {
+        if (connManager == null) {
+            connManager = new PoolingClientConnectionManager(createSchemeRegistry());
+            connManager.setMaxTotal(maxTotal);
+            connManager.setDefaultMaxPerRoute(maxPerRoute);
+            lastEviction = System.currentTimeMillis();
+        } else if (idleTimeout > 0 && System.currentTimeMillis() - lastEviction > idleTimeout) {
+            connManager.closeExpiredConnections();
+            connManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            lastEviction = System.currentTimeMillis();
+        }
+
+        return connManager;
+    }
+
+    /**
+     * Creates the scheme registry used by the connection pool.
+     *
+     * @return scheme registry.
+     */
+    protected SchemeRegistry createSchemeRegistry() {
+        return SchemeRegistryFactory.createDefault();
+    }
+
+    /**
+     * Closes all pooled connections; a new pool will be created upon next request.
+     */
+    public synchronized void shutdown() {
+        if (connManager != null) {
+            connManager.shutdown();
+            connManager = null;
+        }
+    }
+}
@@ -24,13 +24,21 @@ import com.msopentech.odatajclient.engine.client.http.HttpMethod;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest;
 import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
 import com.msopentech.odatajclient.engine.utils.ODataBatchConstants;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang3.StringUtils;
+import com.msopentech.org.apache.http.HttpEntity;
+import com.msopentech.org.apache.http.entity.AbstractHttpEntity;
+import com.msopentech.org.apache.http.entity.ByteArrayEntity;
+import com.msopentech.org.apache.http.entity.ContentProducer;
+import com.msopentech.org.apache.http.entity.EntityTemplate;
 
 /**
  * Basic request abstract implementation.
@@ -88,6 +96,52 @@ public abstract class AbstractODataBasicRequestImpl<V extends ODataResponse, T e
      */
     protected abstract InputStream getPayload();
 
+    /**
+     * Writes payload to the given stream, if any; the stream is not closed.
+     * <p>
+     * Override when the payload can be serialized straight to the target stream instead of via
+     * <tt>getPayload()</tt>.
+     *
+     * @param output destination stream.
+     * @throws IOException in case of write errors.
+     */
+    protected void writePayload(final OutputStream output) throws IOException {
+        final InputStream payload = getPayload();
+        if (payload != null) {
+            try {
+                IOUtils.copy(payload, output);
+            } finally {
+                IOUtils.closeQuietly(payload);
+            }
+        }
+    }
+
+    /**
+     * Builds the HTTP entity for payload: when chunked, payload is written straight to the connection.
+     *
+     * @return HTTP entity for payload.
+     * @throws IOException in case of write errors.
+     */
+    protected HttpEntity buildPayloadEntity() throws IOException {
+        final AbstractHttpEntity entity;
+        if (odataClient.getConfiguration().isUseChuncked()) {
+            entity = new EntityTemplate(new ContentProducer() {
+
+                @Override
+                public void writeTo(final OutputStream output) throws IOException {
+                    writePayload(new CloseShieldOutputStream(output));
+                }
+            });
+        } else {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            writePayload(output);
+            entity = new ByteArrayEntity(output.toByteArray());
+        }
+        entity.setChunked(odataClient.getConfiguration().isUseChuncked());
+
+        return entity;
+    }
+
     /**
      * Serializes the full request into the given batch request.
      *
@@ -114,10 +168,7 @@ public abstract class AbstractODataBasicRequestImpl<V extends ODataResponse, T e
             }
             req.rawAppend(ODataStreamer.CRLF);
 
-            final InputStream payload = getPayload();
-            if (payload != null) {
-                req.rawAppend(IOUtils.toByteArray(getPayload()));
-            }
+            writePayload(new CloseShieldOutputStream(req.getOutputStream()));
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -0,0 +1,205 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.communication.request;
+
+import com.msopentech.org.apache.http.HttpEntity;
+import com.msopentech.org.apache.http.entity.AbstractHttpEntity;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory request payload, made of fixed-size chunks taken from a shared pool.
+ * <p>
+ * The payload is written by the thread building the request, without any hand-off to the thread sending it; once
+ * complete, it is sent as an entity with known <tt>Content-Length</tt>. Chunks go back to the pool when the buffer
+ * is released.
+ */
+public class ODataPayloadBuffer extends OutputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int MAX_POOLED_CHUNKS = 64;
+
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+
+    /**
+     * Number of pooled chunks, tracked apart since <tt>ConcurrentLinkedQueue.size()</tt> is not a constant-time
+     * operation.
+     */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+    /**
+     * Number of bytes written in the last chunk.
+     */
+    private int count = CHUNK_SIZE;
+
+    private long size = 0;
+
+    private boolean released = false;
+
+    private static byte[] takeChunk() {
+        final byte[] chunk = POOL.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+
+        POOLED.decrementAndGet();
+        return chunk;
+    }
+
+    private static void giveChunk(final byte[] chunk) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            POOL.offer(chunk);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    private byte[] lastChunk() {
+        if (released) {
+            throw new IllegalStateException("Payload buffer already released");
+        }
+
+        if (count == CHUNK_SIZE) {
+            chunks.add(takeChunk());
+            count = 0;
+        }
+        return chunks.get(chunks.size() - 1);
+    }
+
+    @Override
+    public void write(final int b) {
+        lastChunk()[count++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int off, final int len) {
+        int written = 0;
+        while (written < len) {
+            final byte[] chunk = lastChunk();
+            final int toWrite = Math.min(len - written, CHUNK_SIZE - count);
+            System.arraycopy(bytes, off + written, chunk, count, toWrite);
+            count += toWrite;
+            written += toWrite;
+        }
+        size += len;
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return payload size.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Copies the payload into a new byte array.
+     *
+     * @return payload bytes.
+     */
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[(int) size];
+        int pos = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final int len = i == chunks.size() - 1 ? count : CHUNK_SIZE;
+            System.arraycopy(chunks.get(i), 0, bytes, pos, len);
+            pos += len;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the payload to the given stream.
+     *
+     * @param output destination stream.
+     * @throws IOException in case of write error.
+     */
+    public void writeTo(final OutputStream output) throws IOException {
+        if (released) {
+            throw new IllegalStateException("Payload buffer already released");
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            output.write(chunks.get(i), 0, i == chunks.size() - 1 ? count : CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Gets an HTTP entity sending the payload written so far, with known content length.
+     *
+     * @return HTTP entity.
+     */
+    public HttpEntity toEntity() {
+        final AbstractHttpEntity entity = new AbstractHttpEntity() {
+
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+
+            @Override
+            public long getContentLength() {
+                return size;
+            }
+
+            @Override
+            public InputStream getContent() {
+                return new ByteArrayInputStream(toByteArray());
+            }
+
+            @Override
+            public void writeTo(final OutputStream output) throws IOException {
+                ODataPayloadBuffer.this.writeTo(output);
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return false;
+            }
+        };
+        entity.setChunked(false);
+        return entity;
+    }
+
+    /**
+     * Gives chunks back to the pool: the buffer cannot be used afterwards.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            for (byte[] chunk : chunks) {
+                giveChunk(chunk);
+            }
+            chunks.clear();
+        }
+    }
+}
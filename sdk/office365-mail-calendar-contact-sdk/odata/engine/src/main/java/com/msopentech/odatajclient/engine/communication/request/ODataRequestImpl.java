@@ -56,6 +56,7 @@ import com.msopentech.org.apache.http.HttpResponse;
 import com.msopentech.org.apache.http.client.HttpClient;
 import com.msopentech.org.apache.http.client.methods.HttpUriRequest;
 import com.msopentech.org.apache.http.impl.client.DecompressingHttpClient;
+import com.msopentech.org.apache.http.util.EntityUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -418,7 +419,10 @@ public class ODataRequestImpl<T extends Enum<T>> implements ODataRequest {
             String errorMessage = "";
             try {
                 errorMessage = IOUtils.toString(response.getEntity().getContent());
-            } catch (Exception e) {}
+            } catch (Exception e) {
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
             
             throw new ODataServerErrorException(response.getStatusLine() + "\n" + errorMessage);
         } else if (response.getStatusLine().getStatusCode() >= 400) {
@@ -445,6 +449,9 @@ public class ODataRequestImpl<T extends Enum<T>> implements ODataRequest {
             } catch (IOException e) {
                 throw new HttpClientException(
                         "Received '" + response.getStatusLine() + "' but could not extract error body", e);
+            } finally {
+                // give the connection back (pooled HTTP clients would otherwise leak it)
+                EntityUtils.consumeQuietly(response.getEntity());
             }
         }
 
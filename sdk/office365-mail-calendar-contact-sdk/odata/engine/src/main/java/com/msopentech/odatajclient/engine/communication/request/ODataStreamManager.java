@@ -50,6 +50,11 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
      */
     private final InputStream defaultBody;
 
+    /**
+     * Body buffer, if the payload is buffered rather than piped.
+     */
+    private final ODataPayloadBuffer buffer;
+
     /**
      * Wrapper for actual streamed request's future.
      */
@@ -75,11 +80,29 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
 
         this.futureWrap = futureWrap;
         try {
-            this.body = new PipedInputStream(getBodyStreamWriter());
+            this.body = new PipedInputStream(output);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
         this.defaultBody = this.body;
+        this.buffer = null;
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * The payload is written into the given buffer and sent, as a whole, only once complete.
+     *
+     * @param futureWrap wrapper of the Future object of the HttpResponse.
+     * @param buffer buffer for the payload.
+     */
+    public ODataStreamManager(final Wrapper<Future<HttpResponse>> futureWrap, final ODataPayloadBuffer buffer) {
+        super(buffer);
+
+        this.futureWrap = futureWrap;
+        this.body = null;
+        this.defaultBody = null;
+        this.buffer = buffer;
     }
 
     /**
@@ -94,17 +117,27 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
         this.futureWrap = futureWrap;
         this.body = null;
         this.defaultBody = input;
+        this.buffer = null;
     }
 
     /**
      * Gets payload stream.
      *
-     * @return payload stream.
+     * @return payload stream; null if the payload is buffered.
      */
     public InputStream getBody() {
         return this.body == null ? this.defaultBody : this.body;
     }
 
+    /**
+     * Gets payload buffer.
+     *
+     * @return payload buffer; null if the payload is streamed.
+     */
+    public ODataPayloadBuffer getBodyBuffer() {
+        return buffer;
+    }
+
     /**
      * Closes piped output stream.
      */
@@ -128,6 +161,13 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
         }
     }
 
+    /**
+     * Completes the payload, before waiting for the response; does nothing by default.
+     */
+    protected void complete() {
+        // nothing to complete
+    }
+
     /**
      * Gets OData response.
      *
@@ -152,6 +192,8 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
      * @return <code>Future&lt;ODataResponse&gt;</code> about the executed request.
      */
     public final Future<T> getAsyncResponse() {
+        complete();
+
         return new Future<T>() {
 
             @Override
@@ -171,7 +213,7 @@ public abstract class ODataStreamManager<T extends ODataResponse> extends ODataS
 
             @Override
             public T get() throws InterruptedException, ExecutionException {
-                return getResponse(0, TimeUnit.SECONDS);
+                return getResponse(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
             }
 
             @Override
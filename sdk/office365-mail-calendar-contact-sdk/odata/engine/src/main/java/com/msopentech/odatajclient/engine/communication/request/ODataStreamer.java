@@ -21,7 +21,6 @@ package com.msopentech.odatajclient.engine.communication.request;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PipedOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,14 +42,14 @@ public abstract class ODataStreamer {
     /**
      * OutputStream to be used to write objects to the stream.
      */
-    private final PipedOutputStream bodyStreamWriter;
+    private final OutputStream bodyStreamWriter;
 
     /**
      * Constructor.
      *
-     * @param bodyStreamWriter piped stream to be used to retrieve the payload.
+     * @param bodyStreamWriter stream to be used to write the payload: either piped or buffered.
      */
-    public ODataStreamer(final PipedOutputStream bodyStreamWriter) {
+    public ODataStreamer(final OutputStream bodyStreamWriter) {
         this.bodyStreamWriter = bodyStreamWriter;
     }
 
@@ -60,7 +59,11 @@ public abstract class ODataStreamer {
      * @param src byte array to be written.
      */
     protected void stream(final byte[] src) {
-        new Writer(src, bodyStreamWriter).run();
+        try {
+            bodyStreamWriter.write(src);
+        } catch (IOException e) {
+            LOG.error("Error streaming object", e);
+        }
     }
 
     /**
@@ -71,35 +74,11 @@ public abstract class ODataStreamer {
     }
 
     /**
-     * Gets the piped stream to be used to stream the payload.
+     * Gets the stream to be used to stream the payload.
      *
-     * @return piped stream.
+     * @return payload stream.
      */
-    public PipedOutputStream getBodyStreamWriter() {
+    public OutputStream getBodyStreamWriter() {
         return bodyStreamWriter;
     }
-
-    /**
-     * Writer thread.
-     */
-    private class Writer implements Runnable {
-
-        final OutputStream os;
-
-        final byte[] src;
-
-        public Writer(final byte[] src, final OutputStream os) {
-            this.os = os;
-            this.src = src;
-        }
-
-        @Override
-        public void run() {
-            try {
-                os.write(src);
-            } catch (IOException e) {
-                LOG.error("Error streaming object", e);
-            }
-        }
-    }
 }
@@ -20,6 +20,7 @@
 package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import com.msopentech.odatajclient.engine.client.ODataClient;
+import java.util.concurrent.TimeUnit;
 
 /**
  * OData batch request factory class.
@@ -38,4 +39,11 @@ public abstract class AbstractBatchRequestFactory implements BatchRequestFactory
     public ODataBatchRequest getBatchRequest(final String serviceRoot) {
         return new ODataBatchRequest(client, client.getURIBuilder(serviceRoot).appendBatchSegment().build());
     }
+
+    @Override
+    public ODataRetrieveCoalescer getRetrieveCoalescer(
+            final String serviceRoot, final long window, final TimeUnit unit) {
+
+        return new ODataRetrieveCoalescer(client, serviceRoot, window, unit);
+    }
 }
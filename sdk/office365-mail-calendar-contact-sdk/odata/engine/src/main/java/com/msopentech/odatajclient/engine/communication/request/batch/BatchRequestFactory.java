@@ -20,6 +20,7 @@
 package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * OData batch request factory class.
@@ -33,4 +34,14 @@ public interface BatchRequestFactory extends Serializable {
      * @return new ODataBatchRequest instance.
      */
     ODataBatchRequest getBatchRequest(String serviceRoot);
+
+    /**
+     * Gets a retrieve request coalescer, sending collected requests as batch requests.
+     *
+     * @param serviceRoot service root.
+     * @param window time after which collected requests are sent; 0 to send them only explicitly.
+     * @param unit window time unit.
+     * @return new ODataRetrieveCoalescer instance.
+     */
+    ODataRetrieveCoalescer getRetrieveCoalescer(String serviceRoot, long window, TimeUnit unit);
 }
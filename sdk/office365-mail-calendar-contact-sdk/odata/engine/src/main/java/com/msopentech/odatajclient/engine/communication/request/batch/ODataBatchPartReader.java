@@ -0,0 +1,312 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.communication.request.batch;
+
+import com.msopentech.odatajclient.engine.utils.ODataConstants;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of <tt>multipart/mixed</tt> payloads, as batch and changeset responses.
+ * <p>
+ * The payload is read as raw bytes: boundary delimiters are looked for via the Knuth-Morris-Pratt algorithm and each
+ * part is exposed as a bounded <tt>InputStream</tt>, ending right before the line break preceding the next delimiter.
+ * Parts are read on demand, hence each of them can be consumed while the rest of the payload is still being received;
+ * nested multipart payloads can be read by wrapping a part into a further reader.
+ */
+public class ODataBatchPartReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Source payload.
+     */
+    private final InputStream input;
+
+    /**
+     * Delimiter to look for: line feed followed by the boundary.
+     */
+    private final byte[] delimiter;
+
+    /**
+     * Knuth-Morris-Pratt failure function of the delimiter.
+     */
+    private final int[] failure;
+
+    private byte[] buffer;
+
+    /**
+     * Index of the next byte to be returned.
+     */
+    private int pos = 0;
+
+    /**
+     * Index past the last byte read from the source payload.
+     */
+    private int limit = 0;
+
+    /**
+     * Index of the next byte to be checked against the delimiter.
+     */
+    private int scan = 0;
+
+    /**
+     * Number of delimiter bytes matched so far; starts from 1 since the first delimiter may not follow a line break.
+     */
+    private int matched = 1;
+
+    /**
+     * Index where the current part ends, if the next delimiter has been found; -1 otherwise.
+     */
+    private int found = -1;
+
+    private boolean eof = false;
+
+    /**
+     * Whether the close delimiter (or the end of the payload) has been reached.
+     */
+    private boolean ended = false;
+
+    /**
+     * Part being read; null while reading the preamble.
+     */
+    private PartInputStream current = null;
+
+    /**
+     * Constructor.
+     *
+     * @param input multipart payload.
+     * @param boundary boundary delimiter, including the leading <tt>--</tt> (see
+     * <tt>ODataBatchUtilities.getBoundaryFromHeader()</tt>).
+     */
+    public ODataBatchPartReader(final InputStream input, final String boundary) {
+        this.input = input;
+
+        try {
+            final byte[] boundaryBytes = boundary.getBytes(ODataConstants.UTF8);
+            this.delimiter = new byte[boundaryBytes.length + 1];
+            this.delimiter[0] = '\n';
+            System.arraycopy(boundaryBytes, 0, this.delimiter, 1, boundaryBytes.length);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        this.failure = new int[delimiter.length];
+        for (int i = 1, k = 0; i < delimiter.length; i++) {
+            while (k > 0 && delimiter[i] != delimiter[k]) {
+                k = failure[k - 1];
+            }
+            if (delimiter[i] == delimiter[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+
+        this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * delimiter.length)];
+    }
+
+    /**
+     * Moves to the next part, skipping whatever is left of the current one (or of the preamble).
+     * <p>
+     * Any stream previously returned by this method is not readable anymore afterwards.
+     *
+     * @return next part, including its headers; null if the close delimiter has been reached.
+     * @throws IOException in case of read error.
+     */
+    public InputStream nextPart() throws IOException {
+        if (current != null) {
+            current.closed = true;
+            current = null;
+        }
+
+        if (ended) {
+            return null;
+        }
+
+        for (int end = partEnd(); end >= 0; end = partEnd()) {
+            pos = end;
+        }
+
+        if (found < 0) {
+            // end of payload without close delimiter
+            ended = true;
+            return null;
+        }
+
+        // consume delimiter and the rest of its line: transport padding or, for close delimiter, '--'
+        pos = scan;
+        found = -1;
+        final int first = readRaw();
+        if (first == '-' && readRaw() == '-') {
+            ended = true;
+            return null;
+        }
+        for (int b = first; b != '\n' && b != -1; b = readRaw()) {
+            // skip
+        }
+        scan = pos;
+        matched = 1;
+
+        current = new PartInputStream();
+        return current;
+    }
+
+    /**
+     * Checks whether the close delimiter (or the end of the payload) has been reached.
+     *
+     * @return 'TRUE' if no more parts are available; 'FALSE' otherwise.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Looks for the next delimiter, reading from the source payload as needed.
+     *
+     * @return index past the last byte of the current part available in buffer; -1 if the current part is over.
+     * @throws IOException in case of read error.
+     */
+    private int partEnd() throws IOException {
+        while (true) {
+            if (found >= 0) {
+                return pos < found ? found : -1;
+            }
+
+            while (scan < limit && found < 0) {
+                final byte b = buffer[scan++];
+                while (matched > 0 && delimiter[matched] != b) {
+                    matched = failure[matched - 1];
+                }
+                if (delimiter[matched] == b) {
+                    matched++;
+                }
+                if (matched == delimiter.length) {
+                    // the line break preceding the delimiter belongs to the delimiter
+                    found = Math.max(pos, scan - delimiter.length);
+                    if (found > pos && buffer[found - 1] == '\r') {
+                        found--;
+                    }
+                }
+            }
+
+            if (found < 0) {
+                // hold back a partial match, and the carriage return that could precede it
+                int safe = scan - matched;
+                if (safe > pos && buffer[safe - 1] == '\r') {
+                    safe--;
+                }
+
+                if (safe > pos) {
+                    return safe;
+                }
+                if (eof) {
+                    return pos < limit ? limit : -1;
+                }
+                fill();
+            }
+        }
+    }
+
+    /**
+     * Reads a byte, regardless of delimiters.
+     *
+     * @return next byte; -1 at the end of the payload.
+     * @throws IOException in case of read error.
+     */
+    private int readRaw() throws IOException {
+        while (pos >= limit) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Discards returned bytes and reads further from the source payload.
+     *
+     * @throws IOException in case of read error.
+     */
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            scan -= pos;
+            if (found >= 0) {
+                found -= pos;
+            }
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        final int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Bounded view of a single part.
+     */
+    private class PartInputStream extends InputStream {
+
+        private boolean closed = false;
+
+        @Override
+        public int read() throws IOException {
+            if (closed || partEnd() < 0) {
+                return -1;
+            }
+            return buffer[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            final int end = closed ? -1 : partEnd();
+            if (end < 0) {
+                return -1;
+            }
+
+            final int count = Math.min(len, end - pos);
+            System.arraycopy(buffer, pos, bytes, off, count);
+            pos += count;
+            return count;
+        }
+
+        /**
+         * Makes this part unreadable; the underlying payload is left open.
+         */
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.client.http.HttpMethod;
+import com.msopentech.odatajclient.engine.communication.request.ODataPayloadBuffer;
 import com.msopentech.odatajclient.engine.communication.request.ODataStreamManager;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest.BatchStreamManager;
 import com.msopentech.odatajclient.engine.communication.request.streamed.AbstractODataStreamedRequestImpl;
@@ -28,6 +29,7 @@ import com.msopentech.odatajclient.engine.communication.response.ODataBatchRespo
 import com.msopentech.odatajclient.engine.communication.response.ODataResponseImpl;
 import com.msopentech.odatajclient.engine.utils.ODataBatchConstants;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PipedOutputStream;
 import java.net.URI;
 import java.util.ArrayList;
@@ -75,17 +77,19 @@ public class ODataBatchRequest extends AbstractODataStreamedRequestImpl<ODataBat
     @Override
     protected BatchStreamManager getStreamManager() {
         if (streamManager == null) {
-            streamManager = new BatchStreamManager(this);
+            streamManager = odataClient.getConfiguration().isBatchBuffering()
+                    ? new BatchStreamManager(this, new ODataPayloadBuffer())
+                    : new BatchStreamManager(this, new PipedOutputStream());
         }
         return (BatchStreamManager) streamManager;
     }
 
     /**
-     * Gets piped stream to be used to stream batch items.
+     * Gets stream to be used to stream batch items.
      *
-     * @return piped stream for the payload.
+     * @return stream for the payload.
      */
-    PipedOutputStream getOutputStream() {
+    public OutputStream getOutputStream() {
         return getStreamManager().getBodyStreamWriter();
     }
 
@@ -130,13 +134,30 @@ public class ODataBatchRequest extends AbstractODataStreamedRequestImpl<ODataBat
          */
         private final ODataBatchRequest req;
 
+        /**
+         * Whether the payload has been completed.
+         */
+        private boolean completed = false;
+
+        /**
+         * Private constructor.
+         *
+         * @param req batch request reference.
+         * @param output piped stream for the payload, sent while being written.
+         */
+        private BatchStreamManager(final ODataBatchRequest req, final PipedOutputStream output) {
+            super(ODataBatchRequest.this.futureWrapper, output);
+            this.req = req;
+        }
+
         /**
          * Private constructor.
          *
          * @param req batch request reference.
+         * @param buffer buffer for the payload, sent once complete.
          */
-        private BatchStreamManager(final ODataBatchRequest req) {
-            super(ODataBatchRequest.this.futureWrapper);
+        private BatchStreamManager(final ODataBatchRequest req, final ODataPayloadBuffer buffer) {
+            super(ODataBatchRequest.this.futureWrapper, buffer);
             this.req = req;
         }
 
@@ -189,15 +210,36 @@ public class ODataBatchRequest extends AbstractODataStreamedRequestImpl<ODataBat
             }
         }
 
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        protected void complete() {
+            if (!completed) {
+                completed = true;
+
+                closeCurrentItem();
+                streamCloseDelimiter();
+                finalizeBody();
+
+                if (getBodyBuffer() != null) {
+                    submit(getBodyBuffer().toEntity());
+                }
+            }
+        }
+
         /**
          * {@inheritDoc }
          */
         @Override
         protected ODataBatchResponse getResponse(final long timeout, final TimeUnit unit) {
-            closeCurrentItem();
-            streamCloseDelimiter();
-            finalizeBody();
-            return new ODataBatchResponseImpl(httpClient, getHttpResponse(timeout, unit));
+            complete();
+
+            final HttpResponse res = getHttpResponse(timeout, unit);
+            if (getBodyBuffer() != null) {
+                getBodyBuffer().release();
+            }
+            return new ODataBatchResponseImpl(httpClient, res);
         }
 
         /**
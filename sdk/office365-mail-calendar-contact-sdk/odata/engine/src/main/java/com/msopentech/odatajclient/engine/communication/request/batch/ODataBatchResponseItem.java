@@ -20,9 +20,11 @@
 package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,9 +55,9 @@ public abstract class ODataBatchResponseItem implements Iterator<ODataResponse>
     private final boolean changeset;
 
     /**
-     * Batch response line iterator.
+     * Batch response part.
      */
-    protected ODataBatchLineIterator batchLineIterator;
+    protected InputStream part;
 
     /**
      * Batch boundary.
@@ -92,15 +94,15 @@ public abstract class ODataBatchResponseItem implements Iterator<ODataResponse>
     /**
      * Initializes ODataResponse template from batch response item part.
      *
-     * @param batchLineIterator batch response line iterator.
-     * @param boundary batch response boundary.
+     * @param part batch response part, positioned after the part headers.
+     * @param boundary batch response boundary (changeset boundary, in case of changeset).
      */
-    void initFromBatch(final ODataBatchLineIterator batchLineIterator, final String boundary) {
+    void initFromBatch(final InputStream part, final String boundary) {
         if (closed) {
             throw new IllegalStateException("Invalid batch item because explicitely closed");
         }
         LOG.debug("Init from batch - boundary '{}'", boundary);
-        this.batchLineIterator = batchLineIterator;
+        this.part = part;
         this.boundary = boundary;
     }
 
@@ -145,6 +147,7 @@ public abstract class ODataBatchResponseItem implements Iterator<ODataResponse>
         for (ODataResponse response : responses.values()) {
             response.close();
         }
+        IOUtils.closeQuietly(part);
         closed = true;
     }
 }
@@ -21,14 +21,13 @@ package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import com.msopentech.odatajclient.engine.communication.header.ODataHeaders;
 import com.msopentech.odatajclient.engine.communication.response.ODataBatchResponse;
-import com.msopentech.odatajclient.engine.utils.ODataConstants;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,9 +42,9 @@ public class ODataBatchResponseManager implements Iterator<ODataBatchResponseIte
     private static final Logger LOG = LoggerFactory.getLogger(ODataBatchResponseManager.class);
 
     /**
-     * Batch response line iterator.
+     * Batch response part reader.
      */
-    private final ODataBatchLineIterator batchLineIterator;
+    private final ODataBatchPartReader batchPartReader;
 
     /**
      * Batch boundary.
@@ -69,19 +68,14 @@ public class ODataBatchResponseManager implements Iterator<ODataBatchResponseIte
      * @param expectedItems expected batch response items.
      */
     public ODataBatchResponseManager(final ODataBatchResponse res, final List<ODataBatchResponseItem> expectedItems) {
-        try {
-            this.expectedItemsIterator = expectedItems.iterator();
-            this.batchLineIterator = new ODataBatchLineIterator(
-                    IOUtils.lineIterator(res.getRawResponse(), ODataConstants.UTF8));
-
-            // search for boundary
-            batchBoundary = ODataBatchUtilities.getBoundaryFromHeader(
-                    res.getHeader(ODataHeaders.HeaderName.contentType));
-            LOG.debug("Retrieved batch response bondary '{}'", batchBoundary);
-        } catch (IOException e) {
-            LOG.error("Error parsing batch response", e);
-            throw new IllegalStateException(e);
-        }
+        this.expectedItemsIterator = expectedItems.iterator();
+
+        // search for boundary
+        batchBoundary = ODataBatchUtilities.getBoundaryFromHeader(
+                res.getHeader(ODataHeaders.HeaderName.contentType));
+        LOG.debug("Retrieved batch response bondary '{}'", batchBoundary);
+
+        this.batchPartReader = new ODataBatchPartReader(res.getRawResponse(), batchBoundary);
     }
 
     /**
@@ -107,8 +101,20 @@ public class ODataBatchResponseManager implements Iterator<ODataBatchResponseIte
 
         current = expectedItemsIterator.next();
 
-        final Map<String, Collection<String>> nextItemHeaders =
-                ODataBatchUtilities.nextItemHeaders(batchLineIterator, batchBoundary);
+        final InputStream part;
+        try {
+            part = batchPartReader.nextPart();
+        } catch (IOException e) {
+            LOG.error("Error parsing batch response", e);
+            throw new IllegalStateException(e);
+        }
+
+        if (part == null) {
+            throw new IllegalStateException("Expected item not found");
+        }
+
+        final Map<String, Collection<String>> nextItemHeaders = ODataBatchUtilities.readHeaders(part);
+        LOG.debug("Retrieved batch item headers {}", nextItemHeaders);
 
         switch (ODataBatchUtilities.getItemType(nextItemHeaders)) {
             case CHANGESET:
@@ -117,7 +123,7 @@ public class ODataBatchResponseManager implements Iterator<ODataBatchResponseIte
                 }
 
                 current.initFromBatch(
-                        batchLineIterator,
+                        part,
                         ODataBatchUtilities.getBoundaryFromHeader(
                         nextItemHeaders.get(ODataHeaders.HeaderName.contentType.toString())));
                 break;
@@ -127,9 +133,7 @@ public class ODataBatchResponseManager implements Iterator<ODataBatchResponseIte
                     throw new IllegalStateException("Unexpected batch item");
                 }
 
-                current.initFromBatch(
-                        batchLineIterator,
-                        batchBoundary);
+                current.initFromBatch(part, batchBoundary);
                 break;
             default:
                 throw new IllegalStateException("Expected item not found");
@@ -20,13 +20,11 @@
 package com.msopentech.odatajclient.engine.communication.request.batch;
 
 import com.msopentech.odatajclient.engine.communication.header.ODataHeaders;
-import com.msopentech.odatajclient.engine.communication.request.ODataStreamer;
 import com.msopentech.odatajclient.engine.utils.ODataBatchConstants;
 import com.msopentech.odatajclient.engine.utils.ODataConstants;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashSet;
@@ -34,8 +32,6 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,140 +61,64 @@ public class ODataBatchUtilities {
             Pattern.compile("HTTP/\\d\\.\\d (\\d+) (.*)", Pattern.CASE_INSENSITIVE);
 
     /**
-     * Reads batch part taking source and delimiter (boundary) from given batch controller.
-     * <p>
-     * Usually used to consume/discard useless lines.
-     *
-     * @param batchController batch controller.
-     * @param checkCurrent if 'TRUE' the current line will be included into the delimiter verification.
-     * @return latest read line.
-     */
-    public static String readBatchPart(final ODataBatchController batchController, final boolean checkCurrent) {
-        return readBatchPart(batchController, null, -1, checkCurrent);
-    }
-
-    /**
-     * Reads the given number of line from the given batch wrapped into the batch controller.
-     * <p>
-     * Usually used to consume/discard useless lines.
-     *
-     * @param batchController batch controller.
-     * @param count number of batch line to be read.
-     * @return latest read line.
+     * Initial size of line buffers.
      */
-    public static String readBatchPart(final ODataBatchController batchController, final int count) {
-        return readBatchPart(batchController, null, count, true);
-    }
+    private static final int LINE_SIZE = 128;
 
     /**
-     * Reads batch part taking source and delimiter (boundary) from given batch controller.
-     * <p>
-     * Usually used to read an entire batch part.
+     * Reads a line from the given batch part.
      *
-     * @param batchController batch controller.
-     * @param os destination stream of batch part (null to discard).
-     * @param checkCurrent if 'TRUE' the current line will be included into the delimiter verification.
-     * @return latest read line.
+     * @param part batch part.
+     * @return read line, without line terminator; null if the end of the part has been reached.
      */
-    public static String readBatchPart(
-            final ODataBatchController controller, final OutputStream os, final boolean checkCurrent) {
-
-        return readBatchPart(controller, os, -1, checkCurrent);
-    }
-
-    /**
-     * Reads batch part taking source and delimiter (boundary) from given batch controller.
-     * <p>
-     * Usually used to read an entire batch part.
-     *
-     * @param batchController batch controller.
-     * @param os destination stream of batch part (null to discard).
-     * @param count number of batch line to be read.
-     * @param checkCurrent if 'TRUE' the current line will be included into the delimiter verification.
-     * @return latest read line.
-     */
-    public static String readBatchPart(
-            final ODataBatchController controller, final OutputStream os, final int count, final boolean checkCurrent) {
-
-        String currentLine;
-
-        synchronized (controller.getBatchLineIterator()) {
-            currentLine = checkCurrent ? controller.getBatchLineIterator().getCurrent() : null;
-
-            if (count < 0) {
-                try {
-
-                    boolean notEndLine = isNotEndLine(controller, currentLine);
-
-                    while (controller.isValidBatch() && notEndLine && controller.getBatchLineIterator().hasNext()) {
-
-                        currentLine = controller.getBatchLineIterator().nextLine();
-                        LOG.debug("Read line '{}' (end-line '{}')", currentLine, controller.getBoundary());
-
-                        notEndLine = isNotEndLine(controller, currentLine);
-
-                        if (notEndLine && os != null) {
-                            os.write(currentLine.getBytes(ODataConstants.UTF8));
-                            os.write(ODataStreamer.CRLF);
-                        }
-                    }
-
-                } catch (IOException e) {
-                    LOG.error("Error reading batch part", e);
-                    throw new IllegalStateException(e);
-                }
+    public static String readLine(final InputStream part) {
+        try {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream(LINE_SIZE);
 
-            } else {
-                for (int i = 0;
-                        controller.isValidBatch() && controller.getBatchLineIterator().hasNext() && i < count; i++) {
-                    currentLine = controller.getBatchLineIterator().nextLine();
-                }
+            int b = part.read();
+            if (b == -1) {
+                return null;
+            }
+            for (; b != -1 && b != '\n'; b = part.read()) {
+                line.write(b);
             }
-        }
 
-        return currentLine;
+            final String res = line.toString(ODataConstants.UTF8);
+            LOG.debug("Read line '{}'", res);
+            return res.endsWith("\r") ? res.substring(0, res.length() - 1) : res;
+        } catch (IOException e) {
+            LOG.error("Error reading batch part", e);
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
-     * Reads headers from the batch starting from the given position.
+     * Reads headers from the given batch part, up to the first blank line.
      *
-     * @param iterator batch iterator.
+     * @param part batch part.
      * @return Map of header name in header values.
      */
-    public static Map<String, Collection<String>> readHeaders(final ODataBatchLineIterator iterator) {
+    public static Map<String, Collection<String>> readHeaders(final InputStream part) {
         final Map<String, Collection<String>> target =
                 new TreeMap<String, Collection<String>>(String.CASE_INSENSITIVE_ORDER);
 
-        readHeaders(iterator, target);
+        readHeaders(part, target);
         return target;
     }
 
     /**
-     * Reads headers from the batch starting from the given position.
+     * Reads headers from the given batch part, up to the first blank line.
      * <p>
      * Retrieved headers will be added to the map given by target parameter.
      *
-     * @param iterator batch iterator.
+     * @param part batch part.
      * @param target destination of the retrieved headers.
      */
-    public static void readHeaders(
-            final ODataBatchLineIterator iterator, final Map<String, Collection<String>> target) {
-
-        try {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            readBatchPart(new ODataBatchController(iterator, null), baos, true);
-
-            final LineIterator headers = IOUtils.lineIterator(new ByteArrayInputStream(baos.toByteArray()),
-                    ODataConstants.UTF8);
-            while (headers.hasNext()) {
-                final String line = headers.nextLine().trim();
-                if (StringUtils.isNotBlank(line)) {
-                    addHeaderLine(line, target);
-                }
-            }
-        } catch (Exception e) {
-            LOG.error("Error retrieving headers", e);
-            throw new IllegalStateException(e);
+    public static void readHeaders(final InputStream part, final Map<String, Collection<String>> target) {
+        String line = readLine(part);
+        while (StringUtils.isNotBlank(line)) {
+            addHeaderLine(line.trim(), target);
+            line = readLine(part);
         }
     }
 
@@ -250,16 +170,16 @@ public class ODataBatchUtilities {
     }
 
     /**
-     * Retrieves response line from the given position.
+     * Retrieves response line from the given batch part.
      *
-     * @param iterator batch iterator.
+     * @param part batch part.
      * @return retrieved response line.
      */
-    public static Map.Entry<Integer, String> readResponseLine(final ODataBatchLineIterator iterator) {
-        final String line = readBatchPart(new ODataBatchController(iterator, null), 1);
+    public static Map.Entry<Integer, String> readResponseLine(final InputStream part) {
+        final String line = readLine(part);
         LOG.debug("Response line '{}'", line);
 
-        final Matcher matcher = RESPONSE_PATTERN.matcher(line.trim());
+        final Matcher matcher = RESPONSE_PATTERN.matcher(StringUtils.trimToEmpty(line));
 
         if (matcher.matches()) {
             return new AbstractMap.SimpleEntry<Integer, String>(Integer.valueOf(matcher.group(1)), matcher.group(2));
@@ -268,29 +188,6 @@ public class ODataBatchUtilities {
         throw new IllegalArgumentException("Invalid response line '" + line + "'");
     }
 
-    /**
-     * Retrieves headers of the next batch item.
-     *
-     * @param iterator batch line iterator.
-     * @param boundary batch boundary.
-     * @return batch item headers.
-     */
-    public static Map<String, Collection<String>> nextItemHeaders(
-            final ODataBatchLineIterator iterator, final String boundary) {
-
-        final Map<String, Collection<String>> headers =
-                new TreeMap<String, Collection<String>>(String.CASE_INSENSITIVE_ORDER);
-
-        final String line = ODataBatchUtilities.readBatchPart(new ODataBatchController(iterator, boundary), true);
-
-        if (line != null && line.trim().equals(boundary)) {
-            ODataBatchUtilities.readHeaders(iterator, headers);
-        }
-
-        LOG.debug("Retrieved batch item headers {}", headers);
-        return headers;
-    }
-
     /**
      * Retrieves item type from item headers.
      *
@@ -315,17 +212,4 @@ public class ODataBatchUtilities {
         LOG.debug("Retrieved next item type {}", nextItemType);
         return nextItemType;
     }
-
-    /**
-     * Checks if the given line is the expected end-line.
-     *
-     * @param controller batch controller.
-     * @param line line to be checked.
-     * @return 'TRUE' if the line is not the end-line; 'FALSE' otherwise.
-     */
-    private static boolean isNotEndLine(final ODataBatchController controller, final String line) {
-        return line == null
-                || (StringUtils.isBlank(controller.getBoundary()) && StringUtils.isNotBlank(line))
-                || (StringUtils.isNotBlank(controller.getBoundary()) && !line.startsWith(controller.getBoundary()));
-    }
 }
@@ -86,6 +86,21 @@ public class ODataChangeset extends ODataBatchRequestItem {
      * @return current item instance.
      */
     public ODataChangeset addRequest(final ODataBatchableRequest request) {
+        return addRequest(request, contentId + 1);
+    }
+
+    /**
+     * Serialize and send the given request, with the given content id.
+     * <p>
+     * Content ids must be unique within the changeset, but need not to be consecutive: this allows a changeset to
+     * hold a subset of a larger set of changes, while keeping their <tt>$&lt;content id&gt;</tt> references.
+     * An IllegalArgumentException is thrown in case of GET request.
+     *
+     * @param request request to be serialized.
+     * @param contentId content id.
+     * @return current item instance.
+     */
+    public ODataChangeset addRequest(final ODataBatchableRequest request, final int contentId) {
         if (!isOpen()) {
             throw new IllegalStateException("Current batch item is closed");
         }
@@ -104,7 +119,7 @@ public class ODataChangeset extends ODataBatchRequestItem {
             hasStreamedSomething = true;
         }
 
-        contentId++;
+        this.contentId = contentId;
 
         // preamble
         newLine();
@@ -23,6 +23,8 @@ import static com.msopentech.odatajclient.engine.communication.request.batch.ODa
 
 import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
 import com.msopentech.odatajclient.engine.utils.ODataBatchConstants;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -37,6 +39,11 @@ public class ODataChangesetResponseItem extends ODataBatchResponseItem {
      */
     private ODataResponse current = null;
 
+    /**
+     * Changeset part reader, created once the first changeset response is requested.
+     */
+    private ODataBatchPartReader changesetReader = null;
+
     /**
      * Constructor.
      */
@@ -81,17 +88,29 @@ public class ODataChangesetResponseItem extends ODataBatchResponseItem {
             throw new NoSuchElementException("No item found");
         }
 
-        final Map<String, Collection<String>> nextItemHeaders =
-                ODataBatchUtilities.nextItemHeaders(batchLineIterator, boundary);
+        if (changesetReader == null) {
+            changesetReader = new ODataBatchPartReader(part, boundary);
+        }
 
-        if (nextItemHeaders.isEmpty()) {
+        final InputStream changesetPart;
+        try {
+            changesetPart = changesetReader.nextPart();
+        } catch (IOException e) {
+            LOG.error("Error parsing changeset response", e);
+            throw new IllegalStateException(e);
+        }
+
+        if (changesetPart == null) {
             throw new IllegalStateException("Expected item not found");
         }
 
-        final Map.Entry<Integer, String> responseLine = ODataBatchUtilities.readResponseLine(batchLineIterator);
+        final Map<String, Collection<String>> nextItemHeaders = ODataBatchUtilities.readHeaders(changesetPart);
+        LOG.debug("Retrieved changeset item headers {}", nextItemHeaders);
+
+        final Map.Entry<Integer, String> responseLine = ODataBatchUtilities.readResponseLine(changesetPart);
         LOG.debug("Retrieved item response {}", responseLine);
 
-        final Map<String, Collection<String>> headers = ODataBatchUtilities.readHeaders(batchLineIterator);
+        final Map<String, Collection<String>> headers = ODataBatchUtilities.readHeaders(changesetPart);
         LOG.debug("Retrieved item headers {}", headers);
 
         Collection<String> contentId = nextItemHeaders.get(ODataBatchConstants.CHANGESET_CONTENT_ID_NAME);
@@ -110,7 +129,7 @@ public class ODataChangesetResponseItem extends ODataBatchResponseItem {
             throw new IllegalStateException("Unexpected '" + contentId + "' item found");
         }
 
-        current.initFromBatch(responseLine, headers, batchLineIterator, boundary);
+        current.initFromBatch(responseLine, headers, changesetPart);
 
         if (current.getStatusCode() >= 400) {
             // found error .... consume expeted items
@@ -0,0 +1,323 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.communication.request.batch;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.communication.ODataClientErrorException;
+import com.msopentech.odatajclient.engine.communication.ODataServerErrorException;
+import com.msopentech.odatajclient.engine.communication.request.ODataBasicRequest;
+import com.msopentech.odatajclient.engine.communication.response.ODataBatchResponse;
+import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
+import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
+import com.msopentech.odatajclient.engine.data.ODataError;
+import com.msopentech.org.apache.http.HttpVersion;
+import com.msopentech.org.apache.http.StatusLine;
+import com.msopentech.org.apache.http.message.BasicStatusLine;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects retrieve requests and sends them as a single batch request, in order to save round trips.
+ * <p>
+ * Requests are collected from their submission up to the explicit invocation of <tt>flush()</tt> or, if a positive
+ * window has been given, up to the end of the window started by the first of them; each caller gets back a future,
+ * completed with the response found in the matching batch item.
+ * <p>
+ * Batch requests are always sent from threads owned by the coalescer, never from the submitting or flushing thread
+ * nor from the client executor: callers may thus wait on their futures from any thread, including those of
+ * <tt>Configuration.getExecutor()</tt>, or register callbacks on them.
+ * <p>
+ * Response bodies are read while going through the batch response: requests whose response body is a raw stream
+ * (e.g. media) are not supported.
+ */
+public class ODataRetrieveCoalescer {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ODataRetrieveCoalescer.class);
+
+    /**
+     * Maximum number of requests sent in a single batch: further requests make the current batch to be sent.
+     */
+    static final int MAX_BATCH_ITEMS = 100;
+
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ODataRetrieveCoalescer-timer"));
+
+    /**
+     * Sends batch requests.
+     */
+    private static final ExecutorService SENDER =
+            Executors.newCachedThreadPool(new DaemonThreadFactory("ODataRetrieveCoalescer-sender"));
+
+    private final ODataClient client;
+
+    private final String serviceRoot;
+
+    private final long window;
+
+    private final TimeUnit unit;
+
+    private List<Pending<?>> pending = new ArrayList<Pending<?>>();
+
+    private ScheduledFuture<?> scheduled = null;
+
+    /**
+     * Constructor.
+     *
+     * @param client OData client.
+     * @param serviceRoot service root, where batch requests are sent.
+     * @param window time after which collected requests are sent; 0 to send them only via <tt>flush()</tt>.
+     * @param unit window time unit.
+     */
+    public ODataRetrieveCoalescer(
+            final ODataClient client, final String serviceRoot, final long window, final TimeUnit unit) {
+
+        this.client = client;
+        this.serviceRoot = serviceRoot;
+        this.window = window;
+        this.unit = unit;
+    }
+
+    /**
+     * Collects the given request, to be sent with the next batch.
+     *
+     * @param <V> response body type.
+     * @param <R> request type.
+     * @param request retrieve request.
+     * @return future response, completed once the batch response has been received.
+     */
+    public <V, R extends ODataBasicRequest<ODataRetrieveResponse<V>, ?> & ODataBatchableRequest>
+            ListenableFuture<ODataRetrieveResponse<V>> submit(final R request) {
+
+        final Pending<V> item = new Pending<V>(request, request);
+
+        List<Pending<?>> full = null;
+        synchronized (this) {
+            pending.add(item);
+
+            if (pending.size() >= MAX_BATCH_ITEMS) {
+                full = takePending();
+            } else if (scheduled == null && window > 0) {
+                scheduled = TIMER.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, window, unit);
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+
+        return item.future;
+    }
+
+    /**
+     * Sends all collected requests.
+     * <p>
+     * Requests are sent in background: this method does not wait for their responses, which complete the futures
+     * returned by <tt>submit()</tt>. A single request is executed as is, without being wrapped into a batch request.
+     */
+    public void flush() {
+        final List<Pending<?>> items;
+        synchronized (this) {
+            items = takePending();
+        }
+
+        send(items);
+    }
+
+    /**
+     * Takes out the collected requests, cancelling the scheduled flush; to be invoked while holding this monitor.
+     */
+    private List<Pending<?>> takePending() {
+        final List<Pending<?>> items = pending;
+        pending = new ArrayList<Pending<?>>();
+
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+
+        return items;
+    }
+
+    private void send(final List<Pending<?>> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        SENDER.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                execute(items);
+            }
+        });
+    }
+
+    /**
+     * Executes the given requests, as a batch request if more than one, and completes their futures.
+     *
+     * @param items requests to be executed.
+     */
+    void execute(final List<Pending<?>> items) {
+        if (items.size() == 1) {
+            items.get(0).execute();
+            return;
+        }
+
+        LOG.debug("Sending {} coalesced retrieve requests to {}", items.size(), serviceRoot);
+
+        ODataBatchResponse res = null;
+        try {
+            final ODataBatchRequest req = client.getBatchRequestFactory().getBatchRequest(serviceRoot);
+            final ODataBatchRequest.BatchStreamManager payload = req.execute(SENDER);
+            for (Pending<?> item : items) {
+                payload.addRetrieve().setRequest(item.batchable);
+            }
+
+            res = payload.getResponse();
+            final Iterator<ODataBatchResponseItem> resItems = res.getBody();
+            for (Pending<?> item : items) {
+                if (!resItems.hasNext()) {
+                    throw new IllegalStateException("Missing batch response item");
+                }
+                item.complete(resItems.next());
+            }
+        } catch (Throwable t) {
+            LOG.error("Error sending coalesced retrieve requests", t);
+            for (Pending<?> item : items) {
+                item.future.setException(t);
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        } finally {
+            if (res != null) {
+                res.close();
+            }
+        }
+    }
+
+    /**
+     * Collected request, with its future response.
+     */
+    class Pending<V> {
+
+        final SettableFuture<ODataRetrieveResponse<V>> future = SettableFuture.create();
+
+        private final ODataBasicRequest<ODataRetrieveResponse<V>, ?> request;
+
+        private final ODataBatchableRequest batchable;
+
+        Pending(final ODataBasicRequest<ODataRetrieveResponse<V>, ?> request, final ODataBatchableRequest batchable) {
+            this.request = request;
+            this.batchable = batchable;
+        }
+
+        void execute() {
+            try {
+                future.set(request.execute());
+            } catch (Throwable t) {
+                future.setException(t);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(final ODataBatchResponseItem item) {
+            try {
+                final ODataRetrieveResponse<V> res = (ODataRetrieveResponse<V>) item.next();
+                checkStatus(res);
+
+                // reads the body before moving on to the next batch item
+                res.getBody();
+                future.set(res);
+            } catch (RuntimeException e) {
+                future.setException(e);
+            }
+        }
+
+        private void checkStatus(final ODataResponse res) {
+            if (res.getStatusCode() < 400) {
+                return;
+            }
+
+            final StatusLine statusLine =
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, res.getStatusCode(), res.getStatusMessage());
+            try {
+                if (res.getStatusCode() >= 500) {
+                    throw new ODataServerErrorException(statusLine);
+                }
+
+                final ODataError error;
+                try {
+                    error = client.getReader().readError(res.getRawResponse(),
+                            !StringUtils.containsIgnoreCase(res.getContentType(), "json"));
+                } catch (RuntimeException e) {
+                    LOG.warn("Error deserializing error response", e);
+                    throw new ODataClientErrorException(statusLine);
+                }
+                throw new ODataClientErrorException(statusLine, error);
+            } finally {
+                res.close();
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon threads, not to prevent the JVM from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -27,12 +27,12 @@ import com.msopentech.odatajclient.engine.communication.response.ODataEntityCrea
 import com.msopentech.odatajclient.engine.communication.response.ODataResponseImpl;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
-import com.msopentech.odatajclient.engine.utils.URIUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 
-import org.apache.commons.io.IOUtils;
 import com.msopentech.org.apache.http.HttpResponse;
 import com.msopentech.org.apache.http.client.HttpClient;
 import com.msopentech.org.apache.http.client.methods.HttpPost;
@@ -72,15 +72,22 @@ public class ODataEntityCreateRequest extends AbstractODataBasicRequestImpl<ODat
      * {@inheritDoc }
      */
     @Override
-    public ODataEntityCreateResponse execute() {
-        final InputStream input = getPayload();
-        ((HttpPost) request).setEntity(URIUtils.buildInputStreamEntity(odataClient, input));
+    protected void writePayload(final OutputStream output) throws IOException {
+        odataClient.getWriter().writeEntity(entity, ODataPubFormat.fromString(getContentType()), true, output);
+    }
 
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public ODataEntityCreateResponse execute() {
         try {
-            return new ODataEntityCreateResponseImpl(httpClient, doExecute());
-        } finally {
-            IOUtils.closeQuietly(input);
+            ((HttpPost) request).setEntity(buildPayloadEntity());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
+
+        return new ODataEntityCreateResponseImpl(httpClient, doExecute());
     }
 
     /**
@@ -27,12 +27,12 @@ import com.msopentech.odatajclient.engine.communication.response.ODataEntityUpda
 import com.msopentech.odatajclient.engine.communication.response.ODataResponseImpl;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
-import com.msopentech.odatajclient.engine.utils.URIUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 
-import org.apache.commons.io.IOUtils;
 import com.msopentech.org.apache.http.HttpResponse;
 import com.msopentech.org.apache.http.client.HttpClient;
 import com.msopentech.org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
@@ -68,14 +68,13 @@ public class ODataEntityUpdateRequest extends AbstractODataBasicRequestImpl<ODat
      */
     @Override
     public ODataEntityUpdateResponse execute() {
-        final InputStream input = getPayload();
-        ((HttpEntityEnclosingRequestBase) request).setEntity(URIUtils.buildInputStreamEntity(odataClient, input));
-
         try {
-            return new ODataEntityUpdateResponseImpl(httpClient, doExecute());
-        } finally {
-            IOUtils.closeQuietly(input);
+            ((HttpEntityEnclosingRequestBase) request).setEntity(buildPayloadEntity());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
+
+        return new ODataEntityUpdateResponseImpl(httpClient, doExecute());
     }
 
     /**
@@ -86,6 +85,14 @@ public class ODataEntityUpdateRequest extends AbstractODataBasicRequestImpl<ODat
         return odataClient.getWriter().writeEntity(changes, ODataPubFormat.fromString(getContentType()));
     }
 
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void writePayload(final OutputStream output) throws IOException {
+        odataClient.getWriter().writeEntity(changes, ODataPubFormat.fromString(getContentType()), true, output);
+    }
+
     /**
      * Response class about an ODataEntityUpdateRequest.
      */
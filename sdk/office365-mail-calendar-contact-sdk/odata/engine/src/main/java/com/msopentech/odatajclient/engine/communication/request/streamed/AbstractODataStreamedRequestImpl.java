@@ -34,9 +34,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import com.msopentech.org.apache.http.HttpEntity;
 import com.msopentech.org.apache.http.HttpResponse;
 import com.msopentech.org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import com.msopentech.org.apache.http.entity.ContentType;
@@ -61,6 +63,11 @@ public abstract class AbstractODataStreamedRequestImpl<V extends ODataResponse,
      */
     protected final Wrapper<Future<HttpResponse>> futureWrapper = new Wrapper<Future<HttpResponse>>();
 
+    /**
+     * Executor sending the request; null to use the configured one.
+     */
+    private ExecutorService executor;
+
     /**
      * Constructor.
      *
@@ -91,19 +98,44 @@ public abstract class AbstractODataStreamedRequestImpl<V extends ODataResponse,
     public T execute() {
         streamManager = getStreamManager();
 
-        ((HttpEntityEnclosingRequestBase) request).setEntity(
-                URIUtils.buildInputStreamEntity(odataClient, streamManager.getBody()));
+        // buffered payloads are sent once complete: see ODataStreamManager.complete()
+        if (streamManager.getBodyBuffer() == null) {
+            submit(URIUtils.buildInputStreamEntity(odataClient, streamManager.getBody()));
+        }
 
-        futureWrapper.setWrapped(odataClient.getConfiguration().getExecutor().submit(new Callable<HttpResponse>() {
+        // returns the stream manager object
+        return (T) streamManager;
+    }
+
+    /**
+     * Like <tt>execute()</tt>, but sends the request via the given executor instead of
+     * <tt>Configuration.getExecutor()</tt>, e.g. not to compete with tasks waiting for the response on that.
+     *
+     * @param executor executor sending the request.
+     * @return OData request payload management object.
+     */
+    public T execute(final ExecutorService executor) {
+        this.executor = executor;
+        return execute();
+    }
+
+    /**
+     * Sends the request with the given payload, via the configured executor or the one given to
+     * <tt>execute(ExecutorService)</tt>.
+     *
+     * @param entity request payload.
+     */
+    protected void submit(final HttpEntity entity) {
+        ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
+
+        final ExecutorService sender = executor == null ? odataClient.getConfiguration().getExecutor() : executor;
+        futureWrapper.setWrapped(sender.submit(new Callable<HttpResponse>() {
 
             @Override
             public HttpResponse call() throws Exception {
                 return doExecute();
             }
         }));
-
-        // returns the stream manager object
-        return (T) streamManager;
     }
 
     /**
@@ -21,15 +21,9 @@ package com.msopentech.odatajclient.engine.communication.response;
 
 import com.msopentech.odatajclient.engine.client.http.NoContentException;
 import com.msopentech.odatajclient.engine.communication.header.ODataHeaders;
-import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchUtilities;
-import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchController;
-import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchLineIterator;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
@@ -40,6 +34,7 @@ import com.msopentech.org.apache.http.Header;
 import com.msopentech.org.apache.http.HttpResponse;
 import com.msopentech.org.apache.http.HttpStatus;
 import com.msopentech.org.apache.http.client.HttpClient;
+import com.msopentech.org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -88,11 +83,6 @@ public abstract class ODataResponseImpl implements ODataResponse {
      */
     private boolean hasBeenInitialized = false;
 
-    /**
-     * Batch info (if to be batched).
-     */
-    private ODataBatchController batchInfo = null;
-
     /**
      * Constructor.
      */
@@ -205,8 +195,7 @@ public abstract class ODataResponseImpl implements ODataResponse {
     public ODataResponse initFromBatch(
             final Map.Entry<Integer, String> responseLine,
             final Map<String, Collection<String>> headers,
-            final ODataBatchLineIterator batchLineIterator,
-            final String boundary) {
+            final InputStream payload) {
 
         if (hasBeenInitialized) {
             throw new IllegalStateException("Request already initialized");
@@ -214,7 +203,7 @@ public abstract class ODataResponseImpl implements ODataResponse {
 
         this.hasBeenInitialized = true;
 
-        this.batchInfo = new ODataBatchController(batchLineIterator, boundary);
+        this.payload = payload;
 
         this.statusCode = responseLine.getKey();
         this.statusMessage = responseLine.getValue();
@@ -228,15 +217,11 @@ public abstract class ODataResponseImpl implements ODataResponse {
      */
     @Override
     public void close() {
-        if (client == null) {
-            IOUtils.closeQuietly(payload);
-        } else {
+        // closing the payload releases the underlying connection (back to the pool, if any)
+        IOUtils.closeQuietly(payload);
+        if (client != null && !(client.getConnectionManager() instanceof PoolingClientConnectionManager)) {
             this.client.getConnectionManager().shutdown();
         }
-
-        if (batchInfo != null) {
-            batchInfo.setValidBatch(false);
-        }
     }
 
     /**
@@ -248,33 +233,6 @@ public abstract class ODataResponseImpl implements ODataResponse {
             throw new NoContentException();
         }
 
-        if (payload == null && batchInfo.isValidBatch()) {
-            // get input stream till the end of item
-            payload = new PipedInputStream();
-
-            try {
-                final PipedOutputStream os = new PipedOutputStream((PipedInputStream) payload);
-
-                new Thread(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        try {
-                            ODataBatchUtilities.readBatchPart(batchInfo, os, true);
-                        } catch (Exception e) {
-                            LOG.error("Error streaming batch item payload", e);
-                        } finally {
-                            IOUtils.closeQuietly(os);
-                        }
-                    }
-                }).start();
-
-            } catch (IOException e) {
-                LOG.error("Error streaming payload response", e);
-                throw new IllegalStateException(e);
-            }
-        }
-
         return payload;
     }
     
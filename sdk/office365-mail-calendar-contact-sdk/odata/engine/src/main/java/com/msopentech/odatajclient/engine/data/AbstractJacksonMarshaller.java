@@ -22,18 +22,70 @@ package com.msopentech.odatajclient.engine.data;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.InjectableValues;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.data.json.InjectableSerializerProvider;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 abstract class AbstractJacksonMarshaller {
 
     protected final ODataClient client;
 
+    /**
+     * Mapper shared by all (de)serializations performed via this instance: building a mapper is expensive, and
+     * its serializer and deserializer caches are warmed up by use.
+     */
+    private volatile ObjectMapper mapper;
+
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
     public AbstractJacksonMarshaller(final ODataClient client) {
         this.client = client;
     }
 
     protected ObjectMapper getObjectMapper() {
+        // concurrent first invocations might build more than one mapper, but only one of them will be kept
+        if (mapper == null) {
+            mapper = newObjectMapper();
+        }
+        return mapper;
+    }
+
+    /**
+     * Gets a thread-safe reader for the given type.
+     *
+     * @param type type to be read.
+     * @return reader for the given type.
+     */
+    protected ObjectReader getReader(final Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = getObjectMapper().reader(type);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Gets a thread-safe writer for the given type.
+     *
+     * @param type type to be written.
+     * @return writer for the given type.
+     */
+    protected ObjectWriter getWriter(final Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = getObjectMapper().writerWithType(type);
+            writers.putIfAbsent(type, writer);
+        }
+        return writer;
+    }
+
+    private ObjectMapper newObjectMapper() {
         final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
         mapper.setInjectableValues(new InjectableValues.Std().addValue(ODataClient.class, client));
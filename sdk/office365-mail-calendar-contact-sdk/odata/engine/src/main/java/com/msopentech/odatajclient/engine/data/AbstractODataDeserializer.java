@@ -24,6 +24,8 @@ import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +39,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.InjectableValues;
 import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
 import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
 import com.fasterxml.jackson.dataformat.xml.XmlFactory;
@@ -45,6 +49,7 @@ import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.data.atom.AtomDeserializer;
 import com.msopentech.odatajclient.engine.data.atom.AtomEntry;
 import com.msopentech.odatajclient.engine.data.atom.AtomFeed;
+import com.msopentech.odatajclient.engine.data.atom.AtomStreamingDeserializer;
 import com.msopentech.odatajclient.engine.data.json.AbstractJSONEntry;
 import com.msopentech.odatajclient.engine.data.json.AbstractJSONFeed;
 import com.msopentech.odatajclient.engine.data.json.JSONLinkCollection;
@@ -63,10 +68,21 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractODataDeserializer.class);
 
+    private volatile XmlMapper xmlMapper;
+
+    private final ConcurrentMap<Class<?>, ObjectReader> xmlReaders = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    private volatile ObjectReader xmlErrorReader;
+
     public AbstractODataDeserializer(final ODataClient client) {
         super(client);
     }
 
+    @Override
+    public ObjectMapper getJSONMapper() {
+        return getObjectMapper();
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public <T extends FeedResource> T toFeed(final InputStream input, final Class<T> reference) {
@@ -127,6 +143,29 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
      * ------------------ Protected methods ------------------
      */
     protected XmlMapper getXmlMapper() {
+        // as for getObjectMapper(), concurrent first invocations might build more than one mapper
+        if (xmlMapper == null) {
+            xmlMapper = newXmlMapper();
+        }
+        return xmlMapper;
+    }
+
+    /**
+     * Gets a thread-safe XML reader for the given type.
+     *
+     * @param type type to be read.
+     * @return XML reader for the given type.
+     */
+    protected ObjectReader getXmlReader(final Class<?> type) {
+        ObjectReader reader = xmlReaders.get(type);
+        if (reader == null) {
+            reader = getXmlMapper().reader(type);
+            xmlReaders.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+    private XmlMapper newXmlMapper() {
         final XmlMapper xmlMapper = new XmlMapper(
                 new XmlFactory(new InputFactoryImpl(), new OutputFactoryImpl()), new JacksonXmlModule());
         xmlMapper.setInjectableValues(new InjectableValues.Std().addValue(ODataClient.class, client));
@@ -148,7 +187,9 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected AtomFeed toAtomFeed(final InputStream input) {
         try {
-            return AtomDeserializer.feed(toDOM(input));
+            return client.getConfiguration().isAtomStreaming()
+                    ? new AtomStreamingDeserializer(input).feed()
+                    : AtomDeserializer.feed(toDOM(input));
         } catch (Exception e) {
             throw new IllegalArgumentException("While deserializing Atom feed", e);
         }
@@ -156,7 +197,9 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected AtomEntry toAtomEntry(final InputStream input) {
         try {
-            return AtomDeserializer.entry(toDOM(input));
+            return client.getConfiguration().isAtomStreaming()
+                    ? new AtomStreamingDeserializer(input).entry()
+                    : AtomDeserializer.entry(toDOM(input));
         } catch (Exception e) {
             throw new IllegalArgumentException("While deserializing Atom entry", e);
         }
@@ -172,7 +215,7 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected Element toPropertyDOMFromJSON(final InputStream input) {
         try {
-            return getObjectMapper().readValue(input, JSONProperty.class).getContent();
+            return getReader(JSONProperty.class).<JSONProperty>readValue(input).getContent();
         } catch (IOException e) {
             throw new IllegalArgumentException("While deserializing JSON property", e);
         }
@@ -199,7 +242,7 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected JSONLinkCollection toLinkCollectionFromJSON(final InputStream input) {
         try {
-            return getObjectMapper().readValue(input, JSONLinkCollection.class);
+            return getReader(JSONLinkCollection.class).readValue(input);
         } catch (IOException e) {
             throw new IllegalArgumentException("While deserializing JSON $links", e);
         }
@@ -207,9 +250,12 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected XMLODataError toODataErrorFromXML(final InputStream input) {
         try {
-            final XmlMapper xmlMapper = new XmlMapper(
-                    new XmlFactory(new InputFactoryImpl(), new OutputFactoryImpl()), new JacksonXmlModule());
-            return xmlMapper.readValue(input, XMLODataError.class);
+            // errors are read strictly, hence not via getXmlMapper()
+            if (xmlErrorReader == null) {
+                xmlErrorReader = new XmlMapper(new XmlFactory(new InputFactoryImpl(), new OutputFactoryImpl()),
+                        new JacksonXmlModule()).reader(XMLODataError.class);
+            }
+            return xmlErrorReader.readValue(input);
         } catch (Exception e) {
             throw new IllegalArgumentException("While deserializing XML error", e);
         }
@@ -217,7 +263,7 @@ public abstract class AbstractODataDeserializer extends AbstractJacksonMarshalle
 
     protected JSONODataError toODataErrorFromJSON(final InputStream input) {
         try {
-            return getObjectMapper().readValue(input, JSONODataErrorBundle.class).getError();
+            return getReader(JSONODataErrorBundle.class).<JSONODataErrorBundle>readValue(input).getError();
         } catch (IOException e) {
             throw new IllegalArgumentException("While deserializing JSON error", e);
         }
@@ -30,6 +30,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.data.json.JSONStreamingBinder;
 import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
 import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
 import com.msopentech.odatajclient.engine.data.xml.XMLServiceDocument;
@@ -55,14 +56,18 @@ public abstract class AbstractODataReader implements ODataReader {
 
     @Override
     public ODataEntitySet readEntitySet(final InputStream input, final ODataPubFormat format) {
-        return client.getBinder().getODataEntitySet(
-                client.getDeserializer().toFeed(input, client.getResourceFactory().feedClassForFormat(format)));
+        return client.getConfiguration().isJSONStreaming(format)
+                ? new JSONStreamingBinder(client).readEntitySet(input)
+                : client.getBinder().getODataEntitySet(
+                        client.getDeserializer().toFeed(input, client.getResourceFactory().feedClassForFormat(format)));
     }
 
     @Override
     public ODataEntity readEntity(final InputStream input, final ODataPubFormat format) {
-        return client.getBinder().getODataEntity(
-                client.getDeserializer().toEntry(input, client.getResourceFactory().entryClassForFormat(format)));
+        return client.getConfiguration().isJSONStreaming(format)
+                ? new JSONStreamingBinder(client).readEntity(input)
+                : client.getBinder().getODataEntity(
+                        client.getDeserializer().toEntry(input, client.getResourceFactory().entryClassForFormat(format)));
     }
 
     @Override
@@ -111,7 +111,7 @@ public abstract class AbstractODataSerializer extends AbstractJacksonMarshaller
 
     protected <T extends AbstractPayloadObject> void json(final T obj, final Writer writer) {
         try {
-            getObjectMapper().writeValue(writer, obj);
+            getWriter(obj.getClass()).writeValue(writer, obj);
         } catch (IOException e) {
             throw new IllegalArgumentException("While serializing JSON object", e);
         }
@@ -121,7 +121,7 @@ public abstract class AbstractODataSerializer extends AbstractJacksonMarshaller
         try {
             final JSONProperty property = new JSONProperty();
             property.setContent(element);
-            getObjectMapper().writeValue(writer, property);
+            getWriter(JSONProperty.class).writeValue(writer, property);
         } catch (IOException e) {
             throw new IllegalArgumentException("While serializing JSON property", e);
         }
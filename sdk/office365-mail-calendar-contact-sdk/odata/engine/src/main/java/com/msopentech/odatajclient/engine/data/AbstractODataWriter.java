@@ -20,14 +20,17 @@
 package com.msopentech.odatajclient.engine.data;
 
 import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.data.json.JSONStreamingSerializer;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
 import com.msopentech.odatajclient.engine.format.ODataFormat;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Collections;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 public abstract class AbstractODataWriter implements ODataWriter {
 
@@ -50,10 +53,7 @@ public abstract class AbstractODataWriter implements ODataWriter {
 
         final ByteArrayOutputStream output = new ByteArrayOutputStream();
         try {
-            for (ODataEntity entity : entities) {
-                client.getSerializer().entry(client.getBinder().
-                        getEntry(entity, client.getResourceFactory().entryClassForFormat(format), outputType), output);
-            }
+            writeEntities(entities, format, outputType, output);
 
             return new ByteArrayInputStream(output.toByteArray());
         } finally {
@@ -61,6 +61,26 @@ public abstract class AbstractODataWriter implements ODataWriter {
         }
     }
 
+    @Override
+    public void writeEntities(final Collection<ODataEntity> entities, final ODataPubFormat format,
+            final boolean outputType, final OutputStream output) {
+
+        if (client.getConfiguration().isJSONStreaming(format)) {
+            final JSONStreamingSerializer serializer = new JSONStreamingSerializer(client);
+            for (ODataEntity entity : entities) {
+                serializer.entity(entity, outputType, output);
+            }
+        } else {
+            // serializers might close the stream they are given
+            final OutputStream shielded = new CloseShieldOutputStream(output);
+            for (ODataEntity entity : entities) {
+                client.getSerializer().entry(client.getBinder().
+                        getEntry(entity, client.getResourceFactory().entryClassForFormat(format), outputType),
+                        shielded);
+            }
+        }
+    }
+
     @Override
     public InputStream writeEntity(final ODataEntity entity, final ODataPubFormat format) {
         return writeEntity(entity, format, true);
@@ -71,6 +91,13 @@ public abstract class AbstractODataWriter implements ODataWriter {
         return writeEntities(Collections.<ODataEntity>singleton(entity), format, outputType);
     }
 
+    @Override
+    public void writeEntity(final ODataEntity entity, final ODataPubFormat format, final boolean outputType,
+            final OutputStream output) {
+
+        writeEntities(Collections.<ODataEntity>singleton(entity), format, outputType, output);
+    }
+
     @Override
     public InputStream writeProperty(final ODataProperty property, final ODataFormat format) {
         final ByteArrayOutputStream output = new ByteArrayOutputStream();
@@ -19,6 +19,7 @@
  */
 package com.msopentech.odatajclient.engine.data;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEdmx;
 import com.msopentech.odatajclient.engine.format.ODataFormat;
 import java.io.InputStream;
@@ -32,6 +33,13 @@ public interface ODataDeserializer extends Serializable {
 
     AbstractEdmx<?, ?, ?, ?, ?, ?> toMetadata(InputStream input);
 
+    /**
+     * Gets the mapper used for reading JSON payloads, configured for the client this deserializer belongs to.
+     *
+     * @return JSON mapper.
+     */
+    ObjectMapper getJSONMapper();
+
     /**
      * Gets a feed object from the given InputStream.
      *
@@ -19,26 +19,31 @@
  */
 package com.msopentech.odatajclient.engine.data;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.data.atom.AtomEntry;
-import com.msopentech.odatajclient.engine.data.json.JSONV3Entry;
+import com.msopentech.odatajclient.engine.data.atom.AtomStreamingDeserializer;
+import com.msopentech.odatajclient.engine.data.json.JSONEntitySetReader;
+import com.msopentech.odatajclient.engine.data.json.JSONStreamingBinder;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
-import com.msopentech.odatajclient.engine.utils.ODataConstants;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * OData entity set iterator class.
+ * <p>
+ * Entities are read one at a time from the live stream, via a StAX reader for Atom and via a Jackson streaming
+ * parser for JSON, so that the entity set is never held in memory as a whole.
+ * <p>
+ * If streaming is disabled for the given format (see <tt>Configuration.isAtomStreaming()</tt> and
+ * <tt>Configuration.isJSONStreaming(ODataPubFormat)</tt>), the entity set is read as a whole via the configured reader
+ * and its entities are then iterated.
  */
 public class ODataEntitySetIterator implements Iterator<ODataEntity> {
 
@@ -55,13 +60,19 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
 
     private final ODataPubFormat format;
 
-    private EntryResource cached;
+    private AtomStreamingDeserializer atom;
 
-    private ODataEntitySet entitySet;
+    private JsonParser parser;
 
-    private final ByteArrayOutputStream osFeed;
+    private JSONEntitySetReader json;
 
-    private final String namespaces;
+    private Iterator<ODataEntity> entities;
+
+    private ODataEntity cached;
+
+    private URI next;
+
+    private Integer count;
 
     private boolean available = true;
 
@@ -78,23 +89,28 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
         this.odataClient = odataClient;
         this.stream = stream;
         this.format = format;
-        this.osFeed = new ByteArrayOutputStream();
 
-        if (format == ODataPubFormat.ATOM) {
-            namespaces = getAllElementAttributes(stream, "feed", osFeed);
-        } else {
-            namespaces = null;
-            try {
-                if (consume(stream, "\"value\":", osFeed, true) >= 0) {
-                    int c = 0;
-                    while (c != '[' && (c = stream.read()) >= 0) {
-                        osFeed.write(c);
-                    }
+        try {
+            if (!isStreaming(odataClient, format)) {
+                final ODataEntitySet entitySet = odataClient.getReader().readEntitySet(stream, format);
+                entities = entitySet.getEntities().iterator();
+                next = entitySet.getNext();
+                count = entitySet.getCount();
+                close();
+            } else if (format == ODataPubFormat.ATOM) {
+                atom = new AtomStreamingDeserializer(stream);
+            } else {
+                final JSONStreamingBinder binder = new JSONStreamingBinder(odataClient);
+                parser = binder.createParser(stream);
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected OData EntitySet, found " + parser.getCurrentToken());
                 }
-            } catch (IOException e) {
-                LOG.error("Error parsing feed", e);
-                throw new IllegalStateException(e);
+                json = new JSONEntitySetReader(binder, parser);
             }
+        } catch (Exception e) {
+            LOG.error("Error parsing feed", e);
+            close();
+            throw new IllegalStateException(e);
         }
     }
 
@@ -104,16 +120,29 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
     @Override
     public boolean hasNext() {
         if (available && cached == null) {
-            if (format == ODataPubFormat.ATOM) {
-                cached = nextAtomEntryFromFeed(stream, osFeed, namespaces);
-            } else {
-                cached = nextJsonEntryFromFeed(stream, osFeed);
+            try {
+                if (entities != null) {
+                    cached = entities.hasNext() ? entities.next() : null;
+                } else if (format == ODataPubFormat.ATOM) {
+                    final AtomEntry entry = atom.nextEntry();
+                    cached = entry == null ? null : odataClient.getBinder().getODataEntity(entry);
+                    if (atom.getFeed() != null) {
+                        next = atom.getFeed().getNext();
+                        count = atom.getFeed().getCount();
+                    }
+                } else {
+                    cached = json.nextEntity();
+                    next = json.getNext();
+                    count = json.getCount();
+                }
+            } catch (Exception e) {
+                LOG.error("Error retrieving entities from EntitySet", e);
+                close();
+                throw new IllegalStateException(e);
             }
 
             if (cached == null) {
                 available = false;
-                entitySet = odataClient.getReader().
-                        readEntitySet(new ByteArrayInputStream(osFeed.toByteArray()), format);
                 close();
             }
         }
@@ -127,7 +156,7 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
     @Override
     public ODataEntity next() {
         if (hasNext()) {
-            final ODataEntity res = odataClient.getBinder().getODataEntity(cached);
+            final ODataEntity res = cached;
             cached = null;
             return res;
         }
@@ -147,8 +176,11 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
      * Closes the current iterator.
      */
     public void close() {
+        if (atom != null) {
+            atom.close();
+        }
+        IOUtils.closeQuietly(parser);
         IOUtils.closeQuietly(stream);
-        IOUtils.closeQuietly(osFeed);
     }
 
     /**
@@ -157,164 +189,35 @@ public class ODataEntitySetIterator implements Iterator<ODataEntity> {
      * @return next link if exists; null otherwise.
      */
     public URI getNext() {
-        if (entitySet == null) {
+        if (available) {
             throw new IllegalStateException("Iteration must be completed in order to retrieve the link for next page");
         }
-        return entitySet.getNext();
+        return next;
     }
 
     /**
-     * Finalize object closing all managed resources.
+     * Gets the entity count (<tt>$inlinecount</tt>), if read so far: this is usually provided before entities.
      *
-     * @throws Throwable
+     * @return entity count if provided; null otherwise.
      */
-    @Override
-    protected void finalize() throws Throwable {
-        close();
-        super.finalize();
+    public Integer getCount() {
+        return count;
     }
 
-    private JSONV3Entry nextJsonEntryFromFeed(final InputStream input, final OutputStream osFeed) {
-        final ByteArrayOutputStream entry = new ByteArrayOutputStream();
-
-        JSONV3Entry entity = null;
-        try {
-            int c = 0;
-
-            boolean foundNewOne = false;
-
-            do {
-                c = input.read();
-                if (c == '{') {
-                    entry.write(c);
-                    c = -1;
-                    foundNewOne = true;
-                }
-                if (c == ']') {
-                    osFeed.write(c);
-                    c = -1;
-                }
-            } while (c >= 0);
-
-            if (foundNewOne) {
-                int count = 1;
-                c = 0;
-
-                while (count > 0 && c >= 0) {
-                    c = input.read();
-                    if (c == '{') {
-                        count++;
-                    } else if (c == '}') {
-                        count--;
-                    }
-                    entry.write(c);
-                }
-
-                if (c >= 0) {
-                    entity = odataClient.getDeserializer().toEntry(
-                            new ByteArrayInputStream(entry.toByteArray()), JSONV3Entry.class);
-                }
-            } else {
-                while ((c = input.read()) >= 0) {
-                    osFeed.write(c);
-                }
-            }
-        } catch (Exception e) {
-            LOG.error("Error retrieving entities from EntitySet", e);
-        }
-
-        return entity;
+    private static boolean isStreaming(final ODataClient odataClient, final ODataPubFormat format) {
+        return format == ODataPubFormat.ATOM
+                ? odataClient.getConfiguration().isAtomStreaming()
+                : odataClient.getConfiguration().isJSONStreaming(format);
     }
 
     /**
-     * De-Serializes a stream into an OData entity set.
+     * Finalize object closing all managed resources.
      *
-     * @param input stream to de-serialize.
-     * @param format de-serialize as AtomFeed or JSONFeed
-     * @return de-serialized entity set.
+     * @throws Throwable
      */
-    private AtomEntry nextAtomEntryFromFeed(final InputStream input, final OutputStream osFeed, final String namespaces) {
-        final ByteArrayOutputStream entry = new ByteArrayOutputStream();
-
-        AtomEntry entity = null;
-
-        try {
-            if (consume(input, "<entry>", osFeed, false) >= 0) {
-                entry.write("<entry ".getBytes(ODataConstants.UTF8));
-                entry.write(namespaces.getBytes(ODataConstants.UTF8));
-                entry.write(">".getBytes(ODataConstants.UTF8));
-
-                if (consume(input, "</entry>", entry, true) >= 0) {
-                    entity = odataClient.getDeserializer().
-                            toEntry(new ByteArrayInputStream(entry.toByteArray()), AtomEntry.class);
-                }
-            }
-        } catch (Exception e) {
-            LOG.error("Error retrieving entities from EntitySet", e);
-        }
-
-        return entity;
-    }
-
-    private String getAllElementAttributes(final InputStream input, final String name, final OutputStream os) {
-        final ByteArrayOutputStream attrs = new ByteArrayOutputStream();
-
-        String res;
-
-        try {
-            byte[] attrsDeclaration = null;
-
-            final String key = "<" + name + " ";
-            if (consume(input, key, os, true) >= 0 && consume(input, ">", attrs, false) >= 0) {
-                attrsDeclaration = attrs.toByteArray();
-                os.write(attrsDeclaration);
-                os.write('>');
-            }
-
-            res = attrsDeclaration == null
-                    ? StringUtils.EMPTY
-                    : new String(attrsDeclaration, ODataConstants.UTF8).trim();
-        } catch (Exception e) {
-            LOG.error("Error retrieving entities from EntitySet", e);
-            res = StringUtils.EMPTY;
-        }
-
-        return res.endsWith("/") ? res.substring(0, res.length() - 1) : res;
-    }
-
-    private int consume(
-            final InputStream input, final String end, final OutputStream os, final boolean includeEndKey)
-            throws IOException {
-
-        final char[] endKey = end.toCharArray();
-        final char[] endLowerKey = end.toLowerCase().toCharArray();
-        final char[] endUpperKey = end.toUpperCase().toCharArray();
-
-        int pos = 0;
-        int c = 0;
-        while (pos < endKey.length && (c = input.read()) >= 0) {
-            if (c == endLowerKey[pos] || c == endUpperKey[pos]) {
-                pos++;
-                if (includeEndKey && os != null) {
-                    os.write(c);
-                }
-            } else if (pos > 0) {
-                if (!includeEndKey && os != null) {
-                    for (int i = 0; i < pos; i++) {
-                        os.write(endKey[i]);
-                    }
-                }
-                if (os != null) {
-                    os.write(c);
-                }
-                pos = 0;
-            } else {
-                if (os != null) {
-                    os.write(c);
-                }
-            }
-        }
-
-        return c;
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
     }
 }
@@ -43,7 +43,7 @@ public class ODataV3Deserializer extends AbstractODataDeserializer {
     @Override
     public Edmx toMetadata(final InputStream input) {
         try {
-            return getXmlMapper().readValue(input, Edmx.class);
+            return getXmlReader(Edmx.class).readValue(input);
         } catch (Exception e) {
             throw new IllegalArgumentException("Could not parse as Edmx document", e);
         }
@@ -53,8 +53,8 @@ public class ODataV3Deserializer extends AbstractODataDeserializer {
     public AbstractServiceDocument toServiceDocument(final InputStream input, final ODataFormat format) {
         try {
             return format == ODataFormat.XML
-                    ? getXmlMapper().readValue(input, XMLServiceDocument.class)
-                    : getObjectMapper().readValue(input, JSONServiceDocument.class);
+                    ? getXmlReader(XMLServiceDocument.class).<XMLServiceDocument>readValue(input)
+                    : getReader(JSONServiceDocument.class).<JSONServiceDocument>readValue(input);
         } catch (IOException e) {
             throw new IllegalArgumentException("Could not parse Service Document", e);
         }
@@ -63,7 +63,7 @@ public class ODataV3Deserializer extends AbstractODataDeserializer {
     @Override
     protected JSONV3Entry toJSONEntry(final InputStream input) {
         try {
-            return getObjectMapper().readValue(input, JSONV3Entry.class);
+            return getReader(JSONV3Entry.class).readValue(input);
         } catch (IOException e) {
             throw new IllegalArgumentException("While deserializing JSON entry", e);
         }
@@ -72,7 +72,7 @@ public class ODataV3Deserializer extends AbstractODataDeserializer {
     @Override
     protected AbstractJSONFeed toJSONFeed(final InputStream input) {
         try {
-            return getObjectMapper().readValue(input, JSONV3Feed.class);
+            return getReader(JSONV3Feed.class).readValue(input);
         } catch (IOException e) {
             throw new IllegalArgumentException("While deserializing JSON feed", e);
         }
@@ -22,6 +22,7 @@ package com.msopentech.odatajclient.engine.data;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
 import com.msopentech.odatajclient.engine.format.ODataFormat;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Collection;
 
@@ -53,6 +54,17 @@ public interface ODataWriter extends Serializable {
      */
     InputStream writeEntities(Collection<ODataEntity> entities, ODataPubFormat format, boolean outputType);
 
+    /**
+     * Writes a collection of OData entities straight to the given stream; the stream is not closed.
+     *
+     * @param entities entities to be serialized.
+     * @param format serialization format.
+     * @param outputType whether to explicitly output type information.
+     * @param output destination stream.
+     */
+    void writeEntities(
+            Collection<ODataEntity> entities, ODataPubFormat format, boolean outputType, OutputStream output);
+
     /**
      * Serializes a single OData entity.
      *
@@ -72,6 +84,16 @@ public interface ODataWriter extends Serializable {
      */
     InputStream writeEntity(ODataEntity entity, ODataPubFormat format, boolean outputType);
 
+    /**
+     * Serializes a single OData entity straight to the given stream; the stream is not closed.
+     *
+     * @param entity entity to be serialized.
+     * @param format serialization format.
+     * @param outputType whether to explicitly output type information.
+     * @param output destination stream.
+     */
+    void writeEntity(ODataEntity entity, ODataPubFormat format, boolean outputType, OutputStream output);
+
     /**
      * Writes a single OData entity property.
      *
@@ -0,0 +1,560 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.data.atom;
+
+import java.io.InputStream;
+import java.net.URI;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
+import com.msopentech.javax.xml.stream.XMLInputFactory;
+import com.msopentech.javax.xml.stream.XMLStreamConstants;
+import com.msopentech.javax.xml.stream.XMLStreamException;
+import com.msopentech.javax.xml.stream.XMLStreamReader;
+import com.msopentech.odatajclient.engine.data.ODataOperation;
+import com.msopentech.odatajclient.engine.utils.ODataConstants;
+
+/**
+ * Reads Atom feeds and entries via a StAX pull parser, instead of parsing the whole document into a DOM tree as done
+ * by <tt>AtomDeserializer</tt>.
+ * <p>
+ * Only the <tt>&lt;m:properties/&gt;</tt> element of each entry is built as DOM, since this is what
+ * <tt>AtomEntry</tt> holds; feed entries can be pulled one at a time via <tt>nextEntry()</tt>, so that memory usage
+ * does not depend on the number of entries in the feed.
+ */
+public class AtomStreamingDeserializer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AtomStreamingDeserializer.class);
+
+    private static final XMLInputFactory FACTORY = new InputFactoryImpl();
+
+    private final XMLStreamReader reader;
+
+    private final ISO8601DateFormat dateFormat = new ISO8601DateFormat();
+
+    /**
+     * Owner of the <tt>&lt;m:properties/&gt;</tt> elements being built.
+     */
+    private Document document;
+
+    /**
+     * Top-level feed, when pulling entries via <tt>nextEntry()</tt>.
+     */
+    private AtomFeed feed;
+
+    private final boolean[] feedFound = new boolean[4];
+
+    private boolean feedEnded = false;
+
+    /**
+     * Constructor: the given stream is not closed by this class.
+     *
+     * @param input stream to be parsed.
+     * @throws XMLStreamException in case of parse error.
+     */
+    public AtomStreamingDeserializer(final InputStream input) throws XMLStreamException {
+        this.reader = FACTORY.createXMLStreamReader(input);
+
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.next();
+        }
+    }
+
+    /**
+     * Reads an entry document.
+     *
+     * @return Atom entry; null if the root element is not <tt>&lt;entry/&gt;</tt>.
+     * @throws XMLStreamException in case of parse error.
+     */
+    public AtomEntry entry() throws XMLStreamException {
+        try {
+            return ODataConstants.ATOM_ELEM_ENTRY.equals(getName()) ? readEntry() : null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a feed document, with all of its entries.
+     *
+     * @return Atom feed; null if the root element is not <tt>&lt;feed/&gt;</tt>.
+     * @throws XMLStreamException in case of parse error.
+     */
+    public AtomFeed feed() throws XMLStreamException {
+        try {
+            AtomEntry entry;
+            while ((entry = nextEntry()) != null) {
+                feed.addEntry(entry);
+            }
+            return feed;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the next entry of a feed document.
+     *
+     * @return next Atom entry; null when the end of the feed has been reached or if the root element is not
+     * <tt>&lt;feed/&gt;</tt>.
+     * @throws XMLStreamException in case of parse error.
+     * @see #getFeed()
+     */
+    public AtomEntry nextEntry() throws XMLStreamException {
+        if (feed == null && !feedEnded) {
+            if (ODataConstants.ATOM_ELEM_FEED.equals(getName())) {
+                feed = new AtomFeed();
+                common(feed);
+            } else {
+                feedEnded = true;
+            }
+        }
+
+        if (feedEnded) {
+            return null;
+        }
+
+        final AtomEntry entry = nextFeedEntry(feed, feedFound);
+        if (entry == null) {
+            feedEnded = true;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the feed read so far via <tt>nextEntry()</tt>: entries are not added, and elements following the last
+     * entry read (typically the <tt>next</tt> link) are available only once <tt>nextEntry()</tt> has returned null.
+     *
+     * @return Atom feed, without entries; null if the root element is not <tt>&lt;feed/&gt;</tt>.
+     */
+    public AtomFeed getFeed() {
+        return feed;
+    }
+
+    /**
+     * Releases the underlying parser; the stream passed to the constructor is not closed.
+     */
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            LOG.warn("While closing XML stream reader", e);
+        }
+    }
+
+    /**
+     * Gets the qualified name of the current element, as returned by <tt>Node.getNodeName()</tt>.
+     */
+    private String getName() {
+        return StringUtils.isEmpty(reader.getPrefix())
+                ? reader.getLocalName()
+                : reader.getPrefix() + ":" + reader.getLocalName();
+    }
+
+    /**
+     * Gets the value of the given attribute of the current element, as returned by <tt>Element.getAttribute()</tt>.
+     */
+    private String getAttribute(final String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String prefix = reader.getAttributePrefix(i);
+            final String localName = reader.getAttributeLocalName(i);
+            if (name.equals(StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return StringUtils.EMPTY;
+    }
+
+    /**
+     * Moves to the next child element of the current one.
+     *
+     * @return 'TRUE' if positioned on a child start tag; 'FALSE' if positioned on the parent end tag.
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the current element, moving to its end tag.
+     */
+    private void skip() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the text content of the current element, moving to its end tag.
+     */
+    private String readText() throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getText());
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Builds the current element as DOM, moving to its end tag.
+     */
+    private Element readElement() throws XMLStreamException {
+        if (document == null) {
+            try {
+                document = ODataConstants.DOC_BUILDER_FACTORY.newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException("Cannot build entry content", e);
+            }
+        }
+
+        final Element root = newElement();
+
+        Node current = root;
+        while (current != null) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                current = current.appendChild(newElement());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                current = current == root ? null : current.getParentNode();
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+
+                if (current.getLastChild() != null && current.getLastChild().getNodeType() == Node.TEXT_NODE) {
+                    ((Text) current.getLastChild()).appendData(reader.getText());
+                } else {
+                    current.appendChild(document.createTextNode(reader.getText()));
+                }
+            }
+        }
+
+        return root;
+    }
+
+    private Element newElement() {
+        final Element element = document.createElementNS(
+                StringUtils.defaultIfEmpty(reader.getNamespaceURI(), null), getName());
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            final String prefix = reader.getNamespacePrefix(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, StringUtils.isEmpty(prefix)
+                    ? XMLConstants.XMLNS_ATTRIBUTE
+                    : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix, reader.getNamespaceURI(i));
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String prefix = reader.getAttributePrefix(i);
+            element.setAttributeNS(StringUtils.defaultIfEmpty(reader.getAttributeNamespace(i), null),
+                    StringUtils.isEmpty(prefix)
+                    ? reader.getAttributeLocalName(i)
+                    : prefix + ":" + reader.getAttributeLocalName(i),
+                    reader.getAttributeValue(i));
+        }
+
+        return element;
+    }
+
+    /**
+     * Reads <tt>xml:base</tt> of the current element.
+     */
+    private void common(final AtomObject object) {
+        final String base = getAttribute(ODataConstants.ATTR_XMLBASE);
+        if (StringUtils.isNotBlank(base)) {
+            object.setBaseURI(base);
+        }
+    }
+
+    /**
+     * Reads the current child element if it is one of those shared by feeds and entries.
+     *
+     * @return whether the current child element has been read.
+     */
+    private boolean common(final String name, final AtomObject object, final boolean[] found)
+            throws XMLStreamException {
+
+        int index = -1;
+        if (ODataConstants.ATOM_ELEM_ID.equals(name)) {
+            index = 0;
+        } else if (ODataConstants.ATOM_ELEM_TITLE.equals(name)) {
+            index = 1;
+        } else if (ODataConstants.ATOM_ELEM_SUMMARY.equals(name)) {
+            index = 2;
+        } else if (ODataConstants.ATOM_ELEM_UPDATED.equals(name)) {
+            index = 3;
+        }
+
+        if (index < 0) {
+            return false;
+        }
+
+        if (found[index]) {
+            skip();
+        } else {
+            found[index] = true;
+
+            final String text = readText();
+            switch (index) {
+                case 0:
+                    object.setId(text);
+                    break;
+
+                case 1:
+                    object.setTitle(text);
+                    break;
+
+                case 2:
+                    object.setSummary(text);
+                    break;
+
+                default:
+                    try {
+                        object.setUpdated(dateFormat.parse(text));
+                    } catch (Exception e) {
+                        LOG.error("Could not parse date {}", text, e);
+                    }
+            }
+        }
+
+        return true;
+    }
+
+    private AtomFeed readFeed() throws XMLStreamException {
+        final AtomFeed inline = new AtomFeed();
+        common(inline);
+
+        final boolean[] found = new boolean[4];
+        AtomEntry entry;
+        while ((entry = nextFeedEntry(inline, found)) != null) {
+            inline.addEntry(entry);
+        }
+
+        return inline;
+    }
+
+    /**
+     * Reads feed child elements up to the next entry.
+     *
+     * @param current feed being read.
+     * @param found which of id, title, summary and updated have been read already.
+     * @return next entry; null if the feed end tag has been reached.
+     */
+    private AtomEntry nextFeedEntry(final AtomFeed current, final boolean[] found) throws XMLStreamException {
+        while (nextChild()) {
+            final String name = getName();
+
+            if (ODataConstants.ATOM_ELEM_ENTRY.equals(name)) {
+                return readEntry();
+            }
+
+            if (!common(name, current, found)) {
+                if (ODataConstants.ATOM_ELEM_LINK.equals(name)) {
+                    if (ODataConstants.NEXT_LINK_REL.equals(getAttribute(ODataConstants.ATTR_REL))) {
+                        current.setNext(URI.create(getAttribute(ODataConstants.ATTR_HREF)));
+                    }
+                    skip();
+                } else if (ODataConstants.ATOM_ATTR_COUNT.equals(name) && current.getCount() == null) {
+                    final String count = readText();
+                    try {
+                        current.setCount(Integer.parseInt(count));
+                    } catch (Exception e) {
+                        LOG.error("Could not parse $inlinecount {}", count, e);
+                    }
+                } else {
+                    skip();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private AtomEntry readEntry() throws XMLStreamException {
+        final AtomEntry entry = new AtomEntry();
+        common(entry);
+
+        final String etag = getAttribute(ODataConstants.ATOM_ATTR_ETAG);
+        if (StringUtils.isNotBlank(etag)) {
+            entry.setETag(etag);
+        }
+
+        final boolean[] found = new boolean[4];
+        boolean categoryFound = false;
+        boolean contentFound = false;
+        String contentSource = null;
+        String contentType = null;
+        Element properties = null;
+        Element mediaEntryProperties = null;
+
+        while (nextChild()) {
+            final String name = getName();
+
+            if (common(name, entry, found)) {
+                continue;
+            }
+
+            if (ODataConstants.ATOM_ELEM_CATEGORY.equals(name) && !categoryFound) {
+                categoryFound = true;
+                entry.setType(getAttribute(ODataConstants.ATOM_ATTR_TERM));
+                skip();
+            } else if (ODataConstants.ATOM_ELEM_LINK.equals(name)) {
+                readLink(entry);
+            } else if (ODataConstants.ATOM_ELEM_AUTHOR.equals(name)) {
+                readAuthor(entry);
+            } else if (ODataConstants.ATOM_ELEM_ACTION.equals(name)) {
+                final ODataOperation operation = new ODataOperation();
+                operation.setMetadataAnchor(getAttribute(ODataConstants.ATTR_METADATA));
+                operation.setTitle(getAttribute(ODataConstants.ATTR_TITLE));
+                operation.setTarget(URI.create(getAttribute(ODataConstants.ATTR_TARGET)));
+                entry.addOperation(operation);
+                skip();
+            } else if (ODataConstants.ATOM_ELEM_CONTENT.equals(name) && !contentFound) {
+                contentFound = true;
+                contentSource = getAttribute(ODataConstants.ATOM_ATTR_SRC);
+                contentType = getAttribute(ODataConstants.ATTR_TYPE);
+
+                while (nextChild()) {
+                    if (ODataConstants.ELEM_PROPERTIES.equals(getName()) && properties == null) {
+                        properties = readElement();
+                    } else {
+                        skip();
+                    }
+                }
+            } else if (ODataConstants.ELEM_PROPERTIES.equals(name) && mediaEntryProperties == null) {
+                mediaEntryProperties = readElement();
+            } else {
+                skip();
+            }
+        }
+
+        if (contentFound) {
+            if (properties == null) {
+                entry.setMediaContentSource(contentSource);
+                entry.setMediaContentType(contentType);
+
+                if (mediaEntryProperties != null) {
+                    entry.setMediaEntryProperties(mediaEntryProperties);
+                }
+            } else {
+                entry.setContent(properties);
+            }
+        }
+
+        return entry;
+    }
+
+    private void readLink(final AtomEntry entry) throws XMLStreamException {
+        final AtomLink link = new AtomLink();
+        link.setRel(getAttribute(ODataConstants.ATTR_REL));
+        link.setTitle(getAttribute(ODataConstants.ATTR_TITLE));
+        link.setHref(getAttribute(ODataConstants.ATTR_HREF));
+
+        if (ODataConstants.SELF_LINK_REL.equals(link.getRel())) {
+            entry.setSelfLink(link);
+        } else if (ODataConstants.EDIT_LINK_REL.equals(link.getRel())) {
+            entry.setEditLink(link);
+        } else if (link.getRel().startsWith(ODataConstants.NAVIGATION_LINK_REL)) {
+            link.setType(getAttribute(ODataConstants.ATTR_TYPE));
+            entry.addNavigationLink(link);
+
+            boolean inlineFound = false;
+            while (nextChild()) {
+                if (ODataConstants.ATOM_ELEM_INLINE.equals(getName()) && !inlineFound) {
+                    inlineFound = true;
+
+                    while (nextChild()) {
+                        final String name = getName();
+                        if (ODataConstants.ATOM_ELEM_ENTRY.equals(name) && link.getInlineEntry() == null) {
+                            link.setInlineEntry(readEntry());
+                        } else if (ODataConstants.ATOM_ELEM_FEED.equals(name) && link.getInlineFeed() == null) {
+                            link.setInlineFeed(readFeed());
+                        } else {
+                            skip();
+                        }
+                    }
+                } else {
+                    skip();
+                }
+            }
+            return;
+        } else if (link.getRel().startsWith(ODataConstants.ASSOCIATION_LINK_REL)) {
+            entry.addAssociationLink(link);
+        } else if (link.getRel().startsWith(ODataConstants.MEDIA_EDIT_LINK_REL)) {
+            entry.addMediaEditLink(link);
+        }
+
+        skip();
+    }
+
+    private void readAuthor(final AtomEntry entry) throws XMLStreamException {
+        final AtomEntry.Author author = new AtomEntry.Author();
+
+        while (nextChild()) {
+            final String name = getName();
+            if (ODataConstants.ATOM_ELEM_AUTHOR_NAME.equals(name)) {
+                author.setName(readText());
+            } else if (ODataConstants.ATOM_ELEM_AUTHOR_URI.equals(name)) {
+                author.setUri(readText());
+            } else if (ODataConstants.ATOM_ELEM_AUTHOR_EMAIL.equals(name)) {
+                author.setEmail(readText());
+            } else {
+                skip();
+            }
+        }
+
+        if (!author.isEmpty() && entry.getAuthor() == null) {
+            entry.setAuthor(author);
+        }
+    }
+}
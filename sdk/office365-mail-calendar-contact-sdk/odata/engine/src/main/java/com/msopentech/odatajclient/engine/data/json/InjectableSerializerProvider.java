@@ -38,7 +38,8 @@ public class InjectableSerializerProvider extends DefaultSerializerProvider {
     public InjectableSerializerProvider createInstance(
             final SerializationConfig config, final SerializerFactory factory) {
 
-        return this;
+        // serializer providers hold per-serialization state: keep the attributes this blueprint was given
+        return new InjectableSerializerProvider(this, config.with(_attributes), factory);
     }
 
 }
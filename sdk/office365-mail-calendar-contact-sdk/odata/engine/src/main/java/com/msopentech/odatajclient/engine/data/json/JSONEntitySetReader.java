@@ -0,0 +1,134 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.data.json;
+
+import java.io.IOException;
+import java.net.URI;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.utils.ODataConstants;
+import com.msopentech.odatajclient.engine.utils.URIUtils;
+
+/**
+ * Reads the entities of a JSON entity set one at a time via <tt>JSONStreamingBinder</tt>, so that the entity set
+ * never needs to be held in memory as a whole.
+ */
+public class JSONEntitySetReader {
+
+    private final JSONStreamingBinder binder;
+
+    private final JsonParser parser;
+
+    private String metadata;
+
+    private String next;
+
+    private Integer count;
+
+    /**
+     * Whether the parser is within the <tt>value</tt> array.
+     */
+    private boolean inValue = false;
+
+    private boolean ended = false;
+
+    /**
+     * Constructor.
+     *
+     * @param binder JSON streaming binder.
+     * @param parser JSON parser, whose <tt>START_OBJECT</tt> token for the entity set has just been returned.
+     */
+    public JSONEntitySetReader(final JSONStreamingBinder binder, final JsonParser parser) {
+        this.binder = binder;
+        this.parser = parser;
+    }
+
+    /**
+     * Reads the next entity.
+     *
+     * @return next entity; null once the end of the entity set has been reached, leaving the parser on the matching
+     * <tt>END_OBJECT</tt> token.
+     * @throws IOException in case of read error.
+     */
+    public ODataEntity nextEntity() throws IOException {
+        while (!ended) {
+            if (inValue) {
+                final JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    return binder.readEntity(parser, null);
+                } else if (token == JsonToken.END_ARRAY || token == null) {
+                    inValue = false;
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+
+                if (ODataConstants.JSON_METADATA.equals(name)) {
+                    metadata = binder.textValue(parser);
+                } else if (binder.isAnnotation(name, ODataConstants.JSON_NEXT_LINK)) {
+                    next = binder.textValue(parser);
+                } else if (binder.isAnnotation(name, ODataConstants.JSON_COUNT)) {
+                    count = token == JsonToken.VALUE_NUMBER_INT
+                            ? Integer.valueOf(parser.getIntValue())
+                            : token == JsonToken.VALUE_STRING ? Integer.valueOf(parser.getText()) : null;
+                } else if (ODataConstants.JSON_VALUE.equals(name) && token == JsonToken.START_ARRAY) {
+                    inValue = true;
+                } else {
+                    parser.skipChildren();
+                }
+            } else {
+                ended = true;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the next link, if read so far: this annotation usually follows the entities.
+     *
+     * @return next link; null if not (yet) found.
+     */
+    public URI getNext() {
+        return next == null ? null : URIUtils.getURI(binder.getBaseURI(metadata, null), next);
+    }
+
+    /**
+     * Gets the entity count, if read so far: this annotation usually precedes the entities.
+     *
+     * @return entity count; null if not (yet) found.
+     */
+    public Integer getCount() {
+        return count;
+    }
+
+    /**
+     * Checks whether the end of the entity set has been reached.
+     *
+     * @return 'TRUE' if the end of the entity set has been reached; 'FALSE' otherwise.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+}
@@ -0,0 +1,837 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.data.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.data.ODataCollectionValue;
+import com.msopentech.odatajclient.engine.data.ODataComplexValue;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.ODataOperation;
+import com.msopentech.odatajclient.engine.data.ODataPrimitiveValue;
+import com.msopentech.odatajclient.engine.data.ODataProperty;
+import com.msopentech.odatajclient.engine.data.metadata.EdmType;
+import com.msopentech.odatajclient.engine.data.metadata.EdmV3Type;
+import com.msopentech.odatajclient.engine.data.metadata.EdmV4Type;
+import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
+import com.msopentech.odatajclient.engine.uri.SegmentType;
+import com.msopentech.odatajclient.engine.utils.ODataConstants;
+import com.msopentech.odatajclient.engine.utils.ODataVersion;
+import com.msopentech.odatajclient.engine.utils.URIUtils;
+
+/**
+ * Binds JSON entities and entity sets straight to <tt>ODataEntity</tt> / <tt>ODataEntitySet</tt>, reading tokens
+ * from a Jackson <tt>JsonParser</tt> instead of going through a JSON tree, an <tt>EntryResource</tt> and the DOM
+ * <tt>&lt;m:properties/&gt;</tt> element.
+ * <p>
+ * The outcome is the same as <tt>ODataBinder.getODataEntity(ODataDeserializer.toEntry(...))</tt>:
+ * <ul>
+ * <li>structured values which are not preceded by their <tt>@odata.type</tt> or navigation annotation are buffered
+ * as tokens until the enclosing object has been read;</li>
+ * <li>geospatial values, as well as values not matching their declared type, are bound via the DOM
+ * representation.</li>
+ * </ul>
+ * The base URI is taken from the metadata annotation, which the protocol requires to be the first member.
+ */
+public class JSONStreamingBinder {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(JSONStreamingBinder.class);
+
+    private static final String TYPE_SUFFIX = "@" + ODataConstants.JSON_TYPE;
+
+    /**
+     * Maximum number of cached type expressions, per OData version: the least recently used ones are evicted
+     * beyond, e.g. when a service declares many collection or derived types.
+     */
+    private static final int MAX_CACHED_TYPES = 512;
+
+    /**
+     * Parsed type expressions, per OData version: no metadata are available here, hence types are shared across
+     * binders as <tt>AbstractEdmMetadata.getType()</tt> shares them across lookups on the same metadata.
+     */
+    private static final Map<ODataVersion, Cache<String, EdmType>> TYPES =
+            new EnumMap<ODataVersion, Cache<String, EdmType>>(ODataVersion.class);
+
+    static {
+        for (ODataVersion version : ODataVersion.values()) {
+            TYPES.put(version, CacheBuilder.newBuilder().maximumSize(MAX_CACHED_TYPES).<String, EdmType>build());
+        }
+    }
+
+    private final ODataClient client;
+
+    /**
+     * Codec of the client deserializer, used for buffering tokens and for reading the (few) JSON trees still
+     * needed.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Entity annotations prefix: none for V3 (<tt>odata.type</tt>), <tt>@</tt> for V4 (<tt>@odata.type</tt>).
+     */
+    private final String annotationPrefix;
+
+    /**
+     * Constructor.
+     *
+     * @param client OData client.
+     */
+    public JSONStreamingBinder(final ODataClient client) {
+        this.client = client;
+        this.mapper = client.getDeserializer().getJSONMapper();
+        this.annotationPrefix = client.getWorkingVersion() == ODataVersion.V4 ? "@" : StringUtils.EMPTY;
+    }
+
+    /**
+     * Creates a JSON parser suitable for being passed to <tt>readEntity(JsonParser, URI)</tt>.
+     *
+     * @param input stream to be parsed.
+     * @return JSON parser.
+     * @throws IOException in case of read error.
+     */
+    public JsonParser createParser(final InputStream input) throws IOException {
+        return mapper.getFactory().createParser(input);
+    }
+
+    /**
+     * Reads an entity.
+     *
+     * @param input stream containing a JSON entity; it is closed once read.
+     * @return OData entity.
+     */
+    public ODataEntity readEntity(final InputStream input) {
+        JsonParser parser = null;
+        try {
+            parser = createParser(input);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected OData Entity, found " + parser.getCurrentToken());
+            }
+            return readEntity(parser, null);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("While deserializing JSON entry", e);
+        } finally {
+            IOUtils.closeQuietly(parser);
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads an entity set.
+     *
+     * @param input stream containing a JSON feed; it is closed once read.
+     * @return OData entity set.
+     */
+    public ODataEntitySet readEntitySet(final InputStream input) {
+        JsonParser parser = null;
+        try {
+            parser = createParser(input);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected OData EntitySet, found " + parser.getCurrentToken());
+            }
+            return readEntitySet(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("While deserializing JSON feed", e);
+        } finally {
+            IOUtils.closeQuietly(parser);
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads an entity set whose <tt>START_OBJECT</tt> token has just been returned by the given parser.
+     *
+     * @param parser JSON parser.
+     * @return OData entity set; the parser is left on the matching <tt>END_OBJECT</tt> token.
+     * @throws IOException in case of read error.
+     */
+    public ODataEntitySet readEntitySet(final JsonParser parser) throws IOException {
+        final JSONEntitySetReader reader = new JSONEntitySetReader(this, parser);
+
+        final List<ODataEntity> entities = new ArrayList<ODataEntity>();
+        ODataEntity entity;
+        while ((entity = reader.nextEntity()) != null) {
+            entities.add(entity);
+        }
+
+        final ODataEntitySet entitySet = reader.getNext() == null
+                ? ODataObjectFactory.newEntitySet()
+                : ODataObjectFactory.newEntitySet(reader.getNext());
+
+        if (reader.getCount() != null) {
+            entitySet.setCount(reader.getCount());
+        }
+
+        for (ODataEntity item : entities) {
+            entitySet.addEntity(item);
+        }
+
+        return entitySet;
+    }
+
+    /**
+     * Reads an entity whose <tt>START_OBJECT</tt> token has just been returned by the given parser.
+     *
+     * @param parser JSON parser.
+     * @param parentBaseURI base URI to be used if the entity does not provide its own metadata URI.
+     * @return OData entity; the parser is left on the matching <tt>END_OBJECT</tt> token.
+     * @throws IOException in case of read error.
+     */
+    public ODataEntity readEntity(final JsonParser parser, final URI parentBaseURI) throws IOException {
+        final PropertyReader properties = new PropertyReader(true);
+
+        String metadata = null;
+        String eTag = null;
+        String type = null;
+        String readLink = null;
+        String editLink = null;
+        String mediaReadLink = null;
+        String mediaEditLink = null;
+        String mediaContentType = null;
+
+        final Map<String, String> navigationLinks = new LinkedHashMap<String, String>();
+        final Map<String, String> associationLinks = new LinkedHashMap<String, String>();
+        final Map<String, String> mediaEditLinks = new LinkedHashMap<String, String>();
+        final Set<String> linkNames = new HashSet<String>();
+        final Map<String, Object> inlines = new HashMap<String, Object>();
+        final List<ODataOperation> operations = new ArrayList<ODataOperation>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (name.equals(annotationPrefix + ODataConstants.JSON_METADATA)) {
+                metadata = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_ETAG)) {
+                eTag = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_TYPE)) {
+                type = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_READ_LINK)) {
+                readLink = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_EDIT_LINK)) {
+                editLink = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_MEDIAREAD_LINK)) {
+                mediaReadLink = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_MEDIAEDIT_LINK)) {
+                mediaEditLink = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_MEDIA_CONTENT_TYPE)) {
+                mediaContentType = textValue(parser);
+            } else if (name.equals(annotationPrefix + ODataConstants.JSON_ID)
+                    || name.equals(annotationPrefix + ODataConstants.JSON_MEDIA_ETAG)) {
+                // not bound to ODataEntity
+                parser.skipChildren();
+            } else if (name.endsWith(ODataConstants.JSON_NAVIGATION_LINK_SUFFIX)
+                    || name.endsWith(ODataConstants.JSON_NAVIGATION_LINK_ODATA_4_SUFFIX)) {
+                navigationLinks.put(getTitle(name), textValue(parser));
+                linkNames.add(getTitle(name));
+            } else if (name.endsWith(ODataConstants.JSON_ASSOCIATION_LINK_SUFFIX)) {
+                associationLinks.put(getTitle(name), textValue(parser));
+            } else if (name.endsWith(ODataConstants.JSON_MEDIAEDIT_LINK_SUFFIX)) {
+                mediaEditLinks.put(getTitle(name), textValue(parser));
+                linkNames.add(getTitle(name));
+            } else if (name.charAt(0) == '#') {
+                operations.add(readOperation(name, parser));
+            } else if (ODataConstants.JSON_VALUE.equals(name) && token == JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected OData Entity, found EntitySet");
+            } else if (linkNames.contains(name)) {
+                if (navigationLinks.containsKey(name) && token.isStructStart()) {
+                    inlines.put(name, readInline(parser, getBaseURI(metadata, parentBaseURI)));
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (!properties.annotation(name, parser)) {
+                properties.add(name, parser);
+            }
+        }
+
+        final URI base = getBaseURI(metadata, parentBaseURI);
+
+        // inline content read before its navigation annotation
+        for (String title : navigationLinks.keySet()) {
+            if (!inlines.containsKey(title)) {
+                final JsonParser buffered = properties.getBuffered(title);
+                if (buffered != null) {
+                    inlines.put(title, readInline(buffered, base));
+                }
+            }
+        }
+
+        final ODataEntity entity = readLink == null
+                ? ODataObjectFactory.newEntity(type)
+                : ODataObjectFactory.newEntity(type, URIUtils.getURI(base, readLink));
+
+        if (StringUtils.isNotBlank(eTag)) {
+            entity.setETag(eTag);
+        }
+
+        if (editLink != null) {
+            entity.setEditLink(URIUtils.getURI(base, editLink));
+        }
+
+        for (Map.Entry<String, String> link : associationLinks.entrySet()) {
+            entity.addLink(ODataObjectFactory.newAssociationLink(link.getKey(), base, link.getValue()));
+        }
+
+        for (Map.Entry<String, String> link : navigationLinks.entrySet()) {
+            final Object inline = inlines.get(link.getKey());
+            if (inline instanceof ODataEntity) {
+                entity.addLink(ODataObjectFactory.newInlineEntity(
+                        link.getKey(), base, link.getValue(), (ODataEntity) inline));
+            } else if (inline instanceof ODataEntitySet) {
+                entity.addLink(ODataObjectFactory.newInlineEntitySet(
+                        link.getKey(), base, link.getValue(), (ODataEntitySet) inline));
+            } else {
+                entity.addLink(ODataObjectFactory.newEntityNavigationLink(link.getKey(), base, link.getValue()));
+            }
+        }
+
+        if (mediaEditLink != null) {
+            entity.addLink(ODataObjectFactory.newMediaEditLink(null, base, mediaEditLink));
+        }
+        for (Map.Entry<String, String> link : mediaEditLinks.entrySet()) {
+            entity.addLink(ODataObjectFactory.newMediaEditLink(link.getKey(), base, link.getValue()));
+        }
+
+        for (ODataOperation operation : operations) {
+            operation.setTarget(URIUtils.getURI(base, operation.getTarget()));
+            entity.addOperation(operation);
+        }
+
+        if (mediaReadLink != null && mediaContentType != null) {
+            entity.setMediaEntity(true);
+            entity.setMediaContentSource(mediaReadLink);
+            entity.setMediaContentType(mediaContentType);
+        }
+
+        for (ODataProperty property : properties.getProperties(linkNames)) {
+            entity.addProperty(property);
+        }
+
+        return entity;
+    }
+
+    boolean isAnnotation(final String name, final String annotation) {
+        return annotation.equals(name) || name.equals("@" + annotation);
+    }
+
+    private String getTitle(final String name) {
+        return name.substring(0, name.indexOf('@'));
+    }
+
+    URI getBaseURI(final String metadata, final URI parentBaseURI) {
+        URI baseURI = parentBaseURI;
+        if (metadata != null) {
+            final String metadataURI = URI.create(metadata).toASCIIString();
+            final int index = metadataURI.indexOf(SegmentType.METADATA.getValue());
+            if (index >= 0) {
+                baseURI = URI.create(metadataURI.substring(0, index));
+            }
+        }
+        return baseURI;
+    }
+
+    /**
+     * Gets the current value as text, if it is a string; skips it otherwise.
+     */
+    String textValue(final JsonParser parser) throws IOException {
+        final String text = parser.getCurrentToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+        parser.skipChildren();
+        return text;
+    }
+
+    private ODataOperation readOperation(final String anchor, final JsonParser parser) throws IOException {
+        final ODataOperation operation = new ODataOperation();
+        operation.setMetadataAnchor(anchor);
+
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+
+                if (ODataConstants.ATTR_TITLE.equals(name)) {
+                    operation.setTitle(getText(parser));
+                } else if (ODataConstants.ATTR_TARGET.equals(name)) {
+                    operation.setTarget(URI.create(getText(parser)));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else {
+            parser.skipChildren();
+        }
+
+        return operation;
+    }
+
+    private Object readInline(final JsonParser parser, final URI base) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            return readEntity(parser, base);
+        }
+
+        final ODataEntitySet entitySet = ODataObjectFactory.newEntitySet();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                entitySet.addEntity(readEntity(parser, null));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return entitySet;
+    }
+
+    /**
+     * Gets scalar value text, as provided by <tt>JsonNode.asText()</tt>.
+     */
+    private String getText(final JsonParser parser) throws IOException {
+        final String text;
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                text = parser.getNumberValue().toString();
+                break;
+
+            case VALUE_NULL:
+                text = null;
+                break;
+
+            default:
+                text = parser.getText();
+        }
+        return text;
+    }
+
+    /**
+     * Gets the type of an untyped scalar value, according to its JSON representation.
+     */
+    private EdmSimpleType guessType(final JsonParser parser) throws IOException {
+        EdmSimpleType type = null;
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.INT) {
+                    type = EdmSimpleType.Int32;
+                } else if (parser.getNumberType() == JsonParser.NumberType.LONG) {
+                    type = EdmSimpleType.Int64;
+                }
+                break;
+
+            case VALUE_NUMBER_FLOAT:
+                type = parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL
+                        ? EdmSimpleType.Decimal
+                        : EdmSimpleType.Double;
+                break;
+
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                type = EdmSimpleType.Boolean;
+                break;
+
+            case VALUE_STRING:
+                type = EdmSimpleType.String;
+                break;
+
+            default:
+        }
+        return type;
+    }
+
+    private EdmType newEdmType(final String expression) {
+        final Cache<String, EdmType> types = TYPES.get(client.getWorkingVersion());
+
+        EdmType type = types.getIfPresent(expression);
+        if (type == null) {
+            // concurrent first lookups might parse the same expression more than once, to no harm
+            type = client.getWorkingVersion() == ODataVersion.V4
+                    ? new EdmV4Type(expression)
+                    : new EdmV3Type(expression);
+            types.put(expression, type);
+        }
+        return type;
+    }
+
+    private ODataPrimitiveValue newPrimitiveValue(final EdmSimpleType type, final String text) {
+        return client.getPrimitiveValueBuilder().setType(type).setText(text).build();
+    }
+
+    private ODataProperty newNullProperty(final String name) {
+        return ODataObjectFactory.newPrimitiveProperty(name, null);
+    }
+
+    /**
+     * Binds a scalar value.
+     */
+    private ODataProperty getPrimitive(final String name, final String type, final String text,
+            final EdmSimpleType guessed) {
+
+        final ODataProperty property;
+        if (text == null) {
+            property = newNullProperty(name);
+        } else if (StringUtils.isBlank(type)) {
+            property = ODataObjectFactory.newPrimitiveProperty(name, newPrimitiveValue(guessed, text));
+        } else {
+            final EdmType edmType = newEdmType(type);
+            if (edmType.isCollection() || (edmType.isSimpleType() && edmType.getSimpleType().isGeospatial())) {
+                throw new IllegalArgumentException("Invalid value for " + type + ": " + text);
+            }
+
+            property = edmType.isSimpleType()
+                    ? ODataObjectFactory.newPrimitiveProperty(name, newPrimitiveValue(edmType.getSimpleType(), text))
+                    : ODataObjectFactory.newComplexProperty(name, new ODataComplexValue(edmType.getTypeExpression()));
+        }
+        return property;
+    }
+
+    /**
+     * Binds the object or array whose start token has just been returned by the given parser.
+     */
+    private ODataProperty getStructured(final String name, final String type, final JsonParser parser)
+            throws IOException {
+
+        final EdmType edmType = StringUtils.isBlank(type) ? null : newEdmType(type);
+
+        final ODataProperty property;
+        if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+            property = edmType != null
+                    && (!edmType.isCollection() || EdmSimpleType.isGeospatial(edmType.getBaseType()))
+                    ? getFromDOM(name, type, (JsonNode) parser.readValueAsTree())
+                    : getCollection(name, edmType, parser);
+        } else {
+            property = edmType != null && (edmType.isCollection() || edmType.isSimpleType())
+                    ? getFromDOM(name, type, (JsonNode) parser.readValueAsTree())
+                    : getComplex(name, edmType, parser);
+        }
+        return property;
+    }
+
+    private ODataProperty getComplex(final String name, final EdmType edmType, final JsonParser parser)
+            throws IOException {
+
+        final PropertyReader reader = new PropertyReader(false);
+        reader.read(parser, edmType == null);
+
+        if (reader.geospatial != null) {
+            return getFromDOM(name, null, reader.geospatial);
+        }
+
+        final List<ODataProperty> fields = reader.getProperties(Collections.<String>emptySet());
+
+        final EdmType actualType = edmType == null && StringUtils.isNotBlank(reader.type)
+                ? newEdmType(reader.type)
+                : edmType;
+
+        final ODataProperty property;
+        if (actualType == null) {
+            if (fields.isEmpty()) {
+                property = newNullProperty(name);
+            } else {
+                final ODataComplexValue value = new ODataComplexValue(null);
+                for (ODataProperty field : fields) {
+                    value.add(field);
+                }
+                property = ODataObjectFactory.newComplexProperty(name, value);
+            }
+        } else if (actualType.isCollection() || actualType.isSimpleType()) {
+            throw new IllegalArgumentException("Invalid value for " + actualType.getTypeExpression());
+        } else {
+            final ODataComplexValue value = new ODataComplexValue(actualType.getTypeExpression());
+            for (ODataProperty field : fields) {
+                value.add(field);
+            }
+            property = ODataObjectFactory.newComplexProperty(name, value);
+        }
+        return property;
+    }
+
+    private ODataProperty getCollection(final String name, final EdmType edmType, final JsonParser parser)
+            throws IOException {
+
+        final EdmType baseType = edmType == null ? null : newEdmType(edmType.getBaseType());
+        final ODataCollectionValue value =
+                new ODataCollectionValue(edmType == null ? null : edmType.getTypeExpression());
+
+        boolean empty = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            empty = false;
+
+            if (token == JsonToken.START_OBJECT) {
+                final PropertyReader reader = new PropertyReader(false);
+                reader.read(parser, false);
+
+                final List<ODataProperty> fields = reader.getProperties(Collections.<String>emptySet());
+                // do not add empty values
+                if (!fields.isEmpty()) {
+                    final ODataComplexValue item =
+                            new ODataComplexValue(baseType == null ? null : baseType.getTypeExpression());
+                    for (ODataProperty field : fields) {
+                        item.add(field);
+                    }
+                    value.add(item);
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (token != JsonToken.VALUE_NULL) {
+                value.add(newPrimitiveValue(baseType == null ? null : baseType.getSimpleType(), getText(parser)));
+            }
+        }
+
+        return edmType == null && empty
+                ? newNullProperty(name)
+                : ODataObjectFactory.newCollectionProperty(name, value);
+    }
+
+    /**
+     * Binds the given value via its DOM representation, as done by <tt>ODataBinder</tt>.
+     */
+    private ODataProperty getFromDOM(final String name, final String type, final JsonNode value) {
+        final ObjectNode holder = mapper.createObjectNode();
+        if (type != null) {
+            holder.put(name + TYPE_SUFFIX, type);
+        }
+        holder.set(name, value);
+
+        final Element properties;
+        try {
+            properties = ODataConstants.DOC_BUILDER_FACTORY.newDocumentBuilder().newDocument().createElementNS(
+                    ODataConstants.NS_METADATA, ODataConstants.ELEM_PROPERTIES);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot build property content", e);
+        }
+
+        if (client.getWorkingVersion() == ODataVersion.V4) {
+            DOMTreeUtilsV4.buildSubtree(properties, holder);
+        } else {
+            DOMTreeUtilsV3.buildSubtree(properties, holder);
+        }
+
+        return client.getBinder().getProperty((Element) properties.getFirstChild());
+    }
+
+    /**
+     * Value read ahead of the annotations it might depend on.
+     */
+    private static class Pending {
+
+        private final String name;
+
+        private final String text;
+
+        private final EdmSimpleType guessed;
+
+        private final TokenBuffer buffer;
+
+        Pending(final String name, final String text, final EdmSimpleType guessed, final TokenBuffer buffer) {
+            this.name = name;
+            this.text = text;
+            this.guessed = guessed;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Collects the properties of an entity or of a complex value, in document order.
+     */
+    private class PropertyReader {
+
+        /**
+         * Whether properties failing to bind are to be skipped (entity level) or reported to the caller.
+         */
+        private final boolean lenient;
+
+        /**
+         * Either bound <tt>ODataProperty</tt> or <tt>Pending</tt> instances.
+         */
+        private final List<Object> items = new ArrayList<Object>();
+
+        private final Map<String, String> types = new HashMap<String, String>();
+
+        private String type;
+
+        private JsonNode geospatial;
+
+        PropertyReader(final boolean lenient) {
+            this.lenient = lenient;
+        }
+
+        /**
+         * Reads members of the object whose <tt>START_OBJECT</tt> token has just been returned by the parser.
+         *
+         * @param parser JSON parser.
+         * @param checkGeospatial whether to look for a leading geospatial type annotation.
+         */
+        void read(final JsonParser parser, final boolean checkGeospatial) throws IOException {
+            boolean first = true;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+
+                if (name.equals(annotationPrefix + ODataConstants.JSON_TYPE)) {
+                    type = textValue(parser);
+
+                    if (first && checkGeospatial && EdmSimpleType.isGeospatial(type)) {
+                        final ObjectNode node = mapper.createObjectNode();
+                        node.put(name, type);
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            final String field = parser.getCurrentName();
+                            parser.nextToken();
+                            node.set(field, (JsonNode) parser.readValueAsTree());
+                        }
+                        geospatial = node;
+                        return;
+                    }
+                } else if (!annotation(name, parser)) {
+                    add(name, parser);
+                }
+
+                first = false;
+            }
+        }
+
+        /**
+         * Handles annotations, i.e. members not representing properties.
+         *
+         * @return whether given member has been consumed as annotation.
+         */
+        boolean annotation(final String name, final JsonParser parser) throws IOException {
+            final boolean annotation = name.indexOf('@') >= 0 || ODataConstants.JSON_TYPE.equals(name);
+            if (annotation) {
+                if (name.endsWith(TYPE_SUFFIX) && parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+                    types.put(name.substring(0, name.length() - TYPE_SUFFIX.length()), parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return annotation;
+        }
+
+        /**
+         * Adds the property whose value token has just been returned by the parser.
+         */
+        void add(final String name, final JsonParser parser) throws IOException {
+            final JsonToken token = parser.getCurrentToken();
+
+            if (token.isScalarValue()) {
+                items.add(new Pending(name, getText(parser), guessType(parser), null));
+            } else if (types.containsKey(name)) {
+                if (lenient) {
+                    final JsonStreamContext owner = parser.getParsingContext().getParent();
+                    try {
+                        items.add(getStructured(name, types.get(name), parser));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Failure retrieving EdmType for {}", name, e);
+                        while (parser.getParsingContext() != owner && parser.nextToken() != null) {
+                            // skip the rest of the value
+                        }
+                    }
+                } else {
+                    items.add(getStructured(name, types.get(name), parser));
+                }
+            } else {
+                final TokenBuffer buffer = new TokenBuffer(parser);
+                buffer.copyCurrentStructure(parser);
+                items.add(new Pending(name, null, null, buffer));
+            }
+        }
+
+        /**
+         * Gets a parser positioned on the buffered structured value with the given name, if any.
+         */
+        JsonParser getBuffered(final String name) throws IOException {
+            for (Object item : items) {
+                if (item instanceof Pending && ((Pending) item).buffer != null && name.equals(((Pending) item).name)) {
+                    final JsonParser parser = ((Pending) item).buffer.asParser(mapper);
+                    parser.nextToken();
+                    return parser;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Binds the properties read so far.
+         *
+         * @param excluded names of members not representing properties.
+         * @return bound properties.
+         */
+        List<ODataProperty> getProperties(final Set<String> excluded) throws IOException {
+            final List<ODataProperty> properties = new ArrayList<ODataProperty>(items.size());
+
+            for (Object item : items) {
+                if (item instanceof ODataProperty) {
+                    if (!excluded.contains(((ODataProperty) item).getName())) {
+                        properties.add((ODataProperty) item);
+                    }
+                } else if (!excluded.contains(((Pending) item).name)) {
+                    final Pending pending = (Pending) item;
+                    try {
+                        if (pending.buffer == null) {
+                            properties.add(getPrimitive(
+                                    pending.name, types.get(pending.name), pending.text, pending.guessed));
+                        } else {
+                            final JsonParser parser = pending.buffer.asParser(mapper);
+                            parser.nextToken();
+                            properties.add(getStructured(pending.name, types.get(pending.name), parser));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        if (lenient) {
+                            LOG.warn("Failure retrieving EdmType for {}", pending.name, e);
+                        } else {
+                            throw e;
+                        }
+                    }
+                }
+            }
+
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine.data.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Element;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.data.ODataCollectionValue;
+import com.msopentech.odatajclient.engine.data.ODataComplexValue;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataGeospatialValue;
+import com.msopentech.odatajclient.engine.data.ODataInlineEntity;
+import com.msopentech.odatajclient.engine.data.ODataInlineEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataLink;
+import com.msopentech.odatajclient.engine.data.ODataLinkType;
+import com.msopentech.odatajclient.engine.data.ODataPrimitiveValue;
+import com.msopentech.odatajclient.engine.data.ODataProperty;
+import com.msopentech.odatajclient.engine.data.ODataValue;
+import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
+import com.msopentech.odatajclient.engine.utils.ODataConstants;
+import com.msopentech.odatajclient.engine.utils.ODataVersion;
+
+/**
+ * Writes <tt>ODataEntity</tt> instances as JSON straight to a Jackson <tt>JsonGenerator</tt>, instead of going
+ * through an <tt>EntryResource</tt> and the DOM <tt>&lt;m:properties/&gt;</tt> element.
+ * <p>
+ * The outcome is the same as <tt>ODataSerializer.entry(ODataBinder.getEntry(...))</tt>: as there, empty values
+ * (but typed empty strings) are written as <tt>[]</tt>. Geospatial values are written via their DOM representation.
+ */
+public class JSONStreamingSerializer {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String TYPE_SUFFIX = "@" + ODataConstants.JSON_TYPE;
+
+    private final ODataClient client;
+
+    /**
+     * Entity annotations prefix: none for V3 (<tt>odata.type</tt>), <tt>@</tt> for V4 (<tt>@odata.type</tt>).
+     */
+    private final String annotationPrefix;
+
+    /**
+     * Constructor.
+     *
+     * @param client OData client.
+     */
+    public JSONStreamingSerializer(final ODataClient client) {
+        this.client = client;
+        this.annotationPrefix = client.getWorkingVersion() == ODataVersion.V4 ? "@" : StringUtils.EMPTY;
+    }
+
+    /**
+     * Writes the given entity as UTF-8 encoded JSON; the output stream is not closed.
+     *
+     * @param entity entity to be written.
+     * @param outputType whether to write property types.
+     * @param output output stream.
+     */
+    public void entity(final ODataEntity entity, final boolean outputType, final OutputStream output) {
+        try {
+            final JsonGenerator jgen = FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            entity(entity, outputType, jgen);
+            jgen.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("While serializing JSON entry", e);
+        }
+    }
+
+    /**
+     * Writes the given entity as a JSON object.
+     *
+     * @param entity entity to be written.
+     * @param outputType whether to write property types.
+     * @param jgen JSON generator.
+     * @throws IOException in case of write error.
+     */
+    public void entity(final ODataEntity entity, final boolean outputType, final JsonGenerator jgen)
+            throws IOException {
+
+        jgen.writeStartObject();
+
+        if (StringUtils.isNotBlank(entity.getName())) {
+            jgen.writeStringField(annotationPrefix + ODataConstants.JSON_TYPE, entity.getName());
+        }
+        if (entity.isReadOnly()) {
+            jgen.writeStringField(annotationPrefix + ODataConstants.JSON_READ_LINK,
+                    entity.getLink().toASCIIString());
+        }
+        if (entity.getEditLink() != null) {
+            jgen.writeStringField(annotationPrefix + ODataConstants.JSON_EDIT_LINK,
+                    entity.getEditLink().toASCIIString());
+        }
+        if (entity.isMediaEntity()) {
+            if (entity.getMediaContentSource() != null) {
+                jgen.writeStringField(annotationPrefix + ODataConstants.JSON_MEDIAREAD_LINK,
+                        entity.getMediaContentSource());
+            }
+            if (entity.getMediaContentType() != null) {
+                jgen.writeStringField(annotationPrefix + ODataConstants.JSON_MEDIA_CONTENT_TYPE,
+                        entity.getMediaContentType());
+            }
+        }
+
+        final Map<String, List<String>> entitySetLinks = new LinkedHashMap<String, List<String>>();
+        for (ODataLink link : entity.getNavigationLinks()) {
+            if (!inline(link, jgen)) {
+                final String href = link.getLink() == null ? null : link.getLink().toASCIIString();
+                if (link.getType() == ODataLinkType.ENTITY_SET_NAVIGATION) {
+                    List<String> uris = entitySetLinks.get(link.getName());
+                    if (uris == null) {
+                        uris = new ArrayList<String>();
+                        entitySetLinks.put(link.getName(), uris);
+                    }
+                    uris.add(href);
+                } else {
+                    jgen.writeStringField(link.getName() + ODataConstants.JSON_BIND_LINK_SUFFIX, href);
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> entitySetLink : entitySetLinks.entrySet()) {
+            jgen.writeArrayFieldStart(entitySetLink.getKey() + ODataConstants.JSON_BIND_LINK_SUFFIX);
+            for (String uri : entitySetLink.getValue()) {
+                jgen.writeString(uri);
+            }
+            jgen.writeEndArray();
+        }
+
+        for (ODataLink link : entity.getEditMediaLinks()) {
+            if (link.getName() == null) {
+                jgen.writeStringField(annotationPrefix + ODataConstants.JSON_MEDIAEDIT_LINK,
+                        link.getLink() == null ? null : link.getLink().toASCIIString());
+            }
+            inline(link, jgen);
+        }
+
+        for (ODataProperty property : entity.getProperties()) {
+            property(property, outputType, jgen);
+        }
+
+        jgen.writeEndObject();
+    }
+
+    /**
+     * Writes the inline entity or entity set of the given link, if any.
+     *
+     * @return whether anything was written.
+     */
+    private boolean inline(final ODataLink link, final JsonGenerator jgen) throws IOException {
+        if (link instanceof ODataInlineEntity) {
+            jgen.writeFieldName(link.getName());
+            entity(((ODataInlineEntity) link).getEntity(), true, jgen);
+            return true;
+        }
+
+        if (link instanceof ODataInlineEntitySet) {
+            final ODataEntitySet entitySet = ((ODataInlineEntitySet) link).getEntitySet();
+
+            jgen.writeObjectFieldStart(link.getName());
+            if (entitySet.getNext() != null) {
+                jgen.writeStringField(ODataConstants.JSON_NEXT_LINK, entitySet.getNext().toASCIIString());
+            }
+            jgen.writeArrayFieldStart(ODataConstants.JSON_VALUE);
+            for (ODataEntity entity : entitySet.getEntities()) {
+                entity(entity, true, jgen);
+            }
+            jgen.writeEndArray();
+            jgen.writeEndObject();
+            return true;
+        }
+
+        return false;
+    }
+
+    private void property(final ODataProperty property, final boolean setType, final JsonGenerator jgen)
+            throws IOException {
+
+        final String name = property.getName();
+
+        if (property.hasNullValue()) {
+            jgen.writeNullField(name);
+        } else if (property.hasPrimitiveValue()) {
+            final ODataPrimitiveValue value = property.getPrimitiveValue();
+            if (value instanceof ODataGeospatialValue) {
+                writeFromDOM(property, jgen);
+            } else if (value.toString().length() == 0
+                    && !(setType && EdmSimpleType.String.toString().equals(value.getTypeName()))) {
+
+                writeEmpty(name, jgen);
+            } else {
+                if (setType && value.getTypeName() != null) {
+                    jgen.writeStringField(name + TYPE_SUFFIX, value.getTypeName());
+                }
+                jgen.writeStringField(name, value.toString());
+            }
+        } else if (property.hasCollectionValue()) {
+            final ODataCollectionValue value = property.getCollectionValue();
+            if (value.isEmpty()) {
+                writeEmpty(name, jgen);
+            } else if (hasGeospatialItems(value)) {
+                writeFromDOM(property, jgen);
+            } else {
+                jgen.writeArrayFieldStart(name);
+                for (ODataValue item : value) {
+                    if (item.isPrimitive()) {
+                        jgen.writeString(item.asPrimitive().toString());
+                    } else {
+                        jgen.writeStartObject();
+                        fields(item.asComplex(), jgen);
+                        jgen.writeEndObject();
+                    }
+                }
+                jgen.writeEndArray();
+            }
+        } else if (property.hasEnumValue()) {
+            if (setType) {
+                jgen.writeStringField(name + TYPE_SUFFIX, property.getEnumValue().getTypeName());
+            }
+            jgen.writeStringField(name, property.getEnumValue().toString());
+        } else {
+            final ODataComplexValue value = property.getComplexValue();
+
+            if (value.size() == 0) {
+                writeEmpty(name, jgen);
+            } else {
+                jgen.writeObjectFieldStart(name);
+                if (setType && value.getTypeName() != null) {
+                    jgen.writeStringField(annotationPrefix + ODataConstants.JSON_TYPE, value.getTypeName());
+                }
+                fields(value, jgen);
+                jgen.writeEndObject();
+            }
+        }
+    }
+
+    /**
+     * Writes an empty value as <tt>DOMTreeUtils</tt> does for elements without content, e.g. <tt>[]</tt>.
+     */
+    private void writeEmpty(final String name, final JsonGenerator jgen) throws IOException {
+        jgen.writeArrayFieldStart(name);
+        jgen.writeEndArray();
+    }
+
+    /**
+     * Writes complex value fields: these are always typed.
+     */
+    private void fields(final ODataComplexValue value, final JsonGenerator jgen) throws IOException {
+        for (ODataProperty field : value) {
+            property(field, true, jgen);
+        }
+    }
+
+    private boolean hasGeospatialItems(final ODataCollectionValue value) {
+        for (ODataValue item : value) {
+            if (item instanceof ODataGeospatialValue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the given property via its DOM representation, as done by <tt>JSONEntrySerializer</tt>.
+     */
+    private void writeFromDOM(final ODataProperty property, final JsonGenerator jgen) throws IOException {
+        final Element properties;
+        try {
+            properties = ODataConstants.DOC_BUILDER_FACTORY.newDocumentBuilder().newDocument().createElementNS(
+                    ODataConstants.NS_METADATA, ODataConstants.ELEM_PROPERTIES);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Cannot build property content", e);
+        }
+        properties.appendChild(
+                properties.getOwnerDocument().importNode(client.getBinder().toDOMElement(property), true));
+
+        DOMTreeUtils.writeSubtree(client, jgen, properties);
+    }
+}
@@ -25,13 +25,21 @@ import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractDataServices
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractSchema;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEdmx;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntityContainer;
+import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntityType;
+import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEnumType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractFunctionImport;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -53,6 +61,27 @@ public abstract class AbstractEdmMetadata<
 
     protected final Map<String, S> schemaByNsOrAlias;
 
+    /*
+     * Index built once out of the EdM metadata document, in order to avoid scanning schemas and containers at each
+     * lookup: qualified names are available both with namespace and with alias.
+     */
+    private transient Map<String, AbstractEnumType> enumTypes;
+
+    private transient Map<String, C> complexTypes;
+
+    private transient Map<String, E> entityTypes;
+
+    private transient Map<String, EC> containers;
+
+    private transient Map<String, AbstractEntitySet> entitySets;
+
+    private transient Map<AbstractEntityContainer<?>, Map<String, AbstractEntitySet>> entitySetsByContainer;
+
+    /**
+     * Parsed type expressions.
+     */
+    private transient ConcurrentMap<String, EdmType> types;
+
     /**
      * Constructor.
      *
@@ -70,6 +99,67 @@ public abstract class AbstractEdmMetadata<
                 this.schemaByNsOrAlias.put(schema.getAlias(), schema);
             }
         }
+
+        index();
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        index();
+    }
+
+    private void index() {
+        enumTypes = new HashMap<String, AbstractEnumType>();
+        complexTypes = new HashMap<String, C>();
+        entityTypes = new HashMap<String, E>();
+        containers = new HashMap<String, EC>();
+        entitySets = new HashMap<String, AbstractEntitySet>();
+        entitySetsByContainer = new IdentityHashMap<AbstractEntityContainer<?>, Map<String, AbstractEntitySet>>();
+        types = new ConcurrentHashMap<String, EdmType>();
+
+        for (S schema : getSchemas()) {
+            for (EC container : schema.getEntityContainers()) {
+                final Map<String, AbstractEntitySet> byName = new HashMap<String, AbstractEntitySet>();
+                for (AbstractEntitySet entitySet : container.getEntitySets()) {
+                    final String key = entitySet.getName().toLowerCase(Locale.ENGLISH);
+                    if (!byName.containsKey(key)) {
+                        byName.put(key, entitySet);
+                    }
+                }
+                entitySetsByContainer.put(container, byName);
+            }
+
+            for (String prefix : new String[] {schema.getNamespace(), schema.getAlias()}) {
+                if (StringUtils.isNotBlank(prefix)) {
+                    index(prefix + ".", schema);
+                }
+            }
+        }
+    }
+
+    private void index(final String prefix, final S schema) {
+        // as for the former lookups, the last type with a given name wins, the first container or entity set wins
+        for (AbstractEnumType type : schema.getEnumTypes()) {
+            enumTypes.put(prefix + type.getName(), type);
+        }
+        for (C type : schema.getComplexTypes()) {
+            complexTypes.put(prefix + type.getName(), type);
+        }
+        for (E type : schema.getEntityTypes()) {
+            entityTypes.put(prefix + type.getName(), type);
+        }
+        for (EC container : schema.getEntityContainers()) {
+            final String containerName = prefix + container.getName();
+            if (!containers.containsKey(containerName)) {
+                containers.put(containerName, container);
+            }
+            for (AbstractEntitySet entitySet : container.getEntitySets()) {
+                final String entitySetName = containerName + "." + entitySet.getName();
+                if (!entitySets.containsKey(entitySetName)) {
+                    entitySets.put(entitySetName, entitySet);
+                }
+            }
+        }
     }
 
     /**
@@ -111,6 +201,97 @@ public abstract class AbstractEdmMetadata<
         return this.edmx.getDataServices().getSchemas();
     }
 
+    /**
+     * Returns the enum type with the given qualified name.
+     *
+     * @param qualifiedName type name, qualified by namespace or alias
+     * @return the enum type with the given qualified name; null if not found
+     */
+    public AbstractEnumType getEnumType(final String qualifiedName) {
+        return this.enumTypes.get(qualifiedName);
+    }
+
+    /**
+     * Returns the complex type with the given qualified name.
+     *
+     * @param qualifiedName type name, qualified by namespace or alias
+     * @return the complex type with the given qualified name; null if not found
+     */
+    public C getComplexType(final String qualifiedName) {
+        return this.complexTypes.get(qualifiedName);
+    }
+
+    /**
+     * Returns the entity type with the given qualified name.
+     *
+     * @param qualifiedName type name, qualified by namespace or alias
+     * @return the entity type with the given qualified name; null if not found
+     */
+    public E getEntityType(final String qualifiedName) {
+        return this.entityTypes.get(qualifiedName);
+    }
+
+    /**
+     * Returns the entity container with the given name.
+     *
+     * @param nsOrAlias namespace or alias of the schema defining the entity container
+     * @param name entity container name
+     * @return the entity container with the given name; null if not found
+     */
+    public EC getEntityContainer(final String nsOrAlias, final String name) {
+        return this.containers.get(nsOrAlias + "." + name);
+    }
+
+    /**
+     * Returns the entity set with the given name.
+     *
+     * @param nsOrAlias namespace or alias of the schema defining the entity container
+     * @param containerName entity container name
+     * @param name entity set name
+     * @return the entity set with the given name; null if not found
+     */
+    public AbstractEntitySet getEntitySet(final String nsOrAlias, final String containerName, final String name) {
+        return this.entitySets.get(nsOrAlias + "." + containerName + "." + name);
+    }
+
+    /**
+     * Returns the entity set with the given name, compared ignoring case, in the given entity container.
+     *
+     * @param container entity container defined in the EdM metadata document
+     * @param name entity set name
+     * @return the entity set with the given name; null if not found
+     */
+    public AbstractEntitySet getEntitySet(final AbstractEntityContainer<?> container, final String name) {
+        final Map<String, AbstractEntitySet> byName = this.entitySetsByContainer.get(container);
+        return byName == null ? null : byName.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the type described by the given type expression; parsed types are cached.
+     *
+     * @param typeExpression type expression
+     * @return the type described by the given type expression
+     */
+    public EdmType getType(final String typeExpression) {
+        EdmType type = this.types.get(typeExpression);
+        if (type == null) {
+            type = newType(typeExpression);
+            final EdmType previous = this.types.putIfAbsent(typeExpression, type);
+            if (previous != null) {
+                type = previous;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Parses the given type expression against this EdM metadata document.
+     *
+     * @param typeExpression type expression
+     * @return parsed type
+     */
+    protected abstract EdmType newType(String typeExpression);
+
     /**
      * {@inheritDoc }
      */
@@ -102,25 +102,11 @@ abstract class AbstractEdmType<META extends AbstractEdmMetadata<
             if (!metadata.isNsOrAlias(namespaceOrAlias)) {
                 throw new IllegalArgumentException("Illegal namespace or alias: " + namespaceOrAlias);
             }
-            final S schema = metadata.getSchema(namespaceOrAlias);
-
-            for (AbstractEnumType type : schema.getEnumTypes()) {
-                if (typeName.equals(type.getName())) {
-                    this.enumType = type;
-                }
-            }
+            this.enumType = metadata.getEnumType(baseType);
             if (this.enumType == null) {
-                for (C type : schema.getComplexTypes()) {
-                    if (typeName.equals(type.getName())) {
-                        this.complexType = type;
-                    }
-                }
+                this.complexType = metadata.getComplexType(baseType);
                 if (this.complexType == null) {
-                    for (E type : schema.getEntityTypes()) {
-                        if (typeName.equals(type.getName())) {
-                            this.entityType = type;
-                        }
-                    }
+                    this.entityType = metadata.getEntityType(baseType);
                 }
             }
 
@@ -20,6 +20,8 @@
 package com.msopentech.odatajclient.engine.data.metadata;
 
 import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.data.metadata.edm.v3.Association;
+import com.msopentech.odatajclient.engine.data.metadata.edm.v3.AssociationSet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.ComplexType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.DataServices;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.Edmx;
@@ -27,15 +29,84 @@ import com.msopentech.odatajclient.engine.data.metadata.edm.v3.EntityContainer;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.EntityType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.FunctionImport;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.Schema;
+import com.msopentech.odatajclient.engine.utils.AssociationSetBindingDetails;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
 
 public class EdmV3Metadata extends AbstractEdmMetadata<
         Edmx, DataServices, Schema, EntityContainer, EntityType, ComplexType, FunctionImport> {
 
     private static final long serialVersionUID = -7765327879691528010L;
 
+    private transient Map<String, Association> associations;
+
+    private transient Map<String, AssociationSetBindingDetails> associationSets;
+
     public EdmV3Metadata(final ODataClient client, final InputStream inputStream) {
         super(client, inputStream);
+        indexAssociations();
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        indexAssociations();
+    }
+
+    private void indexAssociations() {
+        associations = new HashMap<String, Association>();
+        associationSets = new HashMap<String, AssociationSetBindingDetails>();
+
+        for (Schema schema : getSchemas()) {
+            for (String prefix : new String[] {schema.getNamespace(), schema.getAlias()}) {
+                if (StringUtils.isNotBlank(prefix)) {
+                    for (Association association : schema.getAssociations()) {
+                        associations.put(prefix + "." + association.getName(), association);
+                    }
+                }
+            }
+
+            for (EntityContainer container : schema.getEntityContainers()) {
+                for (AssociationSet associationSet : container.getAssociationSets()) {
+                    if (!associationSets.containsKey(associationSet.getAssociation())) {
+                        associationSets.put(associationSet.getAssociation(),
+                                new AssociationSetBindingDetails(associationSet, container, schema));
+                    }
+                }
+            }
+        }
     }
 
+    /**
+     * Returns the association with the given qualified name.
+     *
+     * @param qualifiedName association name, qualified by namespace or alias
+     * @return the association with the given qualified name; null if not found
+     */
+    public Association getAssociation(final String qualifiedName) {
+        return associations.get(qualifiedName);
+    }
+
+    /**
+     * Returns binding details of the first association set for the given association.
+     *
+     * @param association qualified association name, as referenced by association sets
+     * @return association set binding details; null if not found
+     */
+    public AssociationSetBindingDetails getAssociationSetBindingDetails(final String association) {
+        return associationSets.get(association);
+    }
+
+    @Override
+    public EdmV3Type getType(final String typeExpression) {
+        return (EdmV3Type) super.getType(typeExpression);
+    }
+
+    @Override
+    protected EdmType newType(final String typeExpression) {
+        return new EdmV3Type(this, typeExpression);
+    }
 }
@@ -23,24 +23,81 @@ import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.ComplexType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.DataServices;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Edmx;
+import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.EntityContainer;
+import com.msopentech.odatajclient.engine.data.metadata.edm.v4.EntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.EntityType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.FunctionImport;
+import com.msopentech.odatajclient.engine.data.metadata.edm.v4.NavigationPropertyBinding;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Reference;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Schema;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class EdmV4Metadata extends AbstractEdmMetadata<
         Edmx, DataServices, Schema, EntityContainer, EntityType, ComplexType, FunctionImport> {
 
     private static final long serialVersionUID = -7765327879691528010L;
 
+    private transient Map<AbstractEntitySet, Map<String, NavigationPropertyBinding>> bindings;
+
     public EdmV4Metadata(final ODataClient client, final InputStream inputStream) {
         super(client, inputStream);
+        indexBindings();
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        indexBindings();
+    }
+
+    private void indexBindings() {
+        bindings = new IdentityHashMap<AbstractEntitySet, Map<String, NavigationPropertyBinding>>();
+
+        for (Schema schema : getSchemas()) {
+            for (EntityContainer container : schema.getEntityContainers()) {
+                for (EntitySet entitySet : container.getEntitySets()) {
+                    final Map<String, NavigationPropertyBinding> byPath =
+                            new HashMap<String, NavigationPropertyBinding>();
+                    for (NavigationPropertyBinding binding : entitySet.getNavigationPropertyBindings()) {
+                        if (!byPath.containsKey(binding.getPath())) {
+                            byPath.put(binding.getPath(), binding);
+                        }
+                    }
+                    bindings.put(entitySet, byPath);
+                }
+            }
+        }
     }
 
     public List<Reference> getReferences() {
         return this.edmx.getReferences();
     }
+
+    /**
+     * Returns the navigation property binding with the given path.
+     *
+     * @param entitySet entity set defined in the EdM metadata document
+     * @param path navigation property binding path
+     * @return the navigation property binding with the given path; null if not found
+     */
+    public NavigationPropertyBinding getNavigationPropertyBinding(final EntitySet entitySet, final String path) {
+        final Map<String, NavigationPropertyBinding> byPath = bindings.get(entitySet);
+        return byPath == null ? null : byPath.get(path);
+    }
+
+    @Override
+    public EdmV4Type getType(final String typeExpression) {
+        return (EdmV4Type) super.getType(typeExpression);
+    }
+
+    @Override
+    protected EdmType newType(final String typeExpression) {
+        return new EdmV4Type(this, typeExpression);
+    }
 }
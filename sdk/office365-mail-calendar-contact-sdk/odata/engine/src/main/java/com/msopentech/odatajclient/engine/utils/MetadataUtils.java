@@ -21,6 +21,7 @@ package com.msopentech.odatajclient.engine.utils;
 
 import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
 import com.msopentech.odatajclient.engine.data.metadata.EdmV3Metadata;
+import com.msopentech.odatajclient.engine.data.metadata.EdmV4Metadata;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntityContainer;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractSchema;
@@ -29,6 +30,7 @@ import com.msopentech.odatajclient.engine.data.metadata.edm.v3.AssociationSet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.AssociationSetEnd;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.EntityContainer;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v3.Schema;
+import com.msopentech.odatajclient.engine.data.metadata.edm.v4.EntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.NavigationPropertyBinding;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
@@ -48,25 +50,23 @@ public class MetadataUtils {
     public static AssociationSetBindingDetails getAssociationSetBindingDetails(
             final Association association, final String associationNamespace, final EdmV3Metadata metadata) {
 
-        final StringBuilder associationName = new StringBuilder();
-        associationName.append(associationNamespace).append('.').append(association.getName());
-
-        for (Schema schema : metadata.getSchemas()) {
-            for (EntityContainer container : schema.getEntityContainers()) {
-                final AssociationSet associationSet = getAssociationSet(associationName.toString(), container);
-                if (associationSet != null) {
-                    return new AssociationSetBindingDetails(associationSet, container, schema);
-                }
-            }
+        final AssociationSetBindingDetails details =
+                metadata.getAssociationSetBindingDetails(associationNamespace + "." + association.getName());
+        if (details == null) {
+            throw new IllegalStateException("Association set not found");
         }
 
-        throw new IllegalStateException("Association set not found");
+        return details;
     }
 
     public static Association getAssociation(final Schema schema, final String relationship) {
         return schema.getAssociation(relationship.substring(relationship.lastIndexOf('.') + 1));
     }
 
+    public static Association getAssociation(final EdmV3Metadata metadata, final String relationship) {
+        return metadata.getAssociation(relationship);
+    }
+
     public static AssociationSet getAssociationSet(final String association, final EntityContainer container) {
         LOG.debug("Search for association set {}", association);
 
@@ -84,15 +84,7 @@ public class MetadataUtils {
             final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata,
             final String name) {
 
-        if (StringUtils.isNotBlank(name)) {
-            for (AbstractSchema<?, ?, ?, ?> schema : metadata.getSchemas()) {
-                if (name.equals(schema.getNamespace()) || name.equals(schema.getAlias())) {
-                    return schema;
-                }
-            }
-        }
-
-        return null;
+        return StringUtils.isBlank(name) ? null : metadata.getSchema(name);
     }
 
     public static AbstractEntityContainer<?> getContainerByName(
@@ -108,6 +100,14 @@ public class MetadataUtils {
         return null;
     }
 
+    public static AbstractEntityContainer<?> getContainerByName(
+            final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata,
+            final AbstractSchema<?, ?, ?, ?> schema,
+            final String name) {
+
+        return metadata.getEntityContainer(schema.getNamespace(), name);
+    }
+
     public static AbstractEntitySet getEntitySet(
             final AssociationSetBindingDetails associationSetBindingDetails, final String name) {
 
@@ -128,21 +128,15 @@ public class MetadataUtils {
             final String containerName,
             final String name) {
 
-        for (AbstractSchema<?, ?, ?, ?> schema : metadata.getSchemas()) {
-            if (schema.getNamespace().equals(namespace)) {
-                for (AbstractEntityContainer<?> container : schema.getEntityContainers()) {
-                    if (containerName.equals(container.getName())) {
-                        for (AbstractEntitySet entitySet : container.getEntitySets()) {
-                            if (entitySet.getName().equals(name)) {
-                                return entitySet;
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        return metadata.getEntitySet(namespace, containerName, name);
+    }
 
-        return null;
+    public static AbstractEntitySet getEntitySet(
+            final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata,
+            final AbstractEntityContainer<?> container,
+            final String name) {
+
+        return metadata.getEntitySet(container, name);
     }
 
     public static AbstractEntitySet getEntitySet(final AbstractEntityContainer<?> container, final String name) {
@@ -168,6 +162,14 @@ public class MetadataUtils {
         return null;
     }
 
+    public static NavigationPropertyBinding getNavigationBindingByPath(
+            final EdmV4Metadata metadata,
+            final EntitySet entitySet,
+            final String path) {
+
+        return metadata.getNavigationPropertyBinding(entitySet, path);
+    }
+
     public static String getEntitySetName(final AssociationSet associationSet, final String role) {
         for (AssociationSetEnd end : associationSet.getEnds()) {
             if (end.getRole().equals(role)) {
@@ -185,6 +185,10 @@ public class ODataConstants {
 
     public final static String JSON_VALUE = "value";
 
+    public final static String JSON_COUNT = "odata.count";
+
+    public final static String JSON_NEXT_LINK = "odata.nextLink";
+
     public final static String JSON_URL = "url";
 
     public final static String JSON_COORDINATES = "coordinates";
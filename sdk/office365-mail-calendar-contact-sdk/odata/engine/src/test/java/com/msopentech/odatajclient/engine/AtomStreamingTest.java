@@ -0,0 +1,102 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.msopentech.odatajclient.engine.client.ODataV3Client;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.msopentech.odatajclient.engine.data.atom.AtomDeserializer;
+import com.msopentech.odatajclient.engine.data.atom.AtomEntry;
+import com.msopentech.odatajclient.engine.data.atom.AtomStreamingDeserializer;
+import com.msopentech.odatajclient.engine.utils.XMLUtils;
+import org.junit.Test;
+
+/**
+ * Checks that <tt>AtomStreamingDeserializer</tt> gives the same results as the DOM based <tt>AtomDeserializer</tt>.
+ */
+public class AtomStreamingTest extends AbstractTest {
+
+    private ODataV3Client getClient() {
+        return v3Client;
+    }
+
+    private void entity(final String name) throws Exception {
+        final ODataEntity expected = getClient().getBinder().getODataEntity(
+                AtomDeserializer.entry(XMLUtils.PARSER.parse(getClass().getResourceAsStream(name + ".xml"))));
+        assertNotNull(expected);
+
+        final ODataEntity actual = getClient().getBinder().getODataEntity(
+                new AtomStreamingDeserializer(getClass().getResourceAsStream(name + ".xml")).entry());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void entity() throws Exception {
+        entity("Customer_-10");
+    }
+
+    @Test
+    public void mediaEntity() throws Exception {
+        entity("Car_16");
+    }
+
+    @Test
+    public void withActions() throws Exception {
+        entity("ComputerDetail_-10");
+    }
+
+    @Test
+    public void withGeospatial() throws Exception {
+        entity("AllGeoTypesSet_-8");
+        entity("AllGeoTypesSet_-5");
+    }
+
+    @Test
+    public void entitySet() throws Exception {
+        final ODataEntitySet expected = getClient().getBinder().getODataEntitySet(
+                AtomDeserializer.feed(XMLUtils.PARSER.parse(getClass().getResourceAsStream("Customer.xml"))));
+        assertNotNull(expected);
+
+        final ODataEntitySet actual = getClient().getBinder().getODataEntitySet(
+                new AtomStreamingDeserializer(getClass().getResourceAsStream("Customer.xml")).feed());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void pullEntries() throws Exception {
+        final ODataEntitySet expected = getClient().getBinder().getODataEntitySet(
+                AtomDeserializer.feed(XMLUtils.PARSER.parse(getClass().getResourceAsStream("Customer.xml"))));
+
+        final AtomStreamingDeserializer deserializer =
+                new AtomStreamingDeserializer(getClass().getResourceAsStream("Customer.xml"));
+        int count = 0;
+        AtomEntry entry;
+        while ((entry = deserializer.nextEntry()) != null) {
+            assertEquals(expected.getEntities().get(count++), getClient().getBinder().getODataEntity(entry));
+        }
+        assertEquals(expected.getEntities().size(), count);
+        assertEquals(expected.getNext(), deserializer.getFeed().getNext());
+        assertNull(deserializer.nextEntry());
+    }
+}
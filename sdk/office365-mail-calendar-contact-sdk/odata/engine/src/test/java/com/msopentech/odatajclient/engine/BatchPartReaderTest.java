@@ -0,0 +1,157 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchPartReader;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchUtilities;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Checks that <tt>ODataBatchPartReader</tt> splits batch responses and nested changesets into their parts.
+ */
+public class BatchPartReaderTest {
+
+    private static final String BATCH = "preamble\r\n"
+            + "--batch_1\r\n"
+            + "Content-Type: application/http\r\n"
+            + "Content-Transfer-Encoding: binary\r\n"
+            + "\r\n"
+            + "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/json\r\n"
+            + "\r\n"
+            + "{\"value\":\"--batch\\r\\n--batch_\"}\r\n"
+            + "--batch_1\r\n"
+            + "Content-Type: multipart/mixed; boundary=changeset_2\r\n"
+            + "\r\n"
+            + "--changeset_2\r\n"
+            + "Content-Type: application/http\r\n"
+            + "Content-ID: 1\r\n"
+            + "\r\n"
+            + "HTTP/1.1 201 Created\r\n"
+            + "\r\n"
+            + "created\r\n"
+            + "--changeset_2\r\n"
+            + "Content-Type: application/http\r\n"
+            + "Content-ID: 2\r\n"
+            + "\r\n"
+            + "HTTP/1.1 204 No Content\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "--changeset_2--\r\n"
+            + "\r\n"
+            + "--batch_1--\r\n"
+            + "epilogue";
+
+    /**
+     * Returns at most one byte per read, so that delimiters always span several reads.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+
+        TrickleInputStream(final InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) throws IOException {
+            return super.read(bytes, off, Math.min(1, len));
+        }
+    }
+
+    private void check(final InputStream input) throws IOException {
+        final ODataBatchPartReader reader = new ODataBatchPartReader(input, "--batch_1");
+
+        InputStream part = reader.nextPart();
+        assertNotNull(part);
+        Map<String, Collection<String>> headers = ODataBatchUtilities.readHeaders(part);
+        assertEquals(ODataBatchUtilities.BatchItemType.RETRIEVE, ODataBatchUtilities.getItemType(headers));
+        assertEquals(Integer.valueOf(200), ODataBatchUtilities.readResponseLine(part).getKey());
+        assertEquals("application/json", ODataBatchUtilities.readHeaders(part).get("content-type").iterator().next());
+        assertEquals("{\"value\":\"--batch\\r\\n--batch_\"}", IOUtils.toString(part, "UTF-8"));
+
+        part = reader.nextPart();
+        assertNotNull(part);
+        headers = ODataBatchUtilities.readHeaders(part);
+        assertEquals(ODataBatchUtilities.BatchItemType.CHANGESET, ODataBatchUtilities.getItemType(headers));
+
+        final ODataBatchPartReader changeset = new ODataBatchPartReader(part,
+                ODataBatchUtilities.getBoundaryFromHeader(headers.get("Content-Type")));
+
+        InputStream item = changeset.nextPart();
+        assertEquals("1", ODataBatchUtilities.readHeaders(item).get("Content-ID").iterator().next());
+        assertEquals(Integer.valueOf(201), ODataBatchUtilities.readResponseLine(item).getKey());
+        assertTrue(ODataBatchUtilities.readHeaders(item).isEmpty());
+        assertEquals("created", IOUtils.toString(item, "UTF-8"));
+
+        item = changeset.nextPart();
+        assertEquals("2", ODataBatchUtilities.readHeaders(item).get("Content-ID").iterator().next());
+        assertEquals(Integer.valueOf(204), ODataBatchUtilities.readResponseLine(item).getKey());
+        assertTrue(ODataBatchUtilities.readHeaders(item).isEmpty());
+        assertEquals("", IOUtils.toString(item, "UTF-8"));
+
+        assertNull(changeset.nextPart());
+        assertTrue(changeset.isEnded());
+
+        assertNull(reader.nextPart());
+        assertTrue(reader.isEnded());
+    }
+
+    @Test
+    public void read() throws IOException {
+        check(new ByteArrayInputStream(BATCH.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void readByByte() throws IOException {
+        check(new TrickleInputStream(new ByteArrayInputStream(BATCH.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void readWithLineFeeds() throws IOException {
+        check(new ByteArrayInputStream(BATCH.replace("\r\n", "\n").getBytes("UTF-8")));
+    }
+
+    @Test
+    public void skipUnreadParts() throws IOException {
+        final ODataBatchPartReader reader = new ODataBatchPartReader(
+                new TrickleInputStream(new ByteArrayInputStream(BATCH.getBytes("UTF-8"))), "--batch_1");
+
+        final InputStream first = reader.nextPart();
+        assertEquals("Content-Type: application/http", ODataBatchUtilities.readLine(first));
+
+        final InputStream second = reader.nextPart();
+        assertEquals(-1, first.read());
+        assertEquals("multipart/mixed; boundary=changeset_2",
+                ODataBatchUtilities.readHeaders(second).get("Content-Type").iterator().next());
+
+        assertNull(reader.nextPart());
+    }
+}
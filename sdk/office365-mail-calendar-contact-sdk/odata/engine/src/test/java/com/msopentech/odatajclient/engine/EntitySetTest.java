@@ -24,6 +24,7 @@ import static org.junit.Assert.assertEquals;
 
 import com.msopentech.odatajclient.engine.client.ODataV3Client;
 import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataEntitySetIterator;
 import com.msopentech.odatajclient.engine.format.ODataPubFormat;
 import java.io.IOException;
 import java.io.InputStream;
@@ -58,4 +59,50 @@ public class EntitySetTest extends AbstractTest {
     public void fromJSON() throws IOException {
         read(ODataPubFormat.JSON);
     }
+
+    private void setStreaming(final boolean streaming) {
+        getClient().getConfiguration().setJSONStreaming(streaming);
+        getClient().getConfiguration().setAtomStreaming(streaming);
+    }
+
+    private void iterate(final ODataPubFormat format, final boolean streaming) throws IOException {
+        // the expected entity set is always read through the DOM based deserializers
+        setStreaming(false);
+        try {
+            final ODataEntitySet expected = getClient().getReader().readEntitySet(
+                    getClass().getResourceAsStream("Customer." + getSuffix(format)), format);
+
+            setStreaming(streaming);
+            final ODataEntitySetIterator iterator = new ODataEntitySetIterator(
+                    getClient(), getClass().getResourceAsStream("Customer." + getSuffix(format)), format);
+            int count = 0;
+            while (iterator.hasNext()) {
+                assertEquals(expected.getEntities().get(count++), iterator.next());
+            }
+            assertEquals(expected.getEntities().size(), count);
+            assertEquals(expected.getNext(), iterator.getNext());
+        } finally {
+            setStreaming(true);
+        }
+    }
+
+    @Test
+    public void iterateAtom() throws IOException {
+        iterate(ODataPubFormat.ATOM, true);
+    }
+
+    @Test
+    public void iterateJSON() throws IOException {
+        iterate(ODataPubFormat.JSON, true);
+    }
+
+    @Test
+    public void iterateAtomWithoutStreaming() throws IOException {
+        iterate(ODataPubFormat.ATOM, false);
+    }
+
+    @Test
+    public void iterateJSONWithoutStreaming() throws IOException {
+        iterate(ODataPubFormat.JSON, false);
+    }
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.client.ODataV3Client;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.msopentech.odatajclient.engine.data.ODataCollectionValue;
+import com.msopentech.odatajclient.engine.data.ODataComplexValue;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
+import com.msopentech.odatajclient.engine.data.json.JSONStreamingBinder;
+import com.msopentech.odatajclient.engine.data.json.JSONStreamingSerializer;
+import com.msopentech.odatajclient.engine.format.ODataPubFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import org.junit.Test;
+
+/**
+ * Checks that <tt>JSONStreamingBinder</tt> and <tt>JSONStreamingSerializer</tt> give the same results as the DOM
+ * based binding and serialization.
+ */
+public class JSONStreamingTest extends AbstractTest {
+
+    private ODataV3Client getClient() {
+        return v3Client;
+    }
+
+    private void entity(final String name) {
+        final InputStream input = getClass().getResourceAsStream(name + ".json");
+        final ODataEntity expected = getClient().getBinder().getODataEntity(getClient().getDeserializer().toEntry(
+                input, getClient().getResourceFactory().entryClassForFormat(ODataPubFormat.JSON_FULL_METADATA)));
+        assertNotNull(expected);
+
+        final ODataEntity actual = new JSONStreamingBinder(getClient()).readEntity(
+                getClass().getResourceAsStream(name + ".json"));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void entity() {
+        entity("Customer_-10");
+    }
+
+    @Test
+    public void mediaEntity() {
+        entity("Car_16");
+    }
+
+    @Test
+    public void withActions() {
+        entity("ComputerDetail_-10");
+    }
+
+    @Test
+    public void withGeospatial() {
+        entity("AllGeoTypesSet_-8");
+        entity("AllGeoTypesSet_-5");
+    }
+
+    @Test
+    public void entitySet() {
+        final InputStream input = getClass().getResourceAsStream("Customer.json");
+        final ODataEntitySet expected = getClient().getBinder().getODataEntitySet(getClient().getDeserializer().toFeed(
+                input, getClient().getResourceFactory().feedClassForFormat(ODataPubFormat.JSON)));
+        assertNotNull(expected);
+
+        final ODataEntitySet actual = getClient().getReader().readEntitySet(
+                getClass().getResourceAsStream("Customer.json"), ODataPubFormat.JSON);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void annotationsAfterValues() {
+        final String json = "{\"odata.metadata\":\"http://host/svc/$metadata#Customer/@Element\","
+                + "\"Info\":{\"odata.type\":\"NS.Info\",\"Id\":1},"
+                + "\"Info@odata.navigationLinkUrl\":\"Customer(1)/Info\","
+                + "\"Emails\":[\"a\",\"b\"],\"Emails@odata.type\":\"Collection(Edm.String)\","
+                + "\"Age\":\"42\",\"Age@odata.type\":\"Edm.Int64\","
+                + "\"Address\":{\"Street\":\"x\"},\"Address@odata.type\":\"NS.Address\"}";
+
+        final ODataEntity entity = getClient().getReader().readEntity(
+                new ByteArrayInputStream(json.getBytes()), ODataPubFormat.JSON_FULL_METADATA);
+
+        assertEquals(1, entity.getNavigationLinks().size());
+        assertEquals("http://host/svc/Customer(1)/Info",
+                entity.getNavigationLinks().get(0).getLink().toASCIIString());
+        assertEquals(3, entity.getProperties().size());
+        assertEquals("Collection(Edm.String)", entity.getProperty("Emails").getCollectionValue().getTypeName());
+        assertEquals(2, entity.getProperty("Emails").getCollectionValue().size());
+        assertEquals("Edm.Int64", entity.getProperty("Age").getPrimitiveValue().getTypeName());
+        assertEquals("NS.Address", entity.getProperty("Address").getComplexValue().getTypeName());
+    }
+
+    private void write(final String name, final boolean outputType) throws Exception {
+        write(getClient().getReader().readEntity(
+                getClass().getResourceAsStream(name + ".json"), ODataPubFormat.JSON_FULL_METADATA), outputType);
+    }
+
+    private void write(final ODataEntity entity, final boolean outputType) throws Exception {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        getClient().getSerializer().entry(getClient().getBinder().getEntry(entity,
+                getClient().getResourceFactory().entryClassForFormat(ODataPubFormat.JSON_FULL_METADATA), outputType),
+                expected);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new JSONStreamingSerializer(getClient()).entity(entity, outputType, actual);
+
+        final ObjectMapper mapper = new ObjectMapper();
+        assertEquals(mapper.readTree(expected.toByteArray()), mapper.readTree(actual.toByteArray()));
+    }
+
+    @Test
+    public void writeEntity() throws Exception {
+        write("Customer_-10", true);
+        write("Customer_-10", false);
+    }
+
+    @Test
+    public void writeMediaEntity() throws Exception {
+        write("Car_16", true);
+    }
+
+    @Test
+    public void writeWithGeospatial() throws Exception {
+        write("AllGeoTypesSet_-8", true);
+        write("AllGeoTypesSet_-5", true);
+    }
+
+    @Test
+    public void writeEmptyValues() throws Exception {
+        final ODataEntity entity =
+                ODataObjectFactory.newEntity("Microsoft.Test.OData.Services.AstoriaDefaultService.Customer");
+        entity.addProperty(ODataObjectFactory.newCollectionProperty("Emails",
+                new ODataCollectionValue("Collection(Edm.String)")));
+        entity.addProperty(ODataObjectFactory.newComplexProperty("Auditing",
+                new ODataComplexValue("Microsoft.Test.OData.Services.AstoriaDefaultService.AuditInfo")));
+        entity.addProperty(ODataObjectFactory.newPrimitiveProperty("Name",
+                getClient().getPrimitiveValueBuilder().setType(EdmSimpleType.String).setText("").build()));
+        entity.addProperty(ODataObjectFactory.newPrimitiveProperty("Untyped",
+                getClient().getPrimitiveValueBuilder().setText("").build()));
+
+        write(entity, true);
+        write(entity, false);
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        getClient().getWriter().writeEntity(entity, ODataPubFormat.JSON_FULL_METADATA, true, actual);
+
+        final JsonNode written = new ObjectMapper().readTree(actual.toByteArray());
+        assertTrue(written.get("Emails").isArray());
+        assertTrue(written.get("Auditing").isArray());
+        assertEquals("", written.get("Name").textValue());
+    }
+}
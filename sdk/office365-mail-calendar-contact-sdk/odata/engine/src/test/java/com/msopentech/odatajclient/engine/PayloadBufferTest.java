@@ -0,0 +1,80 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.communication.request.ODataPayloadBuffer;
+import com.msopentech.org.apache.http.HttpEntity;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Checks that <tt>ODataPayloadBuffer</tt> gives back what was written, across chunk boundaries.
+ */
+public class PayloadBufferTest {
+
+    @Test
+    public void writeAndSend() throws Exception {
+        final byte[] payload = new byte[20000];
+        new Random(42).nextBytes(payload);
+
+        final ODataPayloadBuffer buffer = new ODataPayloadBuffer();
+        buffer.write(payload[0]);
+        buffer.write(payload, 1, 8190);
+        buffer.write(payload, 8191, 2);
+        buffer.write(payload, 8193, payload.length - 8193);
+
+        assertEquals(payload.length, buffer.size());
+        assertArrayEquals(payload, buffer.toByteArray());
+
+        final HttpEntity entity = buffer.toEntity();
+        assertEquals(payload.length, entity.getContentLength());
+        assertFalse(entity.isChunked());
+        assertTrue(entity.isRepeatable());
+        assertArrayEquals(payload, IOUtils.toByteArray(entity.getContent()));
+
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        entity.writeTo(sent);
+        assertArrayEquals(payload, sent.toByteArray());
+
+        buffer.release();
+
+        // released chunks are reused
+        final ODataPayloadBuffer other = new ODataPayloadBuffer();
+        other.write(payload, 0, 10);
+        assertArrayEquals(new byte[] {payload[0], payload[1], payload[2], payload[3], payload[4],
+            payload[5], payload[6], payload[7], payload[8], payload[9]}, other.toByteArray());
+        other.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writeAfterRelease() {
+        final ODataPayloadBuffer buffer = new ODataPayloadBuffer();
+        buffer.write(1);
+        buffer.release();
+        buffer.write(2);
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.msopentech.odatajclient.engine.client.ODataV3Client;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.communication.ODataClientErrorException;
+import com.msopentech.odatajclient.engine.communication.ODataServerErrorException;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveCoalescer;
+import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataEntityRequest;
+import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>ODataRetrieveCoalescer</tt> groups requests into batches, when batches are sent and how errors
+ * reach each caller, against a local HTTP server.
+ */
+public class RetrieveCoalescerTest extends AbstractTest {
+
+    private static final Pattern ITEM = Pattern.compile("GET (\\S+) HTTP/1.1");
+
+    private static final String BOUNDARY = "batchresponse_1";
+
+    private HttpServer server;
+
+    private String serviceRoot;
+
+    private byte[] entity;
+
+    /**
+     * Number of items of each batch request received.
+     */
+    private final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+
+    private volatile boolean failBatch = false;
+
+    @Before
+    public void setUp() throws IOException {
+        entity = IOUtils.toByteArray(getClass().getResourceAsStream("Customer_-10.json"));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/svc", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String request = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                if (exchange.getRequestURI().getPath().endsWith("$batch")) {
+                    batch(exchange, request);
+                } else if (exchange.getRequestURI().getPath().contains("404")) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.getResponseHeaders().add("Content-Type", "application/json;odata=fullmetadata");
+                    exchange.sendResponseHeaders(200, entity.length);
+                    exchange.getResponseBody().write(entity);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+
+        serviceRoot = "http://localhost:" + server.getAddress().getPort() + "/svc";
+    }
+
+    private void batch(final HttpExchange exchange, final String request) throws IOException {
+        final List<String> items = new ArrayList<String>();
+        final Matcher matcher = ITEM.matcher(request);
+        while (matcher.find()) {
+            items.add(matcher.group(1));
+        }
+        batches.add(items.size());
+
+        if (failBatch) {
+            exchange.sendResponseHeaders(500, -1);
+            return;
+        }
+
+        final StringBuilder response = new StringBuilder();
+        for (String item : items) {
+            response.append("--").append(BOUNDARY).append("\r\n").
+                    append("Content-Type: application/http\r\n").
+                    append("Content-Transfer-Encoding: binary\r\n\r\n");
+            if (item.contains("404")) {
+                response.append("HTTP/1.1 404 Not Found\r\n").
+                        append("Content-Type: application/json\r\n\r\n").
+                        append("{\"odata.error\":{\"code\":\"\",\"message\":{\"lang\":\"en-US\",\"value\":\"none\"}}}");
+            } else {
+                response.append("HTTP/1.1 200 OK\r\n").
+                        append("Content-Type: application/json;odata=fullmetadata\r\n\r\n").
+                        append(new String(entity, "UTF-8"));
+            }
+            response.append("\r\n");
+        }
+        response.append("--").append(BOUNDARY).append("--\r\n");
+
+        final byte[] body = response.toString().getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "multipart/mixed; boundary=" + BOUNDARY);
+        exchange.sendResponseHeaders(202, body.length);
+        final OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private ODataEntityRequest request(final ODataV3Client client, final String key) {
+        return client.getRetrieveRequestFactory().getEntityRequest(URI.create(serviceRoot + "/Customer(" + key + ")"));
+    }
+
+    private Future<ODataRetrieveResponse<ODataEntity>> submit(
+            final ODataV3Client client, final ODataRetrieveCoalescer coalescer, final String key) {
+
+        return coalescer.<ODataEntity, ODataEntityRequest>submit(request(client, key));
+    }
+
+    private ODataEntity get(final Future<ODataRetrieveResponse<ODataEntity>> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS).getBody();
+    }
+
+    @Test
+    public void grouping() throws Exception {
+        final ODataRetrieveCoalescer coalescer =
+                v3Client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 0, TimeUnit.SECONDS);
+
+        final List<Future<ODataRetrieveResponse<ODataEntity>>> futures =
+                new ArrayList<Future<ODataRetrieveResponse<ODataEntity>>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(submit(v3Client, coalescer, "-10"));
+        }
+        coalescer.flush();
+
+        for (Future<ODataRetrieveResponse<ODataEntity>> future : futures) {
+            assertNotNull(get(future));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).intValue());
+
+        // a single request is not wrapped into a batch
+        final Future<ODataRetrieveResponse<ODataEntity>> single = submit(v3Client, coalescer, "-10");
+        coalescer.flush();
+        assertNotNull(get(single));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void sizeTrigger() throws Exception {
+        final ODataRetrieveCoalescer coalescer =
+                v3Client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 0, TimeUnit.SECONDS);
+
+        final List<Future<ODataRetrieveResponse<ODataEntity>>> futures =
+                new ArrayList<Future<ODataRetrieveResponse<ODataEntity>>>();
+        for (int i = 0; i < 101; i++) {
+            futures.add(submit(v3Client, coalescer, "-10"));
+        }
+
+        // no flush(): the first 100 requests are sent as soon as collected, the last one waits
+        for (Future<ODataRetrieveResponse<ODataEntity>> future : futures.subList(0, 100)) {
+            assertNotNull(get(future));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(100, batches.get(0).intValue());
+        assertTrue(!futures.get(100).isDone());
+
+        coalescer.flush();
+        assertNotNull(get(futures.get(100)));
+    }
+
+    @Test
+    public void timeTrigger() throws Exception {
+        final ODataRetrieveCoalescer coalescer =
+                v3Client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 100, TimeUnit.MILLISECONDS);
+
+        final Future<ODataRetrieveResponse<ODataEntity>> first = submit(v3Client, coalescer, "-10");
+        final Future<ODataRetrieveResponse<ODataEntity>> second = submit(v3Client, coalescer, "-10");
+
+        assertNotNull(get(first));
+        assertNotNull(get(second));
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).intValue());
+    }
+
+    @Test
+    public void itemError() throws Exception {
+        final ODataRetrieveCoalescer coalescer =
+                v3Client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 0, TimeUnit.SECONDS);
+
+        final Future<ODataRetrieveResponse<ODataEntity>> first = submit(v3Client, coalescer, "-10");
+        final Future<ODataRetrieveResponse<ODataEntity>> missing = submit(v3Client, coalescer, "404");
+        final Future<ODataRetrieveResponse<ODataEntity>> last = submit(v3Client, coalescer, "-10");
+        coalescer.flush();
+
+        assertNotNull(get(first));
+        assertNotNull(get(last));
+        try {
+            get(missing);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ODataClientErrorException);
+            assertEquals(404, ((ODataClientErrorException) e.getCause()).getStatusLine().getStatusCode());
+        }
+    }
+
+    @Test
+    public void batchError() throws Exception {
+        failBatch = true;
+
+        final ODataRetrieveCoalescer coalescer =
+                v3Client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 0, TimeUnit.SECONDS);
+
+        final List<Future<ODataRetrieveResponse<ODataEntity>>> futures =
+                new ArrayList<Future<ODataRetrieveResponse<ODataEntity>>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(submit(v3Client, coalescer, "-10"));
+        }
+        coalescer.flush();
+
+        Throwable cause = null;
+        for (Future<ODataRetrieveResponse<ODataEntity>> future : futures) {
+            try {
+                get(future);
+                fail();
+            } catch (ExecutionException e) {
+                if (cause == null) {
+                    cause = e.getCause();
+                }
+                assertSame(cause, e.getCause());
+            }
+        }
+        assertTrue(ExceptionUtils.indexOfThrowable(cause, ODataServerErrorException.class) >= 0);
+    }
+
+    /**
+     * Callers waiting on the client executor must not prevent batches from being sent.
+     */
+    @Test
+    public void waitOnClientExecutor() throws Exception {
+        final ODataV3Client client = ODataClientFactory.getV3();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        client.getConfiguration().setExecutor(executor);
+        try {
+            final ODataRetrieveCoalescer coalescer =
+                    client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 50, TimeUnit.MILLISECONDS);
+
+            final Future<Integer> result = executor.submit(new Callable<Integer>() {
+
+                @Override
+                public Integer call() throws Exception {
+                    final Future<ODataRetrieveResponse<ODataEntity>> first = submit(client, coalescer, "-10");
+                    final Future<ODataRetrieveResponse<ODataEntity>> second = submit(client, coalescer, "-10");
+                    return (get(first) == null ? 0 : 1) + (get(second) == null ? 0 : 1);
+                }
+            });
+
+            assertEquals(2, result.get(20, TimeUnit.SECONDS).intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
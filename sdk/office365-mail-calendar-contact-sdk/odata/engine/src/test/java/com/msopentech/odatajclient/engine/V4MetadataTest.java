@@ -22,6 +22,7 @@ package com.msopentech.odatajclient.engine;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.msopentech.odatajclient.engine.client.ODataV4Client;
@@ -111,6 +112,32 @@ public class V4MetadataTest extends AbstractMetadataTest {
         assertEquals(user.getNavigationProperties().size(), users.getNavigationPropertyBindings().size());
     }
 
+    @Test
+    public void index() {
+        final EdmV4Metadata metadata = getClient().getReader().
+                readMetadata(getClass().getResourceAsStream(getPath("metadata.xml")));
+        final Schema schema = metadata.getSchema(0);
+        final String namespace = schema.getNamespace();
+
+        assertTrue(schema.getEntityType("User") == metadata.getEntityType(namespace + ".User"));
+        assertTrue(schema.getComplexType("ResponseStatus") == metadata.getComplexType(namespace + ".ResponseStatus"));
+        assertTrue(schema.getEnumType("ResponseType") == metadata.getEnumType(namespace + ".ResponseType"));
+        assertNull(metadata.getEntityType(namespace + ".Unknown"));
+
+        final EntityContainer container = schema.getEntityContainer();
+        final EntitySet users = container.getEntitySet("Users");
+        assertTrue(container == metadata.getEntityContainer(namespace, container.getName()));
+        assertTrue(users == metadata.getEntitySet(namespace, container.getName(), "Users"));
+        assertTrue(users == metadata.getEntitySet(container, "users"));
+        assertTrue(users.getNavigationPropertyBindings().get(0) == metadata.getNavigationPropertyBinding(
+                users, users.getNavigationPropertyBindings().get(0).getPath()));
+
+        final EdmV4Type type = metadata.getType("Collection(" + namespace + ".User)");
+        assertTrue(type.isCollection());
+        assertTrue(type.getEntityType() == schema.getEntityType("User"));
+        assertTrue(type == metadata.getType("Collection(" + namespace + ".User)"));
+    }
+
     @Test
     public void demo() {
         final EdmV4Metadata metadata = getClient().getReader().
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
+import com.msopentech.odatajclient.engine.communication.ODataClientErrorException;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest.BatchStreamManager;
 import com.msopentech.odatajclient.engine.communication.request.ODataStreamManager;
@@ -32,6 +33,7 @@ import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatch
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataChangeset;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataChangesetResponseItem;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieve;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveCoalescer;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveResponseItem;
 import com.msopentech.odatajclient.engine.communication.request.cud.ODataEntityCreateRequest;
 import com.msopentech.odatajclient.engine.communication.request.cud.ODataEntityUpdateRequest;
@@ -42,6 +44,7 @@ import com.msopentech.odatajclient.engine.communication.response.ODataBatchRespo
 import com.msopentech.odatajclient.engine.communication.response.ODataEntityCreateResponse;
 import com.msopentech.odatajclient.engine.communication.response.ODataEntityUpdateResponse;
 import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
+import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
 import com.msopentech.odatajclient.engine.data.ODataPrimitiveValue;
@@ -52,7 +55,10 @@ import com.msopentech.odatajclient.engine.utils.URIUtils;
 import com.msopentech.odatajclient.engine.utils.Wrapper;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import com.msopentech.org.apache.http.HttpResponse;
@@ -352,6 +358,45 @@ public class BatchTestITCase extends AbstractTest {
         assertFalse(iter.hasNext());
     }
 
+    @Test
+    public void coalescedRetrieves() throws Exception {
+        final ODataRetrieveCoalescer coalescer =
+                client.getBatchRequestFactory().getRetrieveCoalescer(testDefaultServiceRootURL, 0, TimeUnit.SECONDS);
+
+        final List<Future<ODataRetrieveResponse<ODataEntity>>> responses =
+                new ArrayList<Future<ODataRetrieveResponse<ODataEntity>>>();
+        for (int key = -10; key <= -8; key++) {
+            final ODataEntityRequest query = client.getRetrieveRequestFactory().getEntityRequest(
+                    client.getURIBuilder(testDefaultServiceRootURL).
+                    appendEntityTypeSegment("Customer").appendKeySegment(key).build());
+            responses.add(coalescer.<ODataEntity, ODataEntityRequest>submit(query));
+        }
+
+        final ODataEntityRequest missing = client.getRetrieveRequestFactory().getEntityRequest(
+                client.getURIBuilder(testDefaultServiceRootURL).
+                appendEntityTypeSegment("Customer").appendKeySegment(-1000).build());
+        final Future<ODataRetrieveResponse<ODataEntity>> notFound =
+                coalescer.<ODataEntity, ODataEntityRequest>submit(missing);
+
+        assertFalse(responses.get(0).isDone());
+        coalescer.flush();
+
+        int key = -10;
+        for (Future<ODataRetrieveResponse<ODataEntity>> response : responses) {
+            assertEquals(200, response.get().getStatusCode());
+            assertEquals(Integer.valueOf(key++),
+                    response.get().getBody().getProperty("CustomerId").getPrimitiveValue().<Integer>toCastValue());
+        }
+
+        try {
+            notFound.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ODataClientErrorException);
+            assertEquals(404, ((ODataClientErrorException) e.getCause()).getStatusLine().getStatusCode());
+        }
+    }
+
     private static class TestStreamManager extends ODataStreamManager<ODataBatchResponse> {
 
         public TestStreamManager() {
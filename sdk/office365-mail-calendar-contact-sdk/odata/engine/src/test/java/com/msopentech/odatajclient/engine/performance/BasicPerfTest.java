@@ -120,6 +120,13 @@ public class BasicPerfTest extends AbstractTest {
         readViaODataJClient(ODataPubFormat.JSON);
     }
 
+    @Test
+    public void deserializeJSONViaOdataJClient() {
+        final JSONV3Entry entry = getClient().getDeserializer().toEntry(
+                IOUtils.toInputStream(input.get(ODataPubFormat.JSON)), JSONV3Entry.class);
+        assertNotNull(entry);
+    }
+
     @Test
     public void writeAtomViaLowerlevelLibs()
             throws ParserConfigurationException, ClassNotFoundException,
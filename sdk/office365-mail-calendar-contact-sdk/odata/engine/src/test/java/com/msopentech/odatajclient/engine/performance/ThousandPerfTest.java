@@ -70,6 +70,13 @@ public class ThousandPerfTest extends BasicPerfTest {
         }
     }
 
+    @Override
+    public void deserializeJSONViaOdataJClient() {
+        for (int i = 0; i < 1000; i++) {
+            super.deserializeJSONViaOdataJClient();
+        }
+    }
+
     @Override
     public void writeJSONViaLowerlevelLibs() throws IOException {
         for (int i = 0; i < 1000; i++) {
@@ -385,12 +385,12 @@ public abstract class AbstractUtility {
             final String containerName = target[0].substring(lastDot + 1);
 
             targetSchema = MetadataUtils.getSchemaByNamespaceOrAlias(getMetadata(), targetSchemaNamespace);
-            targetContainer = MetadataUtils.getContainerByName(targetSchema, containerName);
-            targetES = MetadataUtils.getEntitySet(targetContainer, target[1]);
+            targetContainer = MetadataUtils.getContainerByName(getMetadata(), targetSchema, containerName);
+            targetES = MetadataUtils.getEntitySet(getMetadata(), targetContainer, target[1]);
         } else {
             targetContainer = bindingInfoContainer;
             targetSchema = bindingInfoSchema;
-            targetES = MetadataUtils.getEntitySet(targetContainer, target[0]);
+            targetES = MetadataUtils.getEntitySet(getMetadata(), targetContainer, target[0]);
         }
         return new NavigationPropertyBindingDetails(property, targetES, targetContainer, targetSchema);
     }
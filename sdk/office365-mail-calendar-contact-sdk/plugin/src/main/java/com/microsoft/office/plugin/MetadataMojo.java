@@ -63,7 +63,8 @@ import com.msopentech.odatajclient.engine.utils.ODataVersion;
 public class MetadataMojo extends AbstractMetadataMojo {
     
     /**
-     * Targets to be generated.
+     * Targets to be generated: <tt>interfaces</tt>, <tt>classes</tt> delegating to proxies, <tt>bound</tt> classes
+     * holding property values and instantiated instead of proxies.
      */
     @Parameter(property = "generate", defaultValue = "interfaces,classes")
     private String generateTargets;
@@ -78,7 +79,7 @@ public class MetadataMojo extends AbstractMetadataMojo {
         return ODataVersion.V4.name().toLowerCase();
     }
 
-    private boolean generateInterfaces, generateClasses;
+    private boolean generateInterfaces, generateClasses, generateBound;
 
     @Override
     public void execute() throws MojoExecutionException {
@@ -93,6 +94,8 @@ public class MetadataMojo extends AbstractMetadataMojo {
 
             generateInterfaces = generateTargets.contains("interfaces");
             generateClasses = generateTargets.contains("classes");
+            // entity classes holding property values and instantiated instead of proxies
+            generateBound = generateTargets.contains("bound");
             
             ODataV4Client client = ODataClientFactory.getV4();
             
@@ -165,6 +168,9 @@ public class MetadataMojo extends AbstractMetadataMojo {
                     try {
                         objs.clear();
                         objs.put("entityType", entity);
+                        if (generateBound) {
+                            objs.put("bound", true);
+                        }
 
                         final Map<String, String> keys;
 
@@ -199,7 +205,7 @@ public class MetadataMojo extends AbstractMetadataMojo {
                             parseObj(typesBaseDir, typesPkg,
                                     "entityCollection", "I" + utility.capitalize(entity.getName()) + "Collection.java", objs);
                         }
-                        if (generateClasses) {
+                        if (generateClasses || generateBound) {
                             parseObj(typesBaseDir, typesPkg, "entityTypeImpl",
                                     utility.capitalize(entity.getName()) + ".java", objs);
                             parseObj(typesBaseDir, typesPkg, "entityCollectionImpl",
@@ -26,7 +26,6 @@ import java.util.Map;
 import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
 import com.msopentech.odatajclient.engine.data.metadata.EdmType;
 import com.msopentech.odatajclient.engine.data.metadata.EdmV4Metadata;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV4Type;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntityContainer;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractEntitySet;
 import com.msopentech.odatajclient.engine.data.metadata.edm.AbstractNavigationProperty;
@@ -59,7 +58,7 @@ public class Utility extends AbstractUtility {
 
     @Override
     public EdmType getEdmType(final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata, final String expression) {
-        return new EdmV4Type((EdmV4Metadata) metadata, expression);
+        return metadata.getType(expression);
     }
 
     /**
@@ -225,7 +224,7 @@ public class Utility extends AbstractUtility {
             for (AbstractEntitySet es : container.getEntitySets()) {
                 if (es.getEntityType().equals(sourceEntityType)) {
                     final NavigationPropertyBinding binding = MetadataUtils.getNavigationBindingByPath(
-                            ((EntitySet) es).getNavigationPropertyBindings(), property.getName());
+                            metadata, (EntitySet) es, property.getName());
                     if (binding != null) {
                         return getNavigationBindingDetails(property, binding.getTarget(), schema, container);
                     }
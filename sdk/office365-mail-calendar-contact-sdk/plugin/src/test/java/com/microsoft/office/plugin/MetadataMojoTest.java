@@ -0,0 +1,165 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.microsoft.office.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.proxy.api.annotations.EntityClass;
+import com.msopentech.odatajclient.proxy.api.impl.AbstractBoundEntity;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collection;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Generates sources from the metadata served by a local HTTP server, then compiles them against the proxy runtime.
+ */
+public class MetadataMojoTest {
+
+    private static final String TYPES =
+            "com.microsoft.office.proxy.exchange.microsoft.exchange.services.odata.model.types";
+
+    private HttpServer server;
+
+    private String serviceRoot;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        final byte[] metadata = IOUtils.toByteArray(getClass().getResourceAsStream("/exchange-metadata.xml"));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/svc/$metadata", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(200, metadata.length);
+                final OutputStream body = exchange.getResponseBody();
+                body.write(metadata);
+                body.close();
+                exchange.close();
+            }
+        });
+        server.start();
+
+        serviceRoot = "http://localhost:" + server.getAddress().getPort() + "/svc";
+
+        directory = File.createTempFile("generated", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static void set(final Object target, final String name, final Object value) throws Exception {
+        Class<?> clazz = target.getClass();
+        while (clazz != null) {
+            try {
+                final Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    /**
+     * Generates and compiles sources for the given targets.
+     *
+     * @param targets targets to be generated.
+     * @return class loader for compiled classes.
+     */
+    private ClassLoader generateAndCompile(final String targets) throws Exception {
+        final File sources = new File(directory, "sources");
+        final File classes = new File(directory, "classes");
+        classes.mkdirs();
+
+        final MetadataMojo mojo = new MetadataMojo();
+        set(mojo, "outputDirectory", sources.getAbsolutePath());
+        set(mojo, "serviceRootURL", serviceRoot);
+        set(mojo, "serviceUsername", "user");
+        set(mojo, "servicePassword", "password");
+        set(mojo, "basePackage", "com.microsoft.office.proxy.exchange");
+        set(mojo, "generateTargets", targets);
+        mojo.execute();
+
+        final Collection<File> generated = FileUtils.listFiles(sources, new String[] {"java"}, true);
+        assertFalse(generated.isEmpty());
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        final StringWriter output = new StringWriter();
+        try {
+            final boolean compiled = compiler.getTask(output, fileManager, null,
+                    Arrays.asList("-d", classes.getAbsolutePath(),
+                            "-classpath", System.getProperty("java.class.path"),
+                            "-source", "1.6", "-target", "1.6", "-nowarn", "-proc:none"),
+                    null, fileManager.getJavaFileObjectsFromFiles(generated)).call();
+            assertTrue(output.toString(), compiled);
+        } finally {
+            fileManager.close();
+        }
+
+        return new URLClassLoader(new URL[] {classes.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void proxies() throws Exception {
+        generateAndCompile("interfaces,classes");
+    }
+
+    @Test
+    public void bound() throws Exception {
+        final ClassLoader loader = generateAndCompile("interfaces,bound");
+
+        final Class<?> entityInterface = loader.loadClass(TYPES + ".IMessage");
+        final Class<?> entityClass = loader.loadClass(TYPES + ".Message");
+        assertTrue(AbstractBoundEntity.class.isAssignableFrom(entityClass));
+        assertTrue(entityInterface.isAssignableFrom(entityClass));
+        assertEquals(entityClass, entityInterface.getAnnotation(EntityClass.class).value());
+    }
+}
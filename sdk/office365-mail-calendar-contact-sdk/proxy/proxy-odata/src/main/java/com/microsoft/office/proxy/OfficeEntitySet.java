@@ -20,6 +20,7 @@
 package com.microsoft.office.proxy;
 
 import java.io.Serializable;
+import java.util.Iterator;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.msopentech.odatajclient.proxy.api.AbstractEntityCollection;
@@ -42,4 +43,13 @@ public interface OfficeEntitySet<T extends Serializable, KEY extends Serializabl
      * @return {@link ListenableFuture} for fetch operation.
      */
     ListenableFuture<Void> fetchAsync();
+
+    /**
+     * Iterates over all remote entities page by page, without holding the whole entity set in memory.
+     * Following pages are fetched in background while the current one is being iterated.
+     * @param prefetchPages maximum number of pages to be fetched ahead; 0 fetches each page only when needed.
+     * @param maxBufferedEntities maximum number of entities held by pages fetched ahead.
+     * @return iterator over remote entities.
+     */
+    Iterator<T> iterator(int prefetchPages, int maxBufferedEntities);
 }
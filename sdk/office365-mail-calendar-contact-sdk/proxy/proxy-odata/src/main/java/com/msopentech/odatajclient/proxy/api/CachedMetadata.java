@@ -0,0 +1,65 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api;
+
+import java.io.Serializable;
+
+import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
+
+/**
+ * Parsed metadata, together with the validators received with the metadata document.
+ */
+public class CachedMetadata implements Serializable {
+
+    private static final long serialVersionUID = 2203472413513741917L;
+
+    private final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata;
+
+    private final String etag;
+
+    private final String lastModified;
+
+    /**
+     * Constructor.
+     *
+     * @param metadata parsed metadata.
+     * @param etag <tt>ETag</tt> response header, if any.
+     * @param lastModified <tt>Last-Modified</tt> response header, if any.
+     */
+    public CachedMetadata(
+            final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata, final String etag, final String lastModified) {
+
+        this.metadata = metadata;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> getMetadata() {
+        return metadata;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
@@ -19,11 +19,17 @@
  */
 package com.msopentech.odatajclient.proxy.api;
 
+import java.io.IOException;
 import java.lang.reflect.Proxy;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -31,6 +37,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.msopentech.odatajclient.engine.client.Configuration;
 import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveCoalescer;
 import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataMetadataRequest;
 import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
 import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
@@ -43,6 +50,12 @@ import com.msopentech.odatajclient.proxy.api.impl.EntityContainerInvocationHandl
  */
 public class EntityContainerFactory {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EntityContainerFactory.class);
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String LAST_MODIFIED = "Last-Modified";
+
     protected static final Object MONITOR = new Object();
     
     /**
@@ -68,7 +81,25 @@ public class EntityContainerFactory {
 
     protected final String serviceRoot;
 
-    protected AbstractEdmMetadata metadata;
+    protected volatile AbstractEdmMetadata metadata;
+
+    protected MetadataCache metadataCache;
+
+    protected volatile ListenableFuture<Boolean> revalidation;
+
+    protected volatile ODataRetrieveCoalescer retrieveCoalescer;
+
+    protected volatile int maxBatchItems = 100;
+
+    protected volatile long maxBatchBytes = 1024 * 1024;
+
+    protected volatile int flushParallelism = 4;
+
+    /**
+     * Prefetch modes per entity type, per navigation property name.
+     */
+    protected final Map<Class<?>, Map<String, NavigationPrefetch>> navigationPrefetch =
+            new ConcurrentHashMap<Class<?>, Map<String, NavigationPrefetch>>();
 
     public static Context getContext() {
         synchronized (MONITOR) {
@@ -114,14 +145,160 @@ public class EntityContainerFactory {
         return serviceRoot;
     }
 
+    /**
+     * Sets the cache used by <tt>getMetadata()</tt>: when metadata for this service root are found there, they are
+     * returned straight away and revalidated in background.
+     * <p>
+     * Revalidation only refreshes the cache: metadata returned by this factory never change, so that entity
+     * containers and proxies already handed out keep working on the model they were built from; updated metadata
+     * are picked up by factories created afterwards, e.g. on next start.
+     *
+     * @param metadataCache metadata cache; null to disable caching.
+     */
+    public void setMetadataCache(final MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Enables or disables coalescing of entity retrievals by key: those issued within the given window - typically
+     * via <tt>getAsync()</tt> - are sent together as a single batch request.
+     *
+     * @param window coalescing window; 0 to disable coalescing.
+     * @param unit window time unit.
+     */
+    public void setRetrieveCoalescing(final long window, final TimeUnit unit) {
+        this.retrieveCoalescer = window > 0
+                ? client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, window, unit)
+                : null;
+    }
+
+    public ODataRetrieveCoalescer getRetrieveCoalescer() {
+        return retrieveCoalescer;
+    }
+
+    public int getMaxBatchItems() {
+        return maxBatchItems;
+    }
+
+    /**
+     * Sets the maximum number of changes sent by a batch container within a single batch request: exceeding changes
+     * are sent via further batch requests, submitted concurrently.
+     *
+     * @param maxBatchItems maximum number of changes per batch request.
+     */
+    public void setMaxBatchItems(final int maxBatchItems) {
+        this.maxBatchItems = maxBatchItems;
+    }
+
+    public int getFlushParallelism() {
+        return flushParallelism;
+    }
+
+    /**
+     * Sets the maximum number of requests sent concurrently by a sequential container, among those not depending on
+     * each other.
+     *
+     * @param flushParallelism maximum number of concurrent requests; 1 to send all requests one at a time.
+     */
+    public void setFlushParallelism(final int flushParallelism) {
+        this.flushParallelism = flushParallelism;
+    }
+
+    /**
+     * Gets how the given navigation property of the given entity type is loaded: when not set for the entity type
+     * itself, the setting of the nearest base type declaring it applies.
+     *
+     * @param entityType entity type interface.
+     * @param navigationProperty navigation property name.
+     * @return prefetch mode; <tt>NONE</tt> if not set.
+     */
+    public NavigationPrefetch getNavigationPrefetch(final Class<?> entityType, final String navigationProperty) {
+        final Map<String, NavigationPrefetch> byProperty = navigationPrefetch.get(entityType);
+        final NavigationPrefetch prefetch = byProperty == null ? null : byProperty.get(navigationProperty);
+        if (prefetch != null) {
+            return prefetch;
+        }
+
+        for (Class<?> baseType : entityType.getInterfaces()) {
+            final NavigationPrefetch inherited = getNavigationPrefetch(baseType, navigationProperty);
+            if (inherited != NavigationPrefetch.NONE) {
+                return inherited;
+            }
+        }
+        return NavigationPrefetch.NONE;
+    }
+
+    /**
+     * Sets how the given navigation property of the given entity type - and of the types derived from it - is loaded
+     * once accessed on two entities read together, e.g. a page of an entity set: for all of them at once, instead of
+     * one request per entity.
+     *
+     * @param entityType entity type interface.
+     * @param navigationProperty navigation property name.
+     * @param prefetch prefetch mode; <tt>NONE</tt> to issue one request per entity.
+     */
+    public void setNavigationPrefetch(
+            final Class<?> entityType, final String navigationProperty, final NavigationPrefetch prefetch) {
+
+        Map<String, NavigationPrefetch> byProperty = navigationPrefetch.get(entityType);
+        if (byProperty == null) {
+            synchronized (navigationPrefetch) {
+                byProperty = navigationPrefetch.get(entityType);
+                if (byProperty == null) {
+                    byProperty = new ConcurrentHashMap<String, NavigationPrefetch>();
+                    navigationPrefetch.put(entityType, byProperty);
+                }
+            }
+        }
+        byProperty.put(navigationProperty, prefetch);
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the payload size beyond which a batch container stops adding changes to the current batch request and
+     * starts a new one. This is checked only when batch payloads are buffered - see
+     * <tt>Configuration.isBatchBuffering()</tt>.
+     *
+     * @param maxBatchBytes maximum payload size, in bytes, per batch request.
+     */
+    public void setMaxBatchBytes(final long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Gets metadata for this service root: these are retrieved, or read from the metadata cache, on first invocation
+     * and never change afterwards.
+     *
+     * @return metadata.
+     * @throws IllegalStateException if metadata cannot be retrieved, or the metadata cache cannot be accessed.
+     */
     public AbstractEdmMetadata getMetadata() {
         synchronized (this) {
             if (metadata == null) {
-                final ODataMetadataRequest req = client.getRetrieveRequestFactory().getMetadataRequest(serviceRoot);
-                final ODataRetrieveResponse<AbstractEdmMetadata> res = req.execute();
-                metadata = res.getBody();
-                if (metadata == null) {
-                    throw new IllegalStateException("No metadata found at URI '" + serviceRoot + "'");
+                final CachedMetadata cached = getCachedMetadata();
+                if (cached == null) {
+                    metadata = retrieveMetadata(null);
+                } else {
+                    metadata = cached.getMetadata();
+                    revalidation = mExecutorService.submit(new Callable<Boolean>() {
+
+                        @Override
+                        public Boolean call() {
+                            try {
+                                final boolean changed = retrieveMetadata(cached) != null;
+                                if (changed) {
+                                    LOG.info("Cached metadata for {} updated, in use from next start", serviceRoot);
+                                }
+                                return changed;
+                            } catch (RuntimeException e) {
+                                LOG.error("Could not revalidate cached metadata for {}", serviceRoot, e);
+                                throw e;
+                            }
+                        }
+                    });
                 }
             }
         }
@@ -129,6 +306,69 @@ public class EntityContainerFactory {
         return metadata;
     }
 
+    /**
+     * Gets the background revalidation of cached metadata started by <tt>getMetadata()</tt>, if any.
+     *
+     * @return revalidation outcome: whether cached metadata were updated; null if no revalidation was started.
+     */
+    public ListenableFuture<Boolean> getMetadataRevalidation() {
+        return revalidation;
+    }
+
+    private CachedMetadata getCachedMetadata() {
+        if (metadataCache == null) {
+            return null;
+        }
+
+        try {
+            return metadataCache.get(serviceRoot);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read cached metadata for " + serviceRoot, e);
+        }
+    }
+
+    /**
+     * Retrieves metadata, storing them into the metadata cache, if any.
+     *
+     * @param cached cached metadata to be revalidated, if any.
+     * @return retrieved metadata; null if cached metadata are still valid.
+     */
+    protected AbstractEdmMetadata retrieveMetadata(final CachedMetadata cached) {
+        final ODataMetadataRequest req = client.getRetrieveRequestFactory().getMetadataRequest(serviceRoot);
+        if (cached != null && cached.getEtag() != null) {
+            req.setIfNoneMatch(cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            req.addCustomHeader(IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+
+        final ODataRetrieveResponse<AbstractEdmMetadata> res = req.execute();
+        if (cached != null && res.getStatusCode() == 304) {
+            res.close();
+            return null;
+        }
+
+        final AbstractEdmMetadata retrieved = res.getBody();
+        if (retrieved == null) {
+            throw new IllegalStateException("No metadata found at URI '" + serviceRoot + "'");
+        }
+
+        if (metadataCache != null) {
+            try {
+                metadataCache.put(serviceRoot, new CachedMetadata(
+                        retrieved, res.getEtag(), getFirst(res.getHeader(LAST_MODIFIED))));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not cache metadata for " + serviceRoot, e);
+            }
+        }
+
+        return retrieved;
+    }
+
+    private static String getFirst(final Collection<String> values) {
+        return values == null || values.isEmpty() ? null : values.iterator().next();
+    }
+
     /**
      * Return an initialized concrete implementation of the passed EntityContainer interface.
      *
@@ -0,0 +1,139 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata cache storing one file per service root, in the Java serialized form of <tt>CachedMetadata</tt>.
+ * Entries which cannot be deserialized, for example because written by a different library version, are discarded;
+ * any other I/O failure is reported to the caller.
+ */
+public class FileMetadataCache implements MetadataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    private static final String SUFFIX = ".metadata";
+
+    private final File directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory directory where cached metadata are stored; it is created if missing.
+     */
+    public FileMetadataCache(final File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public CachedMetadata get(final String serviceRoot) throws IOException {
+        final File file = getFile(serviceRoot);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Object cached = null;
+        ObjectInputStream input = null;
+        try {
+            input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            cached = input.readObject();
+        } catch (ObjectStreamException e) {
+            LOG.warn("Discarding invalid cached metadata {}", file, e);
+        } catch (EOFException e) {
+            LOG.warn("Discarding truncated cached metadata {}", file, e);
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Discarding incompatible cached metadata {}", file, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        if (cached instanceof CachedMetadata) {
+            return (CachedMetadata) cached;
+        }
+
+        if (!file.delete()) {
+            throw new IOException("Could not delete invalid cached metadata " + file);
+        }
+        return null;
+    }
+
+    @Override
+    public void put(final String serviceRoot, final CachedMetadata metadata) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create metadata cache directory " + directory);
+        }
+
+        final File file = getFile(serviceRoot);
+        final File temp = new File(directory, file.getName() + ".tmp");
+
+        boolean written = false;
+        ObjectOutputStream output = null;
+        try {
+            output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            output.writeObject(metadata);
+            output.close();
+            output = null;
+
+            // replace the former entry only once the new one has been completely written
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+            written = true;
+        } finally {
+            IOUtils.closeQuietly(output);
+            if (!written) {
+                temp.delete();
+            }
+        }
+    }
+
+    private File getFile(final String serviceRoot) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(serviceRoot.getBytes("UTF-8"));
+
+            final StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api;
+
+import java.io.IOException;
+
+/**
+ * Stores parsed metadata across process restarts, so that <tt>EntityContainerFactory</tt> does not need to
+ * download and parse <tt>$metadata</tt> before first use.
+ *
+ * @see EntityContainerFactory#setMetadataCache(MetadataCache)
+ */
+public interface MetadataCache {
+
+    /**
+     * Gets cached metadata for the given service root.
+     *
+     * @param serviceRoot service root.
+     * @return cached metadata; null if not found, or if the entry is not valid anymore - e.g. written by a different
+     * library version.
+     * @throws IOException if the cache cannot be read.
+     */
+    CachedMetadata get(String serviceRoot) throws IOException;
+
+    /**
+     * Stores metadata for the given service root, replacing any former entry.
+     *
+     * @param serviceRoot service root.
+     * @param metadata metadata to be cached.
+     * @throws IOException if the cache cannot be written.
+     */
+    void put(String serviceRoot, CachedMetadata metadata) throws IOException;
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.msopentech.odatajclient.proxy.api.annotations.EntityClass;
+
+/**
+ * Base class for generated entity classes, instantiated instead of dynamic proxies for entity type interfaces
+ * annotated as <tt>EntityClass</tt>.
+ * <br/>
+ * Property values are held in fields of the generated class, read from the bound handler on first access and
+ * written through to it on set, so that change tracking and flushing work as for proxies. Fields are reloaded as
+ * soon as the handler is given a new entity or property values are set via another instance.
+ * Navigation properties, operations and any other method are delegated to a proxy of the same handler.
+ */
+public abstract class AbstractBoundEntity implements Serializable {
+
+    private static final long serialVersionUID = -1738553637413462405L;
+
+    /**
+     * Constructors of generated entity classes, per entity type interface; interfaces not annotated as
+     * <tt>EntityClass</tt> are mapped to themselves.
+     */
+    private static final ConcurrentMap<Class<?>, Object> CONSTRUCTORS = new ConcurrentHashMap<Class<?>, Object>();
+
+    private final EntityTypeInvocationHandler handler;
+
+    private transient Object proxy;
+
+    private int version;
+
+    /**
+     * Constructor.
+     *
+     * @param handler entity handler.
+     */
+    protected AbstractBoundEntity(final EntityTypeInvocationHandler handler) {
+        this.handler = handler;
+        this.version = handler.getVersion();
+    }
+
+    /**
+     * Creates an instance of the given entity type interface, bound to the given handler.
+     *
+     * @param type entity type interface.
+     * @param handler entity handler.
+     * @return generated entity class instance, if the given interface is annotated as <tt>EntityClass</tt>; a proxy
+     * otherwise.
+     */
+    static Object newInstance(final Class<?> type, final EntityTypeInvocationHandler handler) {
+        Object constructor = CONSTRUCTORS.get(type);
+        if (constructor == null) {
+            constructor = type;
+
+            final EntityClass entityClass = type.getAnnotation(EntityClass.class);
+            if (entityClass != null) {
+                try {
+                    constructor = entityClass.value().getConstructor(EntityTypeInvocationHandler.class);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException("Invalid entity class for " + type.getName(), e);
+                }
+            }
+
+            CONSTRUCTORS.putIfAbsent(type, constructor);
+        }
+
+        if (constructor instanceof Constructor) {
+            try {
+                return ((Constructor<?>) constructor).newInstance(handler);
+            } catch (InstantiationException e) {
+                throw new IllegalStateException(e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        return Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    public EntityTypeInvocationHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Gets a proxy of the bound handler, to which methods not backed by fields are delegated.
+     *
+     * @return proxy implementing the entity type interface.
+     */
+    protected Object getProxy() {
+        if (proxy == null) {
+            proxy = Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
+                    new Class<?>[] {handler.getTypeRef()}, handler);
+        }
+        return proxy;
+    }
+
+    /**
+     * Checks whether entity or property values changed in the bound handler since last check, in such case
+     * clearing fields via <tt>reset()</tt>.
+     */
+    protected void sync() {
+        final int current = handler.getVersion();
+        if (version != current) {
+            version = current;
+            reset();
+        }
+    }
+
+    /**
+     * Clears fields, so that property values are read again from the bound handler. Overriding methods must invoke
+     * this one.
+     */
+    protected void reset() {
+        // nothing to clear here
+    }
+
+    /**
+     * Reads a property value from the bound handler.
+     *
+     * @param <V> property value type.
+     * @param getterName name of the property getter in the entity type interface.
+     * @return property value.
+     */
+    @SuppressWarnings("unchecked")
+    protected <V> V readProperty(final String getterName) {
+        return (V) handler.readProperty(getGetter(getterName));
+    }
+
+    /**
+     * Writes a property value to the bound handler.
+     *
+     * @param getterName name of the property getter in the entity type interface.
+     * @param value property value.
+     */
+    protected void writeProperty(final String getterName, final Object value) {
+        sync();
+        handler.writeProperty(getGetter(getterName), value);
+        version = handler.getVersion();
+    }
+
+    private ProxyMethod getGetter(final String getterName) {
+        try {
+            return ProxyMethod.getGetter(handler.getClass(), handler.getTypeRef(), getterName);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Property getter not found: " + getterName, e);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return handler.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return handler.equals(obj);
+    }
+
+    @Override
+    public String toString() {
+        return handler.toString();
+    }
+}
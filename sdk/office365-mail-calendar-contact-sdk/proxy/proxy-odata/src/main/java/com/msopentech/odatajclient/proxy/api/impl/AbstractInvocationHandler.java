@@ -28,7 +28,6 @@ import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,9 +56,7 @@ import com.msopentech.odatajclient.engine.data.ODataProperty;
 import com.msopentech.odatajclient.engine.data.ODataValue;
 import com.msopentech.odatajclient.engine.data.metadata.EdmType;
 import com.msopentech.odatajclient.engine.data.metadata.EdmV3Metadata;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV3Type;
 import com.msopentech.odatajclient.engine.data.metadata.EdmV4Metadata;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV4Type;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Action;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Function;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Schema;
@@ -93,22 +90,17 @@ abstract class AbstractInvocationHandler implements InvocationHandler {
     }
 
     protected boolean isSelfMethod(final Method method, final Object[] args) {
-        final Method[] selfMethods = getClass().getMethods();
-
-        boolean result = false;
-
-        for (int i = 0; i < selfMethods.length && !result; i++) {
-            result = method.getName().equals(selfMethods[i].getName())
-                    && Arrays.equals(method.getParameterTypes(), selfMethods[i].getParameterTypes());
-        }
-
-        return result;
+        return ProxyMethod.getSelfMethod(getClass(), method) != null;
     }
 
     protected Object invokeSelfMethod(final Method method, final Object[] args)
             throws NoSuchMethodException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-        LOG.debug("Invoking {}", method.toString());
-        return getClass().getMethod(method.getName(), method.getParameterTypes()).invoke(this, args);
+        LOG.debug("Invoking {}", method);
+        final Method selfMethod = ProxyMethod.getSelfMethod(getClass(), method);
+        if (selfMethod == null) {
+            throw new NoSuchMethodException(method.getName());
+        }
+        return selfMethod.invoke(this, args);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -121,10 +113,13 @@ abstract class AbstractInvocationHandler implements InvocationHandler {
             final boolean checkInTheContext) {
 
         final List<Object> items = new ArrayList<Object>();
+        final EntityPage page = new EntityPage(uri);
 
         for (ODataEntity entityFromSet : entitySet.getEntities()) {
-            items.add(getEntityProxy(
-                    entityFromSet, entityContainerName, entitySet.getName(), typeRef, checkInTheContext));
+            final Object item = getEntityProxy(
+                    entityFromSet, entityContainerName, entitySet.getName(), typeRef, checkInTheContext);
+            page.add(EntityTypeInvocationHandler.getHandler(item));
+            items.add(item);
         }
 
         return Proxy.newProxyInstance(
@@ -164,10 +159,7 @@ abstract class AbstractInvocationHandler implements InvocationHandler {
             handler = EntityContainerFactory.getContext().entityContext().getEntity(handler.getUUID());
         }
 
-        return (T) Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                new Class<?>[] { type },
-                handler);
+        return (T) AbstractBoundEntity.newInstance(type, handler);
     }
 
     protected Object functionImport(
@@ -198,8 +190,7 @@ abstract class AbstractInvocationHandler implements InvocationHandler {
                 final ODataValue paramValue = args[i] == null
                         ? null
                         : EngineUtils.getODataValue(client, containerHandler.getFactory().getMetadata(),
-                                client instanceof ODataV3Client? new EdmV3Type((EdmV3Metadata) containerHandler.getFactory().getMetadata(), parAnnot.type()) :
-                                                                 new EdmV4Type((EdmV4Metadata) containerHandler.getFactory().getMetadata(), parAnnot.type()),
+                                containerHandler.getFactory().getMetadata().getType(parAnnot.type()),
                                 args[i]);
 
                 parameters.put(parAnnot.name(), paramValue);
@@ -230,12 +221,7 @@ abstract class AbstractInvocationHandler implements InvocationHandler {
             return ClassUtils.returnVoid();
         }
 
-        final EdmType edmType;
-        if (client instanceof ODataV3Client) {
-            edmType = new EdmV3Type((EdmV3Metadata) containerHandler.getFactory().getMetadata(), annotation.returnType());
-        } else {
-            edmType = new EdmV4Type((EdmV4Metadata) containerHandler.getFactory().getMetadata(), annotation.returnType());
-        }
+        final EdmType edmType = containerHandler.getFactory().getMetadata().getType(annotation.returnType());
 
         // TODO enums have not been tested as Exchange has no actions/functions that return enums
         if (edmType.isSimpleType() || edmType.isComplexType() || edmType.isEnumType()) {
@@ -20,16 +20,18 @@
 package com.msopentech.odatajclient.proxy.api.impl;
 
 import java.io.InputStream;
-import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -37,6 +39,7 @@ import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.communication.header.ODataHeaderValues;
 import com.msopentech.odatajclient.engine.communication.request.UpdateType;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchableRequest;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchResponseItem;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataChangeset;
 import com.msopentech.odatajclient.engine.communication.request.batch.ODataChangesetResponseItem;
@@ -51,6 +54,7 @@ import com.msopentech.odatajclient.engine.communication.response.ODataResponse;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 import com.msopentech.odatajclient.engine.data.ODataLinkType;
 import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.ODataProperty;
 import com.msopentech.odatajclient.engine.format.ODataMediaFormat;
 import com.msopentech.odatajclient.engine.uri.URIBuilder;
 import com.msopentech.odatajclient.engine.utils.URIUtils;
@@ -71,114 +75,194 @@ public class BatchContainer extends Container {
 
     /**
      * Transactional changes commit.
+     * <p>
+     * Changes are split into groups of changes referring each other via <tt>$&lt;content id&gt;</tt>: such groups
+     * are packed into as many batch requests - one changeset each - as needed to stay within
+     * <tt>EntityContainerFactory.getMaxBatchItems()</tt> and <tt>EntityContainerFactory.getMaxBatchBytes()</tt>.
+     * A group is never split, even if exceeding such limits. Batch requests are submitted concurrently.
      */
     @Override
     public void flush() {
-        final ODataBatchRequest request = client.getBatchRequestFactory().getBatchRequest(factory.getServiceRoot());
-        final ODataBatchRequest.BatchStreamManager streamManager = request.execute();
-        final ODataChangeset changeset = streamManager.addChangeset();
-
         final TransactionItems items = new TransactionItems();
         final List<EntityLinkDesc> delayedUpdates = new ArrayList<EntityLinkDesc>();
-
-        // what is this?
-        int pos = 0;
+        final ChangesetPlan plan = new ChangesetPlan();
 
         for (AttachedEntity attachedEntity : EntityContainerFactory.getContext().entityContext()) {
             final AttachedEntityStatus status = attachedEntity.getStatus();
-            if (((status != AttachedEntityStatus.ATTACHED
-                    && status != AttachedEntityStatus.LINKED) || attachedEntity.getEntity().isChanged())
+            if (((status != AttachedEntityStatus.ATTACHED && status != AttachedEntityStatus.LINKED
+                    && status != AttachedEntityStatus.CHANGED) || attachedEntity.getEntity().isChanged())
                     && !items.contains(attachedEntity.getEntity())) {
-                pos++;
-                pos = processEntityContext(attachedEntity.getEntity(), pos, items, delayedUpdates, changeset);
+                processEntityContext(attachedEntity.getEntity(), items, delayedUpdates, plan);
             }
         }
 
-        // why they are delayed?
-        processDelayedUpdates(delayedUpdates, pos, items, changeset);
+        // links towards entities not yet processed when their source was: to be set once both are created
+        processDelayedUpdates(delayedUpdates, items, plan);
 
-        final ODataBatchResponse response = streamManager.getResponse();
+        final List<List<Integer>> contentIds = new ArrayList<List<Integer>>();
+        final List<Future<ODataBatchResponse>> responses = new ArrayList<Future<ODataBatchResponse>>();
 
-        if (response.getStatusCode() != 202) {
-            throw new IllegalStateException("Operation failed");
-        }
+        ODataBatchRequest.BatchStreamManager streamManager = null;
+        ODataChangeset changeset = null;
+        List<Integer> batched = null;
 
-        final Iterator<ODataBatchResponseItem> iter = response.getBody();
+        for (List<PlannedChange> group : plan.groups()) {
+            if (streamManager != null && (batched.size() + group.size() > factory.getMaxBatchItems()
+                    || (streamManager.getBodyBuffer() != null
+                    && streamManager.getBodyBuffer().size() >= factory.getMaxBatchBytes()))) {
 
-        if (!items.isEmpty()) {
-            if (!iter.hasNext()) {
-                throw new IllegalStateException("Unexpected operation result");
+                responses.add(streamManager.getAsyncResponse());
+                streamManager = null;
             }
 
-            final ODataBatchResponseItem item = iter.next();
-            if (!(item instanceof ODataChangesetResponseItem)) {
-                throw new IllegalStateException("Unexpected batch response item " + item.getClass().getSimpleName());
+            if (streamManager == null) {
+                streamManager = client.getBatchRequestFactory().getBatchRequest(factory.getServiceRoot()).execute();
+                changeset = streamManager.addChangeset();
+                batched = new ArrayList<Integer>();
+                contentIds.add(batched);
             }
 
-            final ODataChangesetResponseItem chgres = (ODataChangesetResponseItem) item;
-
-            for (Integer changesetItemId : items.sortedValues()) {
-                LOG.debug("Expected changeset item {}", changesetItemId);
-                final ODataResponse res = chgres.next();
-                if (res.getStatusCode() >= 400) {
-                    throw new IllegalStateException("Transaction failed: " + res.getStatusMessage());
-                }
+            for (PlannedChange change : group) {
+                changeset.addRequest(change.getRequest(), change.getContentId());
+                batched.add(change.getContentId());
+            }
+        }
 
-                final EntityTypeInvocationHandler handler = items.get(changesetItemId);
+        if (streamManager != null) {
+            responses.add(streamManager.getAsyncResponse());
+        }
 
-                if (handler != null) {
-                    if (res instanceof ODataEntityCreateResponse) {
-                        LOG.debug("Upgrade created object '{}'", handler);
-                        handler.setEntity(((ODataEntityCreateResponse) res).getBody());
-                    } else if (res instanceof ODataEntityUpdateResponse) {
-                        LOG.debug("Upgrade updated object '{}'", handler);
-                        handler.setEntity(((ODataEntityUpdateResponse) res).getBody());
+        LOG.debug("{} changes sent via {} batch requests", plan.size(), responses.size());
+
+        // merge all successful results before reporting any failure
+        final Set<EntityTypeInvocationHandler> merged = new HashSet<EntityTypeInvocationHandler>();
+        IllegalStateException failure = null;
+        for (int i = 0; i < responses.size(); i++) {
+            ODataBatchResponse response = null;
+            try {
+                response = responses.get(i).get();
+                merge(response, contentIds.get(i), items);
+                for (Integer contentId : contentIds.get(i)) {
+                    if (items.get(contentId) != null) {
+                        merged.add(items.get(contentId));
                     }
                 }
+            } catch (IllegalStateException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IllegalStateException("Operation interrupted", e);
+            } catch (ExecutionException e) {
+                failure = new IllegalStateException("Operation failed", e.getCause());
+            } catch (RuntimeException e) {
+                failure = new IllegalStateException("Operation failed", e);
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+
+        if (failure != null) {
+            // changes committed by other batch requests must not be sent again
+            for (EntityTypeInvocationHandler handler : merged) {
+                EntityContainerFactory.getContext().entityContext().detach(handler);
             }
+            throw failure;
         }
 
         EntityContainerFactory.getContext().detachAll();
     }
 
-    private void batch(
-            final EntityTypeInvocationHandler handler, final ODataEntity entity, final ODataChangeset changeset) {
+    /**
+     * Checks the given batch response, made of a single changeset, and upgrades the entities involved.
+     *
+     * @param response batch response.
+     * @param contentIds content ids sent with the changeset, in order.
+     * @param items transaction items.
+     */
+    void merge(final ODataBatchResponse response, final List<Integer> contentIds, final TransactionItems items) {
+        if (response.getStatusCode() != 202) {
+            throw new IllegalStateException("Operation failed");
+        }
+
+        final Iterator<ODataBatchResponseItem> iter = response.getBody();
+        if (!iter.hasNext()) {
+            throw new IllegalStateException("Unexpected operation result");
+        }
+
+        final ODataBatchResponseItem item = iter.next();
+        if (!(item instanceof ODataChangesetResponseItem)) {
+            throw new IllegalStateException("Unexpected batch response item " + item.getClass().getSimpleName());
+        }
+
+        final ODataChangesetResponseItem chgres = (ODataChangesetResponseItem) item;
+
+        for (Integer changesetItemId : contentIds) {
+            LOG.debug("Expected changeset item {}", changesetItemId);
+            if (!chgres.hasNext()) {
+                throw new IllegalStateException("Missing result for changeset item " + changesetItemId);
+            }
+
+            final ODataResponse res = chgres.next();
+            if (res.getStatusCode() >= 400) {
+                throw new IllegalStateException("Transaction failed: " + res.getStatusMessage());
+            }
+
+            final EntityTypeInvocationHandler handler = items.get(changesetItemId);
+
+            if (handler != null) {
+                if (res instanceof ODataEntityCreateResponse) {
+                    LOG.debug("Upgrade created object '{}'", handler);
+                    handler.setEntity(((ODataEntityCreateResponse) res).getBody());
+                } else if (res instanceof ODataEntityUpdateResponse) {
+                    LOG.debug("Upgrade updated object '{}'", handler);
+                    handler.setEntity(((ODataEntityUpdateResponse) res).getBody());
+                }
+            }
+        }
+    }
+
+    private Integer batch(
+            final EntityTypeInvocationHandler handler,
+            final ODataEntity entity,
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         switch (EntityContainerFactory.getContext().entityContext().getStatus(handler)) {
             case NEW:
-                batchCreate(handler, entity, changeset);
-                break;
+                return batchCreate(handler, entity, references, plan);
 
             case CHANGED:
-                batchUpdate(handler, entity, changeset);
-                break;
+                return batchUpdate(handler, entity, references, plan);
 
             case DELETED:
-                batchDelete(handler, entity, changeset);
-                break;
+                return batchDelete(handler, entity, plan);
 
             default:
-                if (handler.isChanged()) {
-                    batchUpdate(handler, entity, changeset);
-                }
+                return handler.isChanged() ? batchUpdate(handler, entity, references, plan) : null;
         }
     }
 
-    private void batchCreate(
-            final EntityTypeInvocationHandler handler, final ODataEntity entity, final ODataChangeset changeset) {
+    private int batchCreate(
+            final EntityTypeInvocationHandler handler,
+            final ODataEntity entity,
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         LOG.debug("Create '{}'", handler);
 
         final URIBuilder uriBuilder = client.getURIBuilder(factory.getServiceRoot()).
                 appendEntitySetSegment(handler.getEntitySetName());
-        changeset.addRequest(client.getCUDRequestFactory().getEntityCreateRequest(uriBuilder.build(), entity));
+        return plan.add(client.getCUDRequestFactory().getEntityCreateRequest(uriBuilder.build(), entity), references);
     }
 
-    private void batchUpdateMediaEntity(
+    private int batchUpdateMediaEntity(
             final EntityTypeInvocationHandler handler,
             final URI uri,
             final InputStream input,
-            final ODataChangeset changeset) {
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         LOG.debug("Update media entity '{}'", uri);
 
@@ -193,14 +277,15 @@ public class BatchContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        changeset.addRequest(req);
+        return plan.add(req, references);
     }
 
-    private void batchUpdateMediaResource(
+    private int batchUpdateMediaResource(
             final EntityTypeInvocationHandler handler,
             final URI uri,
             final InputStream input,
-            final ODataChangeset changeset) {
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         LOG.debug("Update media entity '{}'", uri);
 
@@ -210,13 +295,14 @@ public class BatchContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        changeset.addRequest(req);
+        return plan.add(req, references);
     }
 
-    private void batchUpdate(
+    private int batchUpdate(
             final EntityTypeInvocationHandler handler,
             final ODataEntity changes,
-            final ODataChangeset changeset) {
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         LOG.debug("Update '{}'", changes.getEditLink());
 
@@ -228,14 +314,15 @@ public class BatchContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        changeset.addRequest(req);
+        return plan.add(req, references);
     }
 
-    private void batchUpdate(
+    private int batchUpdate(
             final EntityTypeInvocationHandler handler,
             final URI uri,
             final ODataEntity changes,
-            final ODataChangeset changeset) {
+            final Collection<Integer> references,
+            final ChangesetPlan plan) {
 
         LOG.debug("Update '{}'", uri);
 
@@ -247,11 +334,11 @@ public class BatchContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        changeset.addRequest(req);
+        return plan.add(req, references);
     }
 
-    private void batchDelete(
-            final EntityTypeInvocationHandler handler, final ODataEntity entity, final ODataChangeset changeset) {
+    private int batchDelete(
+            final EntityTypeInvocationHandler handler, final ODataEntity entity, final ChangesetPlan plan) {
 
         LOG.debug("Delete '{}'", entity.getEditLink());
 
@@ -262,15 +349,14 @@ public class BatchContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        changeset.addRequest(req);
+        return plan.add(req, Collections.<Integer>emptySet());
     }
 
-    private int processEntityContext(
+    private void processEntityContext(
             final EntityTypeInvocationHandler handler,
-            int pos,
             final TransactionItems items,
             final List<EntityLinkDesc> delayedUpdates,
-            final ODataChangeset changeset) {
+            final ChangesetPlan plan) {
 
         LOG.debug("Process '{}'", handler);
 
@@ -287,9 +373,14 @@ public class BatchContainer extends Container {
 
         if (AttachedEntityStatus.DELETED != currentStatus) {
             entity.getProperties().clear();
-            EngineUtils.addProperties(client, factory.getMetadata(), handler.getPropertyChanges(), entity);
+            for (ODataProperty property : handler.getChangedProperties()) {
+                entity.addProperty(property);
+            }
         }
 
+        // content ids of the changes referred via navigation links
+        final Set<Integer> references = new HashSet<Integer>();
+
         for (Map.Entry<NavigationProperty, Object> property : handler.getLinkChanges().entrySet()) {
             final ODataLinkType type = Collection.class.isAssignableFrom(property.getValue().getClass())
                     ? ODataLinkType.ENTITY_SET_NAVIGATION
@@ -302,7 +393,7 @@ public class BatchContainer extends Container {
                     ? (Collection) property.getValue() : Collections.singleton(property.getValue())) {
 
                 final EntityTypeInvocationHandler target =
-                        (EntityTypeInvocationHandler) Proxy.getInvocationHandler(proxy);
+                        EntityTypeInvocationHandler.getHandler(proxy);
 
                 final AttachedEntityStatus status;
 
@@ -316,15 +407,14 @@ public class BatchContainer extends Container {
 
                 final URI editLink = target.getEntity().getEditLink();
 
-                if ((status == AttachedEntityStatus.ATTACHED || status == AttachedEntityStatus.LINKED)
-                        && !target.isChanged()) {
+                if ((status == AttachedEntityStatus.ATTACHED || status == AttachedEntityStatus.LINKED
+                        || status == AttachedEntityStatus.CHANGED) && !target.isChanged()) {
                     entity.addLink(buildNavigationLink(
                             property.getKey().name(),
                             URIUtils.getURI(serviceRoot, editLink.toASCIIString()), type));
                 } else {
                     if (!items.contains(target)) {
-                        pos = processEntityContext(target, pos, items, delayedUpdates, changeset);
-                        pos++;
+                        processEntityContext(target, items, delayedUpdates, plan);
                     }
 
                     final Integer targetPos = items.get(target);
@@ -342,6 +432,7 @@ public class BatchContainer extends Container {
 
                         entity.addLink(
                                 buildNavigationLink(property.getKey().name(), URI.create("$" + targetPos), type));
+                        references.add(targetPos);
                     }
                 }
             }
@@ -352,12 +443,15 @@ public class BatchContainer extends Container {
         }
 
         // insert into the batch
-        LOG.debug("{}: Insert '{}' into the batch", pos, handler);
-        batch(handler, entity, changeset);
+        final Integer startingPos = batch(handler, entity, references, plan);
+        LOG.debug("{}: Insert '{}' into the batch", startingPos, handler);
 
-        items.put(handler, pos);
+        items.put(handler, startingPos);
 
-        int startingPos = pos;
+        // further changes to an entity being created refer to its creation
+        final Collection<Integer> creation = currentStatus == AttachedEntityStatus.NEW
+                ? Collections.singleton(startingPos)
+                : Collections.<Integer>emptySet();
 
         if (handler.getEntity().isMediaEntity()) {
 
@@ -366,9 +460,7 @@ public class BatchContainer extends Container {
                 final URI targetURI = currentStatus == AttachedEntityStatus.NEW
                         ? URI.create("$" + startingPos)
                         : URIUtils.getURI(factory.getServiceRoot(), handler.getEntity().getEditLink().toASCIIString());
-                batchUpdate(handler, targetURI, entity, changeset);
-                pos++;
-                items.put(handler, pos);
+                items.put(handler, batchUpdate(handler, targetURI, entity, creation, plan));
             }
 
             // update media content
@@ -378,11 +470,8 @@ public class BatchContainer extends Container {
                         : URIUtils.getURI(
                         factory.getServiceRoot(), handler.getEntity().getEditLink().toASCIIString() + "/$value");
 
-                batchUpdateMediaEntity(handler, targetURI, handler.getStreamChanges(), changeset);
-
                 // update media info (use null key)
-                pos++;
-                items.put(null, pos);
+                items.put(null, batchUpdateMediaEntity(handler, targetURI, handler.getStreamChanges(), creation, plan));
             }
         }
 
@@ -392,26 +481,127 @@ public class BatchContainer extends Container {
                     factory.getServiceRoot(),
                     EngineUtils.getEditMediaLink(streamedChanges.getKey(), entity).toASCIIString());
 
-            batchUpdateMediaResource(handler, targetURI, streamedChanges.getValue(), changeset);
-
-            // update media info (use null key)
-            pos++;
-            items.put(handler, pos);
+            items.put(handler,
+                    batchUpdateMediaResource(handler, targetURI, streamedChanges.getValue(), creation, plan));
         }
-
-        return pos;
     }
 
     private void processDelayedUpdates(
             final List<EntityLinkDesc> delayedUpdates,
-            int pos,
             final TransactionItems items,
-            final ODataChangeset changeset) {
+            final ChangesetPlan plan) {
 
         for (EntityLinkDesc delayedUpdate : delayedUpdates) {
             final ODataEntity changes = ODataObjectFactory.newEntity(delayedUpdate.getSource().getEntity().getName());
-            final URI sourceURI = prepareDelayedUpdate(items, pos, delayedUpdate, changes);
-            batchUpdate(delayedUpdate.getSource(), sourceURI, changes, changeset);
+            final Set<Integer> references = new HashSet<Integer>();
+            final URI sourceURI = prepareDelayedUpdate(items, delayedUpdate, changes, references);
+
+            // recorded after preparing, so that the source is still referred via its own creation
+            items.put(delayedUpdate.getSource(),
+                    batchUpdate(delayedUpdate.getSource(), sourceURI, changes, references, plan));
+        }
+    }
+
+    /**
+     * Change to be sent, with its content id.
+     */
+    static class PlannedChange {
+
+        private final int contentId;
+
+        private final ODataBatchableRequest request;
+
+        public PlannedChange(final int contentId, final ODataBatchableRequest request) {
+            this.contentId = contentId;
+            this.request = request;
+        }
+
+        public int getContentId() {
+            return contentId;
+        }
+
+        public ODataBatchableRequest getRequest() {
+            return request;
+        }
+    }
+
+    /**
+     * Collects changes in content id order, keeping track of <tt>$&lt;content id&gt;</tt> references among them.
+     */
+    static class ChangesetPlan {
+
+        private final List<PlannedChange> changes = new ArrayList<PlannedChange>();
+
+        /**
+         * Union-find forest over content ids: changes referring each other, even indirectly, share the same root.
+         */
+        private final List<Integer> parents = new ArrayList<Integer>();
+
+        /**
+         * Adds the given request, with the next content id.
+         *
+         * @param request request.
+         * @param references content ids of the changes the given request refers to.
+         * @return content id assigned to the given request.
+         */
+        public int add(final ODataBatchableRequest request, final Collection<Integer> references) {
+            final int contentId = changes.size() + 1;
+            for (Integer reference : references) {
+                if (reference == null || reference < 1 || reference >= contentId) {
+                    throw new IllegalArgumentException("Invalid reference to change " + reference
+                            + " from change " + contentId);
+                }
+            }
+
+            changes.add(new PlannedChange(contentId, request));
+            parents.add(contentId);
+            for (Integer reference : references) {
+                union(contentId, reference);
+            }
+
+            return contentId;
+        }
+
+        /**
+         * Gets the number of changes added so far.
+         *
+         * @return number of changes.
+         */
+        public int size() {
+            return changes.size();
+        }
+
+        /**
+         * Gets changes grouped by mutual references, each group in content id order; groups are sorted by their
+         * lowest content id.
+         *
+         * @return groups of changes.
+         */
+        public Collection<List<PlannedChange>> groups() {
+            final Map<Integer, List<PlannedChange>> groups = new LinkedHashMap<Integer, List<PlannedChange>>();
+            for (PlannedChange change : changes) {
+                final Integer root = find(change.getContentId());
+                if (!groups.containsKey(root)) {
+                    groups.put(root, new ArrayList<PlannedChange>());
+                }
+                groups.get(root).add(change);
+            }
+            return groups.values();
+        }
+
+        private int find(final int contentId) {
+            int root = contentId;
+            while (parents.get(root - 1) != root) {
+                root = parents.get(root - 1);
+            }
+            return root;
+        }
+
+        private void union(final int contentId, final int reference) {
+            final int root = find(reference);
+            final int other = find(contentId);
+            // keep the lowest content id as root
+            parents.set(Math.max(root, other) - 1, Math.min(root, other));
         }
     }
 }
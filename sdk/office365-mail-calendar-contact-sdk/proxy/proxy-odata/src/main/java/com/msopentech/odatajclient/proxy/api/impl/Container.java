@@ -21,8 +21,11 @@ package com.msopentech.odatajclient.proxy.api.impl;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -85,9 +88,23 @@ public abstract class Container implements AbstractContainer {
         }
     }
 
-    protected URI prepareDelayedUpdate(TransactionItems items, int pos, EntityLinkDesc delayedUpdate, final ODataEntity changes) {
-        ++pos;
-        items.put(delayedUpdate.getSource(), pos);
+    /**
+     * Adds to the given changes the links of a delayed update.
+     * <p>
+     * Entities not existing on the server yet are referred via <tt>$&lt;content id&gt;</tt>, as found in the given
+     * transaction items: such content ids are added to <tt>references</tt>, so that the delayed update is sent along
+     * with the changes creating them. The caller is in charge of recording the delayed update itself into the
+     * transaction items, once it has a content id.
+     *
+     * @param items transaction items.
+     * @param delayedUpdate delayed update.
+     * @param changes changes to be sent for the delayed update.
+     * @param references content ids referred by the delayed update.
+     * @return the URI the delayed update is to be sent to.
+     */
+    protected URI prepareDelayedUpdate(final TransactionItems items, final EntityLinkDesc delayedUpdate,
+            final ODataEntity changes, final Collection<Integer> references) {
+
         AttachedEntityStatus status =
                 EntityContainerFactory.getContext().entityContext().getStatus(delayedUpdate.getSource());
 
@@ -97,8 +114,9 @@ public abstract class Container implements AbstractContainer {
                     factory.getServiceRoot(),
                     delayedUpdate.getSource().getEntity().getEditLink().toASCIIString());
         } else {
-            int sourcePos = items.get(delayedUpdate.getSource());
+            final int sourcePos = items.get(delayedUpdate.getSource());
             sourceURI = URI.create("$" + sourcePos);
+            references.add(sourcePos);
         }
 
         for (EntityTypeInvocationHandler target : delayedUpdate.getTargets()) {
@@ -109,8 +127,9 @@ public abstract class Container implements AbstractContainer {
                 targetURI = URIUtils.getURI(
                         factory.getServiceRoot(), target.getEntity().getEditLink().toASCIIString());
             } else {
-                int targetPos = items.get(target);
+                final int targetPos = items.get(target);
                 targetURI = URI.create("$" + targetPos);
+                references.add(targetPos);
             }
 
             changes.addLink(delayedUpdate.getType() == ODataLinkType.ENTITY_NAVIGATION
@@ -141,58 +160,85 @@ public abstract class Container implements AbstractContainer {
 
     protected class TransactionItems {
 
-        private final List<EntityTypeInvocationHandler> keys = new ArrayList<EntityTypeInvocationHandler>();
+        /**
+         * Values per key, in insertion order.
+         */
+        private final Map<EntityTypeInvocationHandler, List<Integer>> byKey =
+                new HashMap<EntityTypeInvocationHandler, List<Integer>>();
+
+        /**
+         * First key inserted per value.
+         */
+        private final Map<Integer, EntityTypeInvocationHandler> byValue =
+                new HashMap<Integer, EntityTypeInvocationHandler>();
 
-        private final List<Integer> values = new ArrayList<Integer>();
+        /**
+         * Number of entries.
+         */
+        private int size = 0;
 
         public EntityTypeInvocationHandler get(final Integer value) {
-            if (value != null && values.contains(value)) {
-                return keys.get(values.indexOf(value));
-            } else {
-                return null;
-            }
+            return value == null ? null : byValue.get(value);
         }
 
         public Integer get(final EntityTypeInvocationHandler key) {
-            if (key != null && keys.contains(key)) {
-                return values.get(keys.indexOf(key));
-            } else {
-                return null;
-            }
+            return key == null || !byKey.containsKey(key) ? null : byKey.get(key).get(0);
         }
 
         public void remove(final EntityTypeInvocationHandler key) {
-            if (keys.contains(key)) {
-                values.remove(keys.indexOf(key));
-                keys.remove(key);
+            final List<Integer> removed = byKey.remove(key);
+            if (removed != null) {
+                size -= removed.size();
+                for (Integer value : removed) {
+                    if (value != null && byValue.get(value) == key) {
+                        byValue.remove(value);
+                    }
+                }
             }
         }
 
         public void put(final EntityTypeInvocationHandler key, final Integer value) {
             // replace just in case of null current value; otherwise add the new entry
-            if (key != null && keys.contains(key) && values.get(keys.indexOf(key)) == null) {
+            if (key != null && byKey.containsKey(key) && byKey.get(key).get(0) == null) {
                 remove(key);
             }
-            keys.add(key);
-            values.add(value);
+
+            List<Integer> keyValues = byKey.get(key);
+            if (keyValues == null) {
+                keyValues = new ArrayList<Integer>(1);
+                byKey.put(key, keyValues);
+            }
+            keyValues.add(value);
+
+            if (value != null && !byValue.containsKey(value)) {
+                byValue.put(value, key);
+            }
+            size++;
         }
 
         public List<Integer> sortedValues() {
-            final List<Integer> sortedValues = new ArrayList<Integer>(values);
+            final List<Integer> sortedValues = new ArrayList<Integer>(size);
+            for (List<Integer> keyValues : byKey.values()) {
+                for (Integer value : keyValues) {
+                    if (value != null) {
+                        sortedValues.add(value);
+                    }
+                }
+            }
             Collections.<Integer>sort(sortedValues);
             return sortedValues;
         }
 
         public boolean contains(final EntityTypeInvocationHandler key) {
-            return keys.contains(key);
+            return byKey.containsKey(key);
         }
 
         public int size() {
-            return keys.size();
+            return size;
         }
 
         public boolean isEmpty() {
-            return keys.isEmpty();
+            return size == 0;
         }
     }
 }
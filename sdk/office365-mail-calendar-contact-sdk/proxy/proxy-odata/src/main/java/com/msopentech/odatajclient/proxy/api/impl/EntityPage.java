@@ -0,0 +1,299 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveCoalescer;
+import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataEntityRequest;
+import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataEntitySetRequest;
+import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataInlineEntity;
+import com.msopentech.odatajclient.engine.data.ODataInlineEntitySet;
+import com.msopentech.odatajclient.engine.data.ODataLink;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.utils.URIUtils;
+import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.msopentech.odatajclient.proxy.api.NavigationPrefetch;
+import com.msopentech.odatajclient.proxy.api.annotations.NavigationProperty;
+import com.msopentech.odatajclient.proxy.utils.EngineUtils;
+
+/**
+ * Entities read together - a page of an entity set or a navigated collection - so that a navigation property
+ * accessed on several of them can be loaded for all at once, as configured via
+ * <tt>EntityContainerFactory.setNavigationPrefetch()</tt>.
+ */
+class EntityPage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityPage.class);
+
+    /**
+     * Maximum length of the URIs reading entities by key for <tt>EXPAND</tt> prefetch: long keys, such as Exchange
+     * ids, are filtered by several requests rather than by a single URI exceeding server limits.
+     */
+    static final int MAX_EXPAND_URI_LENGTH = 2048;
+
+    /**
+     * URI the entities were read from.
+     */
+    private final URI uri;
+
+    private final List<EntityTypeInvocationHandler> handlers = new ArrayList<EntityTypeInvocationHandler>();
+
+    /**
+     * Accesses per navigation property not satisfied by prefetched links, since the last prefetch.
+     */
+    private final Map<String, Integer> misses = new HashMap<String, Integer>();
+
+    EntityPage(final URI uri) {
+        this.uri = uri;
+    }
+
+    void add(final EntityTypeInvocationHandler handler) {
+        handlers.add(handler);
+        handler.setPage(this);
+    }
+
+    /**
+     * Records an access to the given navigation property requiring a request: on the second one, the navigation
+     * property is loaded for all the entities of this page and handed to their handlers as inline links.
+     *
+     * @param requester handler being accessed.
+     * @param property navigation property.
+     * @param collection whether the navigation property is collection valued.
+     */
+    void miss(final EntityTypeInvocationHandler requester, final NavigationProperty property,
+            final boolean collection) {
+
+        final NavigationPrefetch prefetch = requester.containerHandler.getFactory().
+                getNavigationPrefetch(requester.getTypeRef(), property.name());
+        if (prefetch == NavigationPrefetch.NONE || handlers.size() < 2) {
+            return;
+        }
+
+        synchronized (this) {
+            final Integer count = misses.get(property.name());
+            if (count == null) {
+                misses.put(property.name(), 1);
+                return;
+            }
+            misses.remove(property.name());
+        }
+
+        LOG.debug("Prefetching navigation property '{}' for {} entities via {}",
+                property.name(), handlers.size(), prefetch);
+        try {
+            if (prefetch == NavigationPrefetch.EXPAND) {
+                expand(requester, property, collection);
+            } else {
+                batch(requester, property, collection);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not prefetch navigation property '{}' from {}", property.name(), uri, e);
+        }
+    }
+
+    /**
+     * Reads the entities again by key, with the given navigation property expanded, via as many requests as needed to
+     * keep URIs within <tt>MAX_EXPAND_URI_LENGTH</tt>; falls back to <tt>batch()</tt> for entity types with compound
+     * keys.
+     */
+    private void expand(final EntityTypeInvocationHandler requester, final NavigationProperty property,
+            final boolean collection) {
+
+        final ODataClient client = requester.client;
+        final EntityContainerFactory factory = requester.containerHandler.getFactory();
+
+        final String keyProperty = EngineUtils.getKeyPropertyName(requester.getTypeRef());
+        if (keyProperty == null) {
+            LOG.debug("Cannot filter {} by key, prefetching '{}' via batch",
+                    requester.getTypeRef().getSimpleName(), property.name());
+            batch(requester, property, collection);
+            return;
+        }
+
+        final List<Object> keys = new ArrayList<Object>(handlers.size());
+        for (EntityTypeInvocationHandler handler : handlers) {
+            if (handler.getUUID().getKey() != null) {
+                keys.add(handler.getUUID().getKey());
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        final Map<Object, ODataEntity> byKey = new HashMap<Object, ODataEntity>();
+        for (URI expandURI : getExpandURIs(client, uri, keyProperty, keys, property.name(), MAX_EXPAND_URI_LENGTH)) {
+            final ODataEntitySet entitySet =
+                    client.getRetrieveRequestFactory().getEntitySetRequest(expandURI).execute().getBody();
+            for (ODataEntity entity : entitySet.getEntities()) {
+                byKey.put(EngineUtils.getKey(factory.getMetadata(), requester.getTypeRef(), entity), entity);
+            }
+        }
+
+        for (EntityTypeInvocationHandler handler : handlers) {
+            final ODataEntity entity = byKey.get(handler.getUUID().getKey());
+            final ODataLink link = entity == null ? null : EngineUtils.getNavigationLink(property.name(), entity);
+            if (link instanceof ODataInlineEntity || link instanceof ODataInlineEntitySet) {
+                handler.setPrefetchedLink(property, link);
+            }
+        }
+    }
+
+    /**
+     * Splits the given keys among URIs built by <tt>getExpandURI()</tt>, each within the given length - unless a
+     * single key exceeds it.
+     *
+     * @param client OData client.
+     * @param uri URI the entities were read from.
+     * @param keyProperty key property name.
+     * @param keys entity keys.
+     * @param navigationProperty navigation property to expand.
+     * @param maxLength maximum URI length.
+     * @return URIs reading the given entities, in key order.
+     */
+    static List<URI> getExpandURIs(final ODataClient client, final URI uri, final String keyProperty,
+            final List<?> keys, final String navigationProperty, final int maxLength) {
+
+        final List<URI> uris = new ArrayList<URI>();
+
+        int start = 0;
+        URI last = null;
+        for (int end = 1; end <= keys.size(); end++) {
+            final URI candidate = getExpandURI(client, uri, keyProperty, keys.subList(start, end), navigationProperty);
+            if (candidate.toASCIIString().length() > maxLength && last != null) {
+                uris.add(last);
+                start = end - 1;
+                last = getExpandURI(client, uri, keyProperty, keys.subList(start, end), navigationProperty);
+            } else {
+                last = candidate;
+            }
+        }
+        if (last != null) {
+            uris.add(last);
+        }
+
+        return uris;
+    }
+
+    /**
+     * Builds the URI reading the given entities by key, with the given navigation property expanded: the query
+     * options of the page URI - such as the skip token of a next link - are dropped, as they do not select the
+     * same entities anymore.
+     *
+     * @param client OData client.
+     * @param uri URI the entities were read from.
+     * @param keyProperty key property name.
+     * @param keys entity keys.
+     * @param navigationProperty navigation property to expand.
+     * @return URI reading the given entities.
+     */
+    static URI getExpandURI(final ODataClient client, final URI uri, final String keyProperty,
+            final Collection<?> keys, final String navigationProperty) {
+
+        final StringBuilder filter = new StringBuilder();
+        for (Object key : keys) {
+            if (filter.length() > 0) {
+                filter.append(" or ");
+            }
+            // string keys are quoted only: URIUtils.escape() would encode them once more than the query option
+            filter.append(keyProperty).append(" eq ").append(key instanceof String
+                    ? "'" + ((String) key).replace("'", "''") + "'"
+                    : URIUtils.escape(key));
+        }
+
+        return client.getURIBuilder(StringUtils.substringBefore(uri.toASCIIString(), "?")).
+                filter(filter.toString()).top(keys.size()).expand(navigationProperty).build();
+    }
+
+    /**
+     * Retrieves the given navigation property of all entities via a single batch request.
+     */
+    private void batch(final EntityTypeInvocationHandler requester, final NavigationProperty property,
+            final boolean collection) {
+
+        final ODataClient client = requester.client;
+        final String serviceRoot = requester.containerHandler.getFactory().getServiceRoot();
+
+        final ODataRetrieveCoalescer coalescer =
+                client.getBatchRequestFactory().getRetrieveCoalescer(serviceRoot, 0, TimeUnit.MILLISECONDS);
+
+        final Map<EntityTypeInvocationHandler, URI> links = new LinkedHashMap<EntityTypeInvocationHandler, URI>();
+        final Map<EntityTypeInvocationHandler, Future<?>> responses =
+                new HashMap<EntityTypeInvocationHandler, Future<?>>();
+        for (EntityTypeInvocationHandler handler : handlers) {
+            final ODataLink link = EngineUtils.getNavigationLink(property.name(), handler.getEntity());
+            if (link == null || link instanceof ODataInlineEntity || link instanceof ODataInlineEntitySet
+                    || handler.getLinkChanges().containsKey(property)) {
+                continue;
+            }
+
+            final URI target = URIUtils.getURI(serviceRoot, link.getLink().toASCIIString());
+            links.put(handler, target);
+            responses.put(handler, collection
+                    ? coalescer.<ODataEntitySet, ODataEntitySetRequest>submit(
+                            client.getRetrieveRequestFactory().getEntitySetRequest(target))
+                    : coalescer.<ODataEntity, ODataEntityRequest>submit(
+                            client.getRetrieveRequestFactory().getEntityRequest(target)));
+        }
+        coalescer.flush();
+
+        for (Map.Entry<EntityTypeInvocationHandler, URI> link : links.entrySet()) {
+            try {
+                final ODataRetrieveResponse<?> res =
+                        (ODataRetrieveResponse<?>) responses.get(link.getKey()).get();
+
+                if (collection) {
+                    link.getKey().setPrefetchedLink(property, ODataObjectFactory.newInlineEntitySet(
+                            property.name(), link.getValue(), (ODataEntitySet) res.getBody()));
+                } else {
+                    final ODataEntity entity = (ODataEntity) res.getBody();
+                    if (entity.getETag() == null) {
+                        entity.setETag(res.getEtag());
+                    }
+                    link.getKey().setPrefetchedLink(property, ODataObjectFactory.newInlineEntity(
+                            property.name(), link.getValue(), entity));
+                }
+            } catch (ExecutionException e) {
+                // left to be retrieved on access
+                LOG.debug("Could not prefetch navigation property '{}' of {}", property.name(), link.getKey(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -35,18 +35,23 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.microsoft.office.proxy.OfficeEntitySet;
 import com.msopentech.odatajclient.engine.communication.ODataClientErrorException;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataRetrieveCoalescer;
+import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataEntityRequest;
 import com.msopentech.odatajclient.engine.communication.request.retrieve.ODataValueRequest;
 import com.msopentech.odatajclient.engine.communication.response.ODataRetrieveResponse;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
@@ -61,6 +66,7 @@ import com.msopentech.odatajclient.proxy.api.annotations.CompoundKey;
 import com.msopentech.odatajclient.proxy.api.annotations.CompoundKeyElement;
 import com.msopentech.odatajclient.proxy.api.annotations.EntitySet;
 import com.msopentech.odatajclient.proxy.api.annotations.EntityType;
+import com.msopentech.odatajclient.proxy.api.context.AttachedEntity;
 import com.msopentech.odatajclient.proxy.api.context.AttachedEntityStatus;
 import com.msopentech.odatajclient.proxy.api.context.EntityContext;
 import com.msopentech.odatajclient.proxy.api.context.EntityUUID;
@@ -102,22 +108,14 @@ class EntitySetInvocationHandler<
     private EntityCollectionInvocationHandler<T> setAsCollection = null;
 
     /**
-     * An instance of iterator to be returned when iterator() method called before entities collected from service.
+     * Pages fetched ahead while iterating over entities not fetched via <tt>fetch()</tt>.
      */
-    private final Iterator<T> mEmptyIterator = new Iterator<T>() {
-        @Override
-        public boolean hasNext() {
-            return false;
-        }
-        @Override
-        public T next() {
-            throw new NoSuchElementException("You must retrieve data from service before accessing iterator.");
-        }
-        @Override
-        public void remove() {
-            throw new IllegalStateException("You must retrieve data from service before accessing iterator.");
-        }
-    };
+    private static final int PREFETCH_PAGES = 1;
+
+    /**
+     * Entities buffered ahead while iterating over entities not fetched via <tt>fetch()</tt>.
+     */
+    private static final int MAX_BUFFERED_ENTITIES = 500;
 
     /**
      * Gets an instance of {@link EntitySetInvocationHandler}.
@@ -272,10 +270,7 @@ class EntitySetInvocationHandler<
                 entity, containerHandler.getEntityContainerName(), String.format(createPath, entitySetName), reference, containerHandler);
         EntityContainerFactory.getContext().entityContext().attachNew(handler);
 
-        return (NE) Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                new Class<?>[] {reference},
-                handler);
+        return (NE) AbstractBoundEntity.newInstance(reference, handler);
     }
 
     @SuppressWarnings("unchecked")
@@ -368,15 +363,43 @@ class EntitySetInvocationHandler<
         });
     }
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public <S extends T> S get(final KEY key, final Class<S> typeRef) throws IllegalArgumentException {
+    private <S extends T> EntityUUID getUUID(final KEY key, final Class<S> typeRef) {
         if (key == null) {
             throw new IllegalArgumentException("Null key");
         }
 
-        final EntityUUID uuid = new EntityUUID(ClassUtils.getNamespace(typeRef), containerHandler.getEntityContainerName(), entitySetName,
+        return new EntityUUID(ClassUtils.getNamespace(typeRef), containerHandler.getEntityContainerName(), entitySetName,
                 ClassUtils.getNamespace(typeRef) + "." + ClassUtils.getEntityTypeName(typeRef), key);
+    }
+
+    private URI getEntityURI(final KEY key) {
+        final URIBuilder uriBuilder = client.getURIBuilder(uri.toASCIIString());
+
+        if (key.getClass().getAnnotation(CompoundKey.class) == null) {
+            LOG.debug("Append key segment '{}'", key);
+            uriBuilder.appendKeySegment(key);
+        } else {
+            LOG.debug("Append compound key segment '{}'", key);
+            uriBuilder.appendKeySegment(getCompoundKey(key));
+        }
+
+        LOG.debug("Execute query '{}'", uriBuilder.toString());
+        return uriBuilder.build();
+    }
+
+    private <S extends T> EntityTypeInvocationHandler getHandler(
+            final ODataRetrieveResponse<ODataEntity> res, final Class<S> typeRef) {
+
+        final EntityTypeInvocationHandler handler = EntityTypeInvocationHandler.getInstance(res.getBody(),
+                containerHandler.getEntityContainerName(), entitySetName, typeRef, containerHandler);
+        handler.setETag(res.getEtag());
+        return handler;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends T> S get(final KEY key, final Class<S> typeRef) throws IllegalArgumentException {
+        final EntityUUID uuid = getUUID(key, typeRef);
 
         LOG.debug("Ask for '{}({})'", typeRef.getSimpleName(), key);
 
@@ -386,24 +409,7 @@ class EntitySetInvocationHandler<
             // not yet attached: search against the service
             try {
                 LOG.debug("Search for '{}({})' into the service", typeRef.getSimpleName(), key);
-                final URIBuilder uriBuilder = client.getURIBuilder(uri.toASCIIString());
-
-                if (key.getClass().getAnnotation(CompoundKey.class) == null) {
-                    LOG.debug("Append key segment '{}'", key);
-                    uriBuilder.appendKeySegment(key);
-                } else {
-                    LOG.debug("Append compound key segment '{}'", key);
-                    uriBuilder.appendKeySegment(getCompoundKey(key));
-                }
-
-                LOG.debug("Execute query '{}'", uriBuilder.toString());
-
-                final ODataRetrieveResponse<ODataEntity> res =
-                        client.getRetrieveRequestFactory().getEntityRequest(uriBuilder.build()).execute();
-
-                handler = EntityTypeInvocationHandler.getInstance(res.getBody(), containerHandler.getEntityContainerName(), entitySetName,
-                        typeRef, containerHandler);
-                handler.setETag(res.getEtag());
+                handler = getHandler(retrieveEntity(getEntityURI(key)), typeRef);
             } catch (ODataClientErrorException e) {
                 // return null only if server responded with 404 status code;
                 //all other exceptions will be thrown for further handling
@@ -419,20 +425,80 @@ class EntitySetInvocationHandler<
             handler = null;
         }
 
-        return handler == null ? null : (S) Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                new Class<?>[] {typeRef},
-                handler);
+        return handler == null ? null : (S) AbstractBoundEntity.newInstance(typeRef, handler);
+    }
+
+    /**
+     * Retrieves the entity at the given URI, via the container factory's coalescer if enabled.
+     */
+    private ODataRetrieveResponse<ODataEntity> retrieveEntity(final URI entityURI) {
+        final ODataEntityRequest req = client.getRetrieveRequestFactory().getEntityRequest(entityURI);
+
+        final ODataRetrieveCoalescer coalescer = containerHandler.getFactory().getRetrieveCoalescer();
+        if (coalescer == null) {
+            return req.execute();
+        }
+
+        try {
+            return coalescer.<ODataEntity, ODataEntityRequest>submit(req).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When retrieve coalescing is enabled, the entity is retrieved via the coalescer, and the returned future is
+     * completed from its callback: no executor thread is held while waiting for the batch response.
+     */
     @Override
     public <S extends T> ListenableFuture<S> getAsync(final KEY key, final Class<S> reference) {
-        return containerHandler.getExecutorService().submit(new Callable<S>() {
-            @Override
-            public S call() {
-                return get(key, reference);
-            }
-        });
+        final ODataRetrieveCoalescer coalescer = containerHandler.getFactory().getRetrieveCoalescer();
+        final EntityUUID uuid = getUUID(key, reference);
+        if (coalescer == null || EntityContainerFactory.getContext().entityContext().getEntity(uuid) != null) {
+            return containerHandler.getExecutorService().submit(new Callable<S>() {
+                @Override
+                public S call() {
+                    return get(key, reference);
+                }
+            });
+        }
+
+        final SettableFuture<S> result = SettableFuture.create();
+        Futures.addCallback(coalescer.<ODataEntity, ODataEntityRequest>submit(
+                client.getRetrieveRequestFactory().getEntityRequest(getEntityURI(key))),
+                new FutureCallback<ODataRetrieveResponse<ODataEntity>>() {
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void onSuccess(final ODataRetrieveResponse<ODataEntity> res) {
+                        try {
+                            result.set((S) AbstractBoundEntity.newInstance(reference, getHandler(res, reference)));
+                        } catch (Throwable t) {
+                            result.setException(t);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable t) {
+                        if (t instanceof ODataClientErrorException
+                                && ((ODataClientErrorException) t).getStatusLine().getStatusCode() == 404) {
+
+                            LOG.info("Entity '" + key + "' not found", t);
+                            result.set(null);
+                        } else {
+                            result.setException(t);
+                        }
+                    }
+                });
+        return result;
     }
     
     @SuppressWarnings("unchecked")
@@ -443,16 +509,16 @@ class EntitySetInvocationHandler<
         final ODataEntitySet entitySet = res.getBody();
 
         final List<S> items = new ArrayList<S>(entitySet.getEntities().size());
+        final EntityPage page = new EntityPage(uri);
         for (ODataEntity entity : entitySet.getEntities()) {
             final EntityTypeInvocationHandler handler = EntityTypeInvocationHandler.getInstance(entity, this, typeRef);
 
             final EntityTypeInvocationHandler handlerInTheContext =
                     EntityContainerFactory.getContext().entityContext().getEntity(handler.getUUID());
 
-            items.add((S) Proxy.newProxyInstance(
-                    Thread.currentThread().getContextClassLoader(),
-                    new Class<?>[] {typeRef},
-                    handlerInTheContext == null ? handler : handlerInTheContext));
+            page.add(handlerInTheContext == null ? handler : handlerInTheContext);
+            items.add((S) AbstractBoundEntity.newInstance(
+                    typeRef, handlerInTheContext == null ? handler : handlerInTheContext));
         }
 
         return new AbstractMap.SimpleEntry<List<S>, URI>(items, entitySet.getNext());
@@ -540,7 +606,7 @@ class EntitySetInvocationHandler<
         if (entity == null) {
             // search for entity
             final T searched = get(key);
-            entity = (EntityTypeInvocationHandler) Proxy.getInvocationHandler(searched);
+            entity = EntityTypeInvocationHandler.getHandler(searched);
             entityContext.attach(entity, AttachedEntityStatus.DELETED);
         } else {
             entityContext.setStatus(entity, AttachedEntityStatus.DELETED);
@@ -552,7 +618,7 @@ class EntitySetInvocationHandler<
         final EntityContext entityContext = EntityContainerFactory.getContext().entityContext();
 
         for (T en : entities) {
-            final EntityTypeInvocationHandler entity = (EntityTypeInvocationHandler) Proxy.getInvocationHandler(en);
+            final EntityTypeInvocationHandler entity = EntityTypeInvocationHandler.getHandler(en);
             if (entityContext.isAttached(entity)) {
                 entityContext.setStatus(entity, AttachedEntityStatus.DELETED);
             } else {
@@ -565,15 +631,25 @@ class EntitySetInvocationHandler<
         return EntityContainerFactory.getContext().entityContext().getStatus(handler) == AttachedEntityStatus.DELETED;
     }
 
+    /**
+     * Iterates over the fetched entities, if <tt>fetch()</tt> was invoked; otherwise over the entity set on the
+     * service, holding one page at a time plus a prefetched one.
+     *
+     * @return entity iterator.
+     */
     @Override
     public Iterator<T> iterator() {
         if (setAsCollection != null) {
             return setAsCollection.iterator();
         } else {
-            return mEmptyIterator;
+            return iterator(PREFETCH_PAGES, MAX_BUFFERED_ENTITIES);
         }
     }
 
+    public Iterator<T> iterator(final int prefetchPages, final int maxBufferedEntities) {
+        return new EntitySetIterator<T, KEY, EC>(uri, this, prefetchPages, maxBufferedEntities);
+    }
+
     @Override
     public boolean add(T e) {
         if (setAsCollection == null) {
@@ -633,43 +709,101 @@ class EntitySetInvocationHandler<
         setAsCollection.clear();
     }
 
+    /**
+     * Checks the fetched entities, if <tt>fetch()</tt> was invoked; otherwise new entities created in this set are
+     * looked up in the entity context, and any other entity - attached or not - is looked up by key under the URI of
+     * this set on the service. Errors other than 404 are propagated.
+     *
+     * @param o entity.
+     * @return whether the given entity belongs to this entity set.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public boolean contains(Object o) {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
+        if (setAsCollection != null) {
+            return setAsCollection.contains(o);
+        }
+
+        final EntityTypeInvocationHandler handler = EntityTypeInvocationHandler.getHandler(o);
+        if (handler == null || !typeRef.isAssignableFrom(handler.getTypeRef())) {
+            return false;
+        }
+
+        final EntityContext entityContext = EntityContainerFactory.getContext().entityContext();
+        final AttachedEntityStatus status = entityContext.isAttached(handler) ? entityContext.getStatus(handler) : null;
+        if (status == AttachedEntityStatus.NEW) {
+            return isCreatedHere(handler);
+        }
+        if (status == AttachedEntityStatus.DELETED || handler.getUUID().getKey() == null) {
+            return false;
+        }
+
+        try {
+            retrieveEntity(getEntityURI((KEY) handler.getUUID().getKey())).close();
+            return true;
+        } catch (ODataClientErrorException e) {
+            if (e.getStatusLine().getStatusCode() == 404) {
+                return false;
             }
+            throw e;
         }
+    }
 
-        return setAsCollection.contains(o);
+    /**
+     * Checks whether the given new entity is going to be created in this entity set.
+     */
+    private boolean isCreatedHere(final EntityTypeInvocationHandler handler) {
+        return String.format(createPath, entitySetName).equals(handler.getEntitySetName());
+    }
+
+    /**
+     * Counts the new entities of this entity set attached to the entity context, not yet created on the service.
+     */
+    private int countNew() {
+        int result = 0;
+        for (AttachedEntity attached : EntityContainerFactory.getContext().entityContext()) {
+            if (attached.getStatus() == AttachedEntityStatus.NEW
+                    && typeRef.isAssignableFrom(attached.getEntity().getTypeRef())
+                    && isCreatedHere(attached.getEntity())) {
+
+                result++;
+            }
+        }
+        return result;
     }
 
     @Override
     public boolean containsAll(Collection<?> c) {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        if (setAsCollection != null) {
+            return setAsCollection.containsAll(c);
         }
 
-        return setAsCollection.containsAll(c);
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Checks the fetched entities, if <tt>fetch()</tt> was invoked; otherwise checks the new entities of this set,
+     * then asks the service for the first entity only.
+     *
+     * @return whether this entity set is empty.
+     */
     @Override
     public boolean isEmpty() {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        if (setAsCollection != null) {
+            return setAsCollection.isEmpty();
+        }
+        if (countNew() > 0) {
+            return false;
         }
 
-        return setAsCollection.isEmpty();
+        final ODataEntitySet entitySet = client.getRetrieveRequestFactory().getEntitySetRequest(
+                client.getURIBuilder(uri.toASCIIString()).top(1).build()).execute().getBody();
+        return entitySet.getEntities().isEmpty();
     }
 
     @Override
@@ -711,42 +845,48 @@ class EntitySetInvocationHandler<
         return setAsCollection.retainAll(c);
     }
 
+    /**
+     * Counts the fetched entities, if <tt>fetch()</tt> was invoked; otherwise asks the service via <tt>$count</tt>
+     * and adds the new entities of this set not yet created on the service. Entities deleted but not yet flushed
+     * are still counted, as the service still holds them.
+     *
+     * @return number of entities.
+     */
     @Override
     public int size() {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        if (setAsCollection != null) {
+            return setAsCollection.size();
         }
 
-        return setAsCollection.size();
+        return (int) Math.min(Integer.MAX_VALUE, count() + countNew());
     }
 
     @Override
     public Object[] toArray() {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        if (setAsCollection != null) {
+            return setAsCollection.toArray();
         }
 
-        return setAsCollection.toArray();
+        return toList().toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] a) {
-        if (setAsCollection == null) {
-            try {
-                fetch();
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        if (setAsCollection != null) {
+            return setAsCollection.toArray(a);
         }
 
-        return setAsCollection.toArray(a);
+        return toList().toArray(a);
+    }
+
+    /**
+     * Reads all the entities via <tt>iterator()</tt>, without keeping them as fetched.
+     */
+    private List<T> toList() {
+        final List<T> items = new ArrayList<T>();
+        for (Iterator<T> itor = iterator(); itor.hasNext();) {
+            items.add(itor.next());
+        }
+        return items;
     }
 }
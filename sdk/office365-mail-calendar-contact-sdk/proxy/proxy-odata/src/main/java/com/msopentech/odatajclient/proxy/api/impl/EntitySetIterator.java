@@ -20,27 +20,81 @@
 package com.msopentech.odatajclient.proxy.api.impl;
 
 import com.msopentech.odatajclient.proxy.api.AbstractEntityCollection;
+import java.io.Closeable;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Iterates over all the entities of an entity set, fetching one page at a time.
+ * <p>
+ * When prefetching is enabled, pages following the one being iterated are fetched in background via the container
+ * executor service, up to the given number of pages and of buffered entities; this overlaps network waits with the
+ * processing of the entities already handed out.
+ * <p>
+ * Background fetches only hold a weak reference to the iterator: closing it, or just dropping it, cancels the fetch
+ * in progress and stops prefetching.
+ */
 class EntitySetIterator<T extends Serializable, KEY extends Serializable, EC extends AbstractEntityCollection<T>>
-        implements Iterator<T> {
+        implements Iterator<T>, Closeable {
 
-    private final EntitySetInvocationHandler<T, KEY, EC> esi;
+    private final PageSource<T> pages;
 
     private URI next;
 
     private Iterator<T> current;
 
+    /**
+     * Maximum number of pages to be fetched ahead; 0 means no prefetching.
+     */
+    private final int prefetchPages;
+
+    /**
+     * Maximum number of entities to be held by prefetched pages.
+     */
+    private final int maxBufferedEntities;
+
+    /**
+     * Pages fetched in background, not handed out yet.
+     */
+    private final LinkedList<Map.Entry<List<T>, URI>> prefetched = new LinkedList<Map.Entry<List<T>, URI>>();
+
+    private int bufferedEntities = 0;
+
+    private boolean fetching = false;
+
+    private Future<?> fetch;
+
+    private Throwable failure;
+
+    private boolean closed = false;
+
     EntitySetIterator(final URI uri, EntitySetInvocationHandler<T, KEY, EC> esi) {
-        this.esi = esi;
+        this(uri, esi, 0, 0);
+    }
+
+    EntitySetIterator(final URI uri, EntitySetInvocationHandler<T, KEY, EC> esi,
+            final int prefetchPages, final int maxBufferedEntities) {
+
+        this(uri, new EntitySetPageSource<T, KEY, EC>(esi), prefetchPages, maxBufferedEntities);
+    }
+
+    EntitySetIterator(final URI uri, final PageSource<T> pages,
+            final int prefetchPages, final int maxBufferedEntities) {
+
+        this.pages = pages;
         this.next = uri;
         this.current = Collections.<T>emptyList().iterator();
+        this.prefetchPages = Math.max(0, prefetchPages);
+        this.maxBufferedEntities = Math.max(1, maxBufferedEntities);
     }
 
     @Override
@@ -48,7 +102,7 @@ class EntitySetIterator<T extends Serializable, KEY extends Serializable, EC ext
         boolean res = false;
         if (this.current.hasNext()) {
             res = true;
-        } else if (this.next == null) {
+        } else if (!hasMorePages()) {
             res = false;
         } else {
             goon();
@@ -63,7 +117,7 @@ class EntitySetIterator<T extends Serializable, KEY extends Serializable, EC ext
         try {
             res = this.current.next();
         } catch (NoSuchElementException e) {
-            if (this.next == null) {
+            if (!hasMorePages()) {
                 throw e;
             }
             goon();
@@ -78,9 +132,210 @@ class EntitySetIterator<T extends Serializable, KEY extends Serializable, EC ext
         this.current.remove();
     }
 
+    private synchronized boolean hasMorePages() {
+        return this.next != null || !prefetched.isEmpty() || fetching || failure != null;
+    }
+
     private void goon() {
-        final Map.Entry<List<T>, URI> entitySet = esi.fetchPartialEntitySet(this.next, this.esi.getTypeRef());
-        this.next = entitySet.getValue();
-        this.current = entitySet.getKey().iterator();
+        if (prefetchPages == 0) {
+            final Map.Entry<List<T>, URI> entitySet = pages.fetch(this.next);
+            this.next = entitySet.getValue();
+            this.current = entitySet.getKey().iterator();
+        } else {
+            final Map.Entry<List<T>, URI> entitySet = take();
+            this.current = entitySet == null
+                    ? Collections.<T>emptyList().iterator()
+                    : entitySet.getKey().iterator();
+        }
+    }
+
+    /**
+     * Waits for the first prefetched page and hands it out, letting the following pages be fetched meanwhile.
+     *
+     * @return first prefetched page; null if none is left.
+     */
+    private synchronized Map.Entry<List<T>, URI> take() {
+        prefetch();
+
+        while (prefetched.isEmpty() && fetching) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for next page", e);
+            }
+        }
+
+        if (prefetched.isEmpty() && failure != null) {
+            final Throwable e = failure;
+            failure = null;
+            this.next = null;
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new IllegalStateException("While fetching next page", e);
+        }
+
+        final Map.Entry<List<T>, URI> entitySet = prefetched.poll();
+        if (entitySet != null) {
+            bufferedEntities -= entitySet.getKey().size();
+            prefetch();
+        }
+
+        return entitySet;
+    }
+
+    /**
+     * Fetches the page at <tt>next</tt> in background, if no fetch is in progress and prefetch bounds allow.
+     * Each completed fetch schedules the following one, so that up to <tt>prefetchPages</tt> pages are kept ahead.
+     */
+    private synchronized void prefetch() {
+        if (closed || fetching || failure != null || this.next == null
+                || prefetched.size() >= prefetchPages
+                || (!prefetched.isEmpty() && bufferedEntities >= maxBufferedEntities)) {
+
+            return;
+        }
+
+        fetching = true;
+        fetch = pages.getExecutorService().submit(new PageFetch<T, KEY, EC>(this, pages, this.next));
+    }
+
+    /**
+     * Records the outcome of a background fetch, and schedules the following one.
+     *
+     * @param entitySet fetched page; null in case of failure.
+     * @param error fetch failure, if any.
+     */
+    private synchronized void fetched(final Map.Entry<List<T>, URI> entitySet, final Throwable error) {
+        fetching = false;
+        fetch = null;
+        if (!closed) {
+            if (error != null) {
+                failure = error;
+            } else if (entitySet != null) {
+                prefetched.add(entitySet);
+                bufferedEntities += entitySet.getKey().size();
+                next = entitySet.getValue();
+                prefetch();
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops prefetching, cancelling the fetch in progress, and releases the prefetched pages.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        next = null;
+        if (fetch != null) {
+            fetch.cancel(true);
+            fetch = null;
+        }
+        fetching = false;
+        prefetched.clear();
+        bufferedEntities = 0;
+        current = Collections.<T>emptyList().iterator();
+        notifyAll();
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            close();
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * Source of the entity set pages to be iterated.
+     *
+     * @param <T> entity type.
+     */
+    interface PageSource<T> {
+
+        /**
+         * Fetches a single page.
+         *
+         * @param uri page URI.
+         * @return page entities, and next page URI if any.
+         */
+        Map.Entry<List<T>, URI> fetch(URI uri);
+
+        /**
+         * Gets the executor service running background fetches.
+         *
+         * @return executor service.
+         */
+        ExecutorService getExecutorService();
+    }
+
+    /**
+     * Pages of an entity set, fetched via its invocation handler.
+     */
+    private static class EntitySetPageSource<T extends Serializable, KEY extends Serializable,
+            EC extends AbstractEntityCollection<T>> implements PageSource<T> {
+
+        private final EntitySetInvocationHandler<T, KEY, EC> esi;
+
+        EntitySetPageSource(final EntitySetInvocationHandler<T, KEY, EC> esi) {
+            this.esi = esi;
+        }
+
+        @Override
+        public Map.Entry<List<T>, URI> fetch(final URI uri) {
+            return esi.fetchPartialEntitySet(uri, esi.getTypeRef());
+        }
+
+        @Override
+        public ExecutorService getExecutorService() {
+            return esi.containerHandler.getExecutorService();
+        }
+    }
+
+    /**
+     * Background fetch of a single page: the iterator is only weakly referenced, so that it can be collected - and
+     * the fetch cancelled - when dropped.
+     */
+    private static class PageFetch<T extends Serializable, KEY extends Serializable,
+            EC extends AbstractEntityCollection<T>> implements Runnable {
+
+        private final WeakReference<EntitySetIterator<T, KEY, EC>> iterator;
+
+        private final PageSource<T> pages;
+
+        private final URI uri;
+
+        PageFetch(final EntitySetIterator<T, KEY, EC> iterator, final PageSource<T> pages, final URI uri) {
+            this.iterator = new WeakReference<EntitySetIterator<T, KEY, EC>>(iterator);
+            this.pages = pages;
+            this.uri = uri;
+        }
+
+        @Override
+        public void run() {
+            Map.Entry<List<T>, URI> entitySet = null;
+            Throwable error = null;
+            try {
+                entitySet = pages.fetch(uri);
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                final EntitySetIterator<T, KEY, EC> itor = iterator.get();
+                if (itor != null) {
+                    itor.fetched(entitySet, error);
+                }
+            }
+
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+        }
     }
 }
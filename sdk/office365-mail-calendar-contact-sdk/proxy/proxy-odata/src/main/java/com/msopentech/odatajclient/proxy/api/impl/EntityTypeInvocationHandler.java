@@ -22,20 +22,23 @@ package com.msopentech.odatajclient.proxy.api.impl;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
@@ -60,6 +63,7 @@ import com.msopentech.odatajclient.engine.utils.URIUtils;
 import com.msopentech.odatajclient.proxy.api.AbstractEntityCollection;
 import com.msopentech.odatajclient.proxy.api.AbstractOpenType;
 import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.msopentech.odatajclient.proxy.api.annotations.ComplexType;
 import com.msopentech.odatajclient.proxy.api.annotations.EntityType;
 import com.msopentech.odatajclient.proxy.api.annotations.NavigationProperty;
 import com.msopentech.odatajclient.proxy.api.annotations.Operation;
@@ -98,6 +102,12 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
      */
     private Map<String, Object> propertyCache = new HashMap<String, Object>();
 
+    /**
+     * Properties as read from the service, compared at flush time with property changes in order to send the
+     * properties actually changed only. OData properties are not modified by the proxy, hence no deep copy is needed.
+     */
+    private Map<String, ODataProperty> snapshot = new HashMap<String, ODataProperty>();
+
     private Map<String, InputStream> streamedPropertyChanges = new HashMap<String, InputStream>(); // TODO cache too?
 
     private Map<NavigationProperty, Object> linkChanges = new HashMap<NavigationProperty, Object>();
@@ -112,6 +122,29 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
 
     private int linksTag;
 
+    /**
+     * Incremented whenever entity or property values change, so that generated entity classes can tell when their
+     * fields are stale.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Explicitly set simple properties actually differing from the ones read, as of {@link #explicitChangesVersion}.
+     */
+    private List<ODataProperty> explicitChanges;
+
+    private int explicitChangesVersion;
+
+    /**
+     * Entities this one was read together with, if any.
+     */
+    private transient EntityPage page;
+
+    /**
+     * Navigation properties loaded along with other entities of the same page, not accessed yet.
+     */
+    private final Map<String, ODataLink> prefetchedLinks = new ConcurrentHashMap<String, ODataLink>();
+
     static EntityTypeInvocationHandler getInstance(
             final ODataEntity entity,
             final EntitySetInvocationHandler<?, ?, ?> entitySet,
@@ -164,6 +197,14 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         this.stream = null;
         this.propertiesTag = 0;
         this.linksTag = 0;
+        takeSnapshot();
+    }
+
+    private void takeSnapshot() {
+        this.snapshot.clear();
+        for (ODataProperty property : entity.getProperties()) {
+            this.snapshot.put(property.getName(), property);
+        }
     }
 
     public void setEntity(final ODataEntity entity) {
@@ -181,9 +222,42 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         this.linkChanges.clear();
         this.streamedPropertyChanges.clear();
         this.propertyCache.clear();
+        this.prefetchedLinks.clear();
         this.propertiesTag = 0;
         this.linksTag = 0;
         this.stream = null;
+        this.version.incrementAndGet();
+        takeSnapshot();
+    }
+
+    int getVersion() {
+        return version.get();
+    }
+
+    void setPage(final EntityPage page) {
+        this.page = page;
+    }
+
+    void setPrefetchedLink(final NavigationProperty property, final ODataLink link) {
+        prefetchedLinks.put(property.name(), link);
+    }
+
+    /**
+     * Gets the handler of the given entity.
+     *
+     * @param entity entity: either a proxy or a generated entity class instance.
+     * @return entity handler; null if the given object is not an entity.
+     */
+    public static EntityTypeInvocationHandler getHandler(final Object entity) {
+        if (entity instanceof AbstractBoundEntity) {
+            return ((AbstractBoundEntity) entity).getHandler();
+        }
+        if (entity != null && Proxy.isProxyClass(entity.getClass())
+                && Proxy.getInvocationHandler(entity) instanceof EntityTypeInvocationHandler) {
+
+            return (EntityTypeInvocationHandler) Proxy.getInvocationHandler(entity);
+        }
+        return null;
     }
 
     public EntityUUID getUUID() {
@@ -218,6 +292,79 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         return propertyCache;
     }
 
+    /**
+     * Gets the properties to be sent to the service: changed properties, as well as read complex or collection
+     * values possibly modified in place, are compared with the properties read from the service.
+     *
+     * @return properties actually changed.
+     */
+    public List<ODataProperty> getChangedProperties() {
+        final List<ODataProperty> changed = new ArrayList<ODataProperty>(getExplicitChanges());
+        changed.addAll(getMutableChanges());
+        return changed;
+    }
+
+    /**
+     * Compares explicitly set simple values with the ones read; the result is kept until any property is set again.
+     *
+     * @return explicitly set simple properties actually changed.
+     */
+    private synchronized List<ODataProperty> getExplicitChanges() {
+        final int current = version.get();
+        if (explicitChanges == null || explicitChangesVersion != current) {
+            final Map<String, Object> simple = new HashMap<String, Object>();
+            for (Map.Entry<String, Object> changed : propertyChanges.entrySet()) {
+                if (!isMutable(changed.getValue())) {
+                    simple.put(changed.getKey(), changed.getValue());
+                }
+            }
+
+            explicitChanges = simple.isEmpty()
+                    ? Collections.<ODataProperty>emptyList()
+                    : EngineUtils.getChangedProperties(
+                    client, containerHandler.getFactory().getMetadata(), simple, snapshot);
+            explicitChangesVersion = current;
+        }
+        return explicitChanges;
+    }
+
+    /**
+     * Compares complex or collection values, either set or read, with the ones read: such values can be modified in
+     * place without notice, hence they are compared on each call.
+     *
+     * @return complex or collection properties actually changed.
+     */
+    private List<ODataProperty> getMutableChanges() {
+        final Map<String, Object> mutable = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> changed : propertyChanges.entrySet()) {
+            if (isMutable(changed.getValue())) {
+                mutable.put(changed.getKey(), changed.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> cached : propertyCache.entrySet()) {
+            if (!propertyChanges.containsKey(cached.getKey()) && isMutable(cached.getValue())) {
+                mutable.put(cached.getKey(), cached.getValue());
+            }
+        }
+
+        final List<ODataProperty> changed = new ArrayList<ODataProperty>();
+        for (Map.Entry<String, Object> property : mutable.entrySet()) {
+            try {
+                changed.addAll(EngineUtils.getChangedProperties(client, containerHandler.getFactory().getMetadata(),
+                        Collections.singletonMap(property.getKey(), property.getValue()), snapshot));
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(
+                        "Could not check property '" + property.getKey() + "' of '" + this + "' for changes", e);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isMutable(final Object value) {
+        return value instanceof Collection
+                || (value != null && value.getClass().isAnnotationPresent(ComplexType.class));
+    }
+
     /**
      * Gets the current ETag defined into the wrapped entity.
      *
@@ -238,80 +385,66 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
 
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final Annotation[] methodAnnots = method.getAnnotations();
-
-        if (isSelfMethod(method, args)) {
-            return invokeSelfMethod(method, args);
-        } else if (!ArrayUtils.isEmpty(methodAnnots) && methodAnnots[0] instanceof Operation) {
-            if (isAsyncMethod(method)) {
-                return containerHandler.getFactory().getExecutorService().submit(new Callable<Object>() {
-                    @Override
-                    public Object call() throws Exception {
-                        return invokeOperation(method, args, methodAnnots);
-                    }
-                });
-            } else {
-                return invokeOperation(method, args, methodAnnots);
-            }
-        } // Assumption: for each getter will always exist a setter and viceversa. THIS IS WRONG FOR EXCHANGE - SOME FIELDS ARE READ-ONLY!
-        else if (method.getName().startsWith("get")) {
-            // get method annotation and check if it exists as expected
-            final Object res;
-
-            final Method getter = typeRef.getMethod(method.getName());
-
-            final Property property = ClassUtils.getAnnotation(Property.class, getter);
-            if (property == null) {
-                final NavigationProperty navProp = ClassUtils.getAnnotation(NavigationProperty.class, getter);
-                if (navProp == null) {
-                    throw new UnsupportedOperationException("Unsupported method " + method.getName());
+        final ProxyMethod proxyMethod = ProxyMethod.getInstance(getClass(), typeRef, method);
+
+        switch (proxyMethod.getKind()) {
+            case SELF:
+                return proxyMethod.getMethod().invoke(this, args);
+
+            case OPERATION:
+                final Annotation[] methodAnnots = proxyMethod.getAnnotations();
+                if (proxyMethod.isAsync()) {
+                    return containerHandler.getFactory().getExecutorService().submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            return invokeOperation(method, args, methodAnnots);
+                        }
+                    });
                 } else {
+                    return invokeOperation(method, args, methodAnnots);
+                }
+
+            case GET_PROPERTY:
+            case GET_NAVIGATION_PROPERTY:
+                final Object res;
+                if (proxyMethod.getKind() == ProxyMethod.Kind.GET_PROPERTY) {
+                    // if the getter refers to a property .... get property from wrapped entity
+                    res = getPropertyValue(proxyMethod.getProperty(), proxyMethod.getType());
+                } else if (proxyMethod.isAsync()) {
                     // if the getter refers to a navigation property ... navigate and follow link if necessary
-                    if (isAsyncMethod(getter)) {
-                        res = getNavigationPropertyFuture(navProp, getter, containerHandler.getFactory().getMetadata());
-                    } else {
-                        res = getNavigationPropertyValue(navProp, getter, containerHandler.getFactory().getMetadata());
-                    }
+                    res = getNavigationPropertyFuture(proxyMethod.getNavigationProperty(), proxyMethod.getMethod(),
+                            containerHandler.getFactory().getMetadata());
+                } else {
+                    res = getNavigationPropertyValue(proxyMethod.getNavigationProperty(), proxyMethod.getMethod(),
+                            containerHandler.getFactory().getMetadata());
                 }
-            } else {
-                // if the getter refers to a property .... get property from wrapped entity
-                res = getPropertyValue(property, getter.getGenericReturnType());
-            }
 
-            // attach the current handler - FIXME is this mandatory?
-            attach();
+                // attach the current handler - FIXME is this mandatory?
+                attach();
 
-            return res;
-        } else if (method.getName().startsWith("set")) {
-            // get the corresponding getter method (see assumption above). Correct for Exchange, if we have setter, getter always exists.
-            final String getterName = method.getName().replaceFirst("set", "get");
-            final Method getter = typeRef.getMethod(getterName);
-
-            final Property property = ClassUtils.getAnnotation(Property.class, getter);
-            if (property == null) {
-                final NavigationProperty navProp = ClassUtils.getAnnotation(NavigationProperty.class, getter);
-                if (navProp == null) {
-                    throw new UnsupportedOperationException("Unsupported method " + method.getName());
-                } else {
-                    // if the getter refers to a navigation property ...
-                    if (ArrayUtils.isEmpty(args) || args.length != 1) {
-                        throw new IllegalArgumentException("Invalid argument");
-                    }
+                return res;
+
+            case SET_PROPERTY:
+                setPropertyValue(proxyMethod.getProperty(), args[0]);
+                return proxy;
 
-                    setNavigationPropertyValue(navProp, args[0]);
+            case SET_NAVIGATION_PROPERTY:
+                if (ArrayUtils.isEmpty(args) || args.length != 1) {
+                    throw new IllegalArgumentException("Invalid argument");
                 }
-            } else {
-                setPropertyValue(property, args[0]);
-            }
 
-            return proxy;
-        } else if (method.getName().equalsIgnoreCase(getEntitySetName())) {
-            // returns top level entity set by its name in container
-            Method getter = containerHandler.getInterfaceType()
-                    .getDeclaredMethod("get" + StringUtils.capitalize(method.getName()), (Class<?>[]) null);
-            return containerHandler.invoke(null, getter, null);
-        } else {
-            throw new UnsupportedOperationException("Method not found: " + method);
+                setNavigationPropertyValue(proxyMethod.getNavigationProperty(), args[0]);
+                return proxy;
+
+            default:
+                if (method.getName().equalsIgnoreCase(getEntitySetName())) {
+                    // returns top level entity set by its name in container
+                    Method getter = containerHandler.getInterfaceType()
+                            .getDeclaredMethod("get" + StringUtils.capitalize(method.getName()), (Class<?>[]) null);
+                    return containerHandler.invoke(null, getter, null);
+                } else {
+                    throw new UnsupportedOperationException("Method not found: " + method);
+                }
         }
     }
 
@@ -418,6 +551,28 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         return value;
     }
 
+    /**
+     * Reads a property value on behalf of a generated entity class.
+     *
+     * @param getter property getter.
+     * @return property value.
+     */
+    Object readProperty(final ProxyMethod getter) {
+        final Object res = getPropertyValue(getter.getProperty(), getter.getType());
+        attach();
+        return res;
+    }
+
+    /**
+     * Writes a property value on behalf of a generated entity class.
+     *
+     * @param getter property getter.
+     * @param value property value.
+     */
+    void writeProperty(final ProxyMethod getter, final Object value) {
+        setPropertyValue(getter.getProperty(), value);
+    }
+
     public Object getAdditionalProperty(final String name) {
         return getPropertyValue(name, null);
     }
@@ -454,12 +609,11 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         for (Object link : AbstractEntityCollection.class.isAssignableFrom(value.getClass())
                 ? (AbstractEntityCollection) value : Collections.singleton(value)) {
 
-            final InvocationHandler etih = Proxy.getInvocationHandler(link);
-            if (!(etih instanceof EntityTypeInvocationHandler)) {
+            final EntityTypeInvocationHandler handler = getHandler(link);
+            if (handler == null) {
                 throw new IllegalArgumentException("Invalid argument type");
             }
 
-            final EntityTypeInvocationHandler handler = (EntityTypeInvocationHandler) etih;
             if (!handler.getTypeRef().isAnnotationPresent(EntityType.class)) {
                 throw new IllegalArgumentException(
                         "Invalid argument type " + handler.getTypeRef().getSimpleName());
@@ -481,20 +635,23 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         } else {
             propertyChanges.put(property.name(), value);
         }
+        version.incrementAndGet();
 
             attach(AttachedEntityStatus.CHANGED);
         }
 
     public void addAdditionalProperty(final String name, final Object value) {
         propertyChanges.put(name, value);
+        version.incrementAndGet();
         attach(AttachedEntityStatus.CHANGED);
     }
 
     public boolean isChanged() {
         return !this.linkChanges.isEmpty()
-                || !this.propertyChanges.isEmpty()
                 || this.stream != null
-                || !this.streamedPropertyChanges.isEmpty();
+                || !this.streamedPropertyChanges.isEmpty()
+                || !getExplicitChanges().isEmpty()
+                || !getMutableChanges().isEmpty();
     }
 
     public void setStream(final InputStream stream) {
@@ -605,14 +762,42 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
         if (obj instanceof EntityTypeInvocationHandler) {
             return ((EntityTypeInvocationHandler) obj).getUUID().equals(uuid);
         }
-        if (Proxy.getInvocationHandler(obj) != null &&
-                    Proxy.getInvocationHandler(obj) instanceof EntityTypeInvocationHandler) {
-            return ((EntityTypeInvocationHandler) Proxy.getInvocationHandler(obj)).getUUID().equals(uuid);
+        final EntityTypeInvocationHandler handler = getHandler(obj);
+        if (handler != null) {
+            return handler.getUUID().equals(uuid);
         }
 
         return false;
     }
 
+    /**
+     * Gets the link of the given navigation property: if a request is needed to follow it, entities read along with
+     * this one may get their links loaded at once.
+     *
+     * @param property navigation property.
+     * @param collection whether the navigation property is collection valued.
+     * @return navigation link; null if not found.
+     */
+    private ODataLink getNavigationLink(final NavigationProperty property, final boolean collection) {
+        ODataLink link = prefetchedLinks.remove(property.name());
+        if (link == null) {
+            link = EngineUtils.getNavigationLink(property.name(), entity);
+
+            // entity sets with a target are navigated lazily, without requests
+            if (page != null && link != null
+                    && !(link instanceof ODataInlineEntity) && !(link instanceof ODataInlineEntitySet)
+                    && (!collection || StringUtils.isEmpty(property.targetEntitySet()))) {
+
+                page.miss(this, property, collection);
+                final ODataLink prefetched = prefetchedLinks.remove(property.name());
+                if (prefetched != null) {
+                    link = prefetched;
+                }
+            }
+        }
+        return link;
+    }
+
     /**
      * Gets navigation property value with given type.
      * 
@@ -636,7 +821,7 @@ public class EntityTypeInvocationHandler extends AbstractInvocationHandler imple
            if (linkChanges.containsKey(property)) {
                navPropValue = linkChanges.get(property);
            } else {
-               final ODataLink link = EngineUtils.getNavigationLink(property.name(), entity);
+               final ODataLink link = getNavigationLink(property, AbstractEntityCollection.class.isAssignableFrom(type));
                if (link == null) {
                    throw new IllegalStateException("You must flush your changes before accessing navigation properties");
                }
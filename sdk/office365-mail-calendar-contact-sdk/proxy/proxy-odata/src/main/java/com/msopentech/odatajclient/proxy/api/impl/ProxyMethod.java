@@ -0,0 +1,312 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.msopentech.odatajclient.proxy.api.annotations.NavigationProperty;
+import com.msopentech.odatajclient.proxy.api.annotations.Operation;
+import com.msopentech.odatajclient.proxy.api.annotations.Property;
+import com.msopentech.odatajclient.proxy.utils.ClassUtils;
+
+/**
+ * Describes how a method invoked on a proxy is to be handled: resolved once per invocation handler class, proxied
+ * interface and method, then looked up by invocation handlers instead of inspecting annotations and methods on each
+ * call.
+ */
+final class ProxyMethod {
+
+    enum Kind {
+
+        /**
+         * Method implemented by the invocation handler itself.
+         */
+        SELF,
+        /**
+         * Bound action or function.
+         */
+        OPERATION,
+        GET_PROPERTY,
+        GET_NAVIGATION_PROPERTY,
+        SET_PROPERTY,
+        SET_NAVIGATION_PROPERTY,
+        /**
+         * Method not matching any annotated property: to be checked against the handler state.
+         */
+        OTHER
+
+    }
+
+    /**
+     * Resolved methods, per invocation handler class and proxied interface: the same method can be resolved
+     * differently by different handlers.
+     */
+    private static final ConcurrentMap<Key, ConcurrentMap<Method, ProxyMethod>> METHODS =
+            new ConcurrentHashMap<Key, ConcurrentMap<Method, ProxyMethod>>();
+
+    /**
+     * Resolved getters, per invocation handler class, entity type interface and getter name: used by generated
+     * entity classes.
+     */
+    private static final ConcurrentMap<Key, ConcurrentMap<String, ProxyMethod>> GETTERS =
+            new ConcurrentHashMap<Key, ConcurrentMap<String, ProxyMethod>>();
+
+    /**
+     * Public methods of invocation handlers matching invoked methods, per handler class; null values are stored as
+     * the handler class itself.
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, Object>> SELF_METHODS =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, Object>>();
+
+    private final Kind kind;
+
+    private final Method method;
+
+    private final Annotation[] annotations;
+
+    private final Property property;
+
+    private final NavigationProperty navigationProperty;
+
+    private final Type type;
+
+    private final boolean async;
+
+    private ProxyMethod(
+            final Kind kind,
+            final Method method,
+            final Annotation[] annotations,
+            final Property property,
+            final NavigationProperty navigationProperty,
+            final Type type,
+            final boolean async) {
+
+        this.kind = kind;
+        this.method = method;
+        this.annotations = annotations;
+        this.property = property;
+        this.navigationProperty = navigationProperty;
+        this.type = type;
+        this.async = async;
+    }
+
+    /**
+     * Gets the handler method matching the given invoked method, if any.
+     *
+     * @param handlerClass invocation handler class.
+     * @param method invoked method.
+     * @return public handler method with same name and parameter types; null if not found.
+     */
+    static Method getSelfMethod(final Class<?> handlerClass, final Method method) {
+        ConcurrentMap<Method, Object> selfMethods = SELF_METHODS.get(handlerClass);
+        if (selfMethods == null) {
+            SELF_METHODS.putIfAbsent(handlerClass, new ConcurrentHashMap<Method, Object>());
+            selfMethods = SELF_METHODS.get(handlerClass);
+        }
+
+        Object selfMethod = selfMethods.get(method);
+        if (selfMethod == null) {
+            selfMethod = handlerClass;
+            for (Method candidate : handlerClass.getMethods()) {
+                if (method.getName().equals(candidate.getName())
+                        && Arrays.equals(method.getParameterTypes(), candidate.getParameterTypes())) {
+                    selfMethod = candidate;
+                    break;
+                }
+            }
+            selfMethods.putIfAbsent(method, selfMethod);
+        }
+
+        return selfMethod instanceof Method ? (Method) selfMethod : null;
+    }
+
+    /**
+     * Gets the description of the given method, invoked on an entity type proxy.
+     *
+     * @param handlerClass invocation handler class.
+     * @param typeRef entity type interface.
+     * @param method invoked method.
+     * @return method description.
+     * @throws NoSuchMethodException if a getter or setter has no matching getter in the entity type interface.
+     */
+    static ProxyMethod getInstance(final Class<?> handlerClass, final Class<?> typeRef, final Method method)
+            throws NoSuchMethodException {
+
+        final Key key = new Key(handlerClass, typeRef);
+        ConcurrentMap<Method, ProxyMethod> methods = METHODS.get(key);
+        if (methods == null) {
+            METHODS.putIfAbsent(key, new ConcurrentHashMap<Method, ProxyMethod>());
+            methods = METHODS.get(key);
+        }
+
+        ProxyMethod proxyMethod = methods.get(method);
+        if (proxyMethod == null) {
+            proxyMethod = resolve(handlerClass, typeRef, method);
+            methods.putIfAbsent(method, proxyMethod);
+        }
+
+        return proxyMethod;
+    }
+
+    /**
+     * Gets the description of the given entity type getter.
+     *
+     * @param handlerClass invocation handler class.
+     * @param typeRef entity type interface.
+     * @param getterName getter name.
+     * @return getter description.
+     * @throws NoSuchMethodException if no such getter is found in the entity type interface.
+     */
+    static ProxyMethod getGetter(final Class<?> handlerClass, final Class<?> typeRef, final String getterName)
+            throws NoSuchMethodException {
+
+        final Key key = new Key(handlerClass, typeRef);
+        ConcurrentMap<String, ProxyMethod> getters = GETTERS.get(key);
+        if (getters == null) {
+            GETTERS.putIfAbsent(key, new ConcurrentHashMap<String, ProxyMethod>());
+            getters = GETTERS.get(key);
+        }
+
+        ProxyMethod getter = getters.get(getterName);
+        if (getter == null) {
+            getter = getInstance(handlerClass, typeRef, typeRef.getMethod(getterName));
+            getters.putIfAbsent(getterName, getter);
+        }
+
+        return getter;
+    }
+
+    private static ProxyMethod resolve(final Class<?> handlerClass, final Class<?> typeRef, final Method method)
+            throws NoSuchMethodException {
+
+        final Method selfMethod = getSelfMethod(handlerClass, method);
+        if (selfMethod != null) {
+            return new ProxyMethod(Kind.SELF, selfMethod, null, null, null, null, false);
+        }
+
+        final Annotation[] methodAnnots = method.getAnnotations();
+        if (!ArrayUtils.isEmpty(methodAnnots) && methodAnnots[0] instanceof Operation) {
+            return new ProxyMethod(Kind.OPERATION, method, methodAnnots, null, null, null, isAsync(method));
+        }
+
+        final boolean getter = method.getName().startsWith("get");
+        if (!getter && !method.getName().startsWith("set")) {
+            return new ProxyMethod(Kind.OTHER, method, null, null, null, null, false);
+        }
+
+        // Assumption: for each setter there is a getter
+        final Method getterMethod =
+                typeRef.getMethod(getter ? method.getName() : method.getName().replaceFirst("set", "get"));
+
+        final Property property = ClassUtils.getAnnotation(Property.class, getterMethod);
+        if (property != null) {
+            return new ProxyMethod(getter ? Kind.GET_PROPERTY : Kind.SET_PROPERTY,
+                    getterMethod, null, property, null, getterMethod.getGenericReturnType(), false);
+        }
+
+        final NavigationProperty navProp = ClassUtils.getAnnotation(NavigationProperty.class, getterMethod);
+        if (navProp != null) {
+            return new ProxyMethod(getter ? Kind.GET_NAVIGATION_PROPERTY : Kind.SET_NAVIGATION_PROPERTY,
+                    getterMethod, null, null, navProp, getterMethod.getGenericReturnType(), isAsync(getterMethod));
+        }
+
+        throw new UnsupportedOperationException("Unsupported method " + method.getName());
+    }
+
+    private static boolean isAsync(final Method method) {
+        return method.getReturnType().equals(ListenableFuture.class);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the handler method for <tt>SELF</tt>, the invoked method for <tt>OPERATION</tt> and <tt>OTHER</tt>, the
+     * entity type getter otherwise.
+     *
+     * @return method.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    public Annotation[] getAnnotations() {
+        return annotations;
+    }
+
+    public Property getProperty() {
+        return property;
+    }
+
+    public NavigationProperty getNavigationProperty() {
+        return navigationProperty;
+    }
+
+    /**
+     * Gets the generic return type of the getter.
+     *
+     * @return type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Cache key: invocation handler class and proxied interface.
+     */
+    private static final class Key {
+
+        private final Class<?> handlerClass;
+
+        private final Class<?> typeRef;
+
+        public Key(final Class<?> handlerClass, final Class<?> typeRef) {
+            this.handlerClass = handlerClass;
+            this.typeRef = typeRef;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return handlerClass == other.handlerClass && typeRef == other.typeRef;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * handlerClass.hashCode() + typeRef.hashCode();
+        }
+    }
+}
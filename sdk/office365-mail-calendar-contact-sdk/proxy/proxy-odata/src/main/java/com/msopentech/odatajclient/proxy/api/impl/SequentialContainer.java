@@ -20,18 +20,28 @@
 package com.msopentech.odatajclient.proxy.api.impl;
 
 import java.io.InputStream;
-import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import com.msopentech.odatajclient.engine.client.ODataClient;
 import com.msopentech.odatajclient.engine.communication.header.ODataHeaderValues;
 import com.msopentech.odatajclient.engine.communication.request.UpdateType;
@@ -42,6 +52,7 @@ import com.msopentech.odatajclient.engine.communication.request.streamed.ODataSt
 import com.msopentech.odatajclient.engine.data.ODataEntity;
 import com.msopentech.odatajclient.engine.data.ODataLinkType;
 import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.ODataProperty;
 import com.msopentech.odatajclient.engine.format.ODataMediaFormat;
 import com.msopentech.odatajclient.engine.uri.URIBuilder;
 import com.msopentech.odatajclient.engine.utils.URIUtils;
@@ -53,53 +64,177 @@ import com.msopentech.odatajclient.proxy.api.context.EntityLinkDesc;
 import com.msopentech.odatajclient.proxy.utils.EngineUtils;
 
 /**
- * Pushes local changes to server sequentially, in its own requests.
+ * Pushes local changes to server, in its own requests.
+ * <p>
+ * Changes are planned first as a dependency graph - an entity is created before any entity linking it - and then
+ * sent level by level: requests within the same level do not depend on each other and are sent concurrently, up to
+ * <tt>EntityContainerFactory.getFlushParallelism()</tt> at a time.
  */
 public class SequentialContainer extends Container {
 
     private static final long serialVersionUID = 8090715339542061988L;
 
-    final TransactionItems items = new TransactionItems();
-
     public SequentialContainer(ODataClient client, EntityContainerFactory factory) {
         super(client, factory);
     }
 
     @Override
     public void flush() {
-        final List<EntityLinkDesc> delayedUpdates = new ArrayList<EntityLinkDesc>();
+        final List<List<Operation>> levels = plan();
 
-        int pos = 0;
+        final List<Operation> operations = new ArrayList<Operation>();
+        for (List<Operation> level : levels) {
+            operations.addAll(level);
+        }
+
+        for (List<Operation> level : levels) {
+            final RuntimeException failure = execute(level);
+            if (failure != null) {
+                detachCompleted(operations);
+                throw failure;
+            }
+        }
+
+        EntityContainerFactory.getContext().detachAll();
+    }
+
+    /**
+     * Plans the changes in the entity context as levels of independent operations; each level only depends on the
+     * previous ones.
+     * <p>
+     * Links towards entities which are still being planned - i.e. cycles - are sent by a further update of the
+     * source, once both ends exist: all such links of the same source are sent by a single update, so that no two
+     * updates of the same entity are sent concurrently.
+     *
+     * @return planned operations, by level.
+     */
+    List<List<Operation>> plan() {
+        final Map<EntityTypeInvocationHandler, EntityOperation> planned =
+                new HashMap<EntityTypeInvocationHandler, EntityOperation>();
+        final List<Operation> operations = new ArrayList<Operation>();
+        final Map<EntityTypeInvocationHandler, List<EntityLinkDesc>> delayedUpdates =
+                new LinkedHashMap<EntityTypeInvocationHandler, List<EntityLinkDesc>>();
 
         for (AttachedEntity attachedEntity : EntityContainerFactory.getContext().entityContext()) {
             final AttachedEntityStatus status = attachedEntity.getStatus();
-            if (((status != AttachedEntityStatus.ATTACHED
-                    && status != AttachedEntityStatus.LINKED) || attachedEntity.getEntity().isChanged())
-                    && !items.contains(attachedEntity.getEntity())) {
-                pos++;
-                pos = processEntityContext(attachedEntity.getEntity(), pos, items, delayedUpdates);
+            if (((status != AttachedEntityStatus.ATTACHED && status != AttachedEntityStatus.LINKED
+                    && status != AttachedEntityStatus.CHANGED) || attachedEntity.getEntity().isChanged())
+                    && !planned.containsKey(attachedEntity.getEntity())) {
+                processEntityContext(attachedEntity.getEntity(), planned, operations, delayedUpdates);
             }
         }
 
-        processDelayedUpdates(delayedUpdates, pos, items);
+        for (Map.Entry<EntityTypeInvocationHandler, List<EntityLinkDesc>> delayedUpdate : delayedUpdates.entrySet()) {
+            operations.add(new DelayedUpdateOperation(delayedUpdate.getKey(), delayedUpdate.getValue(), planned));
+        }
 
-        EntityContainerFactory.getContext().detachAll();
+        final List<List<Operation>> levels = new ArrayList<List<Operation>>();
+        for (Operation operation : operations) {
+            while (levels.size() <= operation.level) {
+                levels.add(new ArrayList<Operation>());
+            }
+            levels.get(operation.level).add(operation);
+        }
+
+        LOG.debug("{} operations planned over {} levels", operations.size(), levels.size());
+        return levels;
     }
 
-    private void processDelayedUpdates(List<EntityLinkDesc> delayedUpdates, int pos, TransactionItems items) {
-        for (EntityLinkDesc delayedUpdate : delayedUpdates) {
-            final ODataEntity changes = ODataObjectFactory.newEntity(delayedUpdate.getSource().getEntity().getName());
+    /**
+     * Executes the given independent operations, sharing them among up to
+     * <tt>EntityContainerFactory.getFlushParallelism()</tt> workers. The calling thread is one of such workers: this
+     * guarantees progress even when flushing from a thread of the executor itself.
+     * <p>
+     * Returns only once no worker is running any more: workers not started yet are prevented from starting, the
+     * others are waited for.
+     *
+     * @param level operations.
+     * @return the first failure, if any; null otherwise.
+     */
+    RuntimeException execute(final List<? extends Operation> level) {
+        final Queue<Operation> queue = new ConcurrentLinkedQueue<Operation>(level);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        final Runnable worker = new Runnable() {
+
+            @Override
+            public void run() {
+                Operation operation;
+                while (failure.get() == null && (operation = queue.poll()) != null) {
+                    try {
+                        operation.execute();
+                        operation.done = true;
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        };
+
+        final List<AtomicBoolean> started = new ArrayList<AtomicBoolean>();
+        final List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int i = 1; i < Math.min(factory.getFlushParallelism(), level.size()); i++) {
+            final AtomicBoolean claim = new AtomicBoolean(false);
+            started.add(claim);
+            workers.add(factory.getExecutorService().submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (claim.compareAndSet(false, true)) {
+                        worker.run();
+                    }
+                }
+            }));
+        }
 
-            final URI sourceURI = prepareDelayedUpdate(items, pos, delayedUpdate, changes);
+        worker.run();
 
-            update(delayedUpdate.getSource(), sourceURI, changes);
+        for (int i = 0; i < workers.size(); i++) {
+            if (started.get(i).compareAndSet(false, true)) {
+                // not started yet, and now it never will: no need to wait for it
+                workers.get(i).cancel(false);
+            } else {
+                try {
+                    Uninterruptibles.getUninterruptibly(workers.get(i));
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, new IllegalStateException("Flush failed", e.getCause()));
+                }
+            }
         }
+
+        return failure.get();
     }
 
+    /**
+     * Detaches entities whose changes have been completely sent, so that they are not sent again by a further flush.
+     *
+     * @param operations all planned operations.
+     */
+    private void detachCompleted(final List<Operation> operations) {
+        final Set<EntityTypeInvocationHandler> pending = new HashSet<EntityTypeInvocationHandler>();
+        for (Operation operation : operations) {
+            if (!operation.done) {
+                pending.add(operation.handler);
+            }
+        }
+
+        for (Operation operation : operations) {
+            if (!pending.contains(operation.handler)) {
+                EntityContainerFactory.getContext().entityContext().detach(operation.handler);
+            }
+        }
+    }
+
+    private EntityOperation processEntityContext(
+            final EntityTypeInvocationHandler handler,
+            final Map<EntityTypeInvocationHandler, EntityOperation> planned,
+            final List<Operation> operations,
+            final Map<EntityTypeInvocationHandler, List<EntityLinkDesc>> delayedUpdates) {
 
-    private int processEntityContext(EntityTypeInvocationHandler handler, int pos, TransactionItems items, List<EntityLinkDesc> delayedUpdates) {
         LOG.debug("Process '{}'", handler);
-        items.put(handler, null);
+
+        // in progress: entities linking back to this one will have to be linked later
+        planned.put(handler, null);
 
         final ODataEntity entity = handler.getEntity();
         entity.getNavigationLinks().clear();
@@ -109,22 +244,27 @@ public class SequentialContainer extends Container {
 
         if (AttachedEntityStatus.DELETED != currentStatus) {
             entity.getProperties().clear();
-            EngineUtils.addProperties(client, factory.getMetadata(), handler.getPropertyChanges(), entity);
+            for (ODataProperty property : handler.getChangedProperties()) {
+                entity.addProperty(property);
+            }
         }
 
+        final Set<EntityOperation> dependencies = new LinkedHashSet<EntityOperation>();
+        final List<EntityLinkDesc> links = new ArrayList<EntityLinkDesc>();
+
         for (Map.Entry<NavigationProperty, Object> property : handler.getLinkChanges().entrySet()) {
             final ODataLinkType type = Collection.class.isAssignableFrom(property.getValue().getClass())
                     ? ODataLinkType.ENTITY_SET_NAVIGATION
                     : ODataLinkType.ENTITY_NAVIGATION;
 
             final Set<EntityTypeInvocationHandler> toBeLinked = new HashSet<EntityTypeInvocationHandler>();
-            final String serviceRoot = factory.getServiceRoot();
+            final Set<EntityTypeInvocationHandler> toBeCreated = new HashSet<EntityTypeInvocationHandler>();
 
             for (Object proxy : type == ODataLinkType.ENTITY_SET_NAVIGATION
                     ? (Collection) property.getValue() : Collections.singleton(property.getValue())) {
 
                 final EntityTypeInvocationHandler target =
-                        (EntityTypeInvocationHandler) Proxy.getInvocationHandler(proxy);
+                        EntityTypeInvocationHandler.getHandler(proxy);
 
                 final AttachedEntityStatus status;
 
@@ -136,95 +276,55 @@ public class SequentialContainer extends Container {
                     continue;
                 }
 
-                final URI editLink = target.getEntity().getEditLink();
+                if (((status == AttachedEntityStatus.ATTACHED || status == AttachedEntityStatus.LINKED)
+                        && !target.isChanged()) || status == AttachedEntityStatus.CHANGED) {
 
-                if ((status == AttachedEntityStatus.ATTACHED || status == AttachedEntityStatus.LINKED)
-                        && !target.isChanged()) {
-                    entity.addLink(buildNavigationLink(
-                            property.getKey().name(),
-                            URIUtils.getURI(serviceRoot, editLink.toASCIIString()), type));
+                    // already existing on the server
+                    entity.addLink(buildNavigationLink(property.getKey().name(), editLink(target), type));
                 } else {
-                    if (!items.contains(target)) {
-                        pos = processEntityContext(target, pos, items, delayedUpdates);
-                        pos++;
+                    if (!planned.containsKey(target)) {
+                        processEntityContext(target, planned, operations, delayedUpdates);
                     }
 
-                    final Integer targetPos = items.get(target);
-                    if (targetPos == null) {
+                    final EntityOperation targetOperation = planned.get(target);
+                    if (targetOperation == null) {
                         // schedule update for the current object
                         LOG.debug("Schedule '{}' from '{}' to '{}'", type.name(), handler, target);
                         toBeLinked.add(target);
-                    } else if (status == AttachedEntityStatus.CHANGED) {
-                        entity.addLink(buildNavigationLink(
-                                property.getKey().name(),
-                                URIUtils.getURI(serviceRoot, editLink.toASCIIString()), type));
                     } else {
-                        // create the link for the current object
-                        LOG.debug("'{}' from '{}' to (${}) '{}'", type.name(), handler, targetPos, target);
-
-                        entity.addLink(
-                                buildNavigationLink(property.getKey().name(), URI.create("$" + targetPos), type));
+                        // link once the target has been created
+                        LOG.debug("'{}' from '{}' to '{}'", type.name(), handler, target);
+                        dependencies.add(targetOperation);
+                        toBeCreated.add(target);
                     }
                 }
             }
 
             if (!toBeLinked.isEmpty()) {
-                delayedUpdates.add(new EntityLinkDesc(property.getKey().name(), handler, toBeLinked, type));
-            }
-        }
-
-        // commit to server
-        LOG.debug("{}: Send '{}' to service", pos, handler);
-        send(handler, entity);
-
-        items.put(handler, pos);
-        int startingPos = pos;
-
-        if (handler.getEntity().isMediaEntity()) {
-
-            // update media properties
-            if (!handler.getPropertyChanges().isEmpty()) {
-                final URI targetURI = currentStatus == AttachedEntityStatus.NEW
-                        ? URI.create("$" + startingPos)
-                        : URIUtils.getURI(factory.getServiceRoot(), handler.getEntity().getEditLink().toASCIIString());
-                update(handler, targetURI, entity);
-                pos++;
-                items.put(handler, pos);
+                List<EntityLinkDesc> sourceUpdates = delayedUpdates.get(handler);
+                if (sourceUpdates == null) {
+                    sourceUpdates = new ArrayList<EntityLinkDesc>();
+                    delayedUpdates.put(handler, sourceUpdates);
+                }
+                sourceUpdates.add(new EntityLinkDesc(property.getKey().name(), handler, toBeLinked, type));
             }
-
-            // update media content
-            if (handler.getStreamChanges() != null) {
-                final URI targetURI = currentStatus == AttachedEntityStatus.NEW
-                        ? URI.create("$" + startingPos + "/$value")
-                        : URIUtils.getURI(
-                        factory.getServiceRoot(), handler.getEntity().getEditLink().toASCIIString() + "/$value");
-
-                updateMediaEntity(handler, targetURI, handler.getStreamChanges());
-
-                // update media info (use null key)
-                pos++;
-                items.put(null, pos);
+            if (!toBeCreated.isEmpty()) {
+                links.add(new EntityLinkDesc(property.getKey().name(), handler, toBeCreated, type));
             }
         }
 
-        for (Map.Entry<String, InputStream> streamedChanges : handler.getStreamedPropertyChanges().entrySet()) {
-            final URI targetURI = currentStatus == AttachedEntityStatus.NEW
-                    ? URI.create("$" + startingPos) : URIUtils.getURI(
-                    factory.getServiceRoot(),
-                    EngineUtils.getEditMediaLink(streamedChanges.getKey(), entity).toASCIIString());
-
-            updateMediaResource(handler, targetURI, streamedChanges.getValue());
-
-            // update media info (use null key)
-            pos++;
-            items.put(handler, pos);
-        }
+        final EntityOperation operation = new EntityOperation(handler, entity, currentStatus, links, dependencies);
+        planned.put(handler, operation);
+        operations.add(operation);
+        return operation;
+    }
 
-        return pos;
+    private URI editLink(final EntityTypeInvocationHandler handler) {
+        return URIUtils.getURI(factory.getServiceRoot(), handler.getEntity().getEditLink().toASCIIString());
     }
 
-    private void send(EntityTypeInvocationHandler handler, ODataEntity entity) {
-        switch (EntityContainerFactory.getContext().entityContext().getStatus(handler)) {
+    private void send(EntityTypeInvocationHandler handler, ODataEntity entity, AttachedEntityStatus status) {
+        switch (status) {
             case NEW:
                 create(handler, entity);
                 break;
@@ -243,7 +343,6 @@ public class SequentialContainer extends Container {
                 }
         }
     }
-
     private void delete(EntityTypeInvocationHandler handler, ODataEntity entity) {
         LOG.debug("Delete '{}'", entity.getEditLink());
 
@@ -254,7 +353,7 @@ public class SequentialContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        req.execute();
+        req.execute().close();
     }
 
     private void update(EntityTypeInvocationHandler handler, ODataEntity changes) {
@@ -288,7 +387,7 @@ public class SequentialContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        req.execute();
+        req.execute().getResponse().close();
     }
 
     private void updateMediaEntity(EntityTypeInvocationHandler handler, URI uri, InputStream input) {
@@ -305,7 +404,7 @@ public class SequentialContainer extends Container {
             req.setIfMatch(handler.getETag());
         }
 
-        req.execute();
+        req.execute().getResponse().close();
     }
 
     private void update(EntityTypeInvocationHandler handler, URI uri, ODataEntity entity) {
@@ -322,4 +421,143 @@ public class SequentialContainer extends Container {
         handler.setEntity(req.execute().getBody());
     }
 
+
+    /**
+     * Node of the flush plan: executed once all its dependencies have been executed.
+     */
+    abstract static class Operation {
+
+        protected final EntityTypeInvocationHandler handler;
+
+        /**
+         * Length of the longest dependency chain leading to this operation.
+         */
+        protected final int level;
+
+        protected volatile boolean done = false;
+
+        protected Operation(
+                final EntityTypeInvocationHandler handler, final Collection<? extends Operation> dependencies) {
+            this.handler = handler;
+
+            int max = -1;
+            for (Operation dependency : dependencies) {
+                max = Math.max(max, dependency.level);
+            }
+            this.level = max + 1;
+        }
+
+        protected abstract void execute();
+    }
+
+    /**
+     * Sends the changes of a single entity: create, update or delete, followed by media updates.
+     */
+    class EntityOperation extends Operation {
+
+        private final ODataEntity entity;
+
+        private final AttachedEntityStatus status;
+
+        /**
+         * Links towards entities created by dependencies.
+         */
+        private final List<EntityLinkDesc> links;
+
+        public EntityOperation(
+                final EntityTypeInvocationHandler handler,
+                final ODataEntity entity,
+                final AttachedEntityStatus status,
+                final List<EntityLinkDesc> links,
+                final Collection<EntityOperation> dependencies) {
+
+            super(handler, dependencies);
+            this.entity = entity;
+            this.status = status;
+            this.links = links;
+        }
+
+        @Override
+        protected void execute() {
+            for (EntityLinkDesc link : links) {
+                for (EntityTypeInvocationHandler target : link.getTargets()) {
+                    entity.addLink(buildNavigationLink(link.getSourceName(), editLink(target), link.getType()));
+                }
+            }
+
+            // commit to server
+            LOG.debug("Send '{}' to service", handler);
+            send(handler, entity, status);
+
+            if (handler.getEntity().isMediaEntity()) {
+                // update media properties
+                if (!handler.getPropertyChanges().isEmpty()) {
+                    update(handler, editLink(handler), entity);
+                }
+
+                // update media content
+                if (handler.getStreamChanges() != null) {
+                    updateMediaEntity(handler, URIUtils.getURI(factory.getServiceRoot(),
+                            handler.getEntity().getEditLink().toASCIIString() + "/$value"), handler.getStreamChanges());
+                }
+            }
+
+            for (Map.Entry<String, InputStream> streamedChanges : handler.getStreamedPropertyChanges().entrySet()) {
+                updateMediaResource(handler, URIUtils.getURI(factory.getServiceRoot(),
+                        EngineUtils.getEditMediaLink(streamedChanges.getKey(), handler.getEntity()).toASCIIString()),
+                        streamedChanges.getValue());
+            }
+        }
+    }
+
+    /**
+     * Links an entity to entities which were not yet created when the former was sent: links of all navigation
+     * properties are sent by a single update.
+     */
+    class DelayedUpdateOperation extends Operation {
+
+        private final List<EntityLinkDesc> delayedUpdates;
+
+        public DelayedUpdateOperation(
+                final EntityTypeInvocationHandler source,
+                final List<EntityLinkDesc> delayedUpdates,
+                final Map<EntityTypeInvocationHandler, EntityOperation> planned) {
+
+            super(source, dependencies(source, delayedUpdates, planned));
+            this.delayedUpdates = delayedUpdates;
+        }
+
+        List<EntityLinkDesc> getDelayedUpdates() {
+            return delayedUpdates;
+        }
+
+        @Override
+        protected void execute() {
+            final ODataEntity changes = ODataObjectFactory.newEntity(handler.getEntity().getName());
+
+            for (EntityLinkDesc delayedUpdate : delayedUpdates) {
+                for (EntityTypeInvocationHandler target : delayedUpdate.getTargets()) {
+                    changes.addLink(buildNavigationLink(delayedUpdate.getSourceName(), editLink(target),
+                            delayedUpdate.getType()));
+                }
+            }
+
+            update(handler, editLink(handler), changes);
+        }
+    }
+
+    private static List<EntityOperation> dependencies(
+            final EntityTypeInvocationHandler source,
+            final List<EntityLinkDesc> delayedUpdates,
+            final Map<EntityTypeInvocationHandler, EntityOperation> planned) {
+
+        final List<EntityOperation> dependencies = new ArrayList<EntityOperation>();
+        dependencies.add(planned.get(source));
+        for (EntityLinkDesc delayedUpdate : delayedUpdates) {
+            for (EntityTypeInvocationHandler target : delayedUpdate.getTargets()) {
+                dependencies.add(planned.get(target));
+            }
+        }
+        return dependencies;
+    }
 }
@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import com.microsoft.office.proxy.ActionMapKey;
 import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataV4Client;
 import com.msopentech.odatajclient.engine.data.ODataCollectionValue;
 import com.msopentech.odatajclient.engine.data.ODataComplexValue;
 import com.msopentech.odatajclient.engine.data.ODataEntity;
@@ -50,10 +51,6 @@ import com.msopentech.odatajclient.engine.data.ODataProperty;
 import com.msopentech.odatajclient.engine.data.ODataValue;
 import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
 import com.msopentech.odatajclient.engine.data.metadata.EdmType;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV3Metadata;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV3Type;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV4Metadata;
-import com.msopentech.odatajclient.engine.data.metadata.EdmV4Type;
 import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
 import com.msopentech.odatajclient.engine.data.metadata.edm.geospatial.Geospatial;
 import com.msopentech.odatajclient.engine.data.metadata.edm.v4.Action;
@@ -137,12 +134,7 @@ public final class EngineUtils {
 
         if (type.isCollection()) {
             value = new ODataCollectionValue(type.getTypeExpression());
-            final EdmType intType;
-            if (metadata instanceof EdmV3Metadata) {
-                intType = new EdmV3Type((EdmV3Metadata) metadata, type.getBaseType());
-            } else {
-                intType = new EdmV4Type((EdmV4Metadata) metadata, type.getBaseType());
-            }
+            final EdmType intType = metadata.getType(type.getBaseType());
             for (Object collectionItem : (Collection<?>) obj) {
                 if (intType.isSimpleType()) {
                     ((ODataCollectionValue) value).add(
@@ -241,6 +233,114 @@ public final class EngineUtils {
         }
     }
 
+    /**
+     * Gets the properties actually changed with respect to the given values, as read from the service.
+     *
+     * @param client OData client.
+     * @param metadata metadata.
+     * @param changes changed property values, per property name.
+     * @param snapshot properties as read from the service, per property name.
+     * @return changed properties; complex values hold changed fields only when supported by the protocol version.
+     */
+    public static List<ODataProperty> getChangedProperties(
+            final ODataClient client,
+            final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata,
+            final Map<String, Object> changes,
+            final Map<String, ODataProperty> snapshot) {
+
+        final List<ODataProperty> changed = new ArrayList<ODataProperty>();
+        for (Map.Entry<String, Object> property : changes.entrySet()) {
+            final ODataProperty diff = diff(snapshot.get(property.getKey()),
+                    getODataProperty(client, metadata, property.getKey(), property.getValue()),
+                    client instanceof ODataV4Client);
+            if (diff != null) {
+                changed.add(diff);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Compares a property as read from the service with its current state.
+     *
+     * @param original property as read from the service; null if not read.
+     * @param current current property.
+     * @param partialComplex whether complex values can be sent with their changed fields only.
+     * @return null if not changed; the current property or, for complex values when allowed, a property holding
+     * the changed fields only.
+     */
+    public static ODataProperty diff(
+            final ODataProperty original, final ODataProperty current, final boolean partialComplex) {
+
+        if (original == null) {
+            return current;
+        }
+        if (isEqual(original.getValue(), current.getValue())) {
+            return null;
+        }
+
+        if (partialComplex && original.hasComplexValue() && current.hasComplexValue()) {
+            final ODataComplexValue changed = new ODataComplexValue(current.getComplexValue().getTypeName());
+            for (ODataProperty field : current.getComplexValue()) {
+                final ODataProperty diff = diff(original.getComplexValue().get(field.getName()), field, true);
+                if (diff != null) {
+                    changed.add(diff);
+                }
+            }
+            // fields reset by omission cannot be expressed as a partial value
+            return changed.size() == 0 ? current : ODataObjectFactory.newComplexProperty(current.getName(), changed);
+        }
+
+        return current;
+    }
+
+    private static boolean isNull(final ODataValue value) {
+        return value == null || (value.isPrimitive() && value.asPrimitive().toValue() == null);
+    }
+
+    private static boolean isEqual(final ODataValue original, final ODataValue current) {
+        if (isNull(original) || isNull(current)) {
+            return isNull(original) && isNull(current);
+        }
+
+        if (original.isComplex() && current.isComplex()) {
+            final ODataComplexValue complex = current.asComplex();
+            for (ODataProperty field : original.asComplex()) {
+                if (complex.get(field.getName()) == null && !isNull(field.getValue())) {
+                    return false;
+                }
+            }
+            for (ODataProperty field : complex) {
+                final ODataProperty originalField = original.asComplex().get(field.getName());
+                if (!isEqual(originalField == null ? null : originalField.getValue(), field.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (original.isCollection() && current.isCollection()) {
+            if (original.asCollection().size() != current.asCollection().size()) {
+                return false;
+            }
+            final Iterator<ODataValue> iter = current.asCollection().iterator();
+            for (ODataValue item : original.asCollection()) {
+                if (!isEqual(item, iter.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (original.isPrimitive() && current.isPrimitive()
+                && original.asPrimitive().toValue().equals(current.asPrimitive().toValue())) {
+            return true;
+        }
+
+        // enums are read as primitive values: compare lexical forms
+        return original.equals(current) || String.valueOf(original).equals(String.valueOf(current));
+    }
+
     private static void setPropertyValue(final Object bean, final Method getter, final Object value)
             throws NoSuchMethodException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
 
@@ -440,6 +540,16 @@ public final class EngineUtils {
         return value;
     }
 
+    /**
+     * Gets the name of the key property of the given entity type.
+     *
+     * @param entityTypeRef entity type interface.
+     * @return key property name; null if the entity type has a compound key.
+     */
+    public static String getKeyPropertyName(final Class<?> entityTypeRef) {
+        return ClassUtils.getCompoundKeyRef(entityTypeRef) == null ? firstValidEntityKey(entityTypeRef) : null;
+    }
+
     private static String firstValidEntityKey(final Class<?> entityTypeRef) {
         for (Method method : entityTypeRef.getDeclaredMethods()) {
             if (method.getAnnotation(Key.class) != null) {
@@ -459,43 +569,23 @@ public final class EngineUtils {
             res = null;
         } else if (Collection.class.isAssignableFrom(obj.getClass())) {
             if (((Collection<?>) obj).isEmpty()) {
-                if (metadata instanceof EdmV3Metadata) {
-                    res = new EdmV3Type((EdmV3Metadata) metadata, "Collection(" + getEdmType(client, metadata, "Edm.String"));
-                } else {
-                    res = new EdmV4Type((EdmV4Metadata) metadata, "Collection(" + getEdmType(client, metadata, "Edm.String"));
-                }
+                res = metadata.getType("Collection("
+                        + getEdmType(client, metadata, "Edm.String").getTypeExpression() + ")");
             } else {
-                if (metadata instanceof EdmV3Metadata) {
-                    res = new EdmV3Type((EdmV3Metadata) metadata, "Collection("
-                            + getEdmType(client, metadata, ((Collection<?>) obj).iterator().next()).getTypeExpression() + ")");
-                } else {
-                    res = new EdmV4Type((EdmV4Metadata) metadata, "Collection("
-                            + getEdmType(client, metadata, ((Collection<?>) obj).iterator().next()).getTypeExpression() + ")");
-                }
+                res = metadata.getType("Collection("
+                        + getEdmType(client, metadata, ((Collection<?>) obj).iterator().next()).getTypeExpression() + ")");
             }
         } else if (obj.getClass().isAnnotationPresent(ComplexType.class)) {
             final String ns = ClassUtils.getNamespace(obj.getClass());
             final ComplexType ann = obj.getClass().getAnnotation(ComplexType.class);
-            if (metadata instanceof EdmV3Metadata) {
-                res = new EdmV3Type((EdmV3Metadata) metadata, ns + "." + ann.value());
-            } else {
-                res = new EdmV4Type((EdmV4Metadata) metadata, ns + "." + ann.value());
-            }
+            res = metadata.getType(ns + "." + ann.value());
         } else if (obj.getClass().isAnnotationPresent(EnumType.class)) {
             final String ns = ClassUtils.getNamespace(obj.getClass());
             final EnumType ann = obj.getClass().getAnnotation(EnumType.class);
-            if (metadata instanceof EdmV3Metadata) {
-                res = new EdmV3Type((EdmV3Metadata) metadata, ns + "." + ann.name());
-            } else {
-                res = new EdmV4Type((EdmV4Metadata) metadata, ns + "." + ann.name());
-            }
+            res = metadata.getType(ns + "." + ann.name());
         } else {
             final EdmSimpleType simpleType = EdmSimpleType.fromObject(client.getWorkingVersion(), obj);
-            if (metadata instanceof EdmV3Metadata) {
-                res = new EdmV3Type((EdmV3Metadata) metadata, simpleType.toString());
-            } else {
-                res = new EdmV4Type((EdmV4Metadata) metadata, simpleType.toString());
-            }
+            res = metadata.getType(simpleType.toString());
         }
 
         return res;
@@ -0,0 +1,211 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.data.metadata.AbstractEdmMetadata;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks <tt>FileMetadataCache</tt> and how <tt>EntityContainerFactory</tt> revalidates cached metadata, against a
+ * local HTTP server serving <tt>$metadata</tt>.
+ */
+public class MetadataCacheTest {
+
+    private static final String ETAG = "\"v2\"";
+
+    private final ODataClient client = ODataClientFactory.getV3();
+
+    private byte[] document;
+
+    private File directory;
+
+    private HttpServer server;
+
+    private String serviceRoot;
+
+    /**
+     * <tt>If-None-Match</tt> header of each <tt>$metadata</tt> request received.
+     */
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() throws IOException {
+        document = IOUtils.toByteArray(getClass().getResourceAsStream("/northwind.xml"));
+
+        directory = File.createTempFile("metadata", "");
+        directory.delete();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/svc/$metadata", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatch.add(String.valueOf(etag));
+
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                if (ETAG.equals(etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                    exchange.sendResponseHeaders(200, document.length);
+                    final OutputStream body = exchange.getResponseBody();
+                    body.write(document);
+                    body.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+
+        serviceRoot = "http://localhost:" + server.getAddress().getPort() + "/svc";
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> parse() {
+        return client.getReader().readMetadata(getClass().getResourceAsStream("/northwind.xml"));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final FileMetadataCache cache = new FileMetadataCache(directory);
+        assertNull(cache.get(serviceRoot));
+
+        cache.put(serviceRoot, new CachedMetadata(parse(), ETAG, "Sat, 17 Oct 2026 10:00:00 GMT"));
+
+        final CachedMetadata cached = cache.get(serviceRoot);
+        assertNotNull(cached);
+        assertEquals(ETAG, cached.getEtag());
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", cached.getLastModified());
+        assertNotNull(cached.getMetadata().getSchema("NorthwindModel"));
+        assertNotNull(cached.getMetadata().getEntityType("NorthwindModel.Category"));
+
+        assertNull(cache.get(serviceRoot + "/other"));
+    }
+
+    @Test
+    public void invalidEntryIsDiscarded() throws IOException {
+        final FileMetadataCache cache = new FileMetadataCache(directory);
+        cache.put(serviceRoot, new CachedMetadata(parse(), ETAG, null));
+
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        final OutputStream output = new FileOutputStream(files[0]);
+        output.write("not a serialized object".getBytes());
+        output.close();
+
+        assertNull(cache.get(serviceRoot));
+        assertFalse(files[0].exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeFailureIsReported() throws IOException {
+        final File file = new File(directory.getParentFile(), directory.getName() + ".file");
+        try {
+            assertTrue(file.createNewFile());
+            new FileMetadataCache(file).put(serviceRoot, new CachedMetadata(parse(), ETAG, null));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void retrieveAndCache() throws IOException {
+        final FileMetadataCache cache = new FileMetadataCache(directory);
+
+        final EntityContainerFactory factory = new EntityContainerFactory(client, serviceRoot);
+        factory.setMetadataCache(cache);
+
+        assertNotNull(factory.getMetadata().getSchema("NorthwindModel"));
+        assertNull(factory.getMetadataRevalidation());
+        assertEquals(1, ifNoneMatch.size());
+        assertEquals(ETAG, cache.get(serviceRoot).getEtag());
+    }
+
+    @Test
+    public void notModified() throws Exception {
+        final FileMetadataCache cache = new FileMetadataCache(directory);
+        final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> metadata = parse();
+        cache.put(serviceRoot, new CachedMetadata(metadata, ETAG, null));
+
+        final EntityContainerFactory factory = new EntityContainerFactory(client, serviceRoot);
+        factory.setMetadataCache(cache);
+
+        final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> read = factory.getMetadata();
+        assertNotNull(read.getSchema("NorthwindModel"));
+
+        assertFalse(factory.getMetadataRevalidation().get(10, TimeUnit.SECONDS));
+        assertEquals(1, ifNoneMatch.size());
+        assertEquals(ETAG, ifNoneMatch.get(0));
+        assertSame(read, factory.getMetadata());
+    }
+
+    @Test
+    public void revalidation() throws Exception {
+        final FileMetadataCache cache = new FileMetadataCache(directory);
+        cache.put(serviceRoot, new CachedMetadata(parse(), "\"v1\"", null));
+
+        final EntityContainerFactory factory = new EntityContainerFactory(client, serviceRoot);
+        factory.setMetadataCache(cache);
+
+        final AbstractEdmMetadata<?, ?, ?, ?, ?, ?, ?> read = factory.getMetadata();
+
+        assertTrue(factory.getMetadataRevalidation().get(10, TimeUnit.SECONDS));
+        assertEquals("\"v1\"", ifNoneMatch.get(0));
+        assertEquals(ETAG, cache.get(serviceRoot).getEtag());
+
+        // metadata in use are not swapped: only factories created afterwards get the updated ones
+        assertSame(read, factory.getMetadata());
+
+        final EntityContainerFactory other = new EntityContainerFactory(client, serviceRoot);
+        other.setMetadataCache(cache);
+        assertNotNull(other.getMetadata().getSchema("NorthwindModel"));
+        assertFalse(other.getMetadataRevalidation().get(10, TimeUnit.SECONDS));
+    }
+}
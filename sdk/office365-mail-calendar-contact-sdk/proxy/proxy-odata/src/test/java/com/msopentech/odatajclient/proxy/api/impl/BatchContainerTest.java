@@ -0,0 +1,277 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchRequest;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataBatchableRequest;
+import com.msopentech.odatajclient.engine.communication.request.batch.ODataChangeset;
+import com.msopentech.odatajclient.engine.communication.response.ODataBatchResponse;
+import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>BatchContainer</tt> groups changes referring each other and how it merges changeset responses,
+ * against a local HTTP server answering <tt>$batch</tt>.
+ */
+public class BatchContainerTest {
+
+    private static final String BOUNDARY = "batchresponse_1";
+
+    private static final String CHANGESET_BOUNDARY = "changesetresponse_1";
+
+    private final ODataClient client = ODataClientFactory.getV3();
+
+    private HttpServer server;
+
+    private String serviceRoot;
+
+    /**
+     * Status line of each changeset item response to be sent back.
+     */
+    private volatile List<String> statuses = Collections.emptyList();
+
+    private volatile int batchStatus = 202;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/svc/$batch", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+
+                if (batchStatus != 202) {
+                    exchange.sendResponseHeaders(batchStatus, -1);
+                    exchange.close();
+                    return;
+                }
+
+                final StringBuilder response = new StringBuilder();
+                response.append("--").append(BOUNDARY).append("\r\n").
+                        append("Content-Type: multipart/mixed; boundary=").append(CHANGESET_BOUNDARY).
+                        append("\r\n\r\n");
+                for (int i = 0; i < statuses.size(); i++) {
+                    response.append("--").append(CHANGESET_BOUNDARY).append("\r\n").
+                            append("Content-Type: application/http\r\n").
+                            append("Content-Transfer-Encoding: binary\r\n").
+                            append("Content-ID: ").append(i + 1).append("\r\n\r\n").
+                            append("HTTP/1.1 ").append(statuses.get(i)).append("\r\n").
+                            append("DataServiceVersion: 1.0;\r\n\r\n\r\n");
+                }
+                response.append("--").append(CHANGESET_BOUNDARY).append("--\r\n");
+                response.append("--").append(BOUNDARY).append("--\r\n");
+
+                final byte[] body = response.toString().getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "multipart/mixed; boundary=" + BOUNDARY);
+                exchange.sendResponseHeaders(202, body.length);
+                final OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+                exchange.close();
+            }
+        });
+        server.start();
+
+        serviceRoot = "http://localhost:" + server.getAddress().getPort() + "/svc";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private ODataBatchableRequest request(final int key) {
+        return client.getCUDRequestFactory().getDeleteRequest(URI.create(serviceRoot + "/Customer(" + key + ")"));
+    }
+
+    private static List<List<Integer>> contentIds(final BatchContainer.ChangesetPlan plan) {
+        final List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        for (List<BatchContainer.PlannedChange> group : plan.groups()) {
+            final List<Integer> contentIds = new ArrayList<Integer>();
+            for (BatchContainer.PlannedChange change : group) {
+                contentIds.add(change.getContentId());
+            }
+            groups.add(contentIds);
+        }
+        return groups;
+    }
+
+    /**
+     * Builds the expected content id groups; arrays, rather than lists, avoid generic varargs.
+     */
+    private static List<List<Integer>> groups(final int[]... groups) {
+        final List<List<Integer>> res = new ArrayList<List<Integer>>();
+        for (int[] group : groups) {
+            final List<Integer> contentIds = new ArrayList<Integer>();
+            for (int contentId : group) {
+                contentIds.add(contentId);
+            }
+            res.add(contentIds);
+        }
+        return res;
+    }
+
+    private static Collection<Integer> refs(final Integer... contentIds) {
+        return Arrays.asList(contentIds);
+    }
+
+    @Test
+    public void independentChanges() {
+        final BatchContainer.ChangesetPlan plan = new BatchContainer.ChangesetPlan();
+        assertEquals(1, plan.add(request(1), refs()));
+        assertEquals(2, plan.add(request(2), refs()));
+        assertEquals(3, plan.add(request(3), refs()));
+
+        assertEquals(3, plan.size());
+        assertEquals(groups(new int[] {1}, new int[] {2}, new int[] {3}), contentIds(plan));
+    }
+
+    @Test
+    public void referringChanges() {
+        final BatchContainer.ChangesetPlan plan = new BatchContainer.ChangesetPlan();
+        // 1 <- 3 <- 5 and 2 <- 4, 6 on its own
+        plan.add(request(1), refs());
+        plan.add(request(2), refs());
+        plan.add(request(3), refs(1));
+        plan.add(request(4), refs(2));
+        plan.add(request(5), refs(3));
+        plan.add(request(6), refs());
+
+        assertEquals(groups(new int[] {1, 3, 5}, new int[] {2, 4}, new int[] {6}), contentIds(plan));
+    }
+
+    /**
+     * A delayed update links changes otherwise unrelated: all of them must be sent in the same changeset, and each
+     * change must follow the ones it refers to.
+     */
+    @Test
+    public void delayedUpdateJoinsGroups() {
+        final BatchContainer.ChangesetPlan plan = new BatchContainer.ChangesetPlan();
+        plan.add(request(1), refs());
+        plan.add(request(2), refs());
+        plan.add(request(3), refs(2));
+        plan.add(request(4), refs());
+        // delayed update of 3, linking it to 1
+        plan.add(request(5), refs(3, 1));
+
+        assertEquals(groups(new int[] {1, 2, 3, 5}, new int[] {4}), contentIds(plan));
+    }
+
+    @Test
+    public void invalidReference() {
+        final BatchContainer.ChangesetPlan plan = new BatchContainer.ChangesetPlan();
+        plan.add(request(1), refs());
+
+        for (Integer reference : Arrays.asList(0, 2, 3, null)) {
+            try {
+                plan.add(request(2), refs(reference));
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(String.valueOf(reference)));
+            }
+        }
+    }
+
+    private ODataBatchResponse send(final int items) {
+        final ODataBatchRequest.BatchStreamManager streamManager =
+                client.getBatchRequestFactory().getBatchRequest(serviceRoot).execute();
+        final ODataChangeset changeset = streamManager.addChangeset();
+        for (int i = 1; i <= items; i++) {
+            changeset.addRequest(request(i), i);
+        }
+        return streamManager.getResponse();
+    }
+
+    private void merge(final int items, final String... responseStatuses) {
+        statuses = Arrays.asList(responseStatuses);
+
+        final BatchContainer container =
+                new BatchContainer(client, EntityContainerFactory.getInstance(client, serviceRoot));
+        final List<Integer> contentIds = new ArrayList<Integer>();
+        for (int i = 1; i <= items; i++) {
+            contentIds.add(i);
+        }
+
+        final ODataBatchResponse response = send(items);
+        try {
+            container.merge(response, contentIds, container.new TransactionItems());
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void mergeSuccess() {
+        merge(2, "204 No Content", "204 No Content");
+    }
+
+    @Test
+    public void mergeFailedItem() {
+        try {
+            merge(2, "204 No Content", "412 Precondition Failed");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Transaction failed"));
+        }
+    }
+
+    @Test
+    public void mergeMissingItem() {
+        try {
+            merge(2, "204 No Content");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected: fewer results than changes sent
+        }
+    }
+
+    @Test
+    public void mergeFailedBatch() {
+        batchStatus = 500;
+        try {
+            merge(1, "204 No Content");
+            fail();
+        } catch (RuntimeException e) {
+            // expected: either the batch request or merge itself fails
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.msopentech.odatajclient.proxy.api.NavigationPrefetch;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>EntityPage</tt> reads its entities again for <tt>EXPAND</tt> prefetch, and how prefetch modes are
+ * looked up per entity type.
+ */
+public class EntityPageTest {
+
+    private interface Item {
+    }
+
+    private interface Message extends Item {
+    }
+
+    private interface Contact {
+    }
+
+    private final ODataClient client = ODataClientFactory.getV4();
+
+    @Test
+    public void expandByKeysOfNextLinkPage() {
+        final URI uri = EntityPage.getExpandURI(client,
+                URI.create("http://localhost/svc/Me/Messages?$skiptoken=abc&$top=10"),
+                "Id", Arrays.asList("a1", "o'b"), "Attachments");
+
+        assertEquals("/svc/Me/Messages", uri.getPath());
+        assertEquals("$expand=Attachments&$filter=Id+eq+'a1'+or+Id+eq+'o''b'&$top=2", uri.getQuery());
+    }
+
+    @Test
+    public void expandByNumericKeys() {
+        final URI uri = EntityPage.getExpandURI(client,
+                URI.create("http://localhost/svc/Products"), "ID", Arrays.asList(1, 2, 3), "Category");
+
+        assertEquals("/svc/Products", uri.getPath());
+        assertEquals("$expand=Category&$filter=ID+eq+1+or+ID+eq+2+or+ID+eq+3&$top=3", uri.getQuery());
+    }
+
+    /**
+     * Exchange-like ids do not fit a single URI: they are split among URIs within the maximum length, in order.
+     */
+    @Test
+    public void splitLongKeys() {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 40; i++) {
+            keys.add("AAMkAGI2TG93AAA=" + StringUtils.leftPad(String.valueOf(i), 136, 'x'));
+        }
+
+        final List<URI> uris = EntityPage.getExpandURIs(client,
+                URI.create("http://localhost/svc/Me/Messages"), "Id", keys, "Attachments",
+                EntityPage.MAX_EXPAND_URI_LENGTH);
+        assertTrue(uris.size() > 1);
+
+        final List<String> filtered = new ArrayList<String>();
+        for (URI uri : uris) {
+            assertTrue(uri.toASCIIString().length() <= EntityPage.MAX_EXPAND_URI_LENGTH);
+            assertEquals("/svc/Me/Messages", uri.getPath());
+
+            final String query = uri.getQuery();
+            final String[] terms = StringUtils.substringsBetween(query, "Id+eq+'", "'");
+            assertTrue(query.endsWith("&$top=" + terms.length));
+            filtered.addAll(Arrays.asList(terms));
+        }
+        assertEquals(keys, filtered);
+    }
+
+    @Test
+    public void splitWithinLength() {
+        final URI products = URI.create("http://localhost/svc/Products");
+        final URI single = EntityPage.getExpandURI(client, products, "ID", Arrays.asList(1, 2, 3), "Category");
+
+        // all keys fit
+        assertEquals(Arrays.asList(single), EntityPage.getExpandURIs(client, products,
+                "ID", Arrays.asList(1, 2, 3), "Category", single.toASCIIString().length()));
+
+        // one key per URI, even when a single key exceeds the length
+        final List<URI> uris = EntityPage.getExpandURIs(client, products, "ID", Arrays.asList(1, 2, 3), "Category", 10);
+        assertEquals(3, uris.size());
+        assertEquals("$expand=Category&$filter=ID+eq+2&$top=1", uris.get(1).getQuery());
+    }
+
+    @Test
+    public void prefetchPerEntityType() {
+        final EntityContainerFactory factory =
+                EntityContainerFactory.getInstance(client, "http://localhost/prefetch" + System.nanoTime());
+
+        factory.setNavigationPrefetch(Item.class, "Attachments", NavigationPrefetch.BATCH);
+        factory.setNavigationPrefetch(Contact.class, "Attachments", NavigationPrefetch.EXPAND);
+
+        assertEquals(NavigationPrefetch.BATCH, factory.getNavigationPrefetch(Item.class, "Attachments"));
+        assertEquals(NavigationPrefetch.EXPAND, factory.getNavigationPrefetch(Contact.class, "Attachments"));
+        assertEquals(NavigationPrefetch.NONE, factory.getNavigationPrefetch(Item.class, "Owner"));
+
+        // derived types inherit the setting of their base type, unless overridden
+        assertEquals(NavigationPrefetch.BATCH, factory.getNavigationPrefetch(Message.class, "Attachments"));
+        factory.setNavigationPrefetch(Message.class, "Attachments", NavigationPrefetch.NONE);
+        assertEquals(NavigationPrefetch.NONE, factory.getNavigationPrefetch(Message.class, "Attachments"));
+        assertEquals(NavigationPrefetch.BATCH, factory.getNavigationPrefetch(Item.class, "Attachments"));
+    }
+}
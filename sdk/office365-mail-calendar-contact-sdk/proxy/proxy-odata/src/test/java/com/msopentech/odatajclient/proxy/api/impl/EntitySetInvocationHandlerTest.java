@@ -0,0 +1,238 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.data.ODataEntity;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
+import com.msopentech.odatajclient.proxy.api.AbstractEntityCollection;
+import com.msopentech.odatajclient.proxy.api.AbstractEntitySet;
+import com.msopentech.odatajclient.proxy.api.CachedMetadata;
+import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.msopentech.odatajclient.proxy.api.MetadataCache;
+import com.msopentech.odatajclient.proxy.api.annotations.EntityContainer;
+import com.msopentech.odatajclient.proxy.api.annotations.EntitySet;
+import com.msopentech.odatajclient.proxy.api.annotations.EntityType;
+import com.msopentech.odatajclient.proxy.api.annotations.Key;
+import com.msopentech.odatajclient.proxy.api.annotations.Namespace;
+import com.msopentech.odatajclient.proxy.api.annotations.Property;
+import com.msopentech.odatajclient.proxy.api.context.AttachedEntityStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>EntitySetInvocationHandler.contains()</tt> looks up entities in the entity context and on the
+ * service, against a local HTTP server knowing a single entity.
+ */
+public class EntitySetInvocationHandlerTest {
+
+    @Namespace("Store")
+    @EntityContainer(name = "Store", isDefaultEntityContainer = true)
+    private interface Store {
+    }
+
+    @Namespace("Store")
+    @EntityType(name = "Item")
+    private interface Item extends Serializable {
+
+        @Key
+        @Property(name = "Id", type = "Edm.String")
+        String getId();
+    }
+
+    private interface ItemCollection extends AbstractEntityCollection<Item> {
+    }
+
+    @EntitySet(name = "Items")
+    private interface Items extends AbstractEntitySet<Item, String, ItemCollection> {
+    }
+
+    private static final String EXISTING = "/svc/Items('a')";
+
+    private static final AtomicInteger requests = new AtomicInteger();
+
+    private static HttpServer server;
+
+    private static ODataClient client;
+
+    private static EntityContainerInvocationHandler container;
+
+    private EntitySetInvocationHandler<Item, String, ItemCollection> items;
+
+    @BeforeClass
+    public static void startServer() throws IOException, InterruptedException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/svc/", new HttpHandler() {
+
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+
+                final boolean found = EXISTING.equals(exchange.getRequestURI().getPath());
+                final byte[] body = (found
+                        ? "{\"odata.metadata\":\"$metadata#Items/@Element\",\"Id\":\"a\"}"
+                        : "{\"odata.error\":{\"code\":\"\",\"message\":{\"lang\":\"en-US\",\"value\":\"Not found\"}}}").
+                        getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json;odata=minimalmetadata");
+                exchange.sendResponseHeaders(found ? 200 : 404, body.length);
+                final OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+                exchange.close();
+            }
+        });
+        server.start();
+
+        client = ODataClientFactory.getV3();
+        final EntityContainerFactory factory = EntityContainerFactory.getInstance(
+                client, "http://localhost:" + server.getAddress().getPort() + "/svc");
+        // entities are only checked against metadata for compound keys: any model would do
+        factory.setMetadataCache(new MetadataCache() {
+
+            @Override
+            public CachedMetadata get(final String serviceRoot) {
+                return new CachedMetadata(client.getReader().readMetadata(
+                        EntitySetInvocationHandlerTest.class.getResourceAsStream("/northwind.xml")), null, null);
+            }
+
+            @Override
+            public void put(final String serviceRoot, final CachedMetadata metadata) {
+            }
+        });
+        container = EntityContainerInvocationHandler.getInstance(client, Store.class, factory);
+
+        // revalidation of cached metadata fails, since not served: wait for it before counting requests
+        factory.getMetadata();
+        try {
+            factory.getMetadataRevalidation().get();
+        } catch (ExecutionException e) {
+            // cached metadata are kept
+        }
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+    }
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        items = EntitySetInvocationHandler.getInstance(Items.class, container, "Items");
+        EntityContainerFactory.getContext().detachAll();
+    }
+
+    @After
+    public void tearDown() {
+        EntityContainerFactory.getContext().detachAll();
+    }
+
+    private EntityTypeInvocationHandler handler(final String id, final String entitySetName) {
+        final ODataEntity entity = ODataObjectFactory.newEntity("Store.Item");
+        if (id != null) {
+            entity.addProperty(ODataObjectFactory.newPrimitiveProperty("Id",
+                    client.getPrimitiveValueBuilder().setType(EdmSimpleType.String).setText(id).build()));
+        }
+        return EntityTypeInvocationHandler.getInstance(entity, "Store", entitySetName, Item.class, container);
+    }
+
+    private static Object proxy(final EntityTypeInvocationHandler handler) {
+        return Proxy.newProxyInstance(Item.class.getClassLoader(), new Class<?>[] {Item.class}, handler);
+    }
+
+    private boolean contains(final EntityTypeInvocationHandler handler) {
+        requests.set(0);
+        return items.contains(proxy(handler));
+    }
+
+    @Test
+    public void containsAttached() {
+        final EntityTypeInvocationHandler existing = handler("a", "Items");
+        EntityContainerFactory.getContext().entityContext().attach(existing);
+        final EntityTypeInvocationHandler missing = handler("b", "Items");
+        EntityContainerFactory.getContext().entityContext().attach(missing, AttachedEntityStatus.CHANGED);
+
+        assertTrue(contains(existing));
+        assertEquals(1, requests.get());
+        assertFalse(contains(missing));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void containsUnattached() {
+        assertTrue(contains(handler("a", "Items")));
+        assertEquals(1, requests.get());
+        assertFalse(contains(handler("b", "Items")));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void containsNew() {
+        final EntityTypeInvocationHandler created = handler(null, "Items");
+        EntityContainerFactory.getContext().entityContext().attachNew(created);
+        final EntityTypeInvocationHandler elsewhere = handler(null, "Others");
+        EntityContainerFactory.getContext().entityContext().attachNew(elsewhere);
+
+        assertTrue(contains(created));
+        assertFalse(contains(elsewhere));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void containsDeleted() {
+        final EntityTypeInvocationHandler deleted = handler("a", "Items");
+        EntityContainerFactory.getContext().entityContext().attach(deleted, AttachedEntityStatus.DELETED);
+
+        assertFalse(contains(deleted));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void containsAll() {
+        final EntityTypeInvocationHandler created = handler(null, "Items");
+        EntityContainerFactory.getContext().entityContext().attachNew(created);
+
+        assertTrue(items.containsAll(Arrays.asList(proxy(created), proxy(handler("a", "Items")))));
+        assertFalse(items.containsAll(Arrays.asList(proxy(created), proxy(handler("b", "Items")))));
+        assertTrue(items.containsAll(Collections.emptyList()));
+        assertFalse(items.contains(new Object()));
+    }
+}
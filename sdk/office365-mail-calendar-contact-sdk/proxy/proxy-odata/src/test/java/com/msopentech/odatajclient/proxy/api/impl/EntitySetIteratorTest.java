@@ -0,0 +1,251 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.msopentech.odatajclient.proxy.api.AbstractEntityCollection;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>EntitySetIterator</tt> prefetches pages in background.
+ */
+public class EntitySetIteratorTest {
+
+    private interface Names extends AbstractEntityCollection<String> {
+    }
+
+    private ExecutorService executor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Pages of <tt>pageSize</tt> entities named after their page; fetching page <tt>blockAt</tt> waits for
+     * <tt>release</tt>, fetching page <tt>failAt</tt> throws <tt>failure</tt>.
+     */
+    private class Pages implements EntitySetIterator.PageSource<String> {
+
+        private final ExecutorService executor;
+
+        private final int count;
+
+        private final int pageSize;
+
+        private final List<Integer> fetched = new ArrayList<Integer>();
+
+        private int blockAt = -1;
+
+        private int failAt = -1;
+
+        private final RuntimeException failure = new IllegalStateException("Page not available");
+
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        Pages(final ExecutorService executor, final int count, final int pageSize) {
+            this.executor = executor;
+            this.count = count;
+            this.pageSize = pageSize;
+        }
+
+        URI uri(final int page) {
+            return URI.create("http://localhost/Names?page=" + page);
+        }
+
+        synchronized List<Integer> getFetched() {
+            return new ArrayList<Integer>(fetched);
+        }
+
+        @Override
+        public Map.Entry<List<String>, URI> fetch(final URI uri) {
+            final int page = Integer.parseInt(uri.getQuery().substring("page=".length()));
+            synchronized (this) {
+                fetched.add(page);
+            }
+
+            if (page == blockAt) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (page == failAt) {
+                throw failure;
+            }
+
+            final List<String> entities = new ArrayList<String>(pageSize);
+            for (int i = 0; i < pageSize; i++) {
+                entities.add(page + "." + i);
+            }
+            return new AbstractMap.SimpleEntry<List<String>, URI>(entities, page + 1 < count ? uri(page + 1) : null);
+        }
+
+        @Override
+        public ExecutorService getExecutorService() {
+            return executor;
+        }
+    }
+
+    private EntitySetIterator<String, String, Names> iterator(
+            final Pages pages, final int prefetchPages, final int maxBufferedEntities) {
+
+        return new EntitySetIterator<String, String, Names>(pages.uri(0), pages, prefetchPages, maxBufferedEntities);
+    }
+
+    private List<String> drain(final Iterator<String> iterator) {
+        final List<String> res = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            res.add(iterator.next());
+        }
+        return res;
+    }
+
+    @Test
+    public void iterateInOrder() {
+        executor = Executors.newSingleThreadExecutor();
+
+        final List<String> prefetched = drain(iterator(new Pages(executor, 4, 3), 2, 100));
+        final List<String> fetched = drain(iterator(new Pages(executor, 4, 3), 0, 0));
+
+        assertEquals(12, prefetched.size());
+        assertEquals("0.0", prefetched.get(0));
+        assertEquals("3.2", prefetched.get(11));
+        assertEquals(fetched, prefetched);
+    }
+
+    @Test
+    public void prefetchWithinBufferBound() {
+        // background fetches run as soon as they are submitted, so that prefetching stops only on its bounds
+        final Pages pages = new Pages(MoreExecutors.sameThreadExecutor(), 10, 2);
+        final EntitySetIterator<String, String, Names> iterator = iterator(pages, 5, 3);
+
+        assertTrue(iterator.hasNext());
+        // the page being iterated, plus prefetched pages until at least 3 entities are buffered
+        assertEquals(3, pages.getFetched().size());
+
+        iterator.next();
+        iterator.next();
+        assertTrue(iterator.hasNext());
+        assertEquals(4, pages.getFetched().size());
+
+        assertEquals(20 - 2, drain(iterator).size());
+        assertEquals(10, pages.getFetched().size());
+    }
+
+    @Test
+    public void prefetchWithinPageBound() {
+        final Pages pages = new Pages(MoreExecutors.sameThreadExecutor(), 10, 2);
+        final EntitySetIterator<String, String, Names> iterator = iterator(pages, 1, 100);
+
+        assertTrue(iterator.hasNext());
+        assertEquals(2, pages.getFetched().size());
+    }
+
+    @Test
+    public void propagateFailure() {
+        final Pages pages = new Pages(MoreExecutors.sameThreadExecutor(), 4, 2);
+        pages.failAt = 2;
+        final EntitySetIterator<String, String, Names> iterator = iterator(pages, 2, 100);
+
+        final List<String> read = new ArrayList<String>();
+        try {
+            while (iterator.hasNext()) {
+                read.add(iterator.next());
+            }
+            fail("Failure not propagated");
+        } catch (IllegalStateException e) {
+            assertSame(pages.failure, e);
+        }
+
+        // entities of the pages fetched before the failure are all handed out
+        assertEquals(4, read.size());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void closeCancelsFetch() throws InterruptedException {
+        executor = Executors.newSingleThreadExecutor();
+        final Pages pages = new Pages(executor, 4, 2);
+        pages.blockAt = 1;
+        final EntitySetIterator<String, String, Names> iterator = iterator(pages, 2, 100);
+
+        assertEquals("0.0", iterator.next());
+        assertTrue(pages.blocked.await(10, TimeUnit.SECONDS));
+
+        iterator.close();
+        assertTrue(pages.interrupted.await(10, TimeUnit.SECONDS));
+        assertFalse(iterator.hasNext());
+        assertEquals(2, pages.getFetched().size());
+    }
+
+    @Test
+    public void dropCancelsFetch() throws InterruptedException {
+        executor = Executors.newSingleThreadExecutor();
+        final Pages pages = new Pages(executor, 4, 2);
+        pages.blockAt = 1;
+        final WeakReference<?> dropped = startAndDrop(pages);
+        assertTrue(pages.blocked.await(10, TimeUnit.SECONDS));
+
+        // the fetch in progress only holds a weak reference to the iterator, which gets collected
+        for (int i = 0; i < 100 && pages.interrupted.getCount() > 0; i++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+        assertNull(dropped.get());
+        assertEquals(0, pages.interrupted.getCount());
+    }
+
+    private WeakReference<?> startAndDrop(final Pages pages) {
+        final EntitySetIterator<String, String, Names> iterator = iterator(pages, 2, 100);
+        assertEquals("0.0", iterator.next());
+        return new WeakReference<Object>(iterator);
+    }
+}
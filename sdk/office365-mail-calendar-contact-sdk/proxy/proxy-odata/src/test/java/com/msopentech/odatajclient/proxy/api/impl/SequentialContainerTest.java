@@ -0,0 +1,318 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.proxy.api.CachedMetadata;
+import com.msopentech.odatajclient.proxy.api.EntityContainerFactory;
+import com.msopentech.odatajclient.proxy.api.MetadataCache;
+import com.msopentech.odatajclient.proxy.api.annotations.EntityContainer;
+import com.msopentech.odatajclient.proxy.api.annotations.EntityType;
+import com.msopentech.odatajclient.proxy.api.annotations.Namespace;
+import com.msopentech.odatajclient.proxy.api.annotations.NavigationProperty;
+import com.msopentech.odatajclient.proxy.api.context.EntityLinkDesc;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>SequentialContainer</tt> plans changes, and shares the operations of a level among workers.
+ */
+public class SequentialContainerTest {
+
+    @Namespace("Graph")
+    @EntityContainer(name = "Graph", isDefaultEntityContainer = true)
+    private interface Graph {
+    }
+
+    @Namespace("Graph")
+    @EntityType(name = "Node")
+    private interface Node {
+
+        @NavigationProperty(name = "Parent", type = "Graph.Node",
+                targetSchema = "Graph", targetContainer = "Graph", targetEntitySet = "Nodes")
+        Node getParent();
+
+        @NavigationProperty(name = "Children", type = "Graph.Node",
+                targetSchema = "Graph", targetContainer = "Graph", targetEntitySet = "Nodes")
+        Collection<Node> getChildren();
+    }
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    @After
+    public void tearDown() {
+        EntityContainerFactory.getContext().detachAll();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private SequentialContainer container(final String name, final ExecutorService executor, final int parallelism) {
+        this.executor = executor;
+
+        final ODataClient client = ODataClientFactory.getV3();
+        client.getConfiguration().setExecutor(executor);
+
+        final EntityContainerFactory factory =
+                EntityContainerFactory.getInstance(client, "http://localhost/" + name + System.nanoTime());
+        factory.setFlushParallelism(parallelism);
+        return new SequentialContainer(client, factory);
+    }
+
+    private SequentialContainer planner(final String name) {
+        final SequentialContainer container = container(name, Executors.newSingleThreadExecutor(), 1);
+
+        // entities without key properties are never checked against metadata: any model would do
+        final ODataClient client = container.client;
+        container.factory.setMetadataCache(new MetadataCache() {
+
+            @Override
+            public CachedMetadata get(final String serviceRoot) {
+                return new CachedMetadata(
+                        client.getReader().readMetadata(getClass().getResourceAsStream("/northwind.xml")), null, null);
+            }
+
+            @Override
+            public void put(final String serviceRoot, final CachedMetadata metadata) {
+            }
+        });
+        return container;
+    }
+
+    private EntityTypeInvocationHandler newNode(final SequentialContainer container) {
+        final EntityTypeInvocationHandler handler = EntityTypeInvocationHandler.getInstance(
+                ODataObjectFactory.newEntity("Graph.Node"), "Graph", "Nodes", Node.class,
+                EntityContainerInvocationHandler.getInstance(container.client, Graph.class, container.factory));
+        EntityContainerFactory.getContext().entityContext().attachNew(handler);
+        return handler;
+    }
+
+    private static Object proxy(final EntityTypeInvocationHandler handler) {
+        return Proxy.newProxyInstance(Node.class.getClassLoader(), new Class<?>[] {Node.class}, handler);
+    }
+
+    private static void link(final EntityTypeInvocationHandler source, final String property, final Object value)
+            throws NoSuchMethodException {
+
+        source.getLinkChanges().put(
+                Node.class.getMethod(property).getAnnotation(NavigationProperty.class), value);
+    }
+
+    private static Set<EntityTypeInvocationHandler> handlers(final List<SequentialContainer.Operation> level) {
+        final Set<EntityTypeInvocationHandler> handlers = new HashSet<EntityTypeInvocationHandler>();
+        for (SequentialContainer.Operation operation : level) {
+            handlers.add(operation.handler);
+        }
+        return handlers;
+    }
+
+    /**
+     * An entity is created after the entities it links to, entities not linked to each other are created together.
+     */
+    @Test
+    public void planLevels() throws NoSuchMethodException {
+        final SequentialContainer container = planner("levels");
+        final EntityTypeInvocationHandler root = newNode(container);
+        final EntityTypeInvocationHandler child = newNode(container);
+        final EntityTypeInvocationHandler grandChild = newNode(container);
+        final EntityTypeInvocationHandler other = newNode(container);
+        link(grandChild, "getParent", proxy(child));
+        link(child, "getParent", proxy(root));
+
+        final List<List<SequentialContainer.Operation>> levels = container.plan();
+
+        assertEquals(3, levels.size());
+        assertEquals(new HashSet<EntityTypeInvocationHandler>(Arrays.asList(root, other)),
+                handlers(levels.get(0)));
+        assertEquals(Collections.singleton(child), handlers(levels.get(1)));
+        assertEquals(Collections.singleton(grandChild), handlers(levels.get(2)));
+        for (List<SequentialContainer.Operation> level : levels) {
+            for (SequentialContainer.Operation operation : level) {
+                assertTrue(operation instanceof SequentialContainer.EntityOperation);
+            }
+        }
+    }
+
+    /**
+     * Entities linking to each other: one of the links is sent by a further update, once both entities exist; all
+     * links of the same source are sent by a single update.
+     */
+    @Test
+    public void planCycle() throws NoSuchMethodException {
+        final SequentialContainer container = planner("cycle");
+        final EntityTypeInvocationHandler first = newNode(container);
+        final EntityTypeInvocationHandler second = newNode(container);
+        link(first, "getParent", proxy(second));
+        link(first, "getChildren", Collections.singletonList(proxy(second)));
+        link(second, "getParent", proxy(first));
+        link(second, "getChildren", Collections.singletonList(proxy(first)));
+
+        final List<List<SequentialContainer.Operation>> levels = container.plan();
+
+        assertEquals(3, levels.size());
+        assertEquals(1, levels.get(0).size());
+        assertEquals(1, levels.get(1).size());
+        assertEquals(1, levels.get(2).size());
+
+        final SequentialContainer.Operation created = levels.get(0).get(0);
+        final SequentialContainer.Operation linking = levels.get(1).get(0);
+        assertTrue(created instanceof SequentialContainer.EntityOperation);
+        assertTrue(linking instanceof SequentialContainer.EntityOperation);
+        assertEquals(new HashSet<EntityTypeInvocationHandler>(Arrays.asList(first, second)),
+                handlers(Arrays.asList(created, linking)));
+
+        // the entity created first is linked to the other one afterwards, via both navigation properties at once
+        assertTrue(levels.get(2).get(0) instanceof SequentialContainer.DelayedUpdateOperation);
+        final SequentialContainer.DelayedUpdateOperation delayed =
+                (SequentialContainer.DelayedUpdateOperation) levels.get(2).get(0);
+        assertSame(created.handler, delayed.handler);
+
+        final Set<String> properties = new HashSet<String>();
+        for (EntityLinkDesc link : delayed.getDelayedUpdates()) {
+            assertSame(created.handler, link.getSource());
+            assertEquals(Collections.singletonList(linking.handler), new ArrayList<Object>(link.getTargets()));
+            properties.add(link.getSourceName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("Parent", "Children")), properties);
+    }
+
+    /**
+     * Operation taking the given time, failing at the end if requested.
+     */
+    private class TimedOperation extends SequentialContainer.Operation {
+
+        private final long millis;
+
+        private final boolean fail;
+
+        public TimedOperation(final long millis, final boolean fail) {
+            super(null, Collections.<SequentialContainer.Operation>emptyList());
+            this.millis = millis;
+            this.fail = fail;
+        }
+
+        @Override
+        protected void execute() {
+            final int current = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), current));
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+
+            if (fail) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+        }
+    }
+
+    private List<TimedOperation> operations(final int count, final long millis) {
+        final List<TimedOperation> operations = new ArrayList<TimedOperation>();
+        for (int i = 0; i < count; i++) {
+            operations.add(new TimedOperation(millis, false));
+        }
+        return operations;
+    }
+
+    @Test
+    public void executesAll() {
+        final SequentialContainer container = container("all", Executors.newFixedThreadPool(4), 3);
+        final List<TimedOperation> level = operations(10, 20);
+
+        assertNull(container.execute(level));
+        for (TimedOperation operation : level) {
+            assertTrue(operation.done);
+        }
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(0, running.get());
+    }
+
+    /**
+     * A failure must not be reported while other workers are still sending: the next level, or the caller, would
+     * otherwise run concurrently with them.
+     */
+    @Test
+    public void waitsForRunningWorkers() {
+        final SequentialContainer container = container("wait", Executors.newFixedThreadPool(4), 4);
+
+        final List<TimedOperation> level = new ArrayList<TimedOperation>();
+        level.add(new TimedOperation(10, true));
+        level.addAll(operations(3, 300));
+
+        final RuntimeException failure = container.execute(level);
+        assertNotNull(failure);
+        assertEquals("Failed on purpose", failure.getMessage());
+        assertEquals(0, running.get());
+    }
+
+    /**
+     * Flushing from the only thread of the executor must not wait for workers which cannot start.
+     */
+    @Test
+    public void flushFromExecutorThread() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        final SequentialContainer container = container("single", single, 4);
+        final List<TimedOperation> level = operations(5, 10);
+
+        final Future<RuntimeException> result = single.submit(new Callable<RuntimeException>() {
+
+            @Override
+            public RuntimeException call() throws Exception {
+                return container.execute(level);
+            }
+        });
+
+        assertNull(result.get(10, TimeUnit.SECONDS));
+        for (TimedOperation operation : level) {
+            assertTrue(operation.done);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright © Microsoft Open Technologies, Inc.
+ *
+ * All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * THIS CODE IS PROVIDED *AS IS* BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING WITHOUT LIMITATION
+ * ANY IMPLIED WARRANTIES OR CONDITIONS OF TITLE, FITNESS FOR A
+ * PARTICULAR PURPOSE, MERCHANTABILITY OR NON-INFRINGEMENT.
+ *
+ * See the Apache License, Version 2.0 for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.msopentech.odatajclient.proxy.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.msopentech.odatajclient.engine.client.ODataClient;
+import com.msopentech.odatajclient.engine.client.ODataClientFactory;
+import com.msopentech.odatajclient.engine.data.ODataCollectionValue;
+import com.msopentech.odatajclient.engine.data.ODataComplexValue;
+import com.msopentech.odatajclient.engine.data.ODataObjectFactory;
+import com.msopentech.odatajclient.engine.data.ODataPrimitiveValue;
+import com.msopentech.odatajclient.engine.data.ODataProperty;
+import com.msopentech.odatajclient.engine.data.metadata.edm.EdmSimpleType;
+import org.junit.Test;
+
+/**
+ * Checks how <tt>EngineUtils.diff</tt> tells changed properties from the ones read.
+ */
+public class EngineUtilsTest {
+
+    private final ODataClient client = ODataClientFactory.getV3();
+
+    private ODataPrimitiveValue string(final String value) {
+        return client.getPrimitiveValueBuilder().setType(EdmSimpleType.String).setText(value).build();
+    }
+
+    private ODataProperty primitive(final String name, final String value) {
+        return ODataObjectFactory.newPrimitiveProperty(name, string(value));
+    }
+
+    private ODataProperty address(final String street, final String city) {
+        final ODataComplexValue value = new ODataComplexValue("Model.Address");
+        value.add(primitive("Street", street));
+        value.add(primitive("City", city));
+        return ODataObjectFactory.newComplexProperty("Address", value);
+    }
+
+    private ODataProperty tags(final String... values) {
+        final ODataCollectionValue value = new ODataCollectionValue("Collection(Edm.String)");
+        for (String item : values) {
+            value.add(string(item));
+        }
+        return ODataObjectFactory.newCollectionProperty("Tags", value);
+    }
+
+    @Test
+    public void notRead() {
+        final ODataProperty current = primitive("Name", "value");
+        assertSame(current, EngineUtils.diff(null, current, false));
+    }
+
+    @Test
+    public void primitive() {
+        assertNull(EngineUtils.diff(primitive("Name", "value"), primitive("Name", "value"), false));
+
+        final ODataProperty current = primitive("Name", "other");
+        assertSame(current, EngineUtils.diff(primitive("Name", "value"), current, false));
+    }
+
+    @Test
+    public void nullValues() {
+        final ODataProperty empty = ODataObjectFactory.newPrimitiveProperty("Name", null);
+        assertNull(EngineUtils.diff(empty, ODataObjectFactory.newPrimitiveProperty("Name", null), false));
+
+        final ODataProperty current = primitive("Name", "value");
+        assertSame(current, EngineUtils.diff(empty, current, false));
+        assertSame(empty, EngineUtils.diff(current, empty, false));
+    }
+
+    @Test
+    public void complex() {
+        assertNull(EngineUtils.diff(address("Main St", "Rome"), address("Main St", "Rome"), true));
+
+        // whole value, when partial values are not supported
+        final ODataProperty current = address("Main St", "Milan");
+        assertSame(current, EngineUtils.diff(address("Main St", "Rome"), current, false));
+
+        // changed fields only, otherwise
+        final ODataProperty partial = EngineUtils.diff(address("Main St", "Rome"), current, true);
+        assertEquals("Address", partial.getName());
+        assertEquals(1, partial.getComplexValue().size());
+        assertEquals("Milan", partial.getComplexValue().get("City").getPrimitiveValue().toString());
+        assertNull(partial.getComplexValue().get("Street"));
+    }
+
+    @Test
+    public void complexFieldRemoved() {
+        final ODataComplexValue value = new ODataComplexValue("Model.Address");
+        value.add(primitive("Street", "Main St"));
+        final ODataProperty current = ODataObjectFactory.newComplexProperty("Address", value);
+
+        // a field reset by omission cannot be expressed as a partial value
+        assertSame(current, EngineUtils.diff(address("Main St", "Rome"), current, true));
+    }
+
+    @Test
+    public void collection() {
+        assertNull(EngineUtils.diff(tags("a", "b"), tags("a", "b"), false));
+
+        final ODataProperty reordered = tags("b", "a");
+        assertSame(reordered, EngineUtils.diff(tags("a", "b"), reordered, false));
+
+        final ODataProperty added = tags("a", "b", "c");
+        assertSame(added, EngineUtils.diff(tags("a", "b"), added, true));
+    }
+}
@@ -43,6 +43,10 @@ public class ApplicationContext {
         return mTestPlatformContext.getTestListName();
     }
 
+    public static String getSiteRelativeUrl() {
+        return mTestPlatformContext.getSiteRelativeUrl();
+    }
+
 	public static FileClient getFileClient() {
 		return mTestPlatformContext.getFileClient();
 	}
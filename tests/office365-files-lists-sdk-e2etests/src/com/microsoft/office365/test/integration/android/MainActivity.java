@@ -46,6 +46,7 @@ import com.microsoft.office365.test.integration.framework.TestExecutionCallback;
 import com.microsoft.office365.test.integration.framework.TestGroup;
 import com.microsoft.office365.test.integration.framework.TestResult;
 import com.microsoft.office365.test.integration.tests.FilesTests;
+import com.microsoft.office365.test.integration.tests.HttpTests;
 import com.microsoft.office365.test.integration.tests.ListsTests;
 
 @SuppressWarnings("deprecation")
@@ -112,6 +113,7 @@ public class MainActivity extends Activity {
 		adapter.clear();
 		adapter.add(new ListsTests());
 		adapter.add(new FilesTests());
+		adapter.add(new HttpTests());
 		mTestGroupSpinner.setSelection(0);
 		selectTestGroup(0);
 	}
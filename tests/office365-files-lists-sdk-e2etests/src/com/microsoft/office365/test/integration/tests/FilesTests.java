@@ -1,11 +1,29 @@
 package com.microsoft.office365.test.integration.tests;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import com.microsoft.office365.Constants;
+import com.microsoft.office365.Credentials;
 import com.microsoft.office365.files.FileClient;
 import com.microsoft.office365.files.FileSystemItem;
+import com.microsoft.office365.http.Request;
 import com.microsoft.office365.test.integration.ApplicationContext;
 import com.microsoft.office365.test.integration.framework.TestCase;
 import com.microsoft.office365.test.integration.framework.TestGroup;
@@ -13,6 +31,17 @@ import com.microsoft.office365.test.integration.framework.TestResult;
 import com.microsoft.office365.test.integration.framework.TestStatus;
 
 public class FilesTests extends TestGroup {
+
+	/** Size of the chunks larger files are uploaded in by the FileClient. */
+	private static final int UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/** Size of the file served locally by the download tests. */
+	private static final int DOWNLOAD_SIZE = 3 * 1024 * 1024;
+
+	private static final String DOWNLOAD_PATH = "download.bin";
+
+	private static final long DOWNLOAD_TIMEOUT_SECONDS = 30;
+
 	public FilesTests() {
 		super("Sharepoint Files tests");
 
@@ -34,6 +63,561 @@ public class FilesTests extends TestGroup {
 		this.addTest(canGetChildrenFolderFromPath("Can get children from path"));
 		this.addTest(canMoveFile("Can move file"));
 		this.addTest(canCopyFile("Can copy file"));
+		this.addTest(canUploadFileFromStream("Can upload file from stream"));
+		this.addTest(canUploadFileInChunks("Can upload file in chunks"));
+		this.addTest(canOverwriteFileInChunks("Can overwrite file in chunks"));
+		this.addTest(failedChunkedUploadKeepsFile("Failed chunked upload keeps existing file"));
+		this.addTest(canResumeDownload("Can resume interrupted download"));
+		this.addTest(canRestartDownloadOfChangedFile("Can restart download of changed file"));
+		this.addTest(canDownloadWithoutRanges("Can download without ranges support"));
+	}
+
+	private TestCase canResumeDownload(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				DownloadServer server = null;
+				File target = null;
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					byte[] content = createContent(DOWNLOAD_SIZE, 0);
+					server = new DownloadServer(content, "\"1\"");
+					target = createDownloadTarget();
+
+					server.setInterruptAfter(100000);
+					downloadInterrupted(server, target);
+
+					server.setInterruptAfter(-1);
+					server.clearRangeStarts();
+					download(server, target, 1);
+
+					if (server.getRangeStarts().get(0) == 0) {
+						throw new Exception("Expected the download to be resumed");
+					}
+					checkDownload(content, target);
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					cleanUp(server, target);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private TestCase canRestartDownloadOfChangedFile(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				DownloadServer server = null;
+				File target = null;
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					server = new DownloadServer(createContent(DOWNLOAD_SIZE, 0), "\"1\"");
+					target = createDownloadTarget();
+
+					server.setInterruptAfter(100000);
+					downloadInterrupted(server, target);
+
+					// same size, other content
+					byte[] content = createContent(DOWNLOAD_SIZE, 1);
+					server.setContent(content, "\"2\"");
+					server.setInterruptAfter(-1);
+					server.clearRangeStarts();
+					download(server, target, 1);
+
+					if (server.getRangeStarts().get(0) != 0) {
+						throw new Exception("Expected the download to restart");
+					}
+					checkDownload(content, target);
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					cleanUp(server, target);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private TestCase canDownloadWithoutRanges(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				DownloadServer server = null;
+				File target = null;
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					byte[] content = createContent(DOWNLOAD_SIZE, 0);
+					server = new DownloadServer(content, "\"1\"");
+					server.setRanges(false);
+					target = createDownloadTarget();
+
+					// several segments are requested at first
+					download(server, target, 4);
+
+					checkDownload(content, target);
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					cleanUp(server, target);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private static byte[] createContent(int length, int seed) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) ((i + seed) % 251);
+		}
+		return content;
+	}
+
+	private static File createDownloadTarget() throws IOException {
+		File target = File.createTempFile("download", ".bin");
+		target.delete();
+		return target;
+	}
+
+	private static void download(DownloadServer server, File target,
+			int segments) throws Exception {
+		server.createClient()
+				.downloadFile(DOWNLOAD_PATH, null, target, segments, null)
+				.get(DOWNLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	private static void downloadInterrupted(DownloadServer server, File target)
+			throws Exception {
+		try {
+			download(server, target, 1);
+			throw new Exception("Expected the download to be interrupted");
+		} catch (ExecutionException e) {
+			// expected
+		}
+
+		if (!new File(target.getPath() + ".download").exists()) {
+			throw new Exception("Expected the download state to be saved");
+		}
+	}
+
+	private static void checkDownload(byte[] expected, File target)
+			throws Exception {
+		if (new File(target.getPath() + ".download").exists()) {
+			throw new Exception("Expected the download state to be deleted");
+		}
+
+		byte[] content = new byte[(int) target.length()];
+		InputStream in = new FileInputStream(target);
+		try {
+			int offset = 0;
+			while (offset < content.length) {
+				int nRead = in.read(content, offset, content.length - offset);
+				if (nRead == -1) {
+					break;
+				}
+				offset += nRead;
+			}
+		} finally {
+			in.close();
+		}
+
+		if (!Arrays.equals(expected, content)) {
+			throw new Exception("Unexpected downloaded content");
+		}
+	}
+
+	private static void cleanUp(DownloadServer server, File target) {
+		if (server != null) {
+			server.close();
+		}
+		if (target != null) {
+			target.delete();
+			new File(target.getPath() + ".part").delete();
+			new File(target.getPath() + ".download").delete();
+		}
+	}
+
+	/**
+	 * Minimal HTTP server holding a single file: its metadata is returned for
+	 * any path, and its content for "$value" paths. Ranged requests are
+	 * answered as long as ranges are enabled and the If-Range ETag matches
+	 */
+	private static class DownloadServer {
+
+		private final ServerSocket mSocket;
+		private final List<Long> mRangeStarts = Collections
+				.synchronizedList(new ArrayList<Long>());
+		private volatile byte[] mContent;
+		private volatile String mETag;
+		private volatile boolean mRanges = true;
+		private volatile int mInterruptAfter = -1;
+
+		DownloadServer(byte[] content, String etag) throws IOException {
+			mContent = content;
+			mETag = etag;
+			mSocket = new ServerSocket(0, 50,
+					InetAddress.getByName("127.0.0.1"));
+
+			Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							final Socket socket = mSocket.accept();
+							Thread handler = new Thread(new Runnable() {
+								@Override
+								public void run() {
+									handle(socket);
+								}
+							});
+							handler.setDaemon(true);
+							handler.start();
+						}
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			});
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		FileClient createClient() {
+			return new FileClient("http://127.0.0.1:" + mSocket.getLocalPort(),
+					"", new Credentials() {
+						@Override
+						public void prepareRequest(Request request) {
+						}
+					});
+		}
+
+		void setContent(byte[] content, String etag) {
+			mContent = content;
+			mETag = etag;
+		}
+
+		void setRanges(boolean ranges) {
+			mRanges = ranges;
+		}
+
+		/**
+		 * Closes the connections after sending the given number of content
+		 * bytes, or never if -1
+		 */
+		void setInterruptAfter(int interruptAfter) {
+			mInterruptAfter = interruptAfter;
+		}
+
+		/**
+		 * Returns the first byte requested by each content request, 0 if no
+		 * range was requested
+		 */
+		List<Long> getRangeStarts() {
+			return new ArrayList<Long>(mRangeStarts);
+		}
+
+		void clearRangeStarts() {
+			mRangeStarts.clear();
+		}
+
+		void close() {
+			try {
+				mSocket.close();
+			} catch (IOException e) {
+			}
+		}
+
+		private void handle(Socket socket) {
+			try {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				String path = reader.readLine().split(" ")[1];
+				String range = null;
+				String ifRange = null;
+				String line;
+				while ((line = reader.readLine()) != null && line.length() > 0) {
+					int colon = line.indexOf(':');
+					String header = line.substring(0, colon).trim();
+					String value = line.substring(colon + 1).trim();
+					if (header.equalsIgnoreCase("Range")) {
+						range = value;
+					} else if (header.equalsIgnoreCase("If-Range")) {
+						ifRange = value;
+					}
+				}
+
+				byte[] content = mContent;
+				String etag = mETag;
+				OutputStream out = socket.getOutputStream();
+
+				if (!path.contains("$value")) {
+					byte[] body = ("{\"ETag\":\"" + etag.replace("\"", "\\\"")
+							+ "\",\"Size\":" + content.length + "}")
+							.getBytes("UTF-8");
+					out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+							+ body.length + "\r\nConnection: close\r\n\r\n")
+							.getBytes("UTF-8"));
+					out.write(body);
+					out.flush();
+					return;
+				}
+
+				int start = 0;
+				int end = content.length - 1;
+				if (range != null) {
+					String[] bounds = range.substring("bytes=".length())
+							.split("-");
+					start = Integer.parseInt(bounds[0]);
+					end = Math.min(end, Integer.parseInt(bounds[1]));
+				}
+				mRangeStarts.add((long) start);
+
+				String headers;
+				if (range != null && mRanges
+						&& (ifRange == null || ifRange.equals(etag))) {
+					headers = "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes "
+							+ start + "-" + end + "/" + content.length + "\r\n";
+				} else {
+					headers = "HTTP/1.1 200 OK\r\n";
+					start = 0;
+					end = content.length - 1;
+				}
+
+				int length = end - start + 1;
+				out.write((headers + "ETag: " + etag
+						+ "\r\nContent-Type: application/octet-stream\r\nContent-Length: "
+						+ length + "\r\nConnection: close\r\n\r\n")
+						.getBytes("UTF-8"));
+
+				int interruptAfter = mInterruptAfter;
+				out.write(content, start, interruptAfter < 0 ? length : Math
+						.min(length, interruptAfter));
+				out.flush();
+			} catch (Exception e) {
+				// the client went away
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private TestCase canUploadFileFromStream(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					FileClient client = ApplicationContext.getFileClient();
+					String fileName = UUID.randomUUID().toString() + ".txt";
+					byte[] content = "some streamed content"
+							.getBytes(Constants.UTF8_NAME);
+					client.createFile(fileName, null, true,
+							new ByteArrayInputStream(content), content.length,
+							null).get();
+
+					if (!Arrays.equals(content, client.getFile(fileName).get())) {
+						throw new Exception("Unexpected file content");
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private TestCase canUploadFileInChunks(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					FileClient client = ApplicationContext.getFileClient();
+					String fileName = UUID.randomUUID().toString() + ".bin";
+					int length = 2 * UPLOAD_CHUNK_SIZE + 1000;
+					client.createFile(fileName, null, false,
+							new PatternInputStream(length, -1), length, null)
+							.get();
+
+					checkPattern(client.getFile(fileName).get(), length);
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private TestCase canOverwriteFileInChunks(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					FileClient client = ApplicationContext.getFileClient();
+					String fileName = UUID.randomUUID().toString() + ".bin";
+					client.createFile(fileName, true,
+							"old content".getBytes(Constants.UTF8_NAME)).get();
+
+					int length = UPLOAD_CHUNK_SIZE + 1000;
+					client.createFile(fileName, null, true,
+							new PatternInputStream(length, -1), length, null)
+							.get();
+
+					checkPattern(client.getFile(fileName).get(), length);
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private TestCase failedChunkedUploadKeepsFile(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					FileClient client = ApplicationContext.getFileClient();
+					String fileName = UUID.randomUUID().toString() + ".bin";
+					byte[] content = "old content"
+							.getBytes(Constants.UTF8_NAME);
+					client.createFile(fileName, true, content).get();
+
+					// fails while reading the second chunk
+					int length = 2 * UPLOAD_CHUNK_SIZE + 1000;
+					try {
+						client.createFile(fileName, null, true,
+								new PatternInputStream(length,
+										UPLOAD_CHUNK_SIZE + 1000), length,
+								null).get();
+						throw new Exception("Expected the upload to fail");
+					} catch (ExecutionException e) {
+						// expected
+					}
+
+					if (!Arrays.equals(content, client.getFile(fileName).get())) {
+						throw new Exception("Expected the existing file to be kept");
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+		test.setName(name);
+		return test;
+	}
+
+	private static void checkPattern(byte[] content, int length)
+			throws Exception {
+		if (content == null || content.length != length) {
+			throw new Exception("Unexpected file length");
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (content[i] != (byte) (i % 251)) {
+				throw new Exception("Unexpected file content at " + i);
+			}
+		}
+	}
+
+	/**
+	 * Stream of a given length repeating a byte pattern, failing once a given
+	 * offset is reached
+	 */
+	private static class PatternInputStream extends InputStream {
+
+		private final int mLength;
+		private final int mFailAt;
+		private int mOffset;
+
+		public PatternInputStream(int length, int failAt) {
+			mLength = length;
+			mFailAt = failAt;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count)
+				throws IOException {
+			if (mOffset == mFailAt) {
+				throw new IOException("Upload content failure");
+			}
+
+			int end = mLength;
+			if (mFailAt > mOffset) {
+				end = Math.min(end, mFailAt);
+			}
+			if (mOffset >= end) {
+				return -1;
+			}
+
+			int n = Math.min(count, end - mOffset);
+			for (int i = 0; i < n; i++) {
+				buffer[offset + i] = (byte) ((mOffset + i) % 251);
+			}
+			mOffset += n;
+			return n;
+		}
 	}
 	
 	private TestCase canCopyFile(String name) {
@@ -0,0 +1,394 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.office365.test.integration.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.office365.Credentials;
+import com.microsoft.office365.OfficeClient;
+import com.microsoft.office365.Platform;
+import com.microsoft.office365.http.ExecutorHttpConnection;
+import com.microsoft.office365.http.InvalidHttpStatusCodeException;
+import com.microsoft.office365.http.Request;
+import com.microsoft.office365.http.Response;
+import com.microsoft.office365.test.integration.framework.ExpectedValueException;
+import com.microsoft.office365.test.integration.framework.TestCase;
+import com.microsoft.office365.test.integration.framework.TestGroup;
+import com.microsoft.office365.test.integration.framework.TestResult;
+import com.microsoft.office365.test.integration.framework.TestStatus;
+
+/**
+ * Checks how requests share the HTTP connection slots, against a local server
+ */
+public class HttpTests extends TestGroup {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	public HttpTests() {
+		super("HTTP connection tests");
+
+		this.addTest(createExecutorSaturationTest("Executor saturation"));
+		this.addTest(createStreamCloseTest("Streamed response release on close"));
+		this.addTest(createStreamErrorTest("Streamed response release on error"));
+	}
+
+	/**
+	 * Minimal HTTP server: "/hold" answers once released, "/error" answers
+	 * with status 500, "/drop" closes the connection without answering; any
+	 * other path answers with status 200
+	 */
+	private static class LocalServer {
+
+		private final ServerSocket mSocket;
+		private final CountDownLatch mHold = new CountDownLatch(1);
+		private final AtomicInteger mRequests = new AtomicInteger();
+		private final AtomicInteger mActive = new AtomicInteger();
+		private final AtomicInteger mMaxActive = new AtomicInteger();
+
+		LocalServer() throws IOException {
+			mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+			Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							final Socket socket = mSocket.accept();
+							Thread handler = new Thread(new Runnable() {
+								@Override
+								public void run() {
+									handle(socket);
+								}
+							});
+							handler.setDaemon(true);
+							handler.start();
+						}
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			});
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		String getUrl(String path) {
+			return "http://127.0.0.1:" + mSocket.getLocalPort() + path;
+		}
+
+		int getRequests() {
+			return mRequests.get();
+		}
+
+		int getMaxActive() {
+			return mMaxActive.get();
+		}
+
+		void release() {
+			mHold.countDown();
+		}
+
+		void close() {
+			release();
+			try {
+				mSocket.close();
+			} catch (IOException e) {
+			}
+		}
+
+		/**
+		 * Waits until the server has received the given number of requests
+		 */
+		void awaitRequests(int count) throws Exception {
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+			while (mRequests.get() < count) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new ExpectedValueException(count, mRequests.get());
+				}
+				Thread.sleep(10);
+			}
+		}
+
+		private void handle(Socket socket) {
+			int active = mActive.incrementAndGet();
+			synchronized (mMaxActive) {
+				mMaxActive.set(Math.max(mMaxActive.get(), active));
+			}
+
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				String path = reader.readLine().split(" ")[1];
+				String line;
+				while ((line = reader.readLine()) != null && line.length() > 0) {
+					// headers are not needed
+				}
+				mRequests.incrementAndGet();
+
+				if (path.equals("/drop")) {
+					return;
+				}
+				if (path.equals("/hold")) {
+					mHold.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				}
+
+				String status = path.equals("/error") ? "500 Internal Server Error" : "200 OK";
+				byte[] body = path.getBytes("UTF-8");
+				OutputStream out = socket.getOutputStream();
+				out.write(("HTTP/1.1 " + status + "\r\nContent-Type: text/plain\r\nContent-Length: " + body.length
+						+ "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+				out.write(body);
+				out.flush();
+			} catch (Exception e) {
+				// the client went away
+			} finally {
+				mActive.decrementAndGet();
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Client streaming its responses via the shared platform connection. Its
+	 * requests carry no credentials
+	 */
+	private static class StreamClient extends OfficeClient {
+
+		StreamClient() {
+			super(new Credentials() {
+				@Override
+				public void prepareRequest(Request request) {
+				}
+			});
+		}
+
+		public ListenableFuture<Response> stream(String url) {
+			return executeRequestStream(url, "GET");
+		}
+	}
+
+	private static Request get(String url, boolean streaming) {
+		Request request = new Request("GET");
+		request.setUrl(url);
+		request.setStreamingResponse(streaming);
+		return request;
+	}
+
+	/**
+	 * Checks that the future does not complete within a short time, i.e. its
+	 * request waits for a connection slot
+	 */
+	private static void assertWaiting(Future<?> future, String message) throws Exception {
+		try {
+			future.get(500, TimeUnit.MILLISECONDS);
+			throw new Exception(message);
+		} catch (TimeoutException e) {
+			// expected
+		}
+	}
+
+	private static int readStatus(Future<Response> future) throws Exception {
+		Response response = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		try {
+			return response.getStatus();
+		} finally {
+			response.close();
+		}
+	}
+
+	private TestCase createExecutorSaturationTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				LocalServer server = null;
+				ExecutorHttpConnection connection = new ExecutorHttpConnection(2, 1, 1);
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					server = new LocalServer();
+
+					// one request running, one waiting for the host slot
+					Future<Response> running = connection.execute(get(server.getUrl("/hold"), false));
+					server.awaitRequests(1);
+					Future<Response> queued = connection.execute(get(server.getUrl("/hold"), false));
+
+					// no more room in the host queue
+					Future<Response> rejected = connection.execute(get(server.getUrl("/hold"), false));
+					try {
+						rejected.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+						throw new Exception("Request over the queue limit was accepted");
+					} catch (ExecutionException e) {
+						if (!(e.getCause() instanceof RejectedExecutionException)) {
+							throw e;
+						}
+					}
+
+					assertWaiting(queued, "Request over the host limit was not queued");
+					if (server.getRequests() != 1) {
+						throw new ExpectedValueException(1, server.getRequests());
+					}
+
+					server.release();
+					if (readStatus(running) != 200 || readStatus(queued) != 200) {
+						throw new Exception("Unexpected response status");
+					}
+					if (server.getMaxActive() != 1) {
+						throw new ExpectedValueException(1, server.getMaxActive());
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					if (server != null) {
+						server.close();
+					}
+					connection.shutdown();
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
+	}
+
+	private TestCase createStreamCloseTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				LocalServer server = null;
+				ExecutorHttpConnection connection = new ExecutorHttpConnection(4, 10, 1);
+				Platform.setHttpConnection(connection);
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					server = new LocalServer();
+					StreamClient client = new StreamClient();
+
+					// the streamed response keeps the only host slot until closed
+					Response streamed = client.stream(server.getUrl("/streamed")).get(TIMEOUT_SECONDS,
+							TimeUnit.SECONDS);
+					Future<Response> next = client.stream(server.getUrl("/next"));
+					assertWaiting(next, "Request sent while the streamed response was open");
+
+					streamed.close();
+					if (readStatus(next) != 200) {
+						throw new Exception("Unexpected response status");
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					if (server != null) {
+						server.close();
+					}
+					Platform.setHttpConnection(null);
+					connection.shutdown();
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
+	}
+
+	private TestCase createStreamErrorTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				LocalServer server = null;
+				ExecutorHttpConnection connection = new ExecutorHttpConnection(4, 10, 1);
+				Platform.setHttpConnection(connection);
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					server = new LocalServer();
+					StreamClient client = new StreamClient();
+
+					// error responses are closed by the client, releasing the host slot
+					try {
+						client.stream(server.getUrl("/error")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+						throw new Exception("Error status not reported");
+					} catch (ExecutionException e) {
+						if (!(e.getCause() instanceof InvalidHttpStatusCodeException)) {
+							throw e;
+						}
+					}
+					if (readStatus(client.stream(server.getUrl("/afterError"))) != 200) {
+						throw new Exception("Unexpected response status");
+					}
+
+					// as are failed connections
+					try {
+						client.stream(server.getUrl("/drop")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+						throw new Exception("Dropped connection not reported");
+					} catch (ExecutionException e) {
+						// expected
+					}
+					if (readStatus(client.stream(server.getUrl("/afterDrop"))) != 200) {
+						throw new Exception("Unexpected response status");
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				} finally {
+					if (server != null) {
+						server.close();
+					}
+					Platform.setHttpConnection(null);
+					connection.shutdown();
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
+	}
+}
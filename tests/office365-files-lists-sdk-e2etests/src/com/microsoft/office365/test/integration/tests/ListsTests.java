@@ -21,9 +21,24 @@ package com.microsoft.office365.test.integration.tests;
 
 import static com.microsoft.office365.QueryOperations.*;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.office365.Credentials;
+import com.microsoft.office365.EntityCallback;
+import com.microsoft.office365.OfficeEntity;
+import com.microsoft.office365.SharepointClient;
+import com.microsoft.office365.http.InvalidHttpStatusCodeException;
+import com.microsoft.office365.http.Request;
 import com.microsoft.office365.lists.SPList;
 import com.microsoft.office365.lists.SPListField;
 import com.microsoft.office365.lists.SPListItem;
@@ -46,7 +61,307 @@ public class ListsTests extends TestGroup {
 		this.addTest(createRoundtripListItemTest("Insert, update, delete list item"));
 		this.addTest(createColumnsForDefaultViewTest("Columns for default view"));
 		this.addTest(createListFieldsTest("All list fields"));
+		this.addTest(createFormDigestSharingTest("Concurrent form digest refresh"));
+		this.addTest(createFormDigestErrorTest("Form digest error detection"));
+		this.addTest(createIncrementalParsingTest("Incremental list item parsing"));
+		this.addTest(createEntityInstantiationTest("List item instantiation failure"));
+
+	}
+
+	/**
+	 * Client exposing the form digest cache. Its requests carry no
+	 * credentials: only the sharing of the digest requests is checked, not
+	 * their outcome
+	 */
+	private static class DigestClient extends SharepointClient {
+
+		DigestClient() {
+			super(ApplicationContext.getServerUrl(), ApplicationContext.getSiteRelativeUrl(), new Credentials() {
+				@Override
+				public void prepareRequest(Request request) {
+				}
+			});
+		}
+
+		public ListenableFuture<String> formDigest() {
+			return getFormDigest();
+		}
+
+		public void invalidate(ListenableFuture<String> digest) {
+			invalidateFormDigest(digest);
+		}
+
+		public static boolean isDigestError(Throwable error) {
+			return isFormDigestError(error);
+		}
+	}
+
+	/**
+	 * Asks for the form digest from several threads at once
+	 */
+	private static List<ListenableFuture<String>> requestDigestConcurrently(final DigestClient client, int count)
+			throws InterruptedException {
+		final List<ListenableFuture<String>> digests = Collections
+				.synchronizedList(new ArrayList<ListenableFuture<String>>());
+		final CountDownLatch start = new CountDownLatch(1);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < count; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						digests.add(client.formDigest());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return digests;
+	}
+
+	private static void awaitQuietly(ListenableFuture<String> digest) throws InterruptedException {
+		try {
+			digest.get();
+		} catch (ExecutionException e) {
+			// rejected without credentials
+		}
+	}
+
+	/**
+	 * Canned response, read up to the end of its first entity until the gate
+	 * is opened
+	 */
+	private static class GatedReader extends Reader {
+
+		private final String mContent;
+		private final int mGate;
+		private int mPosition = 0;
+		private boolean mOpen = false;
+
+		GatedReader(String content, String gateAfter) {
+			mContent = content;
+			mGate = content.indexOf(gateAfter) + gateAfter.length();
+		}
+
+		void open() {
+			mOpen = true;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			int limit = mOpen ? mContent.length() : mGate;
+			if (mPosition >= mContent.length()) {
+				return -1;
+			}
+			if (mPosition >= limit) {
+				throw new IOException("Response read past the first entity before it was handed over");
+			}
+
+			int count = Math.min(length, limit - mPosition);
+			mContent.getChars(mPosition, mPosition + count, buffer, offset);
+			mPosition += count;
+			return count;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Entity that cannot be created by the SDK, lacking a public constructor
+	 */
+	private static class HiddenItem extends OfficeEntity {
+
+		private HiddenItem() {
+		}
+	}
+
+	private TestCase createIncrementalParsingTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					String first = "{\"Id\":1,\"Title\":\"first\",\"Body\":{\"Text\":\"[skipped]\"}}";
+					String content = "{\"d\":{\"results\":[" + first
+							+ ",{\"Id\":2,\"Title\":\"second\",\"Body\":\"skipped\"}],\"__next\":\"next\"}}";
+					final GatedReader reader = new GatedReader(content, first);
+
+					Set<String> fields = new HashSet<String>();
+					fields.add("Id");
+					fields.add("Title");
+
+					final List<SPListItem> items = new ArrayList<SPListItem>();
+					int count = OfficeEntity.readListFromJson(reader, SPListItem.class, fields,
+							new EntityCallback<SPListItem>() {
+								@Override
+								public void onEntity(SPListItem entity) {
+									// the rest of the response is read only after the first entity
+									reader.open();
+									items.add(entity);
+								}
+							});
+
+					if (count != 2 || items.size() != 2) {
+						throw new ExpectedValueException(2, items.size());
+					}
+					if (!"first".equals(items.get(0).getData("Title")) || !"second".equals(items.get(1).getData("Title"))) {
+						throw new Exception("Unexpected list item titles");
+					}
+					for (SPListItem item : items) {
+						try {
+							item.getData("Body");
+							throw new Exception("Field not requested was kept");
+						} catch (IllegalArgumentException e) {
+							// expected: not read
+						}
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+
+		test.setName(name);
 
+		return test;
+	}
+
+	private TestCase createEntityInstantiationTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					GatedReader reader = new GatedReader("{\"value\":[{\"Id\":1}]}", "");
+					reader.open();
+					try {
+						OfficeEntity.listFromJson(reader, HiddenItem.class, null);
+						throw new Exception("List items silently dropped");
+					} catch (IllegalArgumentException e) {
+						// expected
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
+	}
+
+	private TestCase createFormDigestSharingTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					DigestClient client = new DigestClient();
+					int count = 8;
+
+					List<ListenableFuture<String>> first = requestDigestConcurrently(client, count);
+					if (first.size() != count) {
+						throw new Exception("Expected " + count + " digest requests");
+					}
+					for (ListenableFuture<String> digest : first) {
+						if (digest != first.get(0)) {
+							throw new Exception("Concurrent callers did not share the digest request");
+						}
+					}
+					awaitQuietly(first.get(0));
+
+					// once discarded, the refresh is shared as well
+					client.invalidate(first.get(0));
+					List<ListenableFuture<String>> refreshed = requestDigestConcurrently(client, count);
+					for (ListenableFuture<String> digest : refreshed) {
+						if (digest == first.get(0)) {
+							throw new Exception("Discarded digest returned again");
+						}
+						if (digest != refreshed.get(0)) {
+							throw new Exception("Concurrent callers did not share the digest refresh");
+						}
+					}
+					awaitQuietly(refreshed.get(0));
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
+	}
+
+	private TestCase createFormDigestErrorTest(String name) {
+		TestCase test = new TestCase() {
+
+			@Override
+			public TestResult executeTest() {
+				try {
+					TestResult result = new TestResult();
+					result.setStatus(TestStatus.Passed);
+					result.setTestCase(this);
+
+					String expired = "{\"error\":{\"code\":\"-2130575251, Microsoft.SharePoint.SPException\","
+							+ "\"message\":{\"lang\":\"en-US\",\"value\":\"The security validation for this page is invalid.\"}}}";
+					String denied = "{\"error\":{\"code\":\"-2147024891, System.UnauthorizedAccessException\","
+							+ "\"message\":{\"lang\":\"en-US\",\"value\":\"Access denied.\"}}}";
+
+					if (!DigestClient.isDigestError(new InvalidHttpStatusCodeException(403, expired, ""))) {
+						throw new ExpectedValueException(true, false);
+					}
+					if (DigestClient.isDigestError(new InvalidHttpStatusCodeException(403, denied, ""))) {
+						throw new Exception("Access denied taken for a digest error");
+					}
+					if (DigestClient.isDigestError(new InvalidHttpStatusCodeException(500, expired, ""))) {
+						throw new Exception("Status 500 taken for a digest error");
+					}
+					if (DigestClient.isDigestError(new Exception(expired))) {
+						throw new Exception("Non HTTP error taken for a digest error");
+					}
+
+					return result;
+				} catch (Exception e) {
+					return createResultFromException(e);
+				}
+			}
+		};
+
+		test.setName(name);
+
+		return test;
 	}
 
 	private TestCase createListFieldsTest(String name) {